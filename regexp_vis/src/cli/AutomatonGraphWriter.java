@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cli;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import model.Automaton;
+import model.Automaton.StateTransitionsPair;
+import model.AutomatonState;
+import model.AutomatonTransition;
+import model.BasicRegexp;
+
+/**
+ * Writes an automaton in the Automaton Graph File format used by the import
+ * and export options of the application (see controller.GraphExportFile),
+ * without needing a canvas. As there is no canvas to take positions from, the
+ * states are laid out in columns by their distance from the start state.
+ * Characters in the transition labels which can't be written on a line of the
+ * file are escaped with BasicRegexp.escapeUnprintable.
+ */
+public class AutomatonGraphWriter {
+
+    /**
+     * Horizontal distance between two columns of states
+     */
+    public static final double COLUMN_SPACING = 150.0;
+    /**
+     * Vertical distance between two states in a column
+     */
+    public static final double ROW_SPACING = 100.0;
+    /**
+     * Position of the start state
+     */
+    public static final double MARGIN = 50.0;
+
+    private AutomatonGraphWriter() {
+    }
+
+    /**
+     * Write the given automaton to a writer. The start state is written first,
+     * as the format requires.
+     *
+     * @param automaton The automaton to write
+     * @param w The writer to write to
+     * @throws IOException If writing fails
+     */
+    public static void write(Automaton automaton, Writer w)
+            throws IOException {
+        // Mapping from AutomatonState IDs into the index of the entry in the
+        // file, which is what the transition entries refer to
+        HashMap<Integer, Integer> idMap = new HashMap<>();
+        AutomatonState startState = automaton.getStartState();
+
+        // Breadth first search from the start state, assigning each state a
+        // column (its depth) and a row within that column
+        ArrayDeque<AutomatonState> queue = new ArrayDeque<>();
+        HashMap<Integer, Integer> depthMap = new HashMap<>();
+        HashMap<Integer, Integer> rowCounts = new HashMap<>();
+        StringBuilder stateLines = new StringBuilder();
+        queue.add(startState);
+        depthMap.put(startState.getId(), 0);
+        while (!queue.isEmpty()) {
+            AutomatonState state = queue.poll();
+            int depth = depthMap.get(state.getId());
+            appendState(state, depth, idMap, rowCounts,
+                    stateLines);
+            for (AutomatonTransition t : automaton.getStateTransitions(state)) {
+                AutomatonState to = t.getTo();
+                if (!depthMap.containsKey(to.getId())) {
+                    depthMap.put(to.getId(), depth + 1);
+                    queue.add(to);
+                }
+            }
+        }
+
+        // States which can't be reached from the start state go in a column
+        // of their own after all the others
+        int lastDepth = rowCounts.size();
+        Iterator<StateTransitionsPair> it = automaton.graphIterator();
+        while (it.hasNext()) {
+            AutomatonState state = it.next().getState();
+            if (!idMap.containsKey(state.getId())) {
+                appendState(state, lastDepth, idMap, rowCounts,
+                        stateLines);
+            }
+        }
+        w.write(stateLines.toString());
+
+        it = automaton.graphIterator();
+        while (it.hasNext()) {
+            List<AutomatonTransition> trans = it.next().getTransitions();
+            for (AutomatonTransition t : trans) {
+                StringBuilder strLine = new StringBuilder();
+                strLine.append("AutomatonTransition ");
+                strLine.append(idMap.get(t.getFrom().getId()));
+                strLine.append(" ");
+                strLine.append(idMap.get(t.getTo().getId()));
+                strLine.append(" ");
+                strLine.append(BasicRegexp.escapeUnprintable(
+                        t.getData().toString()));
+                strLine.append(System.lineSeparator());
+                w.write(strLine.toString());
+            }
+        }
+    }
+
+    private static void appendState(AutomatonState state, int depth,
+            HashMap<Integer, Integer> idMap,
+            HashMap<Integer, Integer> rowCounts, StringBuilder out) {
+        Integer row = rowCounts.get(depth);
+        if (row == null) {
+            row = 0;
+        }
+        rowCounts.put(depth, row + 1);
+        idMap.put(state.getId(), idMap.size());
+
+        out.append("AutomatonState ");
+        out.append(MARGIN + depth * COLUMN_SPACING);
+        out.append(" ");
+        out.append(MARGIN + row * ROW_SPACING);
+        out.append(" ");
+        out.append(state.isFinal());
+        out.append(System.lineSeparator());
+    }
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cli;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import model.Automaton;
+import model.Automaton.StateTransitionsPair;
+import model.AutomatonState;
+import model.AutomatonTransition;
+import model.BasicRegexp;
+import model.InvalidRegexpException;
+import model.RegexpCompiler;
+import model.RegexpCompiler.Stage;
+
+/**
+ * Headless batch compiler, reads regular expressions one per line and
+ * compiles each of them into a minimal DFA using a RegexpCompiler. Doesn't
+ * depend on JavaFX, so can be used on machines without a display.
+ *
+ * Usage: java -cp regexp_vis-core.jar cli.BatchCompiler [options] [file]
+ *
+ * Patterns are read from the given file, or from standard input if no file
+ * (or "-") is given. Empty lines are skipped rather than compiled as the
+ * empty string like an empty pattern given to FileScan, since with one
+ * pattern per line they are almost always blank separator or trailing lines.
+ * Results are written in the same order as the input, either as one JSON
+ * object per line, or as one Automaton Graph File per pattern which can be
+ * imported into the application. A summary of the time spent in each stage
+ * is written to standard error.
+ */
+public class BatchCompiler {
+
+    private static final String USAGE = "Usage: BatchCompiler [options] [file]\n"
+            + "Compiles the regexps in the file (one per line, standard input "
+            + "if no file or \"-\"\nis given) into minimal DFAs.\n\n"
+            + "Options:\n"
+            + "  -f, --format json|graph  Output format (default: json)\n"
+            + "  -o, --output PATH        Output file for json (default: "
+            + "standard output),\n"
+            + "                           output directory for graph "
+            + "(required)\n"
+            + "  -j, --threads N          Number of worker threads (default: "
+            + "number of CPUs)\n"
+            + "  -h, --help               Show this message\n";
+
+    /**
+     * Name of the graph files written for each pattern, the line number of
+     * the pattern is filled in
+     */
+    private static final String GRAPH_FILE_NAME = "pattern-%d.txt";
+
+    private enum Format {
+        JSON,
+        GRAPH
+    }
+
+    /**
+     * The outcome of compiling one line of the input
+     */
+    private static final class Result {
+        final int line;
+        final String pattern;
+        long parseNanos;
+        RegexpCompiler compiler;
+        String error;
+
+        Result(int line, String pattern) {
+            this.line = line;
+            this.pattern = pattern;
+        }
+    }
+
+    private Format format = Format.JSON;
+    private String inputPath = null;
+    private String outputPath = null;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    private Writer jsonWriter;
+    private int numCompiled = 0;
+    private int numFailed = 0;
+    private long parseNanos = 0;
+    private final long[] stageNanos = new long[Stage.values().length];
+
+    public static void main(String[] args) {
+        BatchCompiler compiler = new BatchCompiler();
+        String error = compiler.parseArgs(args);
+        if (error != null) {
+            System.err.println("Error: " + error);
+            System.err.print(USAGE);
+            System.exit(2);
+        }
+
+        int status;
+        try {
+            status = compiler.run();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            status = 2;
+        }
+        System.exit(status);
+    }
+
+    /**
+     * Parse the command line arguments into the fields of this object.
+     *
+     * @param args The command line arguments
+     * @return An error message if the arguments are invalid, null otherwise
+     */
+    private String parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-h") || arg.equals("--help")) {
+                System.out.print(USAGE);
+                System.exit(0);
+            } else if (arg.equals("-f") || arg.equals("--format")) {
+                if (++i == args.length) {
+                    return "Missing value for " + arg;
+                }
+                if (args[i].equals("json")) {
+                    this.format = Format.JSON;
+                } else if (args[i].equals("graph")) {
+                    this.format = Format.GRAPH;
+                } else {
+                    return "Unknown format: " + args[i];
+                }
+            } else if (arg.equals("-o") || arg.equals("--output")) {
+                if (++i == args.length) {
+                    return "Missing value for " + arg;
+                }
+                this.outputPath = args[i];
+            } else if (arg.equals("-j") || arg.equals("--threads")) {
+                if (++i == args.length) {
+                    return "Missing value for " + arg;
+                }
+                try {
+                    this.numThreads = Integer.parseInt(args[i]);
+                } catch (NumberFormatException e) {
+                    return "Invalid number of threads: " + args[i];
+                }
+                if (this.numThreads < 1) {
+                    return "Invalid number of threads: " + args[i];
+                }
+            } else if (arg.startsWith("-") && !arg.equals("-")) {
+                return "Unknown option: " + arg;
+            } else if (this.inputPath == null) {
+                this.inputPath = arg;
+            } else {
+                return "Only one input file can be given";
+            }
+        }
+
+        if (this.format == Format.GRAPH && this.outputPath == null) {
+            return "An output directory is required for the graph format";
+        }
+        return null;
+    }
+
+    /**
+     * Compile every pattern of the input, writing the results.
+     *
+     * @return The exit status, 0 if every pattern compiled, 1 otherwise
+     * @throws IOException If reading the input or writing the output fails
+     */
+    private int run() throws IOException {
+        if (this.format == Format.GRAPH) {
+            File dir = new File(this.outputPath);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Couldn't create output directory: "
+                        + this.outputPath);
+            }
+        }
+
+        InputStream is = (this.inputPath == null || this.inputPath.equals("-"))
+                ? System.in : new FileInputStream(this.inputPath);
+        if (this.format == Format.JSON) {
+            this.jsonWriter = new BufferedWriter(new OutputStreamWriter(
+                    this.outputPath == null ? System.out
+                            : new FileOutputStream(this.outputPath),
+                    "UTF-8"));
+        }
+
+        long startTime = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(this.numThreads);
+        // Results are written in input order, bound the number of patterns in
+        // flight so that large inputs don't have to be held in memory
+        int window = this.numThreads * 16;
+        ArrayDeque<Future<Result>> pending = new ArrayDeque<>();
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(is, "UTF-8"))) {
+            String strLine;
+            int lineNum = 0;
+            while ((strLine = br.readLine()) != null) {
+                lineNum++;
+                if (lineNum == 1 && strLine.length() > 0
+                        && strLine.charAt(0) == 0xFEFF) {
+                    // Found a byte-order-mark (BOM), ignore this
+                    strLine = strLine.substring(1);
+                }
+                if (strLine.isEmpty()) {
+                    continue;
+                }
+
+                final Result result = new Result(lineNum, strLine);
+                pending.add(pool.submit(() -> compile(result)));
+                if (pending.size() >= window) {
+                    writeResult(await(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeResult(await(pending.poll()));
+            }
+        } finally {
+            pool.shutdownNow();
+            if (this.jsonWriter != null) {
+                this.jsonWriter.flush();
+                if (this.outputPath != null) {
+                    this.jsonWriter.close();
+                }
+            }
+        }
+
+        printSummary(System.nanoTime() - startTime);
+        return this.numFailed == 0 ? 0 : 1;
+    }
+
+    /**
+     * Compile the pattern of a result, filling in either the compiler or the
+     * error. Running out of stack on a deeply nested pattern is reported as
+     * an error for that pattern rather than failing the whole batch.
+     */
+    private static Result compile(Result result) {
+        long t0 = System.nanoTime();
+        BasicRegexp re;
+        try {
+            re = BasicRegexp.parseRegexp(result.pattern);
+        } catch (InvalidRegexpException e) {
+            result.error = e.getMessage();
+            return result;
+        } catch (StackOverflowError e) {
+            result.error = "Regexp is nested too deeply";
+            return result;
+        } finally {
+            result.parseNanos = System.nanoTime() - t0;
+        }
+        if (re == null) {
+            re = BasicRegexp.EPSILON_EXPRESSION;
+        }
+
+        try {
+            result.compiler = new RegexpCompiler(re);
+        } catch (RuntimeException e) {
+            result.error = "Compilation failed: " + e;
+        } catch (StackOverflowError e) {
+            result.error = "Compilation failed: regexp is nested too deeply";
+        }
+        return result;
+    }
+
+    private static Result await(Future<Result> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void writeResult(Result result) throws IOException {
+        this.parseNanos += result.parseNanos;
+        if (result.error != null) {
+            this.numFailed++;
+        } else {
+            this.numCompiled++;
+            for (Stage stage : Stage.values()) {
+                this.stageNanos[stage.ordinal()] += result.compiler
+                        .getStageNanos(stage);
+            }
+        }
+
+        if (this.format == Format.JSON) {
+            writeJson(result);
+        } else if (result.error != null) {
+            System.err.println("Line " + result.line + ": " + result.error);
+        } else {
+            File file = new File(this.outputPath,
+                    String.format(GRAPH_FILE_NAME, result.line));
+            try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file), "UTF-8"))) {
+                AutomatonGraphWriter.write(result.compiler.getAutomaton(), bw);
+            }
+        }
+    }
+
+    /**
+     * Write a result as a single line JSON object. States are numbered from
+     * zero, the start state is always state 0.
+     */
+    private void writeJson(Result result) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"line\":").append(result.line);
+        sb.append(",\"pattern\":");
+        appendJsonString(sb, result.pattern);
+        if (result.error != null) {
+            sb.append(",\"error\":");
+            appendJsonString(sb, result.error);
+            sb.append("}");
+            this.jsonWriter.write(sb.toString());
+            this.jsonWriter.write(System.lineSeparator());
+            return;
+        }
+
+        RegexpCompiler compiler = result.compiler;
+        Automaton automaton = compiler.getAutomaton();
+        HashMap<Integer, Integer> idMap = new HashMap<>();
+        idMap.put(automaton.getStartState().getId(), 0);
+        Iterator<StateTransitionsPair> it = automaton.graphIterator();
+        while (it.hasNext()) {
+            AutomatonState state = it.next().getState();
+            if (!idMap.containsKey(state.getId())) {
+                idMap.put(state.getId(), idMap.size());
+            }
+        }
+
+        sb.append(",\"nfaStates\":").append(compiler.getNumNfaStates());
+        sb.append(",\"nfaTransitions\":")
+                .append(compiler.getNumNfaTransitions());
+        sb.append(",\"dfaStates\":").append(compiler.getNumDfaStates());
+        sb.append(",\"states\":").append(automaton.getNumStates());
+        sb.append(",\"final\":[");
+        boolean first = true;
+        it = automaton.graphIterator();
+        while (it.hasNext()) {
+            AutomatonState state = it.next().getState();
+            if (state.isFinal()) {
+                sb.append(first ? "" : ",").append(idMap.get(state.getId()));
+                first = false;
+            }
+        }
+        sb.append("],\"transitions\":[");
+        first = true;
+        it = automaton.graphIterator();
+        while (it.hasNext()) {
+            for (AutomatonTransition t : it.next().getTransitions()) {
+                sb.append(first ? "[" : ",[");
+                sb.append(idMap.get(t.getFrom().getId())).append(",");
+                sb.append(idMap.get(t.getTo().getId())).append(",");
+                appendJsonString(sb, t.getData().toString());
+                sb.append("]");
+                first = false;
+            }
+        }
+        sb.append("],\"nanos\":{\"parse\":").append(result.parseNanos);
+        for (Stage stage : Stage.values()) {
+            sb.append(",\"").append(stageName(stage)).append("\":");
+            sb.append(compiler.getStageNanos(stage));
+        }
+        sb.append("}}");
+        this.jsonWriter.write(sb.toString());
+        this.jsonWriter.write(System.lineSeparator());
+    }
+
+    private static void appendJsonString(StringBuilder sb, String str) {
+        sb.append('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * @return The camel case name of a stage, e.g. "subsetConstruction"
+     */
+    private static String stageName(Stage stage) {
+        StringBuilder sb = new StringBuilder();
+        boolean upper = false;
+        for (char c : stage.name().toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                sb.append(upper ? c : Character.toLowerCase(c));
+                upper = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    private void printSummary(long wallNanos) {
+        System.err.println(String.format(
+                "Compiled %d regexp(s), %d failed, using %d thread(s)",
+                this.numCompiled, this.numFailed, this.numThreads));
+        System.err.println(String.format("  %-20s %10.3f ms", "parse",
+                this.parseNanos / 1e6));
+        for (Stage stage : Stage.values()) {
+            System.err.println(String.format("  %-20s %10.3f ms",
+                    stageName(stage), this.stageNanos[stage.ordinal()] / 1e6));
+        }
+        System.err.println(String.format("  %-20s %10.3f ms", "wall time",
+                wallNanos / 1e6));
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cli;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+import model.BasicRegexp;
+import model.DfaMatcher;
+import model.FileScanner;
+import model.InvalidRegexpException;
+import model.RegexpCompiler;
+
+/**
+ * Scans the lines of a file with a regexp compiled into a DFA, reporting the
+ * lines which match the regexp as a whole. The file is memory-mapped rather
+ * than read into Strings, so it can be used on very large files.
+ *
+ * Usage: java -cp regexp_vis-core.jar cli.FileScan [options] regexp file
+ *
+ * Each matching line is written to standard output as its line number
+ * (from 1) and its byte offset, separated by a tab. The number of matching
+ * lines and the time taken are written to standard error.
+ */
+public class FileScan {
+
+    private static final String USAGE = "Usage: FileScan [options] regexp file\n"
+            + "Reports the lines of the file which match the regexp.\n\n"
+            + "Options:\n"
+            + "  -c, --count          Only print the number of matching lines\n"
+            + "  -j, --threads N      Scan the file in parallel using N "
+            + "threads (default: 1)\n"
+            + "  -h, --help           Show this message\n";
+
+    private boolean countOnly = false;
+    private int numThreads = 1;
+    private String regexp = null;
+    private String filePath = null;
+
+    public static void main(String[] args) {
+        FileScan scan = new FileScan();
+        String error = scan.parseArgs(args);
+        if (error != null) {
+            System.err.println("Error: " + error);
+            System.err.print(USAGE);
+            System.exit(2);
+        }
+
+        int status;
+        try {
+            status = scan.run();
+        } catch (InvalidRegexpException e) {
+            System.err.println("Error: invalid regexp: " + e.getMessage());
+            status = 2;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error: " + e.getMessage());
+            status = 2;
+        }
+        System.exit(status);
+    }
+
+    /**
+     * Parse the command line arguments into the fields of this object.
+     *
+     * @param args The command line arguments
+     * @return An error message if the arguments are invalid, null otherwise
+     */
+    private String parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-h") || arg.equals("--help")) {
+                System.out.print(USAGE);
+                System.exit(0);
+            } else if (arg.equals("-c") || arg.equals("--count")) {
+                this.countOnly = true;
+            } else if (arg.equals("-j") || arg.equals("--threads")) {
+                if (++i == args.length) {
+                    return "Missing value for " + arg;
+                }
+                try {
+                    this.numThreads = Integer.parseInt(args[i]);
+                } catch (NumberFormatException e) {
+                    return "Invalid number of threads: " + args[i];
+                }
+                if (this.numThreads < 1) {
+                    return "Invalid number of threads: " + args[i];
+                }
+            } else if (arg.equals("--")) {
+                // Anything after this is positional, e.g. a regexp starting
+                // with "-"
+                for (i++; i < args.length; i++) {
+                    String error = addPositional(args[i]);
+                    if (error != null) {
+                        return error;
+                    }
+                }
+            } else if (arg.startsWith("-")) {
+                return "Unknown option: " + arg;
+            } else {
+                String error = addPositional(arg);
+                if (error != null) {
+                    return error;
+                }
+            }
+        }
+
+        if (this.filePath == null) {
+            return "A regexp and a file are required";
+        }
+        return null;
+    }
+
+    private String addPositional(String arg) {
+        if (this.regexp == null) {
+            this.regexp = arg;
+        } else if (this.filePath == null) {
+            this.filePath = arg;
+        } else {
+            return "Unexpected argument: " + arg;
+        }
+        return null;
+    }
+
+    /**
+     * Scan the file, writing the results.
+     *
+     * @return The exit status, 0 if a line matched, 1 otherwise
+     */
+    private int run() throws InvalidRegexpException, IOException {
+        BasicRegexp re = BasicRegexp.parseRegexp(this.regexp);
+        if (re == null) {
+            re = BasicRegexp.EPSILON_EXPRESSION;
+        }
+        FileScanner scanner = new FileScanner(new DfaMatcher(
+                new RegexpCompiler(re).getAutomaton()));
+        Path path = Paths.get(this.filePath);
+
+        long startTime = System.nanoTime();
+        long numLines;
+        long numMatches;
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        if (this.numThreads == 1) {
+            // Stream the matches out as they are found
+            final long[] count = new long[1];
+            numLines = scanner.scan(path, (line, offset, length) -> {
+                count[0]++;
+                if (!this.countOnly) {
+                    try {
+                        out.write((line + 1) + "\t" + offset + "\n");
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+            numMatches = count[0];
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(this.numThreads);
+            FileScanner.Result result = scanner.scanParallel(path, pool);
+            pool.shutdown();
+            numLines = result.getNumLines();
+            numMatches = result.getNumMatches();
+            if (!this.countOnly) {
+                for (int i = 0; i < result.getNumMatches(); i++) {
+                    out.write((result.getLine(i) + 1) + "\t"
+                            + result.getOffset(i) + "\n");
+                }
+            }
+        }
+        if (this.countOnly) {
+            out.write(numMatches + "\n");
+        }
+        out.flush();
+
+        System.err.println(String.format(
+                "%d of %d line(s) matched in %.3f ms", numMatches, numLines,
+                (System.nanoTime() - startTime) / 1e6));
+        return numMatches > 0 ? 0 : 1;
+    }
+}
@@ -39,6 +39,7 @@ import model.BasicRegexp;
 import model.Command;
 import model.CommandHistory;
 import model.InvalidRegexpException;
+import model.RegexpOptimiser;
 import model.RemoveStateCleanlyCommand;
 import model.TranslationTools;
 import view.GraphCanvasEvent;
@@ -128,6 +129,13 @@ public abstract class Activity {
         this.history = history;
         this.optimisationFlags = 0;
         this.optimisationLevel = 0;
+
+        // Seeking far through a long history restores a checkpoint of the
+        // automaton and canvas, rather than replaying every command
+        if (history != null) {
+            history.setCheckpointer(
+                    () -> new GraphCheckpoint(this.canvas, this.automaton));
+        }
     }
 
     /**
@@ -152,8 +160,13 @@ public abstract class Activity {
             return;
         }
 
-        // Do optimisations
-        re = re.optimise(optimisationFlags, optimisationLevel);
+        // Do optimisations, optimising as far as possible when the level is
+        // unbounded
+        if (optimisationLevel < 0) {
+            re = RegexpOptimiser.getDefault().optimise(re, optimisationFlags);
+        } else {
+            re = re.optimise(optimisationFlags, optimisationLevel);
+        }
 
         this.canvas.removeAllNodes();
         this.automaton.clear();
@@ -218,12 +231,10 @@ public abstract class Activity {
     }
 
     /**
-     * Called by RegexpVisApp when the state of the CommandHistory changes.
-     *
-     * @param obj
-     *            The object the observer got passed
+     * Called by RegexpVisApp when the state of the CommandHistory changes, at
+     * most once per pulse however many changes there were.
      */
-    public void onHistoryChanged(Object obj) {
+    public void onHistoryChanged() {
 
     }
 
@@ -52,6 +52,8 @@ public class AddStateUICommand extends UICommand {
 
     @Override
     public void redo() {
+        // Redo the model command first, it restores whether the state is final
+        this.ccmd.redo();
         GraphNode n = this.graph.addNode(this.ccmd.getState().getId(),
                 this.location.getX(), this.location.getY());
         if (this.ccmd.getState().isFinal()) {
@@ -59,7 +61,6 @@ public class AddStateUICommand extends UICommand {
             // visually
             this.graph.setNodeUseFinalStyle(n, true);
         }
-        this.ccmd.redo();
     }
 
     @Override
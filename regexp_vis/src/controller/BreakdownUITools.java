@@ -116,11 +116,9 @@ public class BreakdownUITools {
             Automaton automaton, AutomatonState from, AutomatonState to) {
         final List<AutomatonTransition> fromTrs = automaton
                 .getStateTransitions(from);
-        final List<AutomatonTransition> toTrs = automaton
-                .getIngoingTransition(to);
         final List<AutomatonTransition> between = new LinkedList<>();
         for (AutomatonTransition f : fromTrs) {
-            if (toTrs.contains(f)) {
+            if (f.getTo() == to) {
                 between.add(f);
             }
         }
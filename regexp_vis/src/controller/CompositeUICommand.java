@@ -64,4 +64,15 @@ public abstract class CompositeUICommand extends UICommand {
         return Collections.unmodifiableList(this.commands);
     }
 
+    @Override
+    public long getSizeEstimate() {
+        // Both this and the model command hold a list of sub-commands, the
+        // model sub-commands are counted by the UI sub-commands
+        long size = 3 * OBJECT_SIZE + 6 * REFERENCE_SIZE;
+        for (UICommand c : this.commands) {
+            size += 2 * REFERENCE_SIZE + c.getSizeEstimate();
+        }
+        return size;
+    }
+
 }
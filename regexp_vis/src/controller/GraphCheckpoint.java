@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package controller;
+
+import model.Automaton;
+import model.AutomatonCheckpoint;
+import model.Checkpoint;
+import view.GraphCanvasFX;
+
+/**
+ * A {@link Checkpoint} of an {@link Automaton} together with the
+ * {@link GraphCanvasFX} showing it, so the history of an {@link Activity} can
+ * be seeked without replaying every {@link UICommand} on the way.
+ */
+class GraphCheckpoint implements Checkpoint {
+    private final GraphCanvasFX canvas;
+    private final AutomatonCheckpoint automatonCheckpoint;
+    private final GraphCanvasFX.Snapshot canvasSnapshot;
+
+    GraphCheckpoint(GraphCanvasFX canvas, Automaton automaton) {
+        this.canvas = canvas;
+        this.automatonCheckpoint = automaton.createCheckpoint();
+        this.canvasSnapshot = canvas.createSnapshot();
+    }
+
+    @Override
+    public void restore() {
+        this.automatonCheckpoint.restore();
+        this.canvas.restoreSnapshot(this.canvasSnapshot);
+    }
+
+    @Override
+    public long getSizeEstimate() {
+        return this.automatonCheckpoint.getSizeEstimate()
+                + this.canvasSnapshot.getSizeEstimate();
+    }
+}
@@ -306,8 +306,9 @@ public class GraphExportFile {
             throw new BadGraphExportFileException(
                     "Couldn't parse transition data string");
         }
-        // The regexp is the data until the end of the line
-        String text = s.nextLine();
+        // The regexp is the data until the end of the line, with characters
+        // which can't be written on a line escaped
+        String text = BasicRegexp.unescapeUnprintable(s.nextLine());
         try {
             entry.data = BasicRegexp.parseRegexp(text);
         } catch (InvalidRegexpException e) {
@@ -364,7 +365,7 @@ public class GraphExportFile {
         strLine.append(" ");
         strLine.append(entry.toId);
         strLine.append(" ");
-        strLine.append(entry.data.toString());
+        strLine.append(BasicRegexp.escapeUnprintable(entry.data.toString()));
         w.write(strLine.toString());
         w.newLine();
     }
@@ -22,22 +22,51 @@
  */
 package controller;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.animation.AnimationTimer;
 import javafx.beans.binding.DoubleBinding;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
+import model.Command;
 import model.CommandHistory;
+import model.CommandHistoryListener;
+import model.HistorySnapshotCommand;
 
 /**
  * Extension of {@link ListView} for displaying the {@link CommandHistory}
  *
+ * Changes to the history are gathered up and shown at most once per pulse, so
+ * a burst of changes, e.g. from scrubbing through the history, only updates
+ * the list once.
+ *
  * @author sp611
  *
  */
-public class HistoryListView extends ListView<Label> {
+public class HistoryListView extends ListView<Label>
+        implements CommandHistoryListener {
 
     public static final int HISTORY_LIST_MIN_WIDTH_PX = 140;
     public static final double LISTVIEW_LABEL_WIDTH_OFFSET = -20;
+    public static final String HISTORY_INITIAL_STATE_TEXT = "Initial state";
+
+    private CommandHistory history;
+    private Runnable onHistoryChanged;
+    // Index of the first command whose list item is out of date, or -1 if
+    // they are all up to date
+    private int staleIdx = -1;
+    private boolean scrollToEnd;
+    private boolean updating;
+    private final AnimationTimer pulseTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            this.stop();
+            updateItems();
+        }
+    };
 
     public HistoryListView() {
         super();
@@ -55,14 +84,122 @@ public class HistoryListView extends ListView<Label> {
     }
 
     /**
-     * Adds an entry with the given text to the {@link ListView}, converting it
-     * first to a {@link Label} so that the text can automatically wrap
+     * Show the given {@link CommandHistory}, no longer listening to the
+     * previous one
      *
-     * @param text
-     *            the text
+     * @param history
+     *            the history to show
      */
-    public void addItem(String text) {
-        this.getItems().add(createListViewLabel(text));
+    public void setHistory(CommandHistory history) {
+        if (this.history != null) {
+            this.history.removeListener(this);
+        }
+        this.history = history;
+        history.addListener(this);
+        markStale(0);
+    }
+
+    /**
+     * Set what to run after changes to the history have been shown, which
+     * happens at most once per pulse
+     *
+     * @param onHistoryChanged
+     *            the action to run
+     */
+    public void setOnHistoryChanged(Runnable onHistoryChanged) {
+        this.onHistoryChanged = onHistoryChanged;
+    }
+
+    /**
+     * @return whether the list is being updated to show the history, in which
+     *         case any change of selection doesn't come from the user
+     */
+    public boolean isUpdating() {
+        return this.updating;
+    }
+
+    @Override
+    public void commandAdded(CommandHistory history, Command cmd) {
+        markStale(history.getHistorySize() - 1);
+        this.scrollToEnd = true;
+    }
+
+    @Override
+    public void historyTruncated(CommandHistory history, int fromIdx,
+            int toIdx) {
+        markStale(fromIdx);
+    }
+
+    @Override
+    public void historyCompacted(CommandHistory history, int numRemoved) {
+        // Every command has moved, so list them all again
+        markStale(0);
+    }
+
+    @Override
+    public void historyCleared(CommandHistory history) {
+        markStale(0);
+    }
+
+    @Override
+    public void historyIdxChanged(CommandHistory history, int idx) {
+        this.pulseTimer.start();
+    }
+
+    private void markStale(int idx) {
+        this.staleIdx = (this.staleIdx == -1) ? idx
+                : Math.min(this.staleIdx, idx);
+        this.pulseTimer.start();
+    }
+
+    /**
+     * Bring the items and selection up to date with the history
+     */
+    private void updateItems() {
+        if (this.history == null) {
+            return;
+        }
+
+        this.updating = true;
+        try {
+            ObservableList<Label> items = this.getItems();
+            if (items.isEmpty()) {
+                items.add(createListViewLabel(HISTORY_INITIAL_STATE_TEXT));
+            }
+            if (this.staleIdx != -1) {
+                // The first item is the initial state, so each command is
+                // shown by the item after its index
+                List<Command> commands = this.history.getCommands();
+                int from = Math.min(this.staleIdx, items.size() - 1);
+                items.remove(from + 1, items.size());
+                List<Label> labels = new ArrayList<>();
+                for (int i = from; i < commands.size(); i++) {
+                    labels.add(createListViewLabel(getText(commands.get(i))));
+                }
+                items.addAll(labels);
+                this.staleIdx = -1;
+            }
+
+            this.getSelectionModel().select(this.history.getHistoryIdx());
+            if (this.scrollToEnd) {
+                this.scrollTo(items.size() - 1);
+                this.scrollToEnd = false;
+            }
+        } finally {
+            this.updating = false;
+        }
+
+        if (this.onHistoryChanged != null) {
+            this.onHistoryChanged.run();
+        }
+    }
+
+    private static String getText(Command cmd) {
+        if (cmd instanceof HistorySnapshotCommand) {
+            return String.format("%d earlier steps",
+                    ((HistorySnapshotCommand) cmd).getNumCommands());
+        }
+        return ((UICommand) cmd).getDescription();
     }
 
     private Label createListViewLabel(String text) {
@@ -24,12 +24,14 @@ package controller;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.MenuItem;
 import javafx.scene.input.ContextMenuEvent;
@@ -37,6 +39,8 @@ import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
 import model.Automaton;
 import model.AutomatonState;
+import model.BasicRegexp;
+import model.MinimiseDfaCommand;
 import model.RemoveEpsilonTransitionsCommand;
 import model.RemoveEpsilonTransitionsContext;
 import model.RemoveEquivalentStatesCommand;
@@ -89,8 +93,7 @@ public class NfaToDfaActivity extends Activity {
             // Now check if nothing still needs to be done, in which case
             // inform the user that nothing needs to be done
             if (removeNonDeterminismActivity.checkActivityDone()) {
-                new Alert(AlertType.INFORMATION,
-                        "This automaton is already an DFA.").showAndWait();
+                onDfaDone("This automaton is already an DFA.");
             } else {
                 new Alert(
                         AlertType.INFORMATION,
@@ -130,8 +133,8 @@ public class NfaToDfaActivity extends Activity {
     }
 
     @Override
-    public void onHistoryChanged(Object obj) {
-        super.onHistoryChanged(obj);
+    public void onHistoryChanged() {
+        super.onHistoryChanged();
 
         // Reset any node highlighting
         resetNodeHighlighting();
@@ -185,9 +188,32 @@ public class NfaToDfaActivity extends Activity {
 
     private void onRemoveNonDeterminismDone() {
         // Called by RemoveNonDeterminismActivity when the activity is finished
-        new Alert(AlertType.INFORMATION,
-                "You have finished translating the NFA to a DFA.")
-                .showAndWait();
+        onDfaDone("You have finished translating the NFA to a DFA.");
+    }
+
+    /**
+     * Tell the user the automaton is now a DFA, offering to minimise it if it
+     * isn't minimal already.
+     *
+     * @param message
+     *            the message to show
+     */
+    private void onDfaDone(String message) {
+        MinimiseDfaCommand cmd = new MinimiseDfaCommand(this.automaton);
+        if (cmd.getCommands().isEmpty()) {
+            new Alert(AlertType.INFORMATION,
+                    message + " It is also already minimal.").showAndWait();
+            return;
+        }
+
+        ButtonType minimise = new ButtonType("Minimise DFA");
+        Optional<ButtonType> result = new Alert(AlertType.CONFIRMATION,
+                message + " It can also be minimised, which removes "
+                        + cmd.getRemovedStates().size() + " state(s).",
+                minimise, ButtonType.CLOSE).showAndWait();
+        if (result.isPresent() && result.get() == minimise) {
+            executeNewCommand(cmd);
+        }
     }
 
     @Override
@@ -465,13 +491,13 @@ public class NfaToDfaActivity extends Activity {
                             this.rightClickedState);
             itemRemoveUnreachable.setDisable(!canRemoveUnreachable);
 
-            List<Character> charList = TranslationTools
-                    .calcNonDeterministicTrans(automaton,
+            List<BasicRegexp> atomList = TranslationTools
+                    .calcNonDeterministicAtoms(automaton,
                             this.rightClickedState);
 
             // This item informs the user that there is no non-determinism for
             // this state
-            if (charList.isEmpty()) {
+            if (atomList.isEmpty()) {
                 MenuItem noNonDeterminismItem = new MenuItem(
                         "No non-determinism out-going from this state");
                 contextMenu.getItems().add(noNonDeterminismItem);
@@ -479,13 +505,13 @@ public class NfaToDfaActivity extends Activity {
             }
 
             // Remove non-determinism menu item for each non-deterministic
-            // character transition
-            for (char c : charList) {
+            // character or range of characters
+            for (BasicRegexp atom : atomList) {
                 MenuItem removeItem = new MenuItem(
-                        "Remove non-determinism in '" + c + "' transitions");
+                        "Remove non-determinism in '" + atom + "' transitions");
                 removeItem.setOnAction(new EventHandler<ActionEvent>() {
                     public void handle(ActionEvent event) {
-                        onRemoveNonDeterminism(event, c);
+                        onRemoveNonDeterminism(event, atom);
                     }
                 });
                 contextMenu.getItems().add(removeItem);
@@ -508,9 +534,10 @@ public class NfaToDfaActivity extends Activity {
                     && !TranslationTools.automatonHasNonDeterminism(automaton);
         }
 
-        private void onRemoveNonDeterminism(ActionEvent event, char c) {
+        private void onRemoveNonDeterminism(ActionEvent event,
+                BasicRegexp atom) {
             RemoveNonDeterminismCommand cmd = new RemoveNonDeterminismCommand(
-                    this.ctx, this.rightClickedState, c);
+                    this.ctx, this.rightClickedState, atom);
             executeNewCommand(cmd);
 
             if (checkActivityDone()) {
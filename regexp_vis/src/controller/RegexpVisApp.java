@@ -25,14 +25,11 @@ package controller;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.Observable;
-import java.util.Observer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
-import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
@@ -43,7 +40,6 @@ import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.ComboBox;
-import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
@@ -66,7 +62,7 @@ import model.CommandHistory;
 import view.GraphCanvasEvent;
 import view.GraphCanvasFX;
 
-public class RegexpVisApp implements Observer {
+public class RegexpVisApp {
 
     private static final Logger LOGGER = Logger.getLogger("controller");
 
@@ -80,7 +76,6 @@ public class RegexpVisApp implements Observer {
     final Stage stage;
 
     /* Constants */
-    private static final String HISTORY_INITIAL_STATE_TEXT = "Initial state";
     private static final String CONTROL_PANEL_HIDE_TEXT = "Hide Control Panel";
     private static final String CONTROL_PANEL_SHOW_TEXT = "Show Control Panel";
     private static final String HISTORY_LIST_HIDE_TEXT = "Hide History List";
@@ -300,6 +295,7 @@ public class RegexpVisApp implements Observer {
                         RegexpVisApp.this.setHistoryIdx(newValue);
                     }
                 });
+        this.historyList.setOnHistoryChanged(this::onHistoryChanged);
         canvasContainer.getItems().add(this.historyList);
         canvasContainer.setDividerPosition(0, 0.8f);
 
@@ -539,10 +535,12 @@ public class RegexpVisApp implements Observer {
      */
     protected void setHistoryIdx(Number value) {
         int idx = (int) value;
-        // Note: called with value -1 when the history is reset.
-        if (idx >= 0) {
+        // Note: called with value -1 when the history is reset. The list can
+        // also be behind the history until the next pulse, and selects items
+        // itself when catching up, which shouldn't seek.
+        if (idx >= 0 && !this.historyList.isUpdating()
+                && idx <= this.currentActivity.history.getHistorySize()) {
             this.currentActivity.historySeek(idx);
-            this.historyList.getSelectionModel().select(idx);
         }
     }
 
@@ -576,16 +574,13 @@ public class RegexpVisApp implements Observer {
             return;
         }
 
-        /* Observe only the current CommandHistory */
         if (this.currentActivity != null) {
-            this.currentActivity.history.deleteObserver(this);
             this.currentActivity.onEnded();
         }
         this.currentActivity = newActivity;
-        this.currentActivity.history.addObserver(this);
 
-        /* Update history list */
-        this.historyList.getItems().clear();
+        /* Show only the current CommandHistory */
+        this.historyList.setHistory(this.currentActivity.history);
         this.currentActivity.history.clear();
 
         this.currentActivity.onStarted();
@@ -702,35 +697,13 @@ public class RegexpVisApp implements Observer {
         }
     }
 
-    @Override
-    public void update(Observable o, Object arg) {
-        /* Called whenever CommandHistory of current Activity changes */
-
+    /**
+     * Called by the history list, at most once per pulse, once it shows the
+     * changes to the {@link CommandHistory} of the current {@link Activity}
+     */
+    private void onHistoryChanged() {
         if (this.currentActivity != null) {
-            this.currentActivity.onHistoryChanged(arg);
-        }
-
-        ObservableList<Label> items = this.historyList.getItems();
-        if (arg instanceof Integer) {
-            int idx = (int) arg;
-            if (idx == CommandHistory.HISTORY_CLOBBERED) {
-                /*
-                 * The last element of the history list was removed, we must
-                 * reflect this change in the UI.
-                 */
-                items.remove(items.size() - 1);
-            } else if (idx == CommandHistory.HISTORY_CLEARED) {
-                this.historyList.getItems().clear();
-                this.historyList.addItem(HISTORY_INITIAL_STATE_TEXT);
-                this.historyList.getSelectionModel().select(0);
-            } else {
-                this.historyList.getSelectionModel().select(idx);
-            }
-        } else if (arg instanceof UICommand) {
-            String text = ((UICommand) arg).getDescription();
-            this.historyList.addItem(text);
-            this.historyList.getSelectionModel().select(items.size() - 1);
-            this.historyList.scrollTo(items.size() - 1);
+            this.currentActivity.onHistoryChanged();
         }
     }
 
@@ -56,6 +56,8 @@ public class RemoveStateUICommand extends UICommand {
 
     @Override
     public void undo() {
+        // Undo the model command first, it restores whether the state is final
+        this.cmd.undo();
         GraphNode nodeFrom = this.graph.addNode(this.ccmd.getState().getId(),
                 this.location.getX(), this.location.getY());
         if (this.ccmd.getState().isFinal()) {
@@ -69,7 +71,6 @@ public class RemoveStateUICommand extends UICommand {
             this.graph.addEdge(t.getId(), nodeFrom, nodeTo,
                     t.getData().toString());
         }
-        this.cmd.undo();
     }
 
     @Override
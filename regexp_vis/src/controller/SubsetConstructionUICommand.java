@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package controller;
+
+import java.util.HashMap;
+import java.util.List;
+
+import javafx.geometry.Point2D;
+import model.AddStateCommand;
+import model.AutomatonState;
+import model.Command;
+import model.SubsetConstructionCommand;
+import view.GraphCanvasFX;
+import view.GraphNode;
+
+public class SubsetConstructionUICommand extends CompositeUICommand {
+
+    private final SubsetConstructionCommand ccmd;
+
+    public SubsetConstructionUICommand(GraphCanvasFX graph,
+            SubsetConstructionCommand cmd) {
+        super(graph, cmd);
+        this.ccmd = cmd;
+
+        HashMap<AutomatonState, Integer> dfaStates = new HashMap<>();
+        for (int d = 0; d < cmd.getNumStates(); d++) {
+            dfaStates.put(cmd.getState(d), d);
+        }
+
+        super.commands.clear();
+        for (Command c : cmd.getCommands()) {
+            if (c instanceof AddStateCommand) {
+                // Place each new state at the average position of the states
+                // it stands for, which are still on the canvas at this point
+                AddStateCommand addCmd = (AddStateCommand) c;
+                List<AutomatonState> subset = cmd
+                        .getSubset(dfaStates.get(addCmd.getState()));
+                Point2D location = Point2D.ZERO;
+                for (AutomatonState s : subset) {
+                    GraphNode n = graph.lookupNode(s.getId());
+                    location = location.add(n.getX(), n.getY());
+                }
+                if (!subset.isEmpty()) {
+                    location = location.multiply(1.0 / subset.size());
+                }
+
+                super.commands.add(new AddStateUICommand(graph, addCmd,
+                        location));
+            } else {
+                super.commands.add(UICommand.fromCommand(graph, c));
+            }
+        }
+    }
+
+    @Override
+    public String getDescription() {
+        int numStates = this.ccmd.getNumStates();
+        return String.format("Converted to a DFA with %d state%s", numStates,
+                numStates == 1 ? "" : "s");
+    }
+
+}
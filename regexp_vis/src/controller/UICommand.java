@@ -28,6 +28,7 @@ import model.AddTransitionCommand;
 import model.Automaton;
 import model.BreakdownCommand;
 import model.Command;
+import model.MinimiseDfaCommand;
 import model.RemoveEpsilonTransitionsCommand;
 import model.RemoveEquivalentStatesCommand;
 import model.RemoveNonDeterminismCommand;
@@ -35,6 +36,7 @@ import model.RemoveStateCleanlyCommand;
 import model.RemoveStateCommand;
 import model.RemoveTransitionCommand;
 import model.SetIsFinalCommand;
+import model.SubsetConstructionCommand;
 import view.GraphCanvasFX;
 
 /**
@@ -95,6 +97,11 @@ public abstract class UICommand extends Command {
         } else if (cmd instanceof RemoveStateCleanlyCommand) {
             return new RemoveUnreachableStateUICommand(graph,
                     (RemoveStateCleanlyCommand) cmd);
+        } else if (cmd instanceof MinimiseDfaCommand) {
+            return new MinimiseDfaUICommand(graph, (MinimiseDfaCommand) cmd);
+        } else if (cmd instanceof SubsetConstructionCommand) {
+            return new SubsetConstructionUICommand(graph,
+                    (SubsetConstructionCommand) cmd);
         } else if (cmd == null) {
             return null;
         }
@@ -105,4 +112,11 @@ public abstract class UICommand extends Command {
 
     public abstract String getDescription();
 
+    @Override
+    public long getSizeEstimate() {
+        // The canvas is shared, the location and model command are not
+        return super.getSizeEstimate() + 3 * REFERENCE_SIZE + OBJECT_SIZE
+                + 2 * 8 + this.cmd.getSizeEstimate();
+    }
+
 }
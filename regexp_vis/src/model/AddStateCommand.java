@@ -29,11 +29,15 @@ import java.util.LinkedList;
  */
 public class AddStateCommand extends Command {
     private final AutomatonState mState;
+    // Whether the state is final when added, so it is the same however the
+    // history got here
+    private final boolean mIsFinal;
 
     public AddStateCommand(Automaton automaton, AutomatonState state)
     {
         super(automaton);
         mState = state;
+        mIsFinal = state.isFinal();
     }
 
     /**
@@ -47,6 +51,7 @@ public class AddStateCommand extends Command {
     @Override
     public void redo()
     {
+        mState.setFinal(mIsFinal);
         getAutomaton().addStateWithTransitions(mState,
             new LinkedList<AutomatonTransition>());
     }
@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The coarsest partition of the characters into classes which no transition
+ * of an automaton distinguishes: two characters are in the same class if every
+ * state moves to the same set of states on both. Tables indexed by class
+ * rather than by character then only need one column per class, however wide
+ * the ranges of the character classes used are.
+ *
+ * The class of a character is looked up in a two level table of 256 character
+ * pages, where pages with the same contents are only stored once. The class of
+ * character 0 is always class 0, and the classes are numbered in the order of
+ * their first character. Instances are immutable and can be shared between
+ * threads.
+ */
+public final class AlphabetPartition {
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int NUM_CHARS = Character.MAX_VALUE + 1;
+
+    private final int mNumClasses;
+    // Offset of the page of character "c" into mClassIds is mPages[c >>> 8]
+    private final int[] mPages;
+    private final char[] mClassIds;
+    // The atoms of the alphabet, i.e. the ranges of characters which no range
+    // of a transition splits. Atom "a" goes from mBounds[a] up to
+    // mBounds[a + 1] (exclusive), so the last bound is always NUM_CHARS.
+    private final int[] mBounds;
+    private final int[] mAtomClasses;
+    // The first character of each class
+    private final char[] mFirstChars;
+
+    /**
+     * @param automaton The automaton to partition the alphabet of, must only
+     * have single character and character class transitions (including
+     * epsilon transitions, which are ignored)
+     */
+    public AlphabetPartition(Automaton automaton)
+    {
+        this(automaton.freeze());
+    }
+
+    /**
+     * Partition the alphabet of a frozen automaton, the transitions between
+     * each pair of states are considered together.
+     *
+     * @param frozen The automaton to partition the alphabet of, must only
+     * have single character and character class transitions (including
+     * epsilon transitions, which are ignored)
+     */
+    AlphabetPartition(FrozenAutomaton frozen)
+    {
+        this(Ranges.of(frozen));
+    }
+
+    /**
+     * Ranges of characters, each belonging to a group. Two characters are in
+     * the same class if every group contains both of them or neither.
+     */
+    static final class Ranges {
+        int numRanges;
+        char[] first = new char[16];
+        char[] last = new char[16];
+        int[] group = new int[16];
+        int numGroups;
+
+        /**
+         * @param lo The first character of the range
+         * @param hi The last character of the range
+         * @param g The group of the range, from 0 up to numGroups
+         */
+        void add(char lo, char hi, int g)
+        {
+            if (numRanges == first.length) {
+                first = Arrays.copyOf(first, numRanges * 2);
+                last = Arrays.copyOf(last, numRanges * 2);
+                group = Arrays.copyOf(group, numRanges * 2);
+            }
+            first[numRanges] = lo;
+            last[numRanges] = hi;
+            group[numRanges++] = g;
+        }
+
+        /**
+         * Add every range of a single character or character class.
+         */
+        void add(BasicRegexp re, int g)
+        {
+            if (re.isSingleChar()) {
+                add(re.getChar(), re.getChar(), g);
+                return;
+            }
+            for (int r = 0; r < re.getNumRanges(); r++) {
+                add(re.getRangeFirst(r), re.getRangeLast(r), g);
+            }
+        }
+
+        /**
+         * The ranges of the non-epsilon transitions of a frozen automaton,
+         * with one group per pair of states.
+         */
+        static Ranges of(FrozenAutomaton frozen)
+        {
+            Ranges ranges = new Ranges();
+            // Group of the transitions to each state from the current state,
+            // valid if groupFrom of that state is the current state
+            int[] groupTo = new int[frozen.getNumStates()];
+            int[] groupFrom = new int[frozen.getNumStates()];
+            Arrays.fill(groupFrom, -1);
+            for (int s = 0; s < frozen.getNumStates(); s++) {
+                int end = frozen.getTransitionsEnd(s);
+                for (int e = frozen.getTransitionsStart(s); e < end; e++) {
+                    if (!frozen.isSingleCharTransition(e)
+                            && !frozen.isCharClassTransition(e)) {
+                        throw new RuntimeException("Automaton must only have "
+                                + "single character and character class "
+                                + "transitions");
+                    }
+                    if (frozen.isEpsilonTransition(e)) {
+                        continue;
+                    }
+                    int to = frozen.getTransitionTo(e);
+                    if (groupFrom[to] != s) {
+                        groupFrom[to] = s;
+                        groupTo[to] = ranges.numGroups++;
+                    }
+                    ranges.add(frozen.getTransition(e).getData(), groupTo[to]);
+                }
+            }
+            return ranges;
+        }
+    }
+
+    /**
+     * Partition the alphabet so that no group of ranges splits a class.
+     *
+     * @param ranges The ranges
+     */
+    AlphabetPartition(Ranges ranges)
+    {
+        // The atoms, as the sorted distinct first characters of the ranges and
+        // the characters after their last characters
+        int[] bounds = new int[2 * ranges.numRanges + 2];
+        int numBounds = 0;
+        bounds[numBounds++] = 0;
+        bounds[numBounds++] = NUM_CHARS;
+        for (int i = 0; i < ranges.numRanges; i++) {
+            if (ranges.first[i] > ranges.last[i]) {
+                throw new RuntimeException("Malformed character range");
+            }
+            bounds[numBounds++] = ranges.first[i];
+            bounds[numBounds++] = ranges.last[i] + 1;
+        }
+        Arrays.sort(bounds, 0, numBounds);
+        int unique = 0;
+        for (int i = 0; i < numBounds; i++) {
+            if (unique == 0 || bounds[i] != bounds[unique - 1]) {
+                bounds[unique++] = bounds[i];
+            }
+        }
+        mBounds = Arrays.copyOf(bounds, unique);
+        int numAtoms = unique - 1;
+
+        // Refine the partition of the atoms by each group in turn, the atoms of
+        // a class which are in the group move to a new class. A class created
+        // for the current group maps to itself, so a group covering an atom
+        // twice doesn't split it again.
+        int[] order = sortByGroup(ranges);
+        int[] atomClasses = new int[numAtoms];
+        int[] splitGroup = new int[16];
+        int[] splitTo = new int[16];
+        splitGroup[0] = -1;
+        int numClasses = 1;
+        for (int i = 0; i < ranges.numRanges; i++) {
+            int r = order[i];
+            int g = ranges.group[r];
+            int a = findAtom(ranges.first[r]);
+            for (; mBounds[a] <= ranges.last[r]; a++) {
+                int c = atomClasses[a];
+                if (splitGroup[c] != g) {
+                    if (numClasses == splitGroup.length) {
+                        splitGroup = Arrays.copyOf(splitGroup, numClasses * 2);
+                        splitTo = Arrays.copyOf(splitTo, numClasses * 2);
+                    }
+                    splitGroup[c] = g;
+                    splitTo[c] = numClasses;
+                    splitGroup[numClasses] = g;
+                    splitTo[numClasses] = numClasses;
+                    numClasses++;
+                }
+                atomClasses[a] = splitTo[c];
+            }
+        }
+
+        // Renumber the classes in the order of their first character
+        int[] renumber = new int[numClasses];
+        Arrays.fill(renumber, -1);
+        char[] firstChars = new char[numAtoms];
+        int k = 0;
+        for (int a = 0; a < numAtoms; a++) {
+            int c = atomClasses[a];
+            if (renumber[c] == -1) {
+                firstChars[k] = (char) mBounds[a];
+                renumber[c] = k++;
+            }
+            atomClasses[a] = renumber[c];
+        }
+        mNumClasses = k;
+        mAtomClasses = atomClasses;
+        mFirstChars = Arrays.copyOf(firstChars, k);
+
+        // Fill in the lookup table one page at a time, sharing equal pages
+        mPages = new int[NUM_CHARS >>> PAGE_BITS];
+        char[] classIds = new char[PAGE_SIZE];
+        int numIds = 0;
+        HashMap<CharBuffer, Integer> pageOffsets = new HashMap<>();
+        int a = 0;
+        for (int p = 0; p < mPages.length; p++) {
+            if (numIds + PAGE_SIZE > classIds.length) {
+                classIds = Arrays.copyOf(classIds, classIds.length * 2);
+            }
+            int base = p << PAGE_BITS;
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                while (mBounds[a + 1] <= base + i) {
+                    a++;
+                }
+                classIds[numIds + i] = (char) mAtomClasses[a];
+            }
+            CharBuffer page = CharBuffer.wrap(
+                    Arrays.copyOfRange(classIds, numIds, numIds + PAGE_SIZE));
+            Integer offset = pageOffsets.get(page);
+            if (offset == null) {
+                pageOffsets.put(page, numIds);
+                mPages[p] = numIds;
+                numIds += PAGE_SIZE;
+            } else {
+                mPages[p] = offset;
+            }
+        }
+        mClassIds = Arrays.copyOf(classIds, numIds);
+    }
+
+    /**
+     * @return The indexes of the ranges ordered by group, by counting sort
+     */
+    private static int[] sortByGroup(Ranges ranges)
+    {
+        int[] start = new int[ranges.numGroups + 1];
+        for (int i = 0; i < ranges.numRanges; i++) {
+            start[ranges.group[i] + 1]++;
+        }
+        for (int g = 0; g < ranges.numGroups; g++) {
+            start[g + 1] += start[g];
+        }
+        int[] order = new int[ranges.numRanges];
+        for (int i = 0; i < ranges.numRanges; i++) {
+            order[start[ranges.group[i]]++] = i;
+        }
+        return order;
+    }
+
+    /**
+     * @return The number of atoms, i.e. ranges of characters which no range
+     * splits
+     */
+    int getNumAtoms()
+    {
+        return mAtomClasses.length;
+    }
+
+    /**
+     * @param c The character in question
+     * @return The atom containing the character
+     */
+    int findAtom(char c)
+    {
+        int a = Arrays.binarySearch(mBounds, c);
+        return (a >= 0) ? a : -a - 2;
+    }
+
+    /**
+     * @param a The atom in question
+     * @return The first character of the atom
+     */
+    int getAtomFirst(int a)
+    {
+        return mBounds[a];
+    }
+
+    /**
+     * @param a The atom in question
+     * @return The class the atom belongs to
+     */
+    int getAtomClass(int a)
+    {
+        return mAtomClasses[a];
+    }
+
+    /**
+     * @return The page offsets of the lookup table, not to be modified
+     */
+    int[] getPages()
+    {
+        return mPages;
+    }
+
+    /**
+     * @return The class IDs of the lookup table, not to be modified
+     */
+    char[] getClassIds()
+    {
+        return mClassIds;
+    }
+
+    /**
+     * @return The number of classes, at least 1
+     */
+    public int getNumClasses()
+    {
+        return mNumClasses;
+    }
+
+    /**
+     * @param c The character in question
+     * @return The class of the character
+     */
+    public int getClassId(char c)
+    {
+        return mClassIds[mPages[c >>> PAGE_BITS] + (c & (PAGE_SIZE - 1))];
+    }
+
+    /**
+     * @param classId The class in question
+     * @return The first character of the class, which can stand in for every
+     * other character of the class
+     */
+    public char getFirstChar(int classId)
+    {
+        return mFirstChars[classId];
+    }
+
+    /**
+     * @return The number of entries of the character to class lookup table
+     */
+    public int getLookupSize()
+    {
+        return mPages.length + mClassIds.length;
+    }
+}
@@ -22,12 +22,16 @@
  */
 package model;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,19 +45,12 @@ public class Automaton {
 
     public static class StateTransitionsPair {
         private final AutomatonState mState;
-        private final LinkedList<AutomatonTransition> mTransitions;
+        private final TransitionTable mTransitions;
 
         private StateTransitionsPair(AutomatonState s)
         {
             mState = s;
-            mTransitions = new LinkedList<>();
-        }
-
-        private StateTransitionsPair(AutomatonState s,
-            LinkedList<AutomatonTransition> transitions)
-        {
-            mState = s;
-            mTransitions = transitions;
+            mTransitions = new TransitionTable();
         }
 
         /**
@@ -69,7 +66,7 @@ public class Automaton {
          */
         public List<AutomatonTransition> getTransitions()
         {
-            return Collections.unmodifiableList(mTransitions);
+            return mTransitions.asList();
         }
     }
 
@@ -111,6 +108,14 @@ public class Automaton {
     private int mCounter;
     // Counter to give AutomatonTransition(s) unique IDs
     private int mTransCounter;
+    // Index of all transitions currently part of the graph, the key is the ID
+    // of the AutomatonTransition
+    private HashMap<Integer, AutomatonTransition> mTransitionMap;
+    // Reverse adjacency index, the key is the state the transitions go to and
+    // the values are the in-going transitions for that state. Keyed on the
+    // AutomatonState object rather than the ID, as transitions may point to
+    // states which have been removed (and may later be re-added)
+    private HashMap<AutomatonState, LinkedHashSet<AutomatonTransition>> mIngoingMap;
 
     public Automaton()
     {
@@ -124,6 +129,8 @@ public class Automaton {
         mTransCounter = 0;
         mCounter = 0;
         mGraph = new HashMap<>();
+        mTransitionMap = new HashMap<>();
+        mIngoingMap = new HashMap<>();
         mStartState = new AutomatonState(mCounter++);
         mGraph.put(mStartState.getId(), new StateTransitionsPair(mStartState));
     }
@@ -154,7 +161,8 @@ public class Automaton {
         LOGGER.log(Level.FINE, "    start state (id) " + mStartState.getId());
         for (Map.Entry<Integer, StateTransitionsPair> e : mGraph.entrySet()) {
             AutomatonState state = e.getValue().mState;
-            LinkedList<AutomatonTransition> transitions = e.getValue().mTransitions;
+            List<AutomatonTransition> transitions =
+                e.getValue().mTransitions.asList();
             LOGGER.log(Level.FINE, "    AutomatonState {");
             LOGGER.log(Level.FINE, "        id = " +  state.getId());
             LOGGER.log(Level.FINE, "        is final = " +  state.isFinal());
@@ -205,6 +213,45 @@ public class Automaton {
         }
     }
 
+    /**
+     * Adds the given transition to the transition ID and in-going transition
+     * indexes. Called whenever a transition becomes part of the graph.
+     *
+     * @param t The transition to index
+     */
+    private void indexTransition(AutomatonTransition t)
+    {
+        mTransitionMap.put(t.getId(), t);
+
+        LinkedHashSet<AutomatonTransition> ingoing = mIngoingMap.get(t.getTo());
+        if (ingoing == null) {
+            ingoing = new LinkedHashSet<>();
+            mIngoingMap.put(t.getTo(), ingoing);
+        }
+        ingoing.add(t);
+    }
+
+    /**
+     * Removes the given transition from the transition ID and in-going
+     * transition indexes. Called whenever a transition stops being part of the
+     * graph.
+     *
+     * @param t The transition to remove from the indexes
+     */
+    private void unindexTransition(AutomatonTransition t)
+    {
+        // Only remove the mapping if it is for this exact transition
+        mTransitionMap.remove(t.getId(), t);
+
+        Set<AutomatonTransition> ingoing = mIngoingMap.get(t.getTo());
+        if (ingoing != null) {
+            ingoing.remove(t);
+            if (ingoing.isEmpty()) {
+                mIngoingMap.remove(t.getTo());
+            }
+        }
+    }
+
     /**
      * @param id The ID of the state to find
      * @return The AutomatonState with the given ID, or null if no such state
@@ -227,15 +274,7 @@ public class Automaton {
      */
     public AutomatonTransition getTransitionById(int id)
     {
-        // TODO: improve efficiency, possibly using a map to lookup based on ID
-        for (StateTransitionsPair pair : mGraph.values()) {
-            for (AutomatonTransition t : pair.mTransitions) {
-                if (t.getId() == id) {
-                    return t;
-                }
-            }
-        }
-        return null;
+        return mTransitionMap.get(id);
     }
 
     /**
@@ -266,23 +305,13 @@ public class Automaton {
                 "automaton.");
         }
 
-        for (Map.Entry<Integer, StateTransitionsPair> e : mGraph.entrySet()) {
-            LinkedList<AutomatonTransition> transitions =
-                e.getValue().mTransitions;
-
-            for (AutomatonTransition t : transitions) {
-                if (t.getTo() == state) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
+        return mIngoingMap.containsKey(state);
     }
 
     /**
      * @param state The state in question
-     * @return The in-going transitions for the specified state
+     * @return The in-going transitions for the specified state, as a new list
+     * which the caller may modify
      */
     public List<AutomatonTransition> getIngoingTransition(AutomatonState state)
     {
@@ -292,19 +321,12 @@ public class Automaton {
                 "automaton.");
         }
 
-        LinkedList<AutomatonTransition> ret = new LinkedList<>();
-        for (Map.Entry<Integer, StateTransitionsPair> e : mGraph.entrySet()) {
-            LinkedList<AutomatonTransition> transitions =
-                    e.getValue().mTransitions;
-
-            for (AutomatonTransition t : transitions) {
-                if (t.getTo() == state) {
-                    ret.add(t);
-                }
-            }
+        Set<AutomatonTransition> ingoing = mIngoingMap.get(state);
+        if (ingoing == null) {
+            return new ArrayList<>();
         }
 
-        return ret;
+        return new ArrayList<>(ingoing);
     }
 
     /**
@@ -322,7 +344,35 @@ public class Automaton {
 
         // Returning an unmodifiable list as the returned list really shouldn't
         // be modified separately, change this if it becomes an issue
-        return Collections.unmodifiableList(pair.mTransitions);
+        return pair.mTransitions.asList();
+    }
+
+    /**
+     * @param state The state in question
+     * @param c The character in question
+     * @return The out-going single character transitions for the specified
+     * state on the specified character, as an unmodifiable collection.
+     */
+    public Collection<AutomatonTransition> getStateTransitions(
+        AutomatonState state, char c)
+    {
+        StateTransitionsPair pair = lookupState(state);
+        if (pair == null) {
+            throw new RuntimeException("The specified state doesn't exist, " +
+                                       "cannot get transitions.");
+        }
+
+        return pair.mTransitions.getCharTransitions(c);
+    }
+
+    /**
+     * @param transition The transition to check
+     * @return Whether this exact transition is part of this automaton
+     */
+    public boolean transitionExists(AutomatonTransition transition)
+    {
+        StateTransitionsPair pair = lookupState(transition.getFrom());
+        return pair != null && pair.mTransitions.contains(transition);
     }
 
     /**
@@ -351,22 +401,31 @@ public class Automaton {
     }
 
     /**
-     * Adds the specified state with the specified transitions. Doesn't copy the
-     * specified LinkedList.
+     * Adds the specified state with the specified transitions. The transitions
+     * are copied into this automaton, later changes to the specified
+     * list have no effect.
      *
      * @param state The state to add
      * @param transitions The outgoing transitions for this state
      */
     public void addStateWithTransitions(AutomatonState state,
-        LinkedList<AutomatonTransition> transitions)
+        List<AutomatonTransition> transitions)
     {
         // Need to check the ID, otherwise we would overwrite the previous value
         if (mGraph.containsKey(state.getId())) {
             throw new RuntimeException("Attempted to insert duplicate state");
         }
 
-        StateTransitionsPair pair = new StateTransitionsPair(state, transitions);
+        StateTransitionsPair pair = new StateTransitionsPair(state);
         mGraph.put(state.getId(), pair);
+        for (AutomatonTransition t : transitions) {
+            pair.mTransitions.add(t);
+            // The list is taken as-is, so tolerate bad entries here and let
+            // them be reported by whoever uses them
+            if (t != null) {
+                indexTransition(t);
+            }
+        }
     }
 
     /**
@@ -387,7 +446,14 @@ public class Automaton {
             throw new RuntimeException("Cannot remove the start state.");
         }
 
-        return mGraph.remove(state.getId()).mTransitions;
+        LinkedList<AutomatonTransition> transitions = new LinkedList<>(
+            mGraph.remove(state.getId()).mTransitions.asList());
+        for (AutomatonTransition t : transitions) {
+            if (t != null) {
+                unindexTransition(t);
+            }
+        }
+        return transitions;
     }
 
     /**
@@ -406,12 +472,12 @@ public class Automaton {
         }
 
         // Check a transition doesn't already exist
-        if (pair.mTransitions.contains(transition)) {
+        if (!pair.mTransitions.add(transition)) {
             throw new RuntimeException(
                 "The specified transitions already exists in this automaton");
         }
 
-        pair.mTransitions.addLast(transition);
+        indexTransition(transition);
     }
 
     /**
@@ -434,6 +500,92 @@ public class Automaton {
             throw new RuntimeException(
                 "The specified transition doesn't exist");
         }
+        unindexTransition(transition);
+    }
+
+    /**
+     * Creates an immutable snapshot of this automaton, with states and
+     * transitions numbered densely and stored in primitive arrays. Intended
+     * for algorithms which only read the automaton.
+     *
+     * @return The snapshot
+     */
+    public FrozenAutomaton freeze()
+    {
+        return new FrozenAutomaton(this);
+    }
+
+    /**
+     * Save the states and transitions of this automaton, so they can be put
+     * back later by calling restore() on the checkpoint. The same state and
+     * transition objects are put back, so commands which refer to them keep
+     * working.
+     *
+     * @return The checkpoint
+     */
+    public AutomatonCheckpoint createCheckpoint()
+    {
+        int n = mGraph.size();
+        AutomatonState[] states = new AutomatonState[n];
+        boolean[] finals = new boolean[n];
+        AutomatonTransition[][] transitions = new AutomatonTransition[n][];
+        int i = 0;
+        for (StateTransitionsPair pair : mGraph.values()) {
+            states[i] = pair.mState;
+            finals[i] = pair.mState.isFinal();
+            transitions[i++] = pair.mTransitions.asList()
+                    .toArray(new AutomatonTransition[0]);
+        }
+
+        int m = mIngoingMap.size();
+        AutomatonState[] ingoingStates = new AutomatonState[m];
+        AutomatonTransition[][] ingoing = new AutomatonTransition[m][];
+        i = 0;
+        for (Map.Entry<AutomatonState, LinkedHashSet<AutomatonTransition>> e
+                : mIngoingMap.entrySet()) {
+            ingoingStates[i] = e.getKey();
+            ingoing[i++] = e.getValue().toArray(new AutomatonTransition[0]);
+        }
+        return new AutomatonCheckpoint(this, mStartState, states, finals,
+                transitions, ingoingStates, ingoing);
+    }
+
+    /**
+     * Replace the states and transitions of this automaton with those saved
+     * in a checkpoint. The counters used to create new states and transitions
+     * are left alone, so IDs are never reused.
+     *
+     * @param checkpoint The checkpoint, created by this automaton
+     */
+    void restoreCheckpoint(AutomatonCheckpoint checkpoint)
+    {
+        HashMap<Integer, StateTransitionsPair> graph = new HashMap<>();
+        HashMap<Integer, AutomatonTransition> transitionMap = new HashMap<>();
+        for (int i = 0; i < checkpoint.mStates.length; i++) {
+            AutomatonState state = checkpoint.mStates[i];
+            state.setFinal(checkpoint.mFinals[i]);
+            StateTransitionsPair pair = new StateTransitionsPair(state);
+            for (AutomatonTransition t : checkpoint.mTransitions[i]) {
+                pair.mTransitions.add(t);
+                if (t != null) {
+                    transitionMap.put(t.getId(), t);
+                }
+            }
+            graph.put(state.getId(), pair);
+        }
+
+        HashMap<AutomatonState, LinkedHashSet<AutomatonTransition>> ingoingMap =
+            new HashMap<>();
+        for (int i = 0; i < checkpoint.mIngoingStates.length; i++) {
+            LinkedHashSet<AutomatonTransition> ingoing = new LinkedHashSet<>();
+            Collections.addAll(ingoing, checkpoint.mIngoing[i]);
+            ingoingMap.put(checkpoint.mIngoingStates[i], ingoing);
+        }
+
+        mStartState = checkpoint.mStartState;
+        mGraph = graph;
+        mTransitionMap = transitionMap;
+        mIngoingMap = ingoingMap;
     }
 
     /**
@@ -459,14 +611,6 @@ public class Automaton {
 
     public AutomatonTransition getAutomatonTransitionById(int id)
     {
-        for (StateTransitionsPair pair : mGraph.values()) {
-            for (AutomatonTransition t : pair.getTransitions()) {
-                if (t.getId() == id) {
-                    return t;
-                }
-            }
-        }
-
-        return null;
+        return getTransitionById(id);
     }
 }
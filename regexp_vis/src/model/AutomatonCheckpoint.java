@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+/**
+ * The states and transitions of an Automaton at some point, created by
+ * {@link Automaton#createCheckpoint()}. Holds on to the same state and
+ * transition objects as the automaton, along with whether each state was
+ * final.
+ */
+public final class AutomatonCheckpoint implements Checkpoint {
+    // Rough sizes in bytes of the objects and references held, for the
+    // size estimate
+    private static final int OBJECT_SIZE = 16;
+    private static final int REFERENCE_SIZE = 8;
+
+    private final Automaton mAutomaton;
+    final AutomatonState mStartState;
+    // The states, whether each was final and their out-going transitions in
+    // order
+    final AutomatonState[] mStates;
+    final boolean[] mFinals;
+    final AutomatonTransition[][] mTransitions;
+    // The in-going transitions in order, for each state which had any
+    final AutomatonState[] mIngoingStates;
+    final AutomatonTransition[][] mIngoing;
+
+    AutomatonCheckpoint(Automaton automaton, AutomatonState startState,
+            AutomatonState[] states, boolean[] finals,
+            AutomatonTransition[][] transitions,
+            AutomatonState[] ingoingStates, AutomatonTransition[][] ingoing)
+    {
+        mAutomaton = automaton;
+        mStartState = startState;
+        mStates = states;
+        mFinals = finals;
+        mTransitions = transitions;
+        mIngoingStates = ingoingStates;
+        mIngoing = ingoing;
+    }
+
+    /**
+     * @return The automaton this checkpoint was created from
+     */
+    public Automaton getAutomaton()
+    {
+        return mAutomaton;
+    }
+
+    @Override
+    public void restore()
+    {
+        mAutomaton.restoreCheckpoint(this);
+    }
+
+    @Override
+    public long getSizeEstimate()
+    {
+        long size = 3 * OBJECT_SIZE + mFinals.length;
+        size += (long) (REFERENCE_SIZE + OBJECT_SIZE) * mStates.length;
+        for (AutomatonTransition[] t : mTransitions) {
+            size += (long) REFERENCE_SIZE * t.length;
+        }
+        size += (long) (REFERENCE_SIZE + OBJECT_SIZE) * mIngoingStates.length;
+        for (AutomatonTransition[] t : mIngoing) {
+            size += (long) REFERENCE_SIZE * t.length;
+        }
+        return size;
+    }
+}
@@ -22,10 +22,17 @@
  */
 package model;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,6 +41,9 @@ import java.util.logging.Logger;
  * A tree of these can then be used to any regular expression.
  *
  * BasicRegexp is designed to be immutable, similar to the Java String class.
+ * Also like String, structurally identical expressions can be made the same
+ * instance with intern(), equality between interned expressions is then just
+ * a pointer comparison. Parsed expressions are interned.
  *
  * @author Matthew Nicholls
  */
@@ -70,6 +80,76 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         }
     }
 
+    /**
+     * Table of interned expressions, by their exact structure. Expressions are
+     * only weakly referenced, so interned expressions which are no longer used
+     * can still be garbage collected.
+     */
+    private static final Map<ExactKey, WeakReference<BasicRegexp>> INTERNED =
+        new WeakHashMap<>();
+
+    /**
+     * Table of the representatives of interned expressions, by equality, i.e.
+     * regardless of the order of CHOICE operands. Also weakly referenced.
+     */
+    private static final Map<BasicRegexp, WeakReference<BasicRegexp>>
+        REPRESENTATIVES = new WeakHashMap<>();
+
+    /**
+     * Key for the exact structure of an expression whose operands are
+     * interned, so the operands are compared by identity
+     */
+    private static final class ExactKey {
+        private final BasicRegexp mRegexp;
+        private final int mHash;
+
+        private ExactKey(BasicRegexp re)
+        {
+            mRegexp = re;
+            int hash = re.mHash;
+            if (re.mOperands != null) {
+                for (BasicRegexp operand : re.mOperands) {
+                    hash = hash * 31 + System.identityHashCode(operand);
+                }
+            }
+            mHash = hash;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof ExactKey)) {
+                return false;
+            }
+            BasicRegexp re1 = mRegexp;
+            BasicRegexp re2 = ((ExactKey) obj).mRegexp;
+            if (re1.mOperator != re2.mOperator || re1.mChar != re2.mChar
+                    || !Arrays.equals(re1.mRanges, re2.mRanges)) {
+                return false;
+            }
+            if (re1.mOperands == null || re2.mOperands == null) {
+                return re1.mOperands == re2.mOperands;
+            }
+            if (re1.mOperands.size() != re2.mOperands.size()) {
+                return false;
+            }
+            for (int i = 0; i < re1.mOperands.size(); i++) {
+                if (re1.mOperands.get(i) != re2.mOperands.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final char[] EMPTY_ALPHABET = new char[0];
+
     /**
      * Character used to represent epsilon / lambda / etc.
      */
@@ -80,7 +160,7 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
      * have to keep creating new objects
      */
     public static final BasicRegexp EPSILON_EXPRESSION =
-        new BasicRegexp(EPSILON_CHAR);
+        new BasicRegexp(EPSILON_CHAR).intern();
 
     final private ArrayList<BasicRegexp> mOperands;
     /**
@@ -89,8 +169,51 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
      */
     final private ArrayList<BasicRegexp> mSortedOperands;
     final private char mChar;
+    /**
+     * The ranges of a character class expression as pairs of first and last
+     * character (inclusive), sorted and neither overlapping nor adjacent. Null
+     * for every other expression.
+     */
+    final private char[] mRanges;
     final private RegexpOperator mOperator;
-    // IDEA(mjn33): cache results from .optimise() and .isNullable()?
+    /**
+     * Structural hash, computed once at construction. CHOICE uses the sorted
+     * operands so the hash doesn't depend on the order of the operands.
+     */
+    final private int mHash;
+    /**
+     * Whether this is the canonical instance for its structure, see intern()
+     */
+    private volatile boolean mInterned;
+    /**
+     * For interned expressions, the key this is interned under, null
+     * otherwise. Keeps the entry in INTERNED for as long as this is used.
+     */
+    private ExactKey mExactKey;
+    /**
+     * For interned expressions, the interned expression standing for all of
+     * those equal to this one, null otherwise
+     */
+    private BasicRegexp mRepresentative;
+
+    // Derived properties, computed once at construction from those of the
+    // operands. Left unknown if an operand is null, in which case they are
+    // computed on demand.
+    private boolean mPropertiesKnown;
+    private boolean mNullable;
+    private int mNodeCount;
+    private int mDepth;
+    private int mStarHeight;
+    /**
+     * The characters this expression uses (other than epsilon) as ranges in
+     * the same form as mRanges, shared with operands where possible and never
+     * modified
+     */
+    private char[] mAlphabet;
+    /**
+     * String form of this expression, created on first use
+     */
+    private volatile String mString;
 
     /**
      * Construct a BasicRegexp with the specified high-level operator and
@@ -140,14 +263,21 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
             optimisedOperands = new ArrayList<>(operands);
         }
 
-        ArrayList<BasicRegexp> sortedOptimisedOperands = new ArrayList<>(
-                optimisedOperands);
-        Collections.sort(sortedOptimisedOperands);
+        // Only CHOICE is compared using the sorted operands, don't bother
+        // sorting for other operators
+        ArrayList<BasicRegexp> sortedOptimisedOperands = optimisedOperands;
+        if (op == RegexpOperator.CHOICE) {
+            sortedOptimisedOperands = new ArrayList<>(optimisedOperands);
+            Collections.sort(sortedOptimisedOperands);
+        }
 
         mOperands = optimisedOperands;
         mSortedOperands = sortedOptimisedOperands;
         mChar = EPSILON_CHAR;
+        mRanges = null;
         mOperator = op;
+        mHash = calcHash(op, mChar, mSortedOperands);
+        initProperties();
     }
 
     /**
@@ -176,7 +306,10 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         mOperands.add(operand);
         mSortedOperands = new ArrayList<>(mOperands);
         mChar = EPSILON_CHAR;
+        mRanges = null;
         mOperator = op;
+        mHash = calcHash(op, mChar, mOperands);
+        initProperties();
     }
 
     /**
@@ -189,7 +322,327 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         mOperands = null;
         mSortedOperands = null;
         mChar = c;
+        mRanges = null;
         mOperator = RegexpOperator.NONE;
+        mHash = calcHash(mOperator, c, null);
+        initProperties();
+    }
+
+    /**
+     * Construct a character class expression BasicRegexp, which matches any
+     * one character from the given ranges. Like a single character expression
+     * its operator is RegexpOperator.NONE.
+     *
+     * @param ranges The ranges as pairs of first and last character
+     * (inclusive), in any order, ranges may overlap
+     * @throws IllegalArgumentException if no ranges are passed, a range is
+     * malformed, or the ranges contain the epsilon character
+     */
+    public BasicRegexp(char[] ranges)
+    {
+        mOperands = null;
+        mSortedOperands = null;
+        mRanges = normaliseRanges(ranges);
+        mChar = mRanges[0];
+        mOperator = RegexpOperator.NONE;
+        mHash = calcHash(mOperator, mChar, null) * 31
+            + Arrays.hashCode(mRanges);
+        initProperties();
+    }
+
+    /**
+     * @return The sorted, merged copy of the given ranges
+     * @see #BasicRegexp(char[])
+     */
+    private static char[] normaliseRanges(char[] ranges)
+    {
+        if (ranges.length == 0 || ranges.length % 2 != 0) {
+            throw new IllegalArgumentException(
+                "Ranges must be non-empty pairs of characters");
+        }
+        int n = ranges.length / 2;
+        long[] sorted = new long[n];
+        for (int i = 0; i < n; i++) {
+            char first = ranges[2 * i];
+            char last = ranges[2 * i + 1];
+            if (first > last) {
+                throw new IllegalArgumentException("Malformed range: "
+                    + first + "-" + last);
+            }
+            if (first <= EPSILON_CHAR && EPSILON_CHAR <= last) {
+                throw new IllegalArgumentException(
+                    "Character classes cannot contain epsilon");
+            }
+            sorted[i] = ((long) first << 16) | last;
+        }
+        Arrays.sort(sorted);
+
+        char[] ret = new char[2 * n];
+        int k = 0;
+        for (long range : sorted) {
+            char first = (char) (range >>> 16);
+            char last = (char) range;
+            if (k > 0 && first <= ret[k - 1] + 1) {
+                // Overlapping or adjacent, merge with the previous range
+                ret[k - 1] = (char) Math.max(ret[k - 1], last);
+            } else {
+                ret[k++] = first;
+                ret[k++] = last;
+            }
+        }
+        return Arrays.copyOf(ret, k);
+    }
+    /**
+     * Computes the derived properties of this expression from those of its
+     * operands, so in O(number of operands) time.
+     */
+    private void initProperties()
+    {
+        if (mOperands == null) {
+            mNullable = isSingleChar() && (mChar == EPSILON_CHAR);
+            mNodeCount = 1;
+            mDepth = 1;
+            mStarHeight = 0;
+            if (isCharClass()) {
+                mAlphabet = mRanges;
+            } else if (mChar == EPSILON_CHAR) {
+                mAlphabet = EMPTY_ALPHABET;
+            } else {
+                mAlphabet = new char[] { mChar, mChar };
+            }
+            mPropertiesKnown = true;
+            return;
+        }
+
+        for (BasicRegexp operand : mOperands) {
+            if (operand == null || !operand.mPropertiesKnown) {
+                return;
+            }
+        }
+
+        long nodeCount = 1;
+        int depth = 0;
+        int starHeight = 0;
+        char[] alphabet = EMPTY_ALPHABET;
+        for (BasicRegexp operand : mOperands) {
+            nodeCount += operand.mNodeCount;
+            depth = Math.max(depth, operand.mDepth);
+            starHeight = Math.max(starHeight, operand.mStarHeight);
+            alphabet = unionAlphabets(alphabet, operand.mAlphabet);
+        }
+        mNullable = calcNullable();
+        // Interned expressions can share operands, so the number of nodes of
+        // the tree can get very large
+        mNodeCount = (int) Math.min(nodeCount, Integer.MAX_VALUE);
+        mDepth = depth + 1;
+        if (mOperator == RegexpOperator.STAR
+            || mOperator == RegexpOperator.PLUS) {
+            mStarHeight = starHeight + 1;
+        } else {
+            mStarHeight = starHeight;
+        }
+        mAlphabet = alphabet;
+        mPropertiesKnown = true;
+    }
+
+    /**
+     * @return The union of two alphabets, which may be one of the arguments
+     * if it already contains the other
+     */
+    private static char[] unionAlphabets(char[] a, char[] b)
+    {
+        if (a == b || b.length == 0) {
+            return a;
+        } else if (a.length == 0) {
+            return b;
+        }
+
+        // Merge the ranges in order, joining overlapping and adjacent ones
+        char[] ret = new char[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < a.length || j < b.length) {
+            char first;
+            char last;
+            if (j == b.length || (i < a.length && a[i] <= b[j])) {
+                first = a[i];
+                last = a[i + 1];
+                i += 2;
+            } else {
+                first = b[j];
+                last = b[j + 1];
+                j += 2;
+            }
+            if (k > 0 && first <= ret[k - 1] + 1) {
+                ret[k - 1] = (char) Math.max(ret[k - 1], last);
+            } else {
+                ret[k++] = first;
+                ret[k++] = last;
+            }
+        }
+
+        if (rangesEqual(ret, k, a)) {
+            return a;
+        } else if (rangesEqual(ret, k, b)) {
+            return b;
+        }
+        return Arrays.copyOf(ret, k);
+    }
+
+    /**
+     * @return Whether the first n characters of ranges are the same as other
+     */
+    private static boolean rangesEqual(char[] ranges, int n, char[] other)
+    {
+        if (n != other.length) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if (ranges[i] != other[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int calcHash(RegexpOperator op, char c,
+            List<BasicRegexp> operands)
+    {
+        int hash = op.ordinal() * 65537 + c;
+        if (operands != null) {
+            for (BasicRegexp operand : operands) {
+                hash = hash * 31 + (operand == null ? 0 : operand.mHash);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @param c The character
+     * @return The interned single character expression for the character
+     */
+    public static BasicRegexp valueOf(char c)
+    {
+        return new BasicRegexp(c).intern();
+    }
+
+    /**
+     * @param ranges The ranges as pairs of first and last character
+     * (inclusive), see BasicRegexp(char[])
+     * @return The interned character class expression for the ranges, or the
+     * interned single character expression if they only hold one character
+     */
+    public static BasicRegexp valueOfClass(char... ranges)
+    {
+        BasicRegexp re = new BasicRegexp(ranges);
+        if (re.mRanges.length == 2 && re.mRanges[0] == re.mRanges[1]) {
+            return valueOf(re.mRanges[0]);
+        }
+        return re.intern();
+    }
+
+    /**
+     * Returns the canonical instance for this expression, i.e. for any two
+     * expressions a and b, a.intern() == b.intern() if and only if they have
+     * the same structure, including the order of CHOICE operands so that they
+     * still print the same. Interned expressions which are equal but for that
+     * order share a representative, so comparing them is still just a pointer
+     * comparison. The operands of the returned expression are interned as
+     * well.
+     *
+     * @return The canonical instance for this expression
+     */
+    public BasicRegexp intern()
+    {
+        if (mInterned) {
+            return this;
+        }
+
+        // Intern bottom up using an explicit stack, so that deep expressions
+        // can't overflow the call stack
+        IdentityHashMap<BasicRegexp, BasicRegexp> interned =
+            new IdentityHashMap<>();
+        ArrayDeque<BasicRegexp> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            BasicRegexp re = stack.peek();
+            if (interned.containsKey(re)) {
+                stack.pop();
+                continue;
+            }
+
+            boolean operandsInterned = true;
+            if (re.mOperands != null) {
+                for (BasicRegexp operand : re.mOperands) {
+                    if (!operand.mInterned && !interned.containsKey(operand)) {
+                        stack.push(operand);
+                        operandsInterned = false;
+                    }
+                }
+            }
+            if (operandsInterned) {
+                stack.pop();
+                interned.put(re, re.internShallow(interned));
+            }
+        }
+        return interned.get(this);
+    }
+
+    /**
+     * Factored out of intern(), interns this expression given that all of its
+     * operands are already interned.
+     *
+     * @param interned The canonical instances of the operands which weren't
+     * interned already
+     * @return The canonical instance for this expression
+     */
+    private BasicRegexp internShallow(
+            IdentityHashMap<BasicRegexp, BasicRegexp> interned)
+    {
+        BasicRegexp re = this;
+        if (mOperands != null) {
+            ArrayList<BasicRegexp> operands = new ArrayList<>(mOperands.size());
+            boolean changed = false;
+            for (BasicRegexp operand : mOperands) {
+                BasicRegexp canonical = operand.mInterned ? operand
+                        : interned.get(operand);
+                changed |= (canonical != operand);
+                operands.add(canonical);
+            }
+            if (changed) {
+                re = new BasicRegexp(operands, mOperator);
+            }
+        }
+
+        synchronized (INTERNED) {
+            ExactKey key = new ExactKey(re);
+            WeakReference<BasicRegexp> ref = INTERNED.get(key);
+            BasicRegexp canonical = (ref != null) ? ref.get() : null;
+            if (canonical == null) {
+                ref = REPRESENTATIVES.get(re);
+                BasicRegexp representative = (ref != null) ? ref.get() : null;
+                if (representative == null) {
+                    representative = re;
+                    REPRESENTATIVES.put(re, new WeakReference<>(re));
+                }
+                re.mExactKey = key;
+                re.mRepresentative = representative;
+                re.mInterned = true;
+                INTERNED.put(key, new WeakReference<>(re));
+                canonical = re;
+            }
+            return canonical;
+        }
+    }
+
+    /**
+     * @return Whether this is the canonical instance for its structure
+     * @see #intern()
+     */
+    public boolean isInterned()
+    {
+        return mInterned;
     }
 
     private static int compareOperandLists(List<BasicRegexp> list1,
@@ -219,19 +672,35 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
 
     public int compareTo(BasicRegexp other)
     {
+        if (this == other || (mInterned && other.mInterned
+                && mRepresentative == other.mRepresentative)) {
+            return 0;
+        }
+
         // Compare operators first
         int ret = mOperator.compareTo(other.mOperator);
         if (ret != 0) {
             return ret;
         }
 
-        // Single character expressions come before non-single single character
-        // expressions
-        if (isSingleChar() != other.isSingleChar()) {
-            return isSingleChar() ? -1 : 1;
+        // Single character expressions come before character classes, which
+        // come before non-single single character expressions
+        ret = Integer.compare(getKind(), other.getKind());
+        if (ret != 0) {
+            return ret;
         } else if (isSingleChar()) {
             // Compare chars normally
             return Character.compare(mChar, other.mChar);
+        } else if (isCharClass()) {
+            // Compare the ranges like strings
+            int n = Math.min(mRanges.length, other.mRanges.length);
+            for (int i = 0; i < n; i++) {
+                ret = Character.compare(mRanges[i], other.mRanges[i]);
+                if (ret != 0) {
+                    return ret;
+                }
+            }
+            return Integer.compare(mRanges.length, other.mRanges.length);
         } else {
             // Compare complex expressions
             List<BasicRegexp> thisList = mOperands;
@@ -261,16 +730,52 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
             return false;
         }
         BasicRegexp other = (BasicRegexp) obj;
+        if (mInterned && other.mInterned) {
+            return mRepresentative == other.mRepresentative;
+        }
+        if (mHash != other.mHash) {
+            return false;
+        }
+        if (mPropertiesKnown && other.mPropertiesKnown
+            && mNodeCount != other.mNodeCount) {
+            return false;
+        }
         return this.compareTo(other) == 0;
     }
 
+    @Override
+    public int hashCode()
+    {
+        return mHash;
+    }
+
+    /**
+     * @return 0 for single character expressions, 1 for character classes, 2
+     * for anything else, for ordering
+     */
+    private int getKind()
+    {
+        if (mOperands != null) {
+            return 2;
+        }
+        return (mRanges != null) ? 1 : 0;
+    }
+
     /**
      * @return true if this is a single character expression, false
      * otherwise
      */
     public boolean isSingleChar()
     {
-        return mOperands == null;
+        return mOperands == null && mRanges == null;
+    }
+
+    /**
+     * @return true if this is a character class expression, false otherwise
+     */
+    public boolean isCharClass()
+    {
+        return mRanges != null;
     }
 
     /**
@@ -288,9 +793,10 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
      */
     public List<BasicRegexp> getOperands()
     {
-        if (isSingleChar()) {
+        if (mOperands == null) {
             throw new RuntimeException(
-                "Cannot call getOperands() on a single character expression");
+                "Cannot call getOperands() on a single character or " +
+                "character class expression");
         }
 
         return Collections.unmodifiableList(mOperands);
@@ -312,16 +818,126 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         return mChar;
     }
 
+    private void checkCharClass()
+    {
+        if (!isCharClass()) {
+            throw new RuntimeException(
+                "Must only be called on character class expressions");
+        }
+    }
+
+    /**
+     * @return The number of ranges of this character class expression
+     * @throws RuntimeException if this BasicRegexp isn't a character class
+     * expression
+     */
+    public int getNumRanges()
+    {
+        checkCharClass();
+        return mRanges.length / 2;
+    }
+
+    /**
+     * @param i The index of the range, ranges are in ascending order
+     * @return The first character of the range
+     * @throws RuntimeException if this BasicRegexp isn't a character class
+     * expression
+     */
+    public char getRangeFirst(int i)
+    {
+        checkCharClass();
+        return mRanges[2 * i];
+    }
+
+    /**
+     * @param i The index of the range, ranges are in ascending order
+     * @return The last character of the range (inclusive)
+     * @throws RuntimeException if this BasicRegexp isn't a character class
+     * expression
+     */
+    public char getRangeLast(int i)
+    {
+        checkCharClass();
+        return mRanges[2 * i + 1];
+    }
+
+    /**
+     * @return The ranges of this character class expression as pairs of first
+     * and last character (inclusive), as a new array
+     * @throws RuntimeException if this BasicRegexp isn't a character class
+     * expression
+     */
+    public char[] getRanges()
+    {
+        checkCharClass();
+        return mRanges.clone();
+    }
+
+    /**
+     * @param c The character in question
+     * @return Whether this single character (other than epsilon) or character
+     * class expression matches the character, in O(log(number of ranges))
+     * time
+     * @throws RuntimeException if this BasicRegexp is neither a single
+     * character nor a character class expression
+     */
+    public boolean matchesChar(char c)
+    {
+        if (mOperands != null) {
+            throw new RuntimeException(
+                "matchesChar() must only be called on single character or " +
+                "character class expressions");
+        }
+        if (mRanges == null) {
+            return c == mChar && c != EPSILON_CHAR;
+        }
+        return rangesContain(mRanges, c);
+    }
+
+    /**
+     * @param ranges Sorted ranges as pairs of first and last character, which
+     * neither overlap nor are adjacent
+     * @param c The character in question
+     * @return Whether any of the ranges contains the character
+     */
+    private static boolean rangesContain(char[] ranges, char c)
+    {
+        if (ranges.length == 0) {
+            return false;
+        }
+
+        // Find the last range starting at or before "c"
+        int lo = 0;
+        int hi = ranges.length / 2 - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (ranges[2 * mid] <= c) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return ranges[2 * lo] <= c && c <= ranges[2 * lo + 1];
+    }
+
     /**
      * @return Whether this regular expression is nullable, i.e. its language
      * contains the empty word
      */
     public boolean isNullable()
+    {
+        if (mPropertiesKnown) {
+            return mNullable;
+        }
+        return calcNullable();
+    }
+
+    private boolean calcNullable()
     {
         switch (mOperator) {
         case NONE:
             // Single character, only nullable if epsilon
-            return mChar == EPSILON_CHAR;
+            return mRanges == null && mChar == EPSILON_CHAR;
         case STAR:
             // Star is always nullable
             return true;
@@ -353,41 +969,283 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         }
     }
 
+    private void checkPropertiesKnown()
+    {
+        if (!mPropertiesKnown) {
+            throw new NullPointerException(
+                "Expression has a null operand");
+        }
+    }
+
+    /**
+     * @return The number of nodes in the tree of this expression
+     */
+    public int getNodeCount()
+    {
+        checkPropertiesKnown();
+        return mNodeCount;
+    }
+
+    /**
+     * @return The depth of the tree of this expression, 1 for a single
+     * character expression
+     */
+    public int getDepth()
+    {
+        checkPropertiesKnown();
+        return mDepth;
+    }
+
+    /**
+     * @return The star height of this expression, i.e. the greatest nesting
+     * of STAR and PLUS operators
+     */
+    public int getStarHeight()
+    {
+        checkPropertiesKnown();
+        return mStarHeight;
+    }
+
+    /**
+     * @return The characters used in this expression (other than epsilon),
+     * as a new BitSet
+     */
+    public BitSet getAlphabet()
+    {
+        checkPropertiesKnown();
+        BitSet alphabet = new BitSet();
+        for (int i = 0; i < mAlphabet.length; i += 2) {
+            alphabet.set(mAlphabet[i], mAlphabet[i + 1] + 1);
+        }
+        return alphabet;
+    }
+
+    /**
+     * @param c The character in question
+     * @return Whether the character is used in this expression
+     */
+    public boolean alphabetContains(char c)
+    {
+        checkPropertiesKnown();
+        return rangesContain(mAlphabet, c);
+    }
+
+    /**
+     * The state of the parser for one level of parentheses
+     */
+    private static final class ParseFrame {
+        private final ArrayList<BasicRegexp> mSequenceOperands;
+        private final ArrayList<BasicRegexp> mChoiceOperands;
+        // Index of the opening parenthesis, -1 for the top level
+        private final int mOpenIdx;
+
+        private ParseFrame(int openIdx)
+        {
+            mSequenceOperands = new ArrayList<>();
+            mChoiceOperands = new ArrayList<>();
+            mOpenIdx = openIdx;
+        }
+    }
+
+    /**
+     * Factored out of parseRegexp, matches up parentheses in a single pass
+     *
+     * @param str The regular expression in question
+     * @param start The index to start from
+     * @param end The index to end at (exclusive)
+     * @param closeIdxs The result of findCloseBrackets()
+     * @return For each index relative to "start", whether there is an opening
+     * parenthesis there which has a matching closing parenthesis
+     */
+    private static boolean[] findMatchedParens(CharSequence str, int start,
+        int end, int[] closeIdxs)
+    {
+        boolean[] matched = new boolean[end - start];
+        int[] openStack = new int[end - start];
+        int top = 0;
+        for (int idx = start; idx < end; idx++) {
+            char c = str.charAt(idx);
+            if (c == '[') {
+                // Parentheses in character classes are normal characters
+                int classEnd = closeIdxs[idx + 1 - start];
+                if (classEnd != -1) {
+                    idx = classEnd;
+                }
+            } else if (c == '(') {
+                openStack[top++] = idx - start;
+            } else if (c == ')' && top > 0) {
+                matched[openStack[--top]] = true;
+            }
+        }
+        return matched;
+    }
+
     /**
-     * Find the matching closing parenthesis for the parenthesis at the start of
-     * this string
+     * Factored out of parseRegexp, finds where a character class starting at
+     * each index would end in a single backward pass, so that unclosed
+     * brackets don't each scan to the end of the input.
      *
-     * <b>Precondition:</b> it is assumed that "str" starts with an opening
-     * parenthesis
+     * @param str The regular expression in question
+     * @param start The index to start from
+     * @param end The index to end at (exclusive)
+     * @return For each index relative to "start", the index of the first
+     * closing bracket found scanning from there with backslash escapes
+     * skipped, or -1 if there isn't one. The character class opened by a
+     * bracket at "idx" ends at the entry for "idx + 1".
+     */
+    private static int[] findCloseBrackets(CharSequence str, int start,
+        int end)
+    {
+        // Two extra entries, so an escape or bracket at the end can look past
+        // it
+        int[] closeIdxs = new int[end - start + 2];
+        closeIdxs[end - start] = -1;
+        closeIdxs[end - start + 1] = -1;
+        for (int i = end - 1; i >= start; i--) {
+            char c = str.charAt(i);
+            if (c == '\\') {
+                // Skip the escaped character
+                closeIdxs[i - start] = closeIdxs[i - start + 2];
+            } else if (c == ']') {
+                closeIdxs[i - start] = i;
+            } else {
+                closeIdxs[i - start] = closeIdxs[i - start + 1];
+            }
+        }
+        return closeIdxs;
+    }
+
+    /**
+     * Factored out of parseRegexp, adds a normal character to the sequence
+     * being parsed, whitespace is ignored.
      *
-     * @param str The string in question
-     * @return the index of the matching closing parenthesis, -1 otherwise if
-     * there is no matching closing parenthesis in this string
+     * @param sequence The operands of the sequence being parsed
+     * @param leaves The interned expressions for ASCII characters found so far
+     * @param c The character
      */
-    private static int findMatchingParenIdx(String str)
+    private static void parseChar(List<BasicRegexp> sequence,
+        BasicRegexp[] leaves, char c)
     {
-        assert(str.charAt(0) == '(');
-        int curIdx = 1;
-        int parenCount = 1; // 1 open parenthesis at start
+        if (Character.isWhitespace(c)) {
+            return;
+        }
+        // IDEA(mjn33): Parse e.g. '%' as epsilon
+        BasicRegexp leaf = (c < leaves.length) ? leaves[c] : null;
+        if (leaf == null) {
+            leaf = valueOf(c);
+            if (c < leaves.length) {
+                leaves[c] = leaf;
+            }
+        }
+        sequence.add(leaf);
+    }
 
-        while (curIdx < str.length()) {
-            switch (str.charAt(curIdx)) {
-            case '(':
-                parenCount++;
-                break;
-            case ')':
-                parenCount--;
-                break;
-            default:
-                break;
+    /**
+     * Factored out of parseRegexp, parses a character class such as "[a-z_]"
+     * or "[^0-9]". Within a class a backslash escapes the next character,
+     * "-" is a normal character at the start or end, and whitespace isn't
+     * ignored. The epsilon character is never part of a class.
+     *
+     * @param str The regular expression in question
+     * @param idx The index of the opening bracket
+     * @param classEnd The index of the closing bracket
+     * @return The character class (or single character) expression
+     * @throws InvalidRegexpException if the class is empty or has a malformed
+     * range
+     */
+    private static BasicRegexp parseCharClass(CharSequence str, int idx,
+        int classEnd) throws InvalidRegexpException
+    {
+        int i = idx + 1;
+        boolean negated = (i < classEnd && str.charAt(i) == '^');
+        if (negated) {
+            i++;
+        }
+
+        // Each range is added as a pair of characters, plus room for
+        // splitting around epsilon and for negation
+        char[] ranges = new char[2 * (classEnd - i) + 4];
+        int k = 0;
+        while (i < classEnd) {
+            int rangeIdx = i;
+            if (str.charAt(i) == '\\') {
+                i++;
+            }
+            char first = str.charAt(i++);
+            char last = first;
+            if (i + 1 < classEnd && str.charAt(i) == '-') {
+                i++;
+                if (str.charAt(i) == '\\') {
+                    i++;
+                }
+                last = str.charAt(i++);
+                if (first > last) {
+                    throw new InvalidRegexpException(
+                        "Malformed character range found", rangeIdx);
+                }
             }
-            if (parenCount == 0) {
-                return curIdx;
+
+            // The epsilon character can't be matched, leave it out
+            if (first <= EPSILON_CHAR && EPSILON_CHAR <= last) {
+                if (first < EPSILON_CHAR) {
+                    ranges[k++] = first;
+                    ranges[k++] = EPSILON_CHAR - 1;
+                }
+                if (EPSILON_CHAR < last) {
+                    ranges[k++] = EPSILON_CHAR + 1;
+                    ranges[k++] = last;
+                }
+            } else {
+                ranges[k++] = first;
+                ranges[k++] = last;
             }
-            curIdx++;
         }
 
-        return -1; // No matching parenthesis found
+        if (negated) {
+            ranges = complementRanges(Arrays.copyOf(ranges, k));
+            k = ranges.length;
+        }
+        if (k == 0) {
+            throw new InvalidRegexpException("Empty character class found",
+                idx);
+        }
+        return valueOfClass(Arrays.copyOf(ranges, k));
+    }
+
+    /**
+     * @param ranges Ranges as pairs of first and last character, as taken by
+     * BasicRegexp(char[])
+     * @return The sorted ranges of the characters other than epsilon which
+     * aren't in the given ranges
+     */
+    private static char[] complementRanges(char[] ranges)
+    {
+        char[] normalised = (ranges.length == 0) ? ranges
+            : normaliseRanges(ranges);
+        char[] ret = new char[normalised.length + 4];
+        int k = 0;
+        // The next character which isn't covered yet
+        int next = 0;
+        for (int i = 0; i <= normalised.length; i += 2) {
+            int first = (i < normalised.length) ? normalised[i]
+                : Character.MAX_VALUE + 1;
+            if (next <= EPSILON_CHAR && EPSILON_CHAR < first) {
+                // Split the gap around epsilon
+                if (next < EPSILON_CHAR) {
+                    ret[k++] = (char) next;
+                    ret[k++] = EPSILON_CHAR - 1;
+                }
+                next = EPSILON_CHAR + 1;
+            }
+            if (next < first) {
+                ret[k++] = (char) next;
+                ret[k++] = (char) (first - 1);
+            }
+            if (i < normalised.length) {
+                next = normalised[i + 1] + 1;
+            }
+        }
+        return Arrays.copyOf(ret, k);
     }
 
     /**
@@ -396,11 +1254,12 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
      *
      * @param sequenceOperands The current working list of operands in sequence
      * @param op The operator that we are processing
+     * @param idx The index of the operator
      * @see parseRegexp
      * @throws InvalidRegexpException in event of parse error
      */
     private static void processUnaryOp(ArrayList<BasicRegexp> sequenceOperands,
-        RegexpOperator op) throws InvalidRegexpException
+        RegexpOperator op, int idx) throws InvalidRegexpException
     {
         if (!sequenceOperands.isEmpty()) {
             BasicRegexp back = sequenceOperands
@@ -410,7 +1269,7 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
             sequenceOperands.add(new BasicRegexp(back, op));
         } else {
             throw new InvalidRegexpException(
-                op.name() + " operator on empty word");
+                op.name() + " operator on empty word", idx);
         }
     }
 
@@ -420,11 +1279,13 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
      *
      * @param sequenceOperands The current working list of operands in sequence
      * @param choiceOperands The current working list of operands for choice
+     * @param idx The index of the operator
      * @see parseRegexp
      * @throws InvalidRegexpException in event of parse error
      */
     private static void processChoiceOp(ArrayList<BasicRegexp> sequenceOperands,
-        ArrayList<BasicRegexp> choiceOperands) throws InvalidRegexpException
+        ArrayList<BasicRegexp> choiceOperands, int idx)
+        throws InvalidRegexpException
     {
         if (sequenceOperands.size() > 1) {
             // Found multiple operands, they will be in sequence
@@ -438,7 +1299,36 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
             BasicRegexp back = sequenceOperands.remove(0);
             choiceOperands.add(back);
         } else {
-            throw new InvalidRegexpException("CHOICE operator on empty word");
+            throw new InvalidRegexpException("CHOICE operator on empty word",
+                idx);
+        }
+    }
+
+    /**
+     * Factored out of parseRegexp, creates the expression for one level of
+     * parentheses once its end has been reached
+     *
+     * @param frame The state of the parser for this level
+     * @param idx The index of the end of this level
+     * @return The expression, or null if this level is empty
+     * @throws InvalidRegexpException in event of parse error
+     */
+    private static BasicRegexp finishParseFrame(ParseFrame frame, int idx)
+        throws InvalidRegexpException
+    {
+        ArrayList<BasicRegexp> sequenceOperands = frame.mSequenceOperands;
+        ArrayList<BasicRegexp> choiceOperands = frame.mChoiceOperands;
+        if (!choiceOperands.isEmpty()) {
+            // The remaining sequence operands are part of the choice operation
+            processChoiceOp(sequenceOperands, choiceOperands, idx);
+            return new BasicRegexp(choiceOperands, RegexpOperator.CHOICE);
+        } else if (sequenceOperands.size() == 1) {
+            // Don't return a sequence of a single expression
+            return sequenceOperands.get(0);
+        } else if (!sequenceOperands.isEmpty()) {
+            return new BasicRegexp(sequenceOperands, RegexpOperator.SEQUENCE);
+        } else {
+            return null;
         }
     }
 
@@ -447,93 +1337,230 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
      * BasicRegexp objects
      *
      * @param str The regular expression to parse
-     * @return The root BasicRegexp for the parse tree
+     * @return The root BasicRegexp for the parse tree, or null if the
+     * expression is empty
      * @throws InvalidRegexpException if this isn't a valid regexp (or at least
      * one this parser doesn't support)
      */
     public static BasicRegexp parseRegexp(String str)
         throws InvalidRegexpException
     {
-        ArrayList<BasicRegexp> sequenceOperands = new ArrayList<>();
-        ArrayList<BasicRegexp> choiceOperands = new ArrayList<>();
-        int idx = 0;
+        return parseRegexp(str, 0, str.length());
+    }
 
-        while (idx < str.length()) {
-            switch (str.charAt(idx)) {
-            case '(': {
-                int parenIdx = findMatchingParenIdx(str.substring(idx));
-                if (parenIdx == -1) {
+    /**
+     * Parse the given part of a regular expression, outputting a tree
+     * hierarchy of BasicRegexp objects. Runs in a single pass over the input
+     * using an explicit stack, so deeply nested expressions are fine.
+     *
+     * @param str The text containing the regular expression
+     * @param start The index the regular expression starts at
+     * @param end The index the regular expression ends at (exclusive)
+     * @return The root BasicRegexp for the parse tree, or null if the
+     * expression is empty
+     * @throws InvalidRegexpException if this isn't a valid regexp (or at least
+     * one this parser doesn't support), the position of the error is an index
+     * into "str"
+     */
+    public static BasicRegexp parseRegexp(CharSequence str, int start,
+        int end) throws InvalidRegexpException
+    {
+        // Find which parentheses are unclosed up front, so they are reported
+        // as soon as they are reached
+        int[] closeIdxs = findCloseBrackets(str, start, end);
+        boolean[] matched = findMatchedParens(str, start, end, closeIdxs);
+        // Interned single character expressions for ASCII characters, so each
+        // is only looked up once
+        BasicRegexp[] leaves = new BasicRegexp[128];
+        ArrayDeque<ParseFrame> frames = new ArrayDeque<>();
+        ParseFrame frame = new ParseFrame(-1);
+
+        for (int idx = start; idx < end; idx++) {
+            char c = str.charAt(idx);
+            switch (c) {
+            case '(':
+                if (!matched[idx - start]) {
+                    throw new InvalidRegexpException(
+                        "Unclosed parenthesis found", idx);
+                }
+                frames.push(frame);
+                frame = new ParseFrame(idx);
+                break;
+            case ')': {
+                if (frames.isEmpty()) {
+                    // No last matching opening parenthesis, error
                     throw new InvalidRegexpException(
-                        "Unclosed parenthesis found");
+                        "Stray closing parenthesis found", idx);
                 }
-                parenIdx += idx; // parenIdx is relative to idx
-                BasicRegexp re = parseRegexp(str.substring(idx + 1, parenIdx));
+                BasicRegexp re = finishParseFrame(frame, idx);
                 if (re == null) {
                     // Completely empty sub-expression, e.g. "()"
                     throw new InvalidRegexpException(
-                        "Empty parentheses found");
+                        "Empty parentheses found", frame.mOpenIdx);
                 }
-                sequenceOperands.add(re);
-                idx = parenIdx;
+                frame = frames.pop();
+                frame.mSequenceOperands.add(re);
                 break;
             }
-            case ')':
-                // No last matching opening parenthesis, error
-                throw new InvalidRegexpException(
-                    "Stray closing parenthesis found");
             case '*':
-                processUnaryOp(sequenceOperands, RegexpOperator.STAR);
+                processUnaryOp(frame.mSequenceOperands, RegexpOperator.STAR,
+                    idx);
                 break;
             case '+':
-                processUnaryOp(sequenceOperands, RegexpOperator.PLUS);
+                processUnaryOp(frame.mSequenceOperands, RegexpOperator.PLUS,
+                    idx);
                 break;
             case '?':
-                processUnaryOp(sequenceOperands, RegexpOperator.OPTION);
+                processUnaryOp(frame.mSequenceOperands, RegexpOperator.OPTION,
+                    idx);
                 break;
             case '|':
-                processChoiceOp(sequenceOperands, choiceOperands);
+                processChoiceOp(frame.mSequenceOperands, frame.mChoiceOperands,
+                    idx);
                 break;
-            default:
-                // Ignore whitespace
-                if (!Character.isWhitespace(str.charAt(idx))) {
-                    // Normal character
-                    // IDEA(mjn33): Parse e.g. '%' as epsilon
-                    BasicRegexp re = new BasicRegexp(str.charAt(idx));
-                    sequenceOperands.add(re);
+            case '[': {
+                int classEnd = closeIdxs[idx + 1 - start];
+                if (classEnd != -1) {
+                    frame.mSequenceOperands.add(parseCharClass(str, idx,
+                        classEnd));
+                    idx = classEnd;
+                } else {
+                    // Without a closing bracket this is a normal character,
+                    // as before character classes were supported
+                    parseChar(frame.mSequenceOperands, leaves, c);
                 }
+                break;
+            }
+            default:
+                parseChar(frame.mSequenceOperands, leaves, c);
             }
-            idx++;
         }
 
-        if (!choiceOperands.isEmpty()) {
-            // The remaining sequence operands are part of the choice operation
-            processChoiceOp(sequenceOperands, choiceOperands);
-            return new BasicRegexp(choiceOperands, RegexpOperator.CHOICE);
-        } else if (sequenceOperands.size() == 1) {
-            // Don't return a sequence of a single expression
-            return sequenceOperands.get(0);
-        } else if (!sequenceOperands.isEmpty()) {
-            return new BasicRegexp(sequenceOperands, RegexpOperator.SEQUENCE);
-        } else {
-            return null;
-        }
+        // Every opening parenthesis has been matched, so we're back at the top
+        // level
+        BasicRegexp re = finishParseFrame(frame, end);
+        return (re != null) ? re.intern() : null;
     }
 
     @Override
     public String toString()
     {
-        StringBuilder sb = new StringBuilder();
-        toStringBuilder(sb);
+        String str = mString;
+        if (str == null) {
+            StringBuilder sb = new StringBuilder();
+            toStringBuilder(sb);
+            str = sb.toString();
+            mString = str;
+        }
+        return str;
+    }
+
+    /**
+     * Escapes the characters of a string which can't be written on a single
+     * line of a UTF-8 text file, such as line breaks, other control
+     * characters and unpaired surrogates, as a backslash followed by "u" and
+     * four hex digits, like in Java source. Backslashes followed by a "u" are
+     * escaped too, so that unescapeUnprintable gives back exactly the same
+     * string.
+     *
+     * @param str The string to escape, e.g. the string form of a regexp
+     * @return The escaped string
+     */
+    public static String escapeUnprintable(String str)
+    {
+        StringBuilder sb = null;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            boolean escape = isUnprintable(c) || (c == '\\'
+                && i + 1 < str.length() && str.charAt(i + 1) == 'u');
+            if (escape && sb == null) {
+                sb = new StringBuilder(str.length() + 16);
+                sb.append(str, 0, i);
+            }
+            if (escape) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return (sb != null) ? sb.toString() : str;
+    }
+
+    /**
+     * Reverses escapeUnprintable, replacing every escape with the character it
+     * stands for.
+     *
+     * @param str The escaped string
+     * @return The unescaped string
+     */
+    public static String unescapeUnprintable(String str)
+    {
+        int idx = str.indexOf("\\u");
+        if (idx == -1) {
+            return str;
+        }
+        StringBuilder sb = new StringBuilder(str.length());
+        int i = 0;
+        while (idx != -1) {
+            sb.append(str, i, idx);
+            i = idx + 2;
+            int value = 0;
+            for (int end = i + 4; i < end; i++) {
+                int digit = (i < str.length())
+                    ? Character.digit(str.charAt(i), 16) : -1;
+                if (digit == -1) {
+                    break;
+                }
+                value = value * 16 + digit;
+            }
+            if (i == idx + 6) {
+                sb.append((char) value);
+            } else {
+                // Not an escape, keep the backslash as it is
+                i = idx + 1;
+                sb.append('\\');
+            }
+            idx = str.indexOf("\\u", i);
+        }
+        sb.append(str, i, str.length());
         return sb.toString();
     }
 
+    private static boolean isUnprintable(char c)
+    {
+        switch (Character.getType(c)) {
+        case Character.CONTROL:
+        case Character.FORMAT:
+        case Character.LINE_SEPARATOR:
+        case Character.PARAGRAPH_SEPARATOR:
+        case Character.SURROGATE:
+        case Character.PRIVATE_USE:
+        case Character.UNASSIGNED:
+            return true;
+        default:
+            return false;
+        }
+    }
+
     private void toStringBuilder(StringBuilder sb)
     {
+        // Reuse the string form if we already have it
+        String str = mString;
+        if (str != null) {
+            sb.append(str);
+            return;
+        }
+
         switch (mOperator) {
         case NONE:
-            if (mChar == EPSILON_CHAR) {
+            if (mRanges != null) {
+                classToStringBuilder(sb);
+            } else if (mChar == EPSILON_CHAR) {
                 // Unicode epsilon character
                 sb.append('\u03b5');
+            } else if (Character.isWhitespace(mChar)) {
+                // parseRegexp ignores whitespace outside of a class
+                sb.append('[').append(mChar).append(']');
             } else {
                 sb.append(mChar);
             }
@@ -599,6 +1626,40 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         }
     }
 
+    /**
+     * Factored out of toStringBuilder, appends a character class in the form
+     * parseRegexp accepts. Classes containing both the lowest and the highest
+     * character are written negated, e.g. "[^a]".
+     */
+    private void classToStringBuilder(StringBuilder sb)
+    {
+        char[] ranges = mRanges;
+        sb.append('[');
+        if (ranges[0] == Character.MIN_VALUE
+            && ranges[ranges.length - 1] == Character.MAX_VALUE) {
+            sb.append('^');
+            ranges = complementRanges(ranges);
+        }
+        for (int i = 0; i < ranges.length; i += 2) {
+            appendClassChar(sb, ranges[i]);
+            if (ranges[i + 1] > ranges[i] + 1) {
+                sb.append('-');
+            }
+            if (ranges[i + 1] > ranges[i]) {
+                appendClassChar(sb, ranges[i + 1]);
+            }
+        }
+        sb.append(']');
+    }
+
+    private static void appendClassChar(StringBuilder sb, char c)
+    {
+        if (c == '\\' || c == ']' || c == '-' || c == '^') {
+            sb.append('\\');
+        }
+        sb.append(c);
+    }
+
     /**
      * optimiseStarOnSC: "Optimise STAR on SEQUENCE or CHOICE". For a STAR on a
      * SEQUENCE or CHOICE, we can make some fancy optimisations such as:
@@ -613,7 +1674,8 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
      * @return True if any optimisations were made, false otherwise
      */
     private boolean optimiseStarOnSC(BasicRegexp re,
-        ArrayList<BasicRegexp> optimisedOperands, int what, int level)
+        ArrayList<BasicRegexp> optimisedOperands, int what, int level,
+        long[] counts)
     {
         if (level == 0) {
             optimisedOperands.add(re);
@@ -639,23 +1701,24 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
             case OPTION:
                 // Remove STAR, PLUS and OPTION
                 BasicRegexp subExpr = operand.mOperands.get(0);
-                if (subExpr.isSingleChar()) {
+                if (subExpr.getOperator() == RegexpOperator.NONE) {
                     optimisedOperands.add(subExpr);
                 } else {
                     // Check if by getting unwrapping this, we uncover another
                     // CHOICE or nullable SEQUENCE
                     optimiseStarOnSC(subExpr, optimisedOperands, what,
-                            level - 1);
+                            level - 1, counts);
                 }
 
                 hasOptimisedSubExpr = true;
                 break;
             case SEQUENCE:
                 hasOptimisedSubExpr = optimiseStarOnSC(operand,
-                    optimisedOperands, what, level - 1);
+                    optimisedOperands, what, level - 1, counts);
                 break;
             case CHOICE:
-                optimiseStarOnSC(operand, optimisedOperands, what, level - 1);
+                optimiseStarOnSC(operand, optimisedOperands, what, level - 1,
+                    counts);
                 hasOptimisedSubExpr = true;
                 break;
             default:
@@ -664,7 +1727,7 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         return hasOptimisedSubExpr;
     }
 
-    private BasicRegexp optimiseStar(int what, int level)
+    private BasicRegexp optimiseStar(int what, int level, long[] counts)
     {
         if (level == 0) {
             return this;
@@ -674,7 +1737,7 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         }
 
         BasicRegexp subExpr = mOperands.get(0);
-        BasicRegexp subExprOptimised = subExpr.optimise(what, level - 1);
+        BasicRegexp subExprOptimised = subExpr.optimise(what, level - 1, counts);
         switch (subExprOptimised.getOperator()) {
         case NONE:
             if (subExpr == subExprOptimised) {
@@ -684,16 +1747,18 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
                 return new BasicRegexp(subExprOptimised, RegexpOperator.STAR);
             }
         case STAR:
+            countRewrite(counts, OptimiseRule.STAR_OF_UNARY);
             return subExprOptimised;
         case PLUS:
         case OPTION:
+            countRewrite(counts, OptimiseRule.STAR_OF_UNARY);
             return new BasicRegexp(subExprOptimised.mOperands.get(0),
                 RegexpOperator.STAR);
         case SEQUENCE:
         case CHOICE: {
             ArrayList<BasicRegexp> optimisedOperands = new ArrayList<>();
             boolean hasOptimisedSubExpr = optimiseStarOnSC(subExprOptimised,
-                optimisedOperands, what, level - 1);
+                optimisedOperands, what, level - 1, counts);
             if (!hasOptimisedSubExpr && subExpr == subExprOptimised) {
                 // No optimisations made
                 return this;
@@ -714,9 +1779,10 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
                 // Able to optimise yet further, this optimisation may have
                 // opened up yet further optimisations, e.g. we get (a|b|b|c)*
                 // which we can translate to (a|b|c)*
+                countRewrite(counts, OptimiseRule.STAR_OF_SEQUENCE_OR_CHOICE);
                 BasicRegexp newExprOptimised = new BasicRegexp(
                     optimisedOperands, RegexpOperator.CHOICE);
-                newExprOptimised = newExprOptimised.optimise(what, level - 1);
+                newExprOptimised = newExprOptimised.optimise(what, level - 1, counts);
                 return new BasicRegexp(newExprOptimised, RegexpOperator.STAR);
             }
         }
@@ -725,7 +1791,7 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         }
     }
 
-    private BasicRegexp optimisePlus(int what, int level)
+    private BasicRegexp optimisePlus(int what, int level, long[] counts)
     {
         if (level == 0) {
             return this;
@@ -735,7 +1801,7 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         }
 
         BasicRegexp subExpr = mOperands.get(0);
-        BasicRegexp subExprOptimised = subExpr.optimise(what, level - 1);
+        BasicRegexp subExprOptimised = subExpr.optimise(what, level - 1, counts);
         switch (subExprOptimised.getOperator()) {
         case NONE:
             if (subExpr == subExprOptimised) {
@@ -745,10 +1811,13 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
                 return new BasicRegexp(subExprOptimised, RegexpOperator.PLUS);
             }
         case STAR:
+            countRewrite(counts, OptimiseRule.PLUS_OF_UNARY);
             return subExprOptimised;
         case PLUS:
+            countRewrite(counts, OptimiseRule.PLUS_OF_UNARY);
             return subExprOptimised;
         case OPTION:
+            countRewrite(counts, OptimiseRule.PLUS_OF_UNARY);
             return new BasicRegexp(subExprOptimised.mOperands.get(0),
                 RegexpOperator.STAR);
         case SEQUENCE: {
@@ -762,6 +1831,7 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
                 // Optimisation made on sub expression
                 return new BasicRegexp(subExprOptimised, mOperator);
             } else {
+                countRewrite(counts, OptimiseRule.PLUS_OF_NULLABLE_SEQUENCE);
                 return new BasicRegexp(
                     new BasicRegexp(subExprOptimised.mOperands,
                         RegexpOperator.CHOICE), RegexpOperator.PLUS);
@@ -780,7 +1850,7 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         }
     }
 
-    private BasicRegexp optimiseOption(int what, int level)
+    private BasicRegexp optimiseOption(int what, int level, long[] counts)
     {
         if (level == 0) {
             return this;
@@ -790,12 +1860,14 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         }
 
         BasicRegexp subExpr = mOperands.get(0);
-        BasicRegexp subExprOptimised = subExpr.optimise(what, level - 1);
+        BasicRegexp subExprOptimised = subExpr.optimise(what, level - 1, counts);
 
         if (subExprOptimised.isNullable()) {
+            countRewrite(counts, OptimiseRule.OPTION_OF_NULLABLE);
             return subExprOptimised;
         } else if (subExprOptimised.getOperator() == RegexpOperator.PLUS) {
             // r+? ----> r*
+            countRewrite(counts, OptimiseRule.OPTION_OF_PLUS);
             return new BasicRegexp(subExprOptimised.mOperands.get(0),
                 RegexpOperator.STAR);
         } else if (subExprOptimised.getOperator() == RegexpOperator.NONE) {
@@ -863,7 +1935,7 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         return -1;
     }
 
-    private BasicRegexp optimiseSequence(int what, int level)
+    private BasicRegexp optimiseSequence(int what, int level, long[] counts)
     {
         if (level == 0) {
             return this;
@@ -876,7 +1948,7 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         ArrayList<BasicRegexp> optimisedOperands = new ArrayList<>();
         boolean hasOptimisedSubExpr = false;
         for (BasicRegexp operand : mOperands) {
-            BasicRegexp optimisedOperand = operand.optimise(what, level - 1);
+            BasicRegexp optimisedOperand = operand.optimise(what, level - 1, counts);
             if (operand != optimisedOperand) {
                 hasOptimisedSubExpr = true;
             }
@@ -888,6 +1960,7 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         while (it.hasNext()) {
             BasicRegexp re = it.next();
             if (re.isSingleChar() && re.getChar() == EPSILON_CHAR) {
+                countRewrite(counts, OptimiseRule.SEQUENCE_EPSILON);
                 it.remove();
             }
         }
@@ -907,8 +1980,10 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
 
             int which = couldMergeSequence(a, b);
             if (which == 0) {
+                countRewrite(counts, OptimiseRule.SEQUENCE_MERGE);
                 optimisedOperands.remove(aIdx);
             } else if (which == 1) {
+                countRewrite(counts, OptimiseRule.SEQUENCE_MERGE);
                 optimisedOperands.remove(bIdx);
             } else {
                 i++;
@@ -926,8 +2001,10 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
 
             int which = couldMergeSequence(a, b);
             if (which == 0) {
+                countRewrite(counts, OptimiseRule.SEQUENCE_MERGE);
                 optimisedOperands.remove(aIdx);
             } else if (which == 1) {
+                countRewrite(counts, OptimiseRule.SEQUENCE_MERGE);
                 optimisedOperands.remove(bIdx);
             } else {
                 i++;
@@ -946,7 +2023,7 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         }
     }
 
-    private BasicRegexp optimiseChoice(int what, int level)
+    private BasicRegexp optimiseChoice(int what, int level, long[] counts)
     {
         if (level == 0) {
             return this;
@@ -959,7 +2036,7 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         ArrayList<BasicRegexp> optimisedOperands = new ArrayList<>();
         boolean hasOptimisedSubExpr = false;
         for (BasicRegexp operand : mOperands) {
-            BasicRegexp optimisedOperand = operand.optimise(what, level - 1);
+            BasicRegexp optimisedOperand = operand.optimise(what, level - 1, counts);
             if (operand != optimisedOperand) {
                 hasOptimisedSubExpr = true;
             }
@@ -975,6 +2052,7 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
             while (j < optimisedOperands.size()) {
                 BasicRegexp jExpr = optimisedOperands.get(j);
                 if (iExpr.compareTo(jExpr) == 0) {
+                    countRewrite(counts, OptimiseRule.CHOICE_DUPLICATE);
                     optimisedOperands.remove(j);
                     // Don't increment j
                 } else {
@@ -995,6 +2073,38 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         }
     }
 
+    /**
+     * The rewrite rules optimise() applies, for counting how often each is
+     * applied
+     */
+    public enum OptimiseRule {
+        /** (r*)*, (r+)*, (r?)* -----> r* */
+        STAR_OF_UNARY,
+        /** (a*b*)* -----> (a|b)* and similar */
+        STAR_OF_SEQUENCE_OR_CHOICE,
+        /** (r*)+, (r?)+ -----> r*, (r+)+ -----> r+ */
+        PLUS_OF_UNARY,
+        /** (pq)+ -----> (p|q)+ (if p and q are nullable) */
+        PLUS_OF_NULLABLE_SEQUENCE,
+        /** p? -----> p (if p is nullable) */
+        OPTION_OF_NULLABLE,
+        /** r+? -----> r* */
+        OPTION_OF_PLUS,
+        /** Removal of epsilon from a SEQUENCE */
+        SEQUENCE_EPSILON,
+        /** r*r* -----> r* and similar */
+        SEQUENCE_MERGE,
+        /** a|b|a -----> a|b */
+        CHOICE_DUPLICATE
+    }
+
+    private static void countRewrite(long[] counts, OptimiseRule rule)
+    {
+        if (counts != null) {
+            counts[rule.ordinal()]++;
+        }
+    }
+
     public static int OPTIMISE_STAR = 0x01;
     public static int OPTIMISE_PLUS = 0x02;
     public static int OPTIMISE_OPTION = 0x04;
@@ -1013,6 +2123,22 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
      * @return The optimised expression
      */
     public BasicRegexp optimise(int what, int level)
+    {
+        return optimise(what, level, null);
+    }
+
+    /**
+     * Same as optimise(what, level), but also counts the rewrites made.
+     *
+     * @param what A bitfield describing what optimisations to make
+     * (OPTIMISE_* constants)
+     * @param level The level of recursion to following in optimising
+     * sub-expressions
+     * @param counts Array indexed by OptimiseRule ordinal which is
+     * incremented for every rewrite made, or null
+     * @return The optimised expression
+     */
+    BasicRegexp optimise(int what, int level, long[] counts)
     {
         // Step 1: call .optimise() on sub expressions, if a new expression is
         // returned (i.e. we optimised it somehow) we definitely need to create
@@ -1052,15 +2178,15 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         case NONE:
             return this;
         case STAR:
-            return optimiseStar(what, level);
+            return optimiseStar(what, level, counts);
         case PLUS:
-            return optimisePlus(what, level);
+            return optimisePlus(what, level, counts);
         case OPTION:
-            return optimiseOption(what, level);
+            return optimiseOption(what, level, counts);
         case SEQUENCE:
-            return optimiseSequence(what, level);
+            return optimiseSequence(what, level, counts);
         case CHOICE:
-            return optimiseChoice(what, level);
+            return optimiseChoice(what, level, counts);
         default:
             throw new RuntimeException("BUG: Should be unreachable.");
         }
@@ -1084,6 +2210,9 @@ public class BasicRegexp implements Comparable<BasicRegexp> {
         if (re.isSingleChar()) {
             LOGGER.log(Level.FINE, indentStr + "[BasicRegexp:" + opStr
                     + "] char = " + re.mChar);
+        } else if (re.isCharClass()) {
+            LOGGER.log(Level.FINE, indentStr + "[BasicRegexp:" + opStr
+                    + "] class = " + re);
         } else {
             LOGGER.log(Level.FINE, indentStr + "[BasicRegexp:" + opStr + "] {");
             for (int i = 0; i < re.mOperands.size(); i++) {
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+/**
+ * Matches large numbers of inputs against one Matcher, splitting the work
+ * over a ForkJoinPool. The result of each input is stored as a bit in a
+ * bitmap, each task writes whole words of the bitmap so no synchronisation or
+ * per-input allocation is needed.
+ *
+ * The matcher is shared by all threads, so it should be immutable (e.g. a
+ * DfaMatcher or BitParallelNfaMatcher) for the work to scale with the number
+ * of threads. A LazyDfaMatcher works, but only matches one input at a time.
+ *
+ * With a MultiPatternMatcher an input is accepted if any of its regexps
+ * matches, and the number of inputs each regexp matched is counted as well.
+ */
+public final class BatchMatcher {
+    /**
+     * Number of inputs taken from a stream or file at a time, a multiple of
+     * 64 so that each chunk starts on a word of the bitmap
+     */
+    public static final int CHUNK_SIZE = 1 << 16;
+    // Smallest number of inputs a task splits, a multiple of 64
+    private static final int MIN_TASK_SIZE = 1024;
+
+    /**
+     * The results of a batch, in the order of the inputs.
+     */
+    public static final class Result {
+        private final int mNumInputs;
+        private final long[] mBitmap;
+        private final int mNumMatches;
+        private final long[] mPatternCounts;
+
+        private Result(int numInputs, long[] bitmap, long[] patternCounts)
+        {
+            mNumInputs = numInputs;
+            mBitmap = bitmap;
+            int count = 0;
+            for (long w : bitmap) {
+                count += Long.bitCount(w);
+            }
+            mNumMatches = count;
+            // A single pattern matches whatever was accepted
+            mPatternCounts = patternCounts != null ? patternCounts
+                    : new long[] { count };
+        }
+
+        /**
+         * @return The number of inputs matched
+         */
+        public int getNumInputs()
+        {
+            return mNumInputs;
+        }
+
+        /**
+         * @return The number of inputs which were accepted
+         */
+        public int getNumMatches()
+        {
+            return mNumMatches;
+        }
+
+        /**
+         * @param i The index of the input
+         * @return True if the input was accepted, false otherwise
+         */
+        public boolean matches(int i)
+        {
+            if (i < 0 || i >= mNumInputs) {
+                throw new IndexOutOfBoundsException("Invalid input index: "
+                        + i);
+            }
+            return (mBitmap[i >>> 6] & (1L << i)) != 0;
+        }
+
+        /**
+         * @return The number of patterns counted, the number of regexps of a
+         * MultiPatternMatcher, otherwise 1
+         */
+        public int getNumPatterns()
+        {
+            return mPatternCounts.length;
+        }
+
+        /**
+         * @param id The ID of the pattern
+         * @return The number of inputs the pattern matched
+         */
+        public long getPatternCount(int id)
+        {
+            return mPatternCounts[id];
+        }
+
+        /**
+         * @return The indexes of the inputs which were accepted
+         */
+        public BitSet toBitSet()
+        {
+            return BitSet.valueOf(mBitmap);
+        }
+    }
+
+    /**
+     * Matches a range of the inputs, the range starts on a bitmap word
+     */
+    private final class MatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<? extends CharSequence> mInputs;
+        private final long[] mBitmap;
+        // Shared counts of each pattern, null unless using a
+        // MultiPatternMatcher
+        private final long[] mPatternCounts;
+        // Bit of the bitmap for input 0
+        private final int mBase;
+        private final int mFrom;
+        private final int mTo;
+
+        MatchTask(List<? extends CharSequence> inputs, long[] bitmap,
+                long[] patternCounts, int base, int from, int to)
+        {
+            mInputs = inputs;
+            mBitmap = bitmap;
+            mPatternCounts = patternCounts;
+            mBase = base;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (mTo - mFrom <= MIN_TASK_SIZE) {
+                if (mPatternCounts != null) {
+                    computeMulti();
+                    return;
+                }
+                Matcher matcher = mMatcher;
+                long word = 0;
+                for (int i = mFrom; i < mTo; i++) {
+                    if (matcher.matches(mInputs.get(i))) {
+                        word |= 1L << i;
+                    }
+                    if ((i & 63) == 63 || i == mTo - 1) {
+                        mBitmap[(mBase + i) >>> 6] = word;
+                        word = 0;
+                    }
+                }
+                return;
+            }
+            // Split on a multiple of 64, so each task has its own words
+            int mid = mFrom + (((mTo - mFrom) >>> 1) & ~63);
+            invokeAll(new MatchTask(mInputs, mBitmap, mPatternCounts, mBase,
+                    mFrom, mid), new MatchTask(mInputs, mBitmap,
+                    mPatternCounts, mBase, mid, mTo));
+        }
+
+        /**
+         * Match the range with a MultiPatternMatcher, counting the matches of
+         * each pattern locally before adding them to the shared counts
+         */
+        private void computeMulti()
+        {
+            MultiPatternMatcher matcher = (MultiPatternMatcher) mMatcher;
+            long[] counts = new long[mPatternCounts.length];
+            long word = 0;
+            for (int i = mFrom; i < mTo; i++) {
+                int state = matcher.run(mInputs.get(i));
+                int n = matcher.getNumMatched(state);
+                if (n > 0) {
+                    word |= 1L << i;
+                    for (int j = 0; j < n; j++) {
+                        counts[matcher.getMatched(state, j)]++;
+                    }
+                }
+                if ((i & 63) == 63 || i == mTo - 1) {
+                    mBitmap[(mBase + i) >>> 6] = word;
+                    word = 0;
+                }
+            }
+            synchronized (mPatternCounts) {
+                for (int j = 0; j < counts.length; j++) {
+                    mPatternCounts[j] += counts[j];
+                }
+            }
+        }
+    }
+
+    private final Matcher mMatcher;
+    private final ForkJoinPool mPool;
+
+    /**
+     * Create a BatchMatcher using the common ForkJoinPool.
+     *
+     * @param matcher The matcher to use, shared by all threads
+     */
+    public BatchMatcher(Matcher matcher)
+    {
+        this(matcher, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param matcher The matcher to use, shared by all threads
+     * @param pool The pool to run on
+     */
+    public BatchMatcher(Matcher matcher, ForkJoinPool pool)
+    {
+        if (matcher == null || pool == null) {
+            throw new RuntimeException("Matcher and pool cannot be null");
+        }
+        mMatcher = matcher;
+        mPool = pool;
+    }
+
+    /**
+     * @return The matcher used
+     */
+    public Matcher getMatcher()
+    {
+        return mMatcher;
+    }
+
+    /**
+     * @return The counts to fill in for each pattern, or null if the matcher
+     * only has one pattern
+     */
+    private long[] createPatternCounts()
+    {
+        if (mMatcher instanceof MultiPatternMatcher) {
+            return new long[((MultiPatternMatcher) mMatcher)
+                    .getNumPatterns()];
+        }
+        return null;
+    }
+
+    /**
+     * Match every input of a list.
+     *
+     * @param inputs The inputs, lists which aren't random access are copied
+     * @return The results
+     */
+    public Result matchAll(List<? extends CharSequence> inputs)
+    {
+        if (!(inputs instanceof RandomAccess)) {
+            inputs = new ArrayList<>(inputs);
+        }
+        int n = inputs.size();
+        long[] bitmap = new long[(n + 63) >>> 6];
+        long[] patternCounts = createPatternCounts();
+        if (n > 0) {
+            mPool.invoke(new MatchTask(inputs, bitmap, patternCounts, 0, 0,
+                    n));
+        }
+        return new Result(n, bitmap, patternCounts);
+    }
+
+    /**
+     * Match every input of a stream. The stream is consumed CHUNK_SIZE inputs
+     * at a time, each chunk is matched in parallel.
+     *
+     * @param inputs The inputs
+     * @return The results, in the order of the stream
+     */
+    public Result matchAll(Stream<? extends CharSequence> inputs)
+    {
+        Iterator<? extends CharSequence> it = inputs.iterator();
+        ArrayList<CharSequence> chunk = new ArrayList<>(CHUNK_SIZE);
+        long[] bitmap = new long[CHUNK_SIZE >>> 6];
+        long[] patternCounts = createPatternCounts();
+        int n = 0;
+        while (it.hasNext()) {
+            chunk.add(it.next());
+            if (chunk.size() == CHUNK_SIZE || !it.hasNext()) {
+                int words = (n + chunk.size() + 63) >>> 6;
+                if (words > bitmap.length) {
+                    bitmap = Arrays.copyOf(bitmap,
+                            Math.max(words, bitmap.length * 2));
+                }
+                mPool.invoke(new MatchTask(chunk, bitmap, patternCounts, n,
+                        0, chunk.size()));
+                n += chunk.size();
+                chunk.clear();
+            }
+        }
+        return new Result(n, Arrays.copyOf(bitmap, (n + 63) >>> 6),
+                patternCounts);
+    }
+
+    /**
+     * Match every line of a file.
+     *
+     * @param file The file to read
+     * @param cs The character set of the file
+     * @return The results, in the order of the lines
+     * @throws IOException If reading the file fails
+     */
+    public Result matchLines(Path file, Charset cs) throws IOException
+    {
+        try (BufferedReader br = Files.newBufferedReader(file, cs)) {
+            return matchAll(br.lines());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
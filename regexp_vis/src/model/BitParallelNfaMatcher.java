@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Matcher which simulates an NFA with bit-parallel operations, without
+ * determinising it, so matching takes linear time without the risk of an
+ * exponential number of DFA states.
+ *
+ * Epsilon transitions are folded in first: a state gets the transitions of
+ * every state in its epsilon closure, and accepts if its closure contains a
+ * final state. The simulation then works on the positions of a Glushkov
+ * automaton, which are the start state plus one position for each distinct
+ * pair of target state and character (or character class). All transitions
+ * into a position are on the same character, so a step is
+ *
+ *   D' = Follow(D) &amp; Mask[c]
+ *
+ * where Follow(D) is the union of the positions the positions in D can move
+ * to on any character, looked up in tables indexed by each byte of D, and
+ * Mask[c] is shared by the characters of each class of an AlphabetPartition
+ * of the positions. Up to
+ * MAX_POSITIONS positions are supported, using one or two longs for D.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public final class BitParallelNfaMatcher implements Matcher {
+    /**
+     * The maximum number of positions supported
+     */
+    public static final int MAX_POSITIONS = 128;
+
+    private final int mNumPositions;
+    // Number of longs in a set of positions, 1 or 2
+    private final int mWords;
+    // Lookup table of the class of each character, in pages of 256
+    // characters, see AlphabetPartition
+    private final int[] mPages;
+    private final char[] mClassIds;
+    // Positions entered by the characters of each class, mWords longs for
+    // each class
+    private final long[] mCharMasks;
+    // Follow set for each value of each byte of D, mWords longs for each
+    // entry, the entry for byte "k" having value "b" is at
+    // ((k << 8) | b) * mWords
+    private final long[] mFollow;
+    private final long mAccept0;
+    private final long mAccept1;
+
+    /**
+     * The positions of an automaton with epsilon transitions folded in.
+     * Position 0 is the start state.
+     */
+    private static final class Positions {
+        int numPositions;
+        // The target state and single character or character class
+        // expression of each position
+        int[] targets;
+        BasicRegexp[] labels;
+        // Whether each state's epsilon closure contains a final state
+        boolean[] accepting;
+        // The folded transitions as (source state, position) pairs
+        int[] edges;
+        int numEdges;
+
+        Positions(FrozenAutomaton frozen)
+        {
+            int n = frozen.getNumStates();
+            for (int e = 0; e < frozen.getNumTransitions(); e++) {
+                if (!frozen.isSingleCharTransition(e)
+                        && !frozen.isCharClassTransition(e)) {
+                    throw new RuntimeException("Automaton must only have "
+                            + "single character and character class "
+                            + "transitions");
+                }
+            }
+
+            accepting = new boolean[n];
+            targets = new int[16];
+            labels = new BasicRegexp[16];
+            edges = new int[32];
+            // Positions keyed by target state and label number
+            HashMap<Long, Integer> posMap = new HashMap<>();
+            HashMap<BasicRegexp, Integer> labelNumbers = new HashMap<>();
+            addPosition(frozen.getStartIndex(), null);
+
+            // Fold the states reachable from the start state
+            boolean[] seen = new boolean[n];
+            int[] stack = new int[n];
+            int sp = 0;
+            seen[frozen.getStartIndex()] = true;
+            stack[sp++] = frozen.getStartIndex();
+            while (sp > 0) {
+                int s = stack[--sp];
+                StateSet closure = TranslationTools
+                        .calcEpsilonReachableStates(frozen, s);
+                for (int j = closure.nextIndex(0); j != -1;
+                        j = closure.nextIndex(j + 1)) {
+                    if (frozen.isFinal(j)) {
+                        accepting[s] = true;
+                    }
+                    int end = frozen.getTransitionsEnd(j);
+                    for (int e = frozen.getTransitionsStart(j); e < end; e++) {
+                        if (frozen.isEpsilonTransition(e)) {
+                            continue;
+                        }
+                        int to = frozen.getTransitionTo(e);
+                        BasicRegexp label = frozen.getTransition(e).getData();
+                        Integer number = labelNumbers.get(label);
+                        if (number == null) {
+                            number = labelNumbers.size();
+                            labelNumbers.put(label, number);
+                        }
+                        long key = ((long) to << 32) | number;
+                        Integer pos = posMap.get(key);
+                        if (pos == null) {
+                            pos = numPositions;
+                            posMap.put(key, pos);
+                            addPosition(to, label);
+                        }
+                        addEdge(s, pos);
+                        if (!seen[to]) {
+                            seen[to] = true;
+                            stack[sp++] = to;
+                        }
+                    }
+                }
+            }
+        }
+
+        private void addPosition(int target, BasicRegexp label)
+        {
+            if (numPositions == targets.length) {
+                targets = Arrays.copyOf(targets, numPositions * 2);
+                labels = Arrays.copyOf(labels, numPositions * 2);
+            }
+            targets[numPositions] = target;
+            labels[numPositions] = label;
+            numPositions++;
+        }
+
+        /**
+         * @return The number of ranges of characters of a position
+         */
+        int getNumRanges(int pos)
+        {
+            return labels[pos].isCharClass() ? labels[pos].getNumRanges() : 1;
+        }
+
+        char getRangeFirst(int pos, int r)
+        {
+            BasicRegexp re = labels[pos];
+            return re.isCharClass() ? re.getRangeFirst(r) : re.getChar();
+        }
+
+        char getRangeLast(int pos, int r)
+        {
+            BasicRegexp re = labels[pos];
+            return re.isCharClass() ? re.getRangeLast(r) : re.getChar();
+        }
+
+        private void addEdge(int from, int pos)
+        {
+            if (2 * numEdges == edges.length) {
+                edges = Arrays.copyOf(edges, edges.length * 2);
+            }
+            edges[2 * numEdges] = from;
+            edges[2 * numEdges + 1] = pos;
+            numEdges++;
+        }
+    }
+
+    /**
+     * @param automaton The automaton to simulate, must only have single
+     * character and character class transitions (including epsilon
+     * transitions) and can't have more than MAX_POSITIONS positions, see
+     * canSimulate()
+     */
+    public BitParallelNfaMatcher(Automaton automaton)
+    {
+        FrozenAutomaton frozen = automaton.freeze();
+        Positions p = new Positions(frozen);
+        mNumPositions = p.numPositions;
+        if (mNumPositions > MAX_POSITIONS) {
+            throw new RuntimeException("Automaton has too many positions: "
+                    + mNumPositions);
+        }
+        mWords = mNumPositions <= 64 ? 1 : 2;
+
+        // The positions are the groups of the partition, as two characters
+        // need the same mask if they enter the same positions
+        AlphabetPartition.Ranges ranges = new AlphabetPartition.Ranges();
+        for (int i = 1; i < mNumPositions; i++) {
+            for (int r = 0; r < p.getNumRanges(i); r++) {
+                ranges.add(p.getRangeFirst(i, r), p.getRangeLast(i, r), i - 1);
+            }
+        }
+        ranges.numGroups = mNumPositions - 1;
+        AlphabetPartition partition = new AlphabetPartition(ranges);
+        mPages = partition.getPages();
+        mClassIds = partition.getClassIds();
+        mCharMasks = new long[partition.getNumClasses() * mWords];
+        for (int i = 1; i < mNumPositions; i++) {
+            for (int r = 0; r < p.getNumRanges(i); r++) {
+                int a = partition.findAtom(p.getRangeFirst(i, r));
+                for (; partition.getAtomFirst(a) <= p.getRangeLast(i, r);
+                        a++) {
+                    setBit(mCharMasks, partition.getAtomClass(a) * mWords, i);
+                }
+            }
+        }
+
+        // The positions each state can move to, which is the follow set of
+        // every position targeting that state
+        long[] out = new long[frozen.getNumStates() * mWords];
+        for (int i = 0; i < p.numEdges; i++) {
+            setBit(out, p.edges[2 * i] * mWords, p.edges[2 * i + 1]);
+        }
+
+        // Build the follow table of each byte from the entry for the same
+        // value without its lowest bit
+        int numChunks = (mNumPositions + 7) >>> 3;
+        mFollow = new long[(numChunks << 8) * mWords];
+        for (int k = 0; k < numChunks; k++) {
+            for (int b = 1; b < 256; b++) {
+                int pos = (k << 3) + Integer.numberOfTrailingZeros(b);
+                int entry = ((k << 8) | b) * mWords;
+                int rest = ((k << 8) | (b & (b - 1))) * mWords;
+                for (int w = 0; w < mWords; w++) {
+                    mFollow[entry + w] = mFollow[rest + w];
+                    if (pos < mNumPositions) {
+                        mFollow[entry + w] |= out[p.targets[pos] * mWords + w];
+                    }
+                }
+            }
+        }
+
+        long[] accept = new long[2];
+        for (int i = 0; i < mNumPositions; i++) {
+            if (p.accepting[p.targets[i]]) {
+                setBit(accept, 0, i);
+            }
+        }
+        mAccept0 = accept[0];
+        mAccept1 = accept[1];
+    }
+
+    private static void setBit(long[] set, int base, int bit)
+    {
+        set[base + (bit >>> 6)] |= 1L << bit;
+    }
+
+    /**
+     * @param automaton The automaton in question
+     * @return True if the automaton only has single character and character
+     * class transitions and doesn't have more than MAX_POSITIONS positions, i.e. if a
+     * BitParallelNfaMatcher can be created for it
+     */
+    public static boolean canSimulate(Automaton automaton)
+    {
+        try {
+            return new Positions(automaton.freeze())
+                    .numPositions <= MAX_POSITIONS;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence input)
+    {
+        final long[] follow = mFollow;
+        final long[] masks = mCharMasks;
+        final int[] pages = mPages;
+        final char[] classIds = mClassIds;
+        int len = input.length();
+
+        if (mWords == 1) {
+            long d = 1L;
+            for (int i = 0; i < len; i++) {
+                char c = input.charAt(i);
+                int col = classIds[pages[c >>> 8] + (c & 0xff)];
+                long f = 0;
+                for (int k = 0; d != 0; k += 256, d >>>= 8) {
+                    f |= follow[k | (int) (d & 0xff)];
+                }
+                d = f & masks[col];
+                if (d == 0) {
+                    return false;
+                }
+            }
+            return (d & mAccept0) != 0;
+        }
+
+        long d0 = 1L;
+        long d1 = 0L;
+        for (int i = 0; i < len; i++) {
+            char c = input.charAt(i);
+            int col = classIds[pages[c >>> 8] + (c & 0xff)];
+            long f0 = 0;
+            long f1 = 0;
+            for (int k = 0; d0 != 0; k += 512, d0 >>>= 8) {
+                int entry = k | (int) ((d0 & 0xff) << 1);
+                f0 |= follow[entry];
+                f1 |= follow[entry + 1];
+            }
+            for (int k = 4096; d1 != 0; k += 512, d1 >>>= 8) {
+                int entry = k | (int) ((d1 & 0xff) << 1);
+                f0 |= follow[entry];
+                f1 |= follow[entry + 1];
+            }
+            d0 = f0 & masks[2 * col];
+            d1 = f1 & masks[2 * col + 1];
+            if ((d0 | d1) == 0) {
+                return false;
+            }
+        }
+        return (d0 & mAccept0) != 0 || (d1 & mAccept1) != 0;
+    }
+
+    @Override
+    public boolean matches(char[] input, int off, int len)
+    {
+        if (off < 0 || len < 0 || off + len > input.length) {
+            throw new IndexOutOfBoundsException("Invalid offset or length");
+        }
+        final long[] follow = mFollow;
+        final long[] masks = mCharMasks;
+        final int[] pages = mPages;
+        final char[] classIds = mClassIds;
+        int end = off + len;
+
+        if (mWords == 1) {
+            long d = 1L;
+            for (int i = off; i < end; i++) {
+                char c = input[i];
+                int col = classIds[pages[c >>> 8] + (c & 0xff)];
+                long f = 0;
+                for (int k = 0; d != 0; k += 256, d >>>= 8) {
+                    f |= follow[k | (int) (d & 0xff)];
+                }
+                d = f & masks[col];
+                if (d == 0) {
+                    return false;
+                }
+            }
+            return (d & mAccept0) != 0;
+        }
+
+        long d0 = 1L;
+        long d1 = 0L;
+        for (int i = off; i < end; i++) {
+            char c = input[i];
+            int col = classIds[pages[c >>> 8] + (c & 0xff)];
+            long f0 = 0;
+            long f1 = 0;
+            for (int k = 0; d0 != 0; k += 512, d0 >>>= 8) {
+                int entry = k | (int) ((d0 & 0xff) << 1);
+                f0 |= follow[entry];
+                f1 |= follow[entry + 1];
+            }
+            for (int k = 4096; d1 != 0; k += 512, d1 >>>= 8) {
+                int entry = k | (int) ((d1 & 0xff) << 1);
+                f0 |= follow[entry];
+                f1 |= follow[entry + 1];
+            }
+            d0 = f0 & masks[2 * col];
+            d1 = f1 & masks[2 * col + 1];
+            if ((d0 | d1) == 0) {
+                return false;
+            }
+        }
+        return (d0 & mAccept0) != 0 || (d1 & mAccept1) != 0;
+    }
+
+    /**
+     * @return The number of positions simulated, at most MAX_POSITIONS
+     */
+    public int getNumPositions()
+    {
+        return mNumPositions;
+    }
+}
@@ -71,14 +71,14 @@ public class BreakdownIterationCommand extends BreakdownCommand {
                 .getIngoingTransition(end);
         boolean isolateStart = false;
         boolean isolateEnd = false;
-        if (startOutgoing.size() > 1) {
+        if (startOutgoing.size() > 1 || start.isFinal()) {
             // Start has other out-going transitions, not including this one.
-            // Need to isolate it.
+            // Need to isolate it. Accepting counts as a way out of the state.
             isolateStart = true;
         }
-        if (endIncoming.size() > 1) {
+        if (endIncoming.size() > 1 || end == automaton.getStartState()) {
             // End has other in-going transitions, not including this one. Need
-            // to isolate it.
+            // to isolate it. The start state is always entered from outside.
             isolateEnd = true;
         }
 
@@ -32,6 +32,15 @@ package model;
  * @see CommandHistory
  */
 public abstract class Command {
+    /**
+     * Rough size of an object header, in bytes, for size estimates
+     */
+    protected static final long OBJECT_SIZE = 16;
+    /**
+     * Rough size of an object reference, in bytes, for size estimates
+     */
+    protected static final long REFERENCE_SIZE = 8;
+
     private final Automaton mAutomaton;
 
     public Command(Automaton automaton) {
@@ -58,4 +67,15 @@ public abstract class Command {
      * been "done" is undefined.
      */
     public abstract void redo();
+
+    /**
+     * Estimate the memory held by this command, which the CommandHistory uses
+     * to stay within its budget. Commands holding more than a few objects
+     * should override this.
+     *
+     * @return The estimated size of this command, in bytes
+     */
+    public long getSizeEstimate() {
+        return OBJECT_SIZE + 2 * REFERENCE_SIZE;
+    }
 }
@@ -24,40 +24,365 @@ package model;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Observable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
 
 /**
  * Stores a history of commands for rewind and playback
  *
- * Extends {@link Observable}, sending the current value of
- * {@link CommandHistory#mHistoryIdx} to all observers.
+ * Changes are reported to each {@link CommandHistoryListener}, with a single
+ * call per change however many commands it affects.
+ *
+ * If a checkpointer is set, a {@link Checkpoint} is taken every so many
+ * executed commands, so seeking only replays the commands between the target
+ * index and the nearest checkpoint. The checkpoints are kept within a memory
+ * budget by doubling the number of commands between them, and dropping every
+ * other one, whenever it is exceeded. If thinning out can't get within it,
+ * only the first and the two newest are kept.
+ *
+ * The commands themselves are kept within a memory budget too. Once it is
+ * exceeded, the oldest commands up to a checkpoint are replaced by a single
+ * {@link HistorySnapshotCommand}, which restores the checkpoints either side
+ * of them.
  * @see Command
  */
-public class CommandHistory extends Observable {
+public class CommandHistory {
 
     public static final boolean CLOBBER_BY_DEFAULT = true;
 
     /**
-     * Value propagated to observers each time the last element of the history
-     * list is removed.
+     * The default memory budget for checkpoints, in bytes
      */
-    public static final int HISTORY_CLOBBERED = -2;
+    public static final long DEFAULT_CHECKPOINT_BUDGET = 16L << 20;
     /**
-     * Value propagated to observers each time the history cleared of all
-     * commands
+     * The fewest number of commands between checkpoints
      */
-    public static final int HISTORY_CLEARED = -3;
+    public static final int MIN_CHECKPOINT_SPACING = 16;
+    /**
+     * The default memory budget for the commands, in bytes
+     */
+    public static final long DEFAULT_HISTORY_BUDGET = 32L << 20;
+    /**
+     * The fewest number of the most recent commands which are never compacted
+     */
+    public static final int MIN_RECENT_COMMANDS = 16;
 
     private final ArrayList<Command> mCommandList;
     private int mHistoryIdx;
     private boolean clobber;
+    private final ArrayList<CommandHistoryListener> mListeners;
+
+    private Supplier<? extends Checkpoint> mCheckpointer;
+    private long mCheckpointBudget;
+    private int mCheckpointSpacing;
+    // Checkpoints by the history index they were taken at
+    private final TreeMap<Integer, Checkpoint> mCheckpoints;
+    private long mCheckpointsSize;
+    // The number of commands removed by compaction, so checkpoints stay at
+    // multiples of the spacing counting from the very first command
+    private long mNumCompacted;
+
+    private long mHistoryBudget;
+    private long mCommandsSize;
 
     public CommandHistory()
     {
         mCommandList = new ArrayList<>();
         mHistoryIdx = 0;
         clobber = CLOBBER_BY_DEFAULT;
+        mCheckpoints = new TreeMap<>();
+        mCheckpointSpacing = MIN_CHECKPOINT_SPACING;
+        mHistoryBudget = DEFAULT_HISTORY_BUDGET;
+        mListeners = new ArrayList<>();
+    }
+
+    /**
+     * @param listener The listener to notify of changes to this history
+     */
+    public void addListener(CommandHistoryListener listener)
+    {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        mListeners.add(listener);
+    }
+
+    /**
+     * @param listener The listener to no longer notify, does nothing if it
+     * wasn't added
+     */
+    public void removeListener(CommandHistoryListener listener)
+    {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * @return A copy of the listeners, so they may remove themselves when
+     * notified
+     */
+    private CommandHistoryListener[] getListeners()
+    {
+        return mListeners.toArray(
+                new CommandHistoryListener[mListeners.size()]);
+    }
+
+    private void fireHistoryIdxChanged()
+    {
+        for (CommandHistoryListener l : getListeners()) {
+            l.historyIdxChanged(this, mHistoryIdx);
+        }
+    }
+
+    /**
+     * Set the memory budget for the commands. The oldest commands are
+     * compacted whenever it is exceeded, which needs a checkpointer to be
+     * set.
+     *
+     * @param budget The memory budget for commands, in bytes
+     * @throws IllegalArgumentException if the budget is negative
+     * @see #setCheckpointer(Supplier, long)
+     */
+    public void setHistoryBudget(long budget)
+    {
+        if (budget < 0) {
+            throw new IllegalArgumentException(
+                    "History budget cannot be negative");
+        }
+        mHistoryBudget = budget;
+        compact();
+    }
+
+    /**
+     * @return The memory budget for the commands, in bytes
+     */
+    public long getHistoryBudget()
+    {
+        return mHistoryBudget;
+    }
+
+    /**
+     * @return The estimated memory used by the commands, in bytes
+     */
+    public long getCommandsSize()
+    {
+        return mCommandsSize;
+    }
+
+    /**
+     * Set how checkpoints are taken, existing checkpoints are dropped. The
+     * checkpointer is called with the commands applied up to the current
+     * index, and must save everything the commands act on.
+     *
+     * @param checkpointer Creates a checkpoint of the current state, null to
+     * not take checkpoints
+     * @param budget The memory budget for checkpoints, in bytes
+     * @throws IllegalArgumentException if the budget is negative
+     */
+    public void setCheckpointer(Supplier<? extends Checkpoint> checkpointer,
+            long budget)
+    {
+        if (budget < 0) {
+            throw new IllegalArgumentException(
+                    "Checkpoint budget cannot be negative");
+        }
+        mCheckpointer = checkpointer;
+        mCheckpointBudget = budget;
+        clearCheckpoints();
+    }
+
+    /**
+     * Set how checkpoints are taken, with the default memory budget.
+     *
+     * @param checkpointer Creates a checkpoint of the current state, null to
+     * not take checkpoints
+     * @see #setCheckpointer(Supplier, long)
+     */
+    public void setCheckpointer(Supplier<? extends Checkpoint> checkpointer)
+    {
+        setCheckpointer(checkpointer, DEFAULT_CHECKPOINT_BUDGET);
+    }
+
+    /**
+     * @return The number of commands between checkpoints
+     */
+    public int getCheckpointSpacing()
+    {
+        return mCheckpointSpacing;
+    }
+
+    /**
+     * @return The number of checkpoints currently held
+     */
+    public int getNumCheckpoints()
+    {
+        return mCheckpoints.size();
+    }
+
+    /**
+     * @return The estimated memory used by the checkpoints, in bytes
+     */
+    public long getCheckpointsSize()
+    {
+        return mCheckpointsSize;
+    }
+
+    private void clearCheckpoints()
+    {
+        mCheckpoints.clear();
+        mCheckpointsSize = 0;
+        mCheckpointSpacing = MIN_CHECKPOINT_SPACING;
+    }
+
+    /**
+     * @return Whether a checkpoint at the given index is kept with the current
+     * spacing, the checkpoint at 0 is always kept
+     */
+    private boolean isCheckpointIdx(int idx)
+    {
+        return idx == 0 || (idx + mNumCompacted) % mCheckpointSpacing == 0;
+    }
+
+    /**
+     * Take a checkpoint at the current index, then thin out the checkpoints
+     * until they are within the budget. If only the first checkpoint would be
+     * left, the first and the two newest are kept instead even though they are
+     * over budget, as compaction needs the first checkpoint and one at least
+     * MIN_RECENT_COMMANDS old.
+     */
+    private void addCheckpoint()
+    {
+        Checkpoint cp = mCheckpointer.get();
+        mCheckpoints.put(mHistoryIdx, cp);
+        mCheckpointsSize += cp.getSizeEstimate();
+        if (mCheckpointsSize <= mCheckpointBudget) {
+            return;
+        }
+
+        TreeMap<Integer, Checkpoint> before = new TreeMap<>(mCheckpoints);
+        int spacingBefore = mCheckpointSpacing;
+        while (mCheckpointsSize > mCheckpointBudget
+                && mCheckpoints.size() > 1
+                && mCheckpointSpacing <= Integer.MAX_VALUE / 2) {
+            mCheckpointSpacing *= 2;
+            Iterator<Map.Entry<Integer, Checkpoint>> it = mCheckpoints
+                    .entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Integer, Checkpoint> e = it.next();
+                if (!isCheckpointIdx(e.getKey())) {
+                    mCheckpointsSize -= e.getValue().getSizeEstimate();
+                    it.remove();
+                }
+            }
+        }
+
+        if (mCheckpointsSize > mCheckpointBudget) {
+            // Thinning out can't get within budget
+            mCheckpoints.clear();
+            mCheckpoints.put(before.firstKey(), before.firstEntry().getValue());
+            for (int i = 0; i < 2 && before.size() > 1; i++) {
+                Map.Entry<Integer, Checkpoint> e = before.pollLastEntry();
+                mCheckpoints.put(e.getKey(), e.getValue());
+            }
+            mCheckpointsSize = 0;
+            for (Checkpoint c : mCheckpoints.values()) {
+                mCheckpointsSize += c.getSizeEstimate();
+            }
+            mCheckpointSpacing = spacingBefore;
+        }
+    }
+
+    /**
+     * Drop the checkpoints taken after the given index.
+     */
+    private void dropCheckpointsAfter(int idx)
+    {
+        Map<Integer, Checkpoint> tail = mCheckpoints.tailMap(idx, false);
+        for (Checkpoint cp : tail.values()) {
+            mCheckpointsSize -= cp.getSizeEstimate();
+        }
+        tail.clear();
+    }
+
+    /**
+     * Replace the oldest commands with a HistorySnapshotCommand while the
+     * commands are over budget. Only commands up to a checkpoint can be
+     * replaced, as the snapshot needs the state after them.
+     */
+    private void compact()
+    {
+        int numRemoved = 0;
+        while (mCommandsSize > mHistoryBudget
+                && mCheckpoints.containsKey(0)) {
+            // The first entry may already be a snapshot, so there has to be
+            // at least one more command to merge with it
+            Integer end = mCheckpoints.higherKey(1);
+            if (end == null || end > mHistoryIdx - MIN_RECENT_COMMANDS) {
+                break;
+            }
+
+            List<Command> oldest = mCommandList.subList(0, end);
+            int numCommands = 0;
+            for (Command cmd : oldest) {
+                mCommandsSize -= cmd.getSizeEstimate();
+                if (cmd instanceof HistorySnapshotCommand) {
+                    numCommands += ((HistorySnapshotCommand) cmd)
+                            .getNumCommands();
+                } else {
+                    numCommands++;
+                }
+            }
+            Command snapshot = new HistorySnapshotCommand(
+                    oldest.get(0).getAutomaton(), mCheckpoints.get(0),
+                    mCheckpoints.get(end), numCommands);
+            oldest.clear();
+            mCommandList.add(0, snapshot);
+            mCommandsSize += snapshot.getSizeEstimate();
+
+            // Shift the checkpoints down, dropping those that were between
+            int shift = end - 1;
+            Map<Integer, Checkpoint> tail = mCheckpoints.tailMap(1, true);
+            ArrayList<Map.Entry<Integer, Checkpoint>> kept = new ArrayList<>();
+            for (Map.Entry<Integer, Checkpoint> e : tail.entrySet()) {
+                if (e.getKey() < end) {
+                    mCheckpointsSize -= e.getValue().getSizeEstimate();
+                } else {
+                    kept.add(e);
+                }
+            }
+            tail.clear();
+            for (Map.Entry<Integer, Checkpoint> e : kept) {
+                mCheckpoints.put(e.getKey() - shift, e.getValue());
+            }
+            mHistoryIdx -= shift;
+            mNumCompacted += shift;
+            numRemoved += shift;
+        }
+
+        if (numRemoved > 0) {
+            for (CommandHistoryListener l : getListeners()) {
+                l.historyCompacted(this, numRemoved);
+            }
+        }
+    }
+
+    /**
+     * @param idx The index to seek to
+     * @return The checkpoint nearest to the given index, or null if there are
+     * no checkpoints
+     */
+    private Map.Entry<Integer, Checkpoint> nearestCheckpoint(int idx)
+    {
+        Map.Entry<Integer, Checkpoint> below = mCheckpoints.floorEntry(idx);
+        Map.Entry<Integer, Checkpoint> above = mCheckpoints.ceilingEntry(idx);
+        if (below == null) {
+            return above;
+        } else if (above == null) {
+            return below;
+        }
+        return (idx - below.getKey() <= above.getKey() - idx) ? below : above;
     }
 
     /**
@@ -93,8 +418,7 @@ public class CommandHistory extends Observable {
         }
 
         mCommandList.get(--mHistoryIdx).undo();
-        this.setChanged();
-        this.notifyObservers(mHistoryIdx);
+        fireHistoryIdxChanged();
     }
 
     /**
@@ -107,12 +431,12 @@ public class CommandHistory extends Observable {
         }
 
         mCommandList.get(mHistoryIdx++).redo();
-        this.setChanged();
-        this.notifyObservers(mHistoryIdx);
+        fireHistoryIdxChanged();
     }
 
     /**
-     * Go forward or backwards through the history to reach a specified index
+     * Go forward or backwards through the history to reach a specified index,
+     * listeners are only notified if the index changes
      *
      * @param idx the index to seek to
      * @throws IndexOutOfBoundsException if "idx" is not in the the range
@@ -128,6 +452,17 @@ public class CommandHistory extends Observable {
             throw new IndexOutOfBoundsException(
                 "Specified history idx cannot be greater than history length");
         }
+        if (idx == mHistoryIdx) {
+            return;
+        }
+
+        // Start from the nearest checkpoint instead, if it is closer
+        Map.Entry<Integer, Checkpoint> cp = nearestCheckpoint(idx);
+        if (cp != null && Math.abs(idx - cp.getKey())
+                < Math.abs(idx - mHistoryIdx)) {
+            cp.getValue().restore();
+            mHistoryIdx = cp.getKey();
+        }
 
         // Either one of the following loops will execute, depending on which
         // direction we need to seek
@@ -138,8 +473,7 @@ public class CommandHistory extends Observable {
         while (idx < mHistoryIdx) {
             mCommandList.get(--mHistoryIdx).undo();
         }
-        this.setChanged();
-        this.notifyObservers(mHistoryIdx);
+        fireHistoryIdxChanged();
     }
 
     /**
@@ -152,10 +486,15 @@ public class CommandHistory extends Observable {
         if (mHistoryIdx < mCommandList.size()) {
             if (clobber) {
                 /* Overwrite (well, remove) history past this point */
-                while (mHistoryIdx < mCommandList.size()) {
-                    mCommandList.remove(mCommandList.size() - 1);
-                    this.setChanged();
-                    this.notifyObservers(HISTORY_CLOBBERED);
+                int size = mCommandList.size();
+                List<Command> clobbered = mCommandList.subList(mHistoryIdx,
+                        size);
+                for (Command c : clobbered) {
+                    mCommandsSize -= c.getSizeEstimate();
+                }
+                clobbered.clear();
+                for (CommandHistoryListener l : getListeners()) {
+                    l.historyTruncated(this, mHistoryIdx, size);
                 }
             } else {
                 throw new RuntimeException(
@@ -163,19 +502,35 @@ public class CommandHistory extends Observable {
                     "command list");
             }
         }
+        dropCheckpointsAfter(mHistoryIdx);
+        if (mCheckpointer != null && mCheckpoints.isEmpty()
+                && mHistoryIdx == 0) {
+            // Nothing has been done yet, so this is the initial state
+            addCheckpoint();
+        }
 
         mCommandList.add(cmd);
         cmd.redo();
         mHistoryIdx++;
-        this.setChanged();
-        this.notifyObservers(cmd);
+        mCommandsSize += cmd.getSizeEstimate();
+        if (mCheckpointer != null && isCheckpointIdx(mHistoryIdx)) {
+            addCheckpoint();
+        }
+        for (CommandHistoryListener l : getListeners()) {
+            l.commandAdded(this, cmd);
+        }
+        compact();
     }
 
     public void clear() {
         mCommandList.clear();
         mHistoryIdx = 0;
-        this.setChanged();
-        this.notifyObservers(HISTORY_CLEARED);
+        mCommandsSize = 0;
+        mNumCompacted = 0;
+        clearCheckpoints();
+        for (CommandHistoryListener l : getListeners()) {
+            l.historyCleared(this);
+        }
     }
 
     public boolean isClobbered() {
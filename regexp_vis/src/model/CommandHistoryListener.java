@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+/**
+ * Listener for changes to a {@link CommandHistory}. Each change is reported
+ * with a single call, however many commands it affects.
+ *
+ * @see CommandHistory#addListener(CommandHistoryListener)
+ */
+public interface CommandHistoryListener {
+    /**
+     * Called after a new command is executed and added to the end of the
+     * history, the history index is then at the end.
+     *
+     * @param history The history which changed
+     * @param cmd The command added
+     */
+    void commandAdded(CommandHistory history, Command cmd);
+
+    /**
+     * Called after the commands past an index are removed, to make way for a
+     * new command.
+     *
+     * @param history The history which changed
+     * @param fromIdx The index of the first command removed
+     * @param toIdx The index after the last command removed, i.e. the size of
+     * the history before they were removed
+     */
+    void historyTruncated(CommandHistory history, int fromIdx, int toIdx);
+
+    /**
+     * Called after the oldest commands are replaced by a single
+     * {@link HistorySnapshotCommand}, which changes the index of every command
+     * after them.
+     *
+     * @param history The history which changed
+     * @param numRemoved The number of commands removed, not counting the
+     * snapshot added in their place
+     */
+    void historyCompacted(CommandHistory history, int numRemoved);
+
+    /**
+     * Called after the history is cleared of all commands.
+     *
+     * @param history The history which changed
+     */
+    void historyCleared(CommandHistory history);
+
+    /**
+     * Called after the history index changes by undoing or redoing commands.
+     *
+     * @param history The history which changed
+     * @param idx The new history index
+     */
+    void historyIdxChanged(CommandHistory history, int idx);
+}
@@ -59,6 +59,17 @@ public abstract class CompositeCommand extends Command {
         for (Command c : this.commands) {
             c.redo();
         }
+        // The commands are all known by now, don't keep spare capacity
+        this.commands.trimToSize();
+    }
+
+    @Override
+    public long getSizeEstimate() {
+        long size = super.getSizeEstimate() + OBJECT_SIZE;
+        for (Command c : this.commands) {
+            size += REFERENCE_SIZE + c.getSizeEstimate();
+        }
+        return size;
     }
 
 }
@@ -59,8 +59,8 @@ public class ConjoinParallelTransitionsCommand extends CompositeCommand {
 
         BasicRegexp newRe = new BasicRegexp(operands,
                 BasicRegexp.RegexpOperator.CHOICE);
-        // Do very low depth optimisation
-        newRe = newRe.optimise(BasicRegexp.OPTIMISE_ALL, 1);
+        // Do very low depth optimisation, and intern like parsed expressions
+        newRe = newRe.optimise(BasicRegexp.OPTIMISE_ALL, 1).intern();
         mNewTransition = automaton.createNewTransition(mFrom, mTo,
                 newRe);
         super.commands.add(new AddTransitionCommand(automaton, mNewTransition));
@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Matcher which runs a DFA compiled into a dense transition table. The
+ * columns of the table are the classes of an AlphabetPartition of the DFA, so
+ * characters are first looked up in its table of classes. A missing
+ * transition is stored as -1. Acceptance is looked up in a bitmap indexed by
+ * state.
+ *
+ * States are numbered by the dense indexes of a FrozenAutomaton of the DFA, or
+ * by the DFA states of a SubsetConstruction, either way the start state is
+ * state 0. Instances are immutable and can be shared between threads.
+ */
+public final class DfaMatcher implements Matcher {
+    private final int mNumStates;
+    private final AlphabetPartition mPartition;
+    // Lookup table of the class of each character, in pages of 256
+    // characters, see AlphabetPartition
+    private final int[] mPages;
+    private final char[] mClassIds;
+    // Number of columns of the table
+    private final int mWidth;
+    // Next state for state "s" and a character of class "k" at s * mWidth + k
+    private final int[] mTable;
+    private final long[] mAccept;
+
+    /**
+     * A DFA in CSR form, which the table is built from. Each transition is on
+     * a range of characters, a character class transition with several ranges
+     * is split into one transition per range.
+     */
+    private static final class Source {
+        int numStates;
+        // Out-going transitions of state "s" are transStart[s] up to
+        // transStart[s + 1]
+        int[] transStart;
+        char[] transFirst;
+        char[] transLast;
+        int[] transTo;
+        boolean[] isFinal;
+
+        Source(int numStates, int numTransitions)
+        {
+            this.numStates = numStates;
+            transStart = new int[numStates + 1];
+            transFirst = new char[numTransitions];
+            transLast = new char[numTransitions];
+            transTo = new int[numTransitions];
+            isFinal = new boolean[numStates];
+        }
+
+        static Source of(FrozenAutomaton frozen)
+        {
+            int n = frozen.getNumStates();
+            int numRanges = 0;
+            for (int e = 0; e < frozen.getNumTransitions(); e++) {
+                if (frozen.isCharClassTransition(e)) {
+                    numRanges += frozen.getTransition(e).getData()
+                            .getNumRanges();
+                } else if (frozen.isSingleCharTransition(e)
+                        && !frozen.isEpsilonTransition(e)) {
+                    numRanges++;
+                } else {
+                    throw new RuntimeException("Automaton must only have "
+                            + "single character and character class, "
+                            + "non-epsilon transitions");
+                }
+            }
+
+            Source src = new Source(n, numRanges);
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                src.transStart[i] = k;
+                src.isFinal[i] = frozen.isFinal(i);
+                int end = frozen.getTransitionsEnd(i);
+                for (int e = frozen.getTransitionsStart(i); e < end; e++) {
+                    BasicRegexp re = frozen.getTransition(e).getData();
+                    if (re.isSingleChar()) {
+                        src.transFirst[k] = re.getChar();
+                        src.transLast[k] = re.getChar();
+                        src.transTo[k++] = frozen.getTransitionTo(e);
+                        continue;
+                    }
+                    for (int r = 0; r < re.getNumRanges(); r++) {
+                        src.transFirst[k] = re.getRangeFirst(r);
+                        src.transLast[k] = re.getRangeLast(r);
+                        src.transTo[k++] = frozen.getTransitionTo(e);
+                    }
+                }
+            }
+            src.transStart[n] = k;
+            return src;
+        }
+
+        static Source of(SubsetConstruction construction)
+        {
+            int n = construction.getNumStates();
+            Source src = new Source(n, construction.getNumTransitions());
+            int k = 0;
+            for (int d = 0; d < n; d++) {
+                src.transStart[d] = k;
+                src.isFinal[d] = construction.isFinal(d);
+                int end = construction.getTransitionsEnd(d);
+                for (int e = construction.getTransitionsStart(d); e < end;
+                        e++) {
+                    src.transFirst[k] = construction.getTransitionChar(e);
+                    src.transLast[k] = construction.getTransitionLastChar(e);
+                    src.transTo[k] = construction.getTransitionTo(e);
+                    k++;
+                }
+            }
+            src.transStart[n] = k;
+            return src;
+        }
+
+        /**
+         * @return The partition of the alphabet, with the ranges from each
+         * state to each state in one group
+         */
+        AlphabetPartition partition()
+        {
+            AlphabetPartition.Ranges ranges = new AlphabetPartition.Ranges();
+            int[] groupTo = new int[numStates];
+            int[] groupFrom = new int[numStates];
+            Arrays.fill(groupFrom, -1);
+            for (int i = 0; i < numStates; i++) {
+                for (int e = transStart[i]; e < transStart[i + 1]; e++) {
+                    int to = transTo[e];
+                    if (groupFrom[to] != i) {
+                        groupFrom[to] = i;
+                        groupTo[to] = ranges.numGroups++;
+                    }
+                    ranges.add(transFirst[e], transLast[e], groupTo[to]);
+                }
+            }
+            return new AlphabetPartition(ranges);
+        }
+    }
+
+    /**
+     * @param automaton The automaton to compile, must be deterministic and
+     * only have single character and character class transitions (without
+     * epsilon transitions)
+     */
+    public DfaMatcher(Automaton automaton)
+    {
+        this(Source.of(automaton.freeze()));
+    }
+
+    /**
+     * Compile the result of a subset construction directly, without creating
+     * an Automaton for it. The states of the matcher are the DFA states of the
+     * construction.
+     *
+     * @param construction The subset construction to compile
+     */
+    public DfaMatcher(SubsetConstruction construction)
+    {
+        this(Source.of(construction));
+    }
+
+    private DfaMatcher(Source src)
+    {
+        mNumStates = src.numStates;
+        mPartition = src.partition();
+        mPages = mPartition.getPages();
+        mClassIds = mPartition.getClassIds();
+        mWidth = mPartition.getNumClasses();
+        if ((long) mNumStates * mWidth > Integer.MAX_VALUE) {
+            throw new RuntimeException("Transition table too large");
+        }
+
+        mTable = new int[mNumStates * mWidth];
+        Arrays.fill(mTable, -1);
+        mAccept = new long[(mNumStates + 63) >>> 6];
+        // The last state to have a transition on each atom, as ranges from a
+        // state must not overlap
+        int[] atomState = new int[mPartition.getNumAtoms()];
+        Arrays.fill(atomState, -1);
+        for (int i = 0; i < mNumStates; i++) {
+            for (int e = src.transStart[i]; e < src.transStart[i + 1]; e++) {
+                int a = mPartition.findAtom(src.transFirst[e]);
+                for (; mPartition.getAtomFirst(a) <= src.transLast[e]; a++) {
+                    if (atomState[a] == i) {
+                        throw new RuntimeException(
+                                "Automaton must be deterministic");
+                    }
+                    atomState[a] = i;
+                    mTable[i * mWidth + mPartition.getAtomClass(a)] =
+                            src.transTo[e];
+                }
+            }
+            if (src.isFinal[i]) {
+                mAccept[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence input)
+    {
+        final int[] table = mTable;
+        final int width = mWidth;
+        final int[] pages = mPages;
+        final char[] classIds = mClassIds;
+        int s = 0;
+        int len = input.length();
+        for (int i = 0; i < len; i++) {
+            char c = input.charAt(i);
+            s = table[s * width + classIds[pages[c >>> 8] + (c & 0xff)]];
+            if (s < 0) {
+                return false;
+            }
+        }
+        return (mAccept[s >>> 6] & (1L << s)) != 0;
+    }
+
+    @Override
+    public boolean matches(char[] input, int off, int len)
+    {
+        if (off < 0 || len < 0 || off + len > input.length) {
+            throw new IndexOutOfBoundsException("Invalid offset or length");
+        }
+        final int[] table = mTable;
+        final int width = mWidth;
+        final int[] pages = mPages;
+        final char[] classIds = mClassIds;
+        int s = 0;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            char c = input[i];
+            s = table[s * width + classIds[pages[c >>> 8] + (c & 0xff)]];
+            if (s < 0) {
+                return false;
+            }
+        }
+        return (mAccept[s >>> 6] & (1L << s)) != 0;
+    }
+
+    /**
+     * @return The number of states of the DFA
+     */
+    public int getNumStates()
+    {
+        return mNumStates;
+    }
+
+    /**
+     * @return The start state, always 0
+     */
+    public int getStartState()
+    {
+        return 0;
+    }
+
+    /**
+     * @param state The current state
+     * @param c The next input character
+     * @return The next state, or -1 if the DFA has no transition for "c"
+     */
+    public int step(int state, char c)
+    {
+        return mTable[state * mWidth + mPartition.getClassId(c)];
+    }
+
+    /**
+     * @param state The state in question
+     * @return True if the state is accepting, false otherwise
+     */
+    public boolean isAccepting(int state)
+    {
+        return (mAccept[state >>> 6] & (1L << state)) != 0;
+    }
+
+    /**
+     * @return The number of entries of the transition table
+     */
+    public int getTableSize()
+    {
+        return mTable.length;
+    }
+
+    /**
+     * @return The partition of the alphabet into the columns of the table
+     */
+    public AlphabetPartition getPartition()
+    {
+        return mPartition;
+    }
+}
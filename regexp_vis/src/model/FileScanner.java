@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs a DfaMatcher over the lines of a file, without decoding the file into
+ * Strings. The file is memory-mapped in regions which start and end on line
+ * boundaries, each line is decoded from UTF-8 (which includes ASCII) while
+ * running the DFA over it. A line matches if the DFA accepts the whole line,
+ * without its "\n" or "\r\n" terminator. Bytes which aren't valid UTF-8 are
+ * read as U+FFFD.
+ *
+ * Lines are numbered from 0, offsets are byte offsets into the file.
+ */
+public final class FileScanner {
+    /**
+     * Listener for the lines matched by a sequential scan, called in the
+     * order of the lines.
+     */
+    public interface MatchListener {
+        /**
+         * @param line The number of the line, from 0
+         * @param offset The byte offset of the start of the line
+         * @param length The length of the line in bytes, without terminator
+         */
+        public void lineMatched(long line, long offset, int length);
+    }
+
+    /**
+     * The matching lines of a scan, in the order of the lines.
+     */
+    public static final class Result implements MatchListener {
+        private long mNumLines;
+        private int mNumMatches;
+        private long[] mLines = new long[16];
+        private long[] mOffsets = new long[16];
+        private int[] mLengths = new int[16];
+
+        private Result()
+        {
+        }
+
+        @Override
+        public void lineMatched(long line, long offset, int length)
+        {
+            if (mNumMatches == mLines.length) {
+                int n = mNumMatches * 2;
+                mLines = Arrays.copyOf(mLines, n);
+                mOffsets = Arrays.copyOf(mOffsets, n);
+                mLengths = Arrays.copyOf(mLengths, n);
+            }
+            mLines[mNumMatches] = line;
+            mOffsets[mNumMatches] = offset;
+            mLengths[mNumMatches] = length;
+            mNumMatches++;
+        }
+
+        /**
+         * @return The number of lines scanned
+         */
+        public long getNumLines()
+        {
+            return mNumLines;
+        }
+
+        /**
+         * @return The number of lines which matched
+         */
+        public int getNumMatches()
+        {
+            return mNumMatches;
+        }
+
+        /**
+         * @param i The index of the match, less than getNumMatches()
+         * @return The number of the matching line
+         */
+        public long getLine(int i)
+        {
+            checkIndex(i);
+            return mLines[i];
+        }
+
+        /**
+         * @param i The index of the match, less than getNumMatches()
+         * @return The byte offset of the matching line
+         */
+        public long getOffset(int i)
+        {
+            checkIndex(i);
+            return mOffsets[i];
+        }
+
+        /**
+         * @param i The index of the match, less than getNumMatches()
+         * @return The length in bytes of the matching line
+         */
+        public int getLength(int i)
+        {
+            checkIndex(i);
+            return mLengths[i];
+        }
+
+        private void checkIndex(int i)
+        {
+            if (i < 0 || i >= mNumMatches) {
+                throw new IndexOutOfBoundsException("Invalid match index: "
+                        + i);
+            }
+        }
+
+        /**
+         * Append the matches of a later part of the file.
+         *
+         * @param other The result of the part
+         */
+        private void append(Result other)
+        {
+            for (int i = 0; i < other.mNumMatches; i++) {
+                lineMatched(mNumLines + other.mLines[i], other.mOffsets[i],
+                        other.mLengths[i]);
+            }
+            mNumLines += other.mNumLines;
+        }
+    }
+
+    /**
+     * Largest region mapped at once by a sequential scan
+     */
+    public static final int MAX_REGION_SIZE = 1 << 28;
+    /**
+     * Smallest region size used by a parallel scan
+     */
+    public static final int MIN_CHUNK_SIZE = 1 << 20;
+    // Size of the buffer used when looking for the end of a line
+    private static final int SEARCH_BUFFER_SIZE = 1 << 16;
+
+    private final DfaMatcher mMatcher;
+
+    /**
+     * @param matcher The DFA to run over each line
+     */
+    public FileScanner(DfaMatcher matcher)
+    {
+        if (matcher == null) {
+            throw new RuntimeException("DfaMatcher cannot be null");
+        }
+        mMatcher = matcher;
+    }
+
+    /**
+     * Scan a file one region at a time, reporting matching lines as they are
+     * found.
+     *
+     * @param file The file to scan
+     * @param listener The listener to report matching lines to
+     * @return The number of lines scanned
+     * @throws IOException If reading the file fails, or a line doesn't fit in
+     * a mapped region
+     */
+    public long scan(Path file, MatchListener listener) throws IOException
+    {
+        try (FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long[] bounds = calcBoundaries(ch, MAX_REGION_SIZE);
+            long line = 0;
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                line += scanRegion(ch, bounds[i], bounds[i + 1], line,
+                        listener);
+            }
+            return line;
+        }
+    }
+
+    /**
+     * Scan a file, collecting the matching lines.
+     *
+     * @param file The file to scan
+     * @return The matching lines
+     * @throws IOException If reading the file fails, or a line doesn't fit in
+     * a mapped region
+     */
+    public Result scan(Path file) throws IOException
+    {
+        Result result = new Result();
+        result.mNumLines = scan(file, result);
+        return result;
+    }
+
+    /**
+     * Scan a file in parallel, splitting it into chunks at line boundaries.
+     * Each chunk is mapped and scanned by its own task.
+     *
+     * @param file The file to scan
+     * @param pool The pool to run on
+     * @return The matching lines
+     * @throws IOException If reading the file fails, or a line doesn't fit in
+     * a mapped region
+     */
+    public Result scanParallel(Path file, ForkJoinPool pool)
+        throws IOException
+    {
+        try (FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            // A few chunks per thread, so uneven chunks even out
+            long size = ch.size();
+            long chunkSize = size / (pool.getParallelism() * 4L);
+            chunkSize = Math.max(MIN_CHUNK_SIZE,
+                    Math.min(chunkSize, MAX_REGION_SIZE));
+            long[] bounds = calcBoundaries(ch, chunkSize);
+
+            List<RecursiveTask<Result>> tasks = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                final long start = bounds[i];
+                final long end = bounds[i + 1];
+                tasks.add(new RecursiveTask<Result>() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected Result compute()
+                    {
+                        Result r = new Result();
+                        try {
+                            r.mNumLines = scanRegion(ch, start, end, 0, r);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        return r;
+                    }
+                });
+            }
+            for (RecursiveTask<Result> task : tasks) {
+                pool.execute(task);
+            }
+
+            Result result = new Result();
+            for (RecursiveTask<Result> task : tasks) {
+                try {
+                    result.append(task.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof UncheckedIOException) {
+                        throw ((UncheckedIOException) e.getCause())
+                                .getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Split a file into regions of roughly the given size, each region
+     * starting at the start of a line.
+     *
+     * @return The start of each region followed by the size of the file
+     */
+    private static long[] calcBoundaries(FileChannel ch, long regionSize)
+        throws IOException
+    {
+        long size = ch.size();
+        long[] bounds = new long[16];
+        int n = 0;
+        bounds[n++] = 0;
+        ByteBuffer buf = ByteBuffer.allocate(SEARCH_BUFFER_SIZE);
+        long pos = 0;
+        while (pos < size) {
+            long next = pos + regionSize;
+            if (next < size) {
+                // The region ends after the first '\n' from its nominal end
+                next = findLineEnd(ch, buf, next - 1, size);
+            } else {
+                next = size;
+            }
+            if (next - pos > Integer.MAX_VALUE) {
+                throw new IOException("Line too long to map at offset "
+                        + pos);
+            }
+            if (n == bounds.length) {
+                bounds = Arrays.copyOf(bounds, n * 2);
+            }
+            bounds[n++] = next;
+            pos = next;
+        }
+        if (n == 1) {
+            // Empty file, a single empty region
+            bounds[n++] = 0;
+        }
+        return Arrays.copyOf(bounds, n);
+    }
+
+    /**
+     * @return The offset after the first '\n' at or after "from", or the size
+     * of the file if there is none
+     */
+    private static long findLineEnd(FileChannel ch, ByteBuffer buf,
+            long from, long size) throws IOException
+    {
+        long pos = from;
+        while (pos < size) {
+            buf.clear();
+            int read = ch.read(buf, pos);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buf.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    /**
+     * Map and scan the lines of a region of the file.
+     *
+     * @param firstLine The number of the first line of the region
+     * @return The number of lines in the region
+     */
+    private long scanRegion(FileChannel ch, long start, long end,
+            long firstLine, MatchListener listener) throws IOException
+    {
+        if (end <= start) {
+            return 0;
+        }
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, start,
+                end - start);
+        final DfaMatcher matcher = mMatcher;
+        final int lim = buf.limit();
+        long line = firstLine;
+        int pos = 0;
+        while (pos < lim) {
+            int lineStart = pos;
+            // End of the line without its terminator, -1 until found
+            int lineEnd = -1;
+            int s = matcher.getStartState();
+            while (pos < lim) {
+                int b = buf.get(pos);
+                if (b == '\n') {
+                    break;
+                } else if (b == '\r' && (pos + 1 == lim
+                        || buf.get(pos + 1) == '\n')) {
+                    // Part of the terminator
+                    lineEnd = pos++;
+                    continue;
+                } else if (b >= 0) {
+                    s = matcher.step(s, (char) b);
+                    pos++;
+                } else {
+                    int cp = decode(buf, pos, lim);
+                    pos += cp >>> 24;
+                    cp &= 0xffffff;
+                    if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                        s = matcher.step(s, Character.highSurrogate(cp));
+                        if (s >= 0) {
+                            s = matcher.step(s, Character.lowSurrogate(cp));
+                        }
+                    } else {
+                        s = matcher.step(s, (char) cp);
+                    }
+                }
+                if (s < 0) {
+                    // Dead, skip the rest of the line
+                    while (pos < lim && buf.get(pos) != '\n') {
+                        pos++;
+                    }
+                    break;
+                }
+            }
+            if (lineEnd < 0) {
+                lineEnd = pos;
+            }
+            if (s >= 0 && matcher.isAccepting(s)) {
+                listener.lineMatched(line, start + lineStart,
+                        lineEnd - lineStart);
+            }
+            line++;
+            // Skip the "\n"
+            pos++;
+        }
+        return line - firstLine;
+    }
+
+    /**
+     * Decode a UTF-8 sequence starting with a non-ASCII byte.
+     *
+     * @return The code point, with the number of bytes used in the top 8
+     * bits. Invalid sequences decode to U+FFFD.
+     */
+    private static int decode(ByteBuffer buf, int pos, int lim)
+    {
+        int b = buf.get(pos) & 0xff;
+        int len;
+        int cp;
+        int min;
+        if ((b & 0xe0) == 0xc0) {
+            len = 2;
+            cp = b & 0x1f;
+            min = 0x80;
+        } else if ((b & 0xf0) == 0xe0) {
+            len = 3;
+            cp = b & 0x0f;
+            min = 0x800;
+        } else if ((b & 0xf8) == 0xf0) {
+            len = 4;
+            cp = b & 0x07;
+            min = 0x10000;
+        } else {
+            return (1 << 24) | 0xfffd;
+        }
+        for (int i = 1; i < len; i++) {
+            if (pos + i >= lim) {
+                return (i << 24) | 0xfffd;
+            }
+            int c = buf.get(pos + i) & 0xff;
+            if ((c & 0xc0) != 0x80) {
+                return (i << 24) | 0xfffd;
+            }
+            cp = (cp << 6) | (c & 0x3f);
+        }
+        if (cp < min || cp > Character.MAX_CODE_POINT
+                || (cp >= Character.MIN_SURROGATE
+                        && cp <= Character.MAX_SURROGATE)) {
+            return (len << 24) | 0xfffd;
+        }
+        return (len << 24) | cp;
+    }
+}
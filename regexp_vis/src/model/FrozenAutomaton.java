@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * An immutable snapshot of an Automaton, for algorithms which only need to
+ * read the automaton. States are numbered with dense indexes 0..n-1, with the
+ * start state always having index 0 and the rest ordered by ID. Transitions
+ * are numbered 0..m-1 and laid out in compressed sparse row (CSR) form: the
+ * out-going transitions of state "i" are those numbered
+ * getTransitionsStart(i) (inclusive) to getTransitionsEnd(i) (exclusive),
+ * ordered by (first) character. The in-going transitions are laid out the same way.
+ *
+ * Dense indexes can be mapped back to the live AutomatonState and
+ * AutomatonTransition objects. Changes made to the Automaton after freezing,
+ * including changes to whether states are final, aren't reflected in the
+ * snapshot.
+ *
+ * @see Automaton#freeze()
+ */
+public final class FrozenAutomaton {
+    /**
+     * Ordering of the out-going transitions of a state: single character and
+     * character class transitions first ordered by their first character,
+     * single characters before classes, then by target state ID
+     */
+    private static final Comparator<AutomatonTransition> TRANSITION_ORDER =
+        new Comparator<AutomatonTransition>() {
+            @Override
+            public int compare(AutomatonTransition t1, AutomatonTransition t2) {
+                int ret = Boolean.compare(!isCharLeaf(t1), !isCharLeaf(t2));
+                if (ret == 0 && isCharLeaf(t1)) {
+                    ret = Character.compare(firstChar(t1.getData()),
+                            firstChar(t2.getData()));
+                }
+                if (ret == 0) {
+                    ret = Boolean.compare(isCharClass(t1), isCharClass(t2));
+                }
+                if (ret == 0) {
+                    ret = Integer.compare(t1.getTo().getId(),
+                            t2.getTo().getId());
+                }
+                return ret;
+            }
+        };
+
+    private final AutomatonState[] mStates;
+    private final HashMap<AutomatonState, Integer> mStateIndexes;
+    private final boolean[] mIsFinal;
+
+    private final AutomatonTransition[] mTransitions;
+    // CSR layout of the out-going transitions, mTransStart has n + 1 entries
+    private final int[] mTransStart;
+    private final int[] mTransFrom;
+    private final int[] mTransTo;
+    private final char[] mTransChar;
+    private final boolean[] mTransIsSingleChar;
+    private final boolean[] mTransIsCharClass;
+    // CSR layout of the in-going transitions, the values of mIngoingTrans are
+    // transition numbers
+    private final int[] mIngoingStart;
+    private final int[] mIngoingTrans;
+
+    FrozenAutomaton(Automaton automaton)
+    {
+        // Dense state indexes, start state first then ordered by ID
+        ArrayList<AutomatonState> states = new ArrayList<>();
+        Iterator<Automaton.StateTransitionsPair> it = automaton.graphIterator();
+        while (it.hasNext()) {
+            AutomatonState s = it.next().getState();
+            if (s != automaton.getStartState()) {
+                states.add(s);
+            }
+        }
+        Collections.sort(states, new Comparator<AutomatonState>() {
+            @Override
+            public int compare(AutomatonState s1, AutomatonState s2) {
+                return Integer.compare(s1.getId(), s2.getId());
+            }
+        });
+        states.add(0, automaton.getStartState());
+
+        int n = states.size();
+        mStates = states.toArray(new AutomatonState[n]);
+        mStateIndexes = new HashMap<>();
+        mIsFinal = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            mStateIndexes.put(mStates[i], i);
+            mIsFinal[i] = mStates[i].isFinal();
+        }
+
+        // Collect the out-going transitions of each state, ordered by
+        // character. Transitions to states which aren't part of the automaton
+        // (e.g. part way through removing a state) are left out.
+        ArrayList<AutomatonTransition> trans = new ArrayList<>();
+        mTransStart = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            mTransStart[i] = trans.size();
+            int rowStart = trans.size();
+            for (AutomatonTransition t : automaton
+                    .getStateTransitions(mStates[i])) {
+                if (mStateIndexes.get(t.getTo()) != null) {
+                    trans.add(t);
+                }
+            }
+            Collections.sort(trans.subList(rowStart, trans.size()),
+                    TRANSITION_ORDER);
+        }
+        mTransStart[n] = trans.size();
+
+        int m = trans.size();
+        mTransitions = trans.toArray(new AutomatonTransition[m]);
+        mTransFrom = new int[m];
+        mTransTo = new int[m];
+        mTransChar = new char[m];
+        mTransIsSingleChar = new boolean[m];
+        mTransIsCharClass = new boolean[m];
+        int[] ingoingCount = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            for (int e = mTransStart[i]; e < mTransStart[i + 1]; e++) {
+                AutomatonTransition t = mTransitions[e];
+                mTransFrom[e] = i;
+                mTransTo[e] = mStateIndexes.get(t.getTo());
+                mTransIsSingleChar[e] = isSingleChar(t);
+                mTransIsCharClass[e] = isCharClass(t);
+                mTransChar[e] = isCharLeaf(t)
+                        ? firstChar(t.getData())
+                        : BasicRegexp.EPSILON_CHAR;
+                ingoingCount[mTransTo[e] + 1]++;
+            }
+        }
+
+        // Counting sort of the transitions by target state for the in-going
+        // layout
+        mIngoingStart = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            mIngoingStart[i + 1] = mIngoingStart[i] + ingoingCount[i + 1];
+        }
+        mIngoingTrans = new int[m];
+        int[] fill = new int[n];
+        for (int e = 0; e < m; e++) {
+            int to = mTransTo[e];
+            mIngoingTrans[mIngoingStart[to] + fill[to]++] = e;
+        }
+    }
+
+    private static boolean isSingleChar(AutomatonTransition t)
+    {
+        return t.getData() != null && t.getData().isSingleChar();
+    }
+
+    private static boolean isCharClass(AutomatonTransition t)
+    {
+        return t.getData() != null && t.getData().isCharClass();
+    }
+
+    private static boolean isCharLeaf(AutomatonTransition t)
+    {
+        return isSingleChar(t) || isCharClass(t);
+    }
+
+    private static char firstChar(BasicRegexp re)
+    {
+        return re.isSingleChar() ? re.getChar() : re.getRangeFirst(0);
+    }
+
+    /**
+     * @return The number of states, i.e. one more than the greatest index
+     */
+    public int getNumStates()
+    {
+        return mStates.length;
+    }
+
+    /**
+     * @return The number of transitions, i.e. one more than the greatest
+     * transition number
+     */
+    public int getNumTransitions()
+    {
+        return mTransitions.length;
+    }
+
+    /**
+     * @return The index of the start state, which is always 0
+     */
+    public int getStartIndex()
+    {
+        return 0;
+    }
+
+    /**
+     * @param idx The index of the state
+     * @return The live AutomatonState for the given index
+     */
+    public AutomatonState getState(int idx)
+    {
+        return mStates[idx];
+    }
+
+    /**
+     * @param state The state in question
+     * @return The index of the given state, or -1 if the state wasn't part of
+     * the automaton when it was frozen
+     */
+    public int getIndex(AutomatonState state)
+    {
+        Integer idx = mStateIndexes.get(state);
+        return idx != null ? idx : -1;
+    }
+
+    /**
+     * @param idx The index of the state
+     * @return Whether the state was final when the automaton was frozen
+     */
+    public boolean isFinal(int idx)
+    {
+        return mIsFinal[idx];
+    }
+
+    /**
+     * @param idx The index of the state
+     * @return The number of the first out-going transition of the state
+     */
+    public int getTransitionsStart(int idx)
+    {
+        return mTransStart[idx];
+    }
+
+    /**
+     * @param idx The index of the state
+     * @return One more than the number of the last out-going transition of the
+     * state
+     */
+    public int getTransitionsEnd(int idx)
+    {
+        return mTransStart[idx + 1];
+    }
+
+    /**
+     * @param idx The index of the state
+     * @return The position of the first in-going transition of the state, to
+     * be passed to getIngoingTransition()
+     */
+    public int getIngoingStart(int idx)
+    {
+        return mIngoingStart[idx];
+    }
+
+    /**
+     * @param idx The index of the state
+     * @return One more than the position of the last in-going transition of
+     * the state
+     */
+    public int getIngoingEnd(int idx)
+    {
+        return mIngoingStart[idx + 1];
+    }
+
+    /**
+     * @param pos A position between getIngoingStart() and getIngoingEnd() of
+     * some state
+     * @return The number of the in-going transition at that position
+     */
+    public int getIngoingTransition(int pos)
+    {
+        return mIngoingTrans[pos];
+    }
+
+    /**
+     * @param e The number of the transition
+     * @return The index of the state the transition is from
+     */
+    public int getTransitionFrom(int e)
+    {
+        return mTransFrom[e];
+    }
+
+    /**
+     * @param e The number of the transition
+     * @return The index of the state the transition goes to
+     */
+    public int getTransitionTo(int e)
+    {
+        return mTransTo[e];
+    }
+
+    /**
+     * @param e The number of the transition
+     * @return Whether the transition is for a single character expression
+     */
+    public boolean isSingleCharTransition(int e)
+    {
+        return mTransIsSingleChar[e];
+    }
+
+    /**
+     * @param e The number of the transition
+     * @return Whether the transition is for a character class expression
+     */
+    public boolean isCharClassTransition(int e)
+    {
+        return mTransIsCharClass[e];
+    }
+
+    /**
+     * @param e The number of the transition
+     * @return The character of a single character transition, or the first
+     * character of a character class transition, undefined for any other
+     * transition
+     */
+    public char getTransitionChar(int e)
+    {
+        return mTransChar[e];
+    }
+
+    /**
+     * @param e The number of the transition
+     * @param c The character in question
+     * @return Whether the transition is a single character (other than
+     * epsilon) or character class transition which matches the character
+     */
+    public boolean transitionMatches(int e, char c)
+    {
+        if (mTransIsCharClass[e]) {
+            return mTransitions[e].getData().matchesChar(c);
+        }
+        return mTransIsSingleChar[e] && mTransChar[e] == c
+                && c != BasicRegexp.EPSILON_CHAR;
+    }
+
+    /**
+     * @param e The number of the transition
+     * @return Whether the transition is an epsilon transition
+     */
+    public boolean isEpsilonTransition(int e)
+    {
+        return mTransIsSingleChar[e]
+                && mTransChar[e] == BasicRegexp.EPSILON_CHAR;
+    }
+
+    /**
+     * @param e The number of the transition
+     * @return The live AutomatonTransition for the given number
+     */
+    public AutomatonTransition getTransition(int e)
+    {
+        return mTransitions[e];
+    }
+}
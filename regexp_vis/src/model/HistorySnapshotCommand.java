@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+/**
+ * Command standing in for a number of the oldest commands of a
+ * CommandHistory, once they have been compacted to stay within its memory
+ * budget. Rather than keeping the commands, it restores a checkpoint taken
+ * before them or one taken after them.
+ *
+ * @see CommandHistory#setHistoryBudget(long)
+ */
+public class HistorySnapshotCommand extends Command {
+    private final Checkpoint mBefore;
+    private final Checkpoint mAfter;
+    private final int mNumCommands;
+
+    HistorySnapshotCommand(Automaton automaton, Checkpoint before,
+            Checkpoint after, int numCommands)
+    {
+        super(automaton);
+        mBefore = before;
+        mAfter = after;
+        mNumCommands = numCommands;
+    }
+
+    /**
+     * @return The number of commands this command stands in for
+     */
+    public int getNumCommands()
+    {
+        return mNumCommands;
+    }
+
+    @Override
+    public void undo()
+    {
+        mBefore.restore();
+    }
+
+    @Override
+    public void redo()
+    {
+        mAfter.restore();
+    }
+
+    @Override
+    public long getSizeEstimate()
+    {
+        // The checkpoints are accounted for by the checkpoint budget
+        return super.getSizeEstimate() + 2 * REFERENCE_SIZE;
+    }
+}
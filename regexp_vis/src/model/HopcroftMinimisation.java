@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Minimises a DFA using Hopcroft's partition refinement algorithm, in
+ * O(m log n) time where "m" is the number of transitions of the completed DFA.
+ * Only states reachable from the start state take part. If some state lacks a
+ * transition for a character in the alphabet, the DFA is first completed with
+ * a sink state, the block of equivalent states the sink ends up in is then
+ * left out of the result so no transitions to a dead state are created.
+ * Character class transitions are handled by using the atoms of the alphabet
+ * as symbols, i.e. the ranges of characters which no transition splits.
+ *
+ * The minimisation runs when this object is created, the result is given as
+ * a block number for each state of the original automaton. The result can be
+ * applied to the automaton with a MinimiseDfaCommand.
+ */
+public final class HopcroftMinimisation {
+    private final Automaton mAutomaton;
+    private final FrozenAutomaton mFrozen;
+    // Block of each state by dense index, -1 if the state is to be removed
+    private final int[] mStateBlock;
+    // Dense index of the state kept for each block
+    private int[] mRepresentatives;
+    private int mNumBlocks;
+    private boolean mSinkAdded;
+    private long mElapsedNanos;
+
+    /**
+     * @param automaton The automaton to minimise, must be deterministic and
+     * only have single character and character class transitions (without
+     * epsilon transitions)
+     */
+    public HopcroftMinimisation(Automaton automaton)
+    {
+        mAutomaton = automaton;
+        mFrozen = automaton.freeze();
+        for (int i = 0; i < mFrozen.getNumStates(); i++) {
+            int end = mFrozen.getTransitionsEnd(i);
+            for (int e = mFrozen.getTransitionsStart(i); e < end; e++) {
+                if (!(mFrozen.isSingleCharTransition(e)
+                        || mFrozen.isCharClassTransition(e))
+                        || mFrozen.isEpsilonTransition(e)) {
+                    throw new RuntimeException("Automaton must only have "
+                            + "single character and character class, "
+                            + "non-epsilon transitions");
+                }
+                // Transitions are ordered by character, overlapping
+                // character classes are found when filling in the table
+                if (e + 1 < end && mFrozen.getTransitionChar(e)
+                        == mFrozen.getTransitionChar(e + 1)) {
+                    throw new RuntimeException(
+                            "Automaton must be deterministic");
+                }
+            }
+        }
+
+        mStateBlock = new int[mFrozen.getNumStates()];
+        Arrays.fill(mStateBlock, -1);
+        long startTime = System.nanoTime();
+        minimise();
+        mElapsedNanos = System.nanoTime() - startTime;
+    }
+
+    private void minimise()
+    {
+        StateSet start = new StateSet(mFrozen.getNumStates());
+        start.add(mFrozen.getStartIndex());
+        int[] states = TranslationTools.calcReachableStates(mFrozen, start,
+                e -> true).toArray();
+        int numReachable = states.length;
+        // Local numbering of the reachable states, the start state is always
+        // local state 0 as it has dense index 0
+        int[] local = new int[mFrozen.getNumStates()];
+        for (int l = 0; l < numReachable; l++) {
+            local[states[l]] = l;
+        }
+
+        // The alphabet, as the sorted distinct boundaries of the atoms: the
+        // first character of each range and the character after the last.
+        // Atom "i" goes from bounds[i] up to bounds[i + 1] (exclusive), the
+        // atoms which no transition covers are left without a symbol.
+        int[] bounds = new int[16];
+        int numBounds = 0;
+        for (int s : states) {
+            int end = mFrozen.getTransitionsEnd(s);
+            for (int e = mFrozen.getTransitionsStart(s); e < end; e++) {
+                BasicRegexp re = mFrozen.getTransition(e).getData();
+                int numRanges = re.isCharClass() ? re.getNumRanges() : 1;
+                if (numBounds + 2 * numRanges > bounds.length) {
+                    bounds = Arrays.copyOf(bounds,
+                            Math.max(numBounds * 2, numBounds + 2 * numRanges));
+                }
+                for (int r = 0; r < numRanges; r++) {
+                    bounds[numBounds++] = rangeFirst(re, r);
+                    bounds[numBounds++] = rangeLast(re, r) + 1;
+                }
+            }
+        }
+        Arrays.sort(bounds, 0, numBounds);
+        int unique = 0;
+        for (int i = 0; i < numBounds; i++) {
+            if (unique == 0 || bounds[i] != bounds[unique - 1]) {
+                bounds[unique++] = bounds[i];
+            }
+        }
+        numBounds = unique;
+        // Symbol of each atom, -1 if no transition covers it
+        int[] atomSymbol = new int[Math.max(numBounds - 1, 0)];
+        int[] covering = new int[numBounds];
+        for (int s : states) {
+            int end = mFrozen.getTransitionsEnd(s);
+            for (int e = mFrozen.getTransitionsStart(s); e < end; e++) {
+                BasicRegexp re = mFrozen.getTransition(e).getData();
+                int numRanges = re.isCharClass() ? re.getNumRanges() : 1;
+                for (int r = 0; r < numRanges; r++) {
+                    covering[Arrays.binarySearch(bounds, 0, numBounds,
+                            rangeFirst(re, r))]++;
+                    covering[Arrays.binarySearch(bounds, 0, numBounds,
+                            rangeLast(re, r) + 1)]--;
+                }
+            }
+        }
+        int k = 0;
+        int depth = 0;
+        for (int i = 0; i < atomSymbol.length; i++) {
+            depth += covering[i];
+            atomSymbol[i] = (depth > 0) ? k++ : -1;
+        }
+
+        // Transition table of the completed DFA, the sink (if needed) is local
+        // state numReachable
+        int sink = numReachable;
+        int[] delta = new int[(numReachable + 1) * k];
+        Arrays.fill(delta, -1);
+        for (int l = 0; l < numReachable; l++) {
+            int s = states[l];
+            int end = mFrozen.getTransitionsEnd(s);
+            for (int e = mFrozen.getTransitionsStart(s); e < end; e++) {
+                BasicRegexp re = mFrozen.getTransition(e).getData();
+                int numRanges = re.isCharClass() ? re.getNumRanges() : 1;
+                for (int r = 0; r < numRanges; r++) {
+                    int i = Arrays.binarySearch(bounds, 0, numBounds,
+                            rangeFirst(re, r));
+                    for (; bounds[i] <= rangeLast(re, r); i++) {
+                        int a = atomSymbol[i];
+                        if (delta[l * k + a] != -1) {
+                            throw new RuntimeException(
+                                    "Automaton must be deterministic");
+                        }
+                        delta[l * k + a] = local[mFrozen.getTransitionTo(e)];
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < numReachable * k; i++) {
+            if (delta[i] == -1) {
+                delta[i] = sink;
+                mSinkAdded = true;
+            }
+        }
+        int n = numReachable;
+        if (mSinkAdded) {
+            Arrays.fill(delta, sink * k, (sink + 1) * k, sink);
+            n++;
+        }
+
+        // Inverse transitions in CSR form, grouped by (target, symbol)
+        int[] invStart = new int[n * k + 1];
+        for (int i = 0; i < n * k; i++) {
+            invStart[delta[i] * k + i % k + 1]++;
+        }
+        for (int i = 0; i < n * k; i++) {
+            invStart[i + 1] += invStart[i];
+        }
+        int[] invSrc = new int[n * k];
+        int[] fill = invStart.clone();
+        for (int i = 0; i < n * k; i++) {
+            invSrc[fill[delta[i] * k + i % k]++] = i / k;
+        }
+
+        // The partition: block "b" is made up of elems[first[b]..end[b]),
+        // states marked during a refinement step are moved to the front
+        int[] elems = new int[n];
+        int[] loc = new int[n];
+        int[] blockOf = new int[n];
+        int[] first = new int[n];
+        int[] end = new int[n];
+        int[] mark = new int[n];
+        int numBlocks = 0;
+
+        int numFinal = 0;
+        for (int l = 0; l < numReachable; l++) {
+            if (mFrozen.isFinal(states[l])) {
+                elems[numFinal++] = l;
+            }
+        }
+        int pos = numFinal;
+        for (int l = 0; l < n; l++) {
+            if (l == sink || !mFrozen.isFinal(states[l])) {
+                elems[pos++] = l;
+            }
+        }
+        if (numFinal > 0) {
+            first[numBlocks] = 0;
+            end[numBlocks++] = numFinal;
+        }
+        if (numFinal < n) {
+            first[numBlocks] = numFinal;
+            end[numBlocks++] = n;
+        }
+        for (int b = 0; b < numBlocks; b++) {
+            for (int i = first[b]; i < end[b]; i++) {
+                loc[elems[i]] = i;
+                blockOf[elems[i]] = b;
+            }
+        }
+
+        // Worklist of (block, symbol) splitters, encoded as block * k + symbol
+        int[] worklist = new int[n * k];
+        boolean[] inWorklist = new boolean[n * k];
+        int top = 0;
+        if (numBlocks == 2) {
+            int smaller = (numFinal <= n - numFinal) ? 0 : 1;
+            for (int a = 0; a < k; a++) {
+                worklist[top++] = smaller * k + a;
+                inWorklist[smaller * k + a] = true;
+            }
+        }
+
+        int[] preds = new int[n];
+        int[] touched = new int[n];
+        while (top > 0) {
+            int splitter = worklist[--top];
+            inWorklist[splitter] = false;
+            int splitBlock = splitter / k;
+            int a = splitter % k;
+
+            // Every state has exactly one successor per symbol, so each
+            // predecessor is only found once
+            int numPreds = 0;
+            for (int i = first[splitBlock]; i < end[splitBlock]; i++) {
+                int t = elems[i];
+                for (int j = invStart[t * k + a]; j < invStart[t * k + a + 1];
+                        j++) {
+                    preds[numPreds++] = invSrc[j];
+                }
+            }
+
+            int numTouched = 0;
+            for (int i = 0; i < numPreds; i++) {
+                int s = preds[i];
+                int b = blockOf[s];
+                int p = loc[s];
+                int q = first[b] + mark[b];
+                elems[p] = elems[q];
+                loc[elems[p]] = p;
+                elems[q] = s;
+                loc[s] = q;
+                if (mark[b]++ == 0) {
+                    touched[numTouched++] = b;
+                }
+            }
+
+            for (int i = 0; i < numTouched; i++) {
+                int b = touched[i];
+                int marked = mark[b];
+                mark[b] = 0;
+                if (marked == end[b] - first[b]) {
+                    continue;
+                }
+
+                // Split off the marked states into a new block
+                int nb = numBlocks++;
+                first[nb] = first[b];
+                end[nb] = first[b] + marked;
+                first[b] = end[nb];
+                for (int j = first[nb]; j < end[nb]; j++) {
+                    blockOf[elems[j]] = nb;
+                }
+
+                int smaller = (marked <= end[b] - first[b]) ? nb : b;
+                for (int c = 0; c < k; c++) {
+                    int add = inWorklist[b * k + c] ? nb : smaller;
+                    if (!inWorklist[add * k + c]) {
+                        worklist[top++] = add * k + c;
+                        inWorklist[add * k + c] = true;
+                    }
+                }
+            }
+        }
+
+        // Number the blocks in order of their first state, so the start
+        // state's block is block 0. The block of the sink is left out, unless
+        // the start state is in it.
+        int dropped = mSinkAdded ? blockOf[sink] : -1;
+        if (dropped == blockOf[0]) {
+            dropped = -1;
+        }
+        int[] blockNumber = new int[numBlocks];
+        Arrays.fill(blockNumber, -1);
+        mRepresentatives = new int[numBlocks];
+        for (int l = 0; l < numReachable; l++) {
+            int b = blockOf[l];
+            if (b == dropped) {
+                continue;
+            }
+            if (blockNumber[b] == -1) {
+                blockNumber[b] = mNumBlocks;
+                mRepresentatives[mNumBlocks++] = states[l];
+            }
+            mStateBlock[states[l]] = blockNumber[b];
+        }
+        mRepresentatives = Arrays.copyOf(mRepresentatives, mNumBlocks);
+    }
+
+    private static char rangeFirst(BasicRegexp re, int r)
+    {
+        return re.isCharClass() ? re.getRangeFirst(r) : re.getChar();
+    }
+
+    private static char rangeLast(BasicRegexp re, int r)
+    {
+        return re.isCharClass() ? re.getRangeLast(r) : re.getChar();
+    }
+
+    /**
+     * @return The automaton which was minimised
+     */
+    public Automaton getAutomaton()
+    {
+        return mAutomaton;
+    }
+
+    /**
+     * @return The snapshot of the automaton the dense indexes refer to
+     */
+    public FrozenAutomaton getFrozenAutomaton()
+    {
+        return mFrozen;
+    }
+
+    /**
+     * @return The number of states of the minimised DFA, i.e. the number of
+     * blocks of equivalent states. Blocks are numbered 0..n-1, with 0 being
+     * the start state's block.
+     */
+    public int getNumBlocks()
+    {
+        return mNumBlocks;
+    }
+
+    /**
+     * @param idx The dense index of a state
+     * @return The block the state belongs to, or -1 if the state is
+     * unreachable or dead and so isn't part of the minimised DFA
+     */
+    public int getBlock(int idx)
+    {
+        return mStateBlock[idx];
+    }
+
+    /**
+     * @param state The state in question
+     * @return The block the state belongs to, or -1 if the state is
+     * unreachable, dead or unknown
+     */
+    public int getBlock(AutomatonState state)
+    {
+        int idx = mFrozen.getIndex(state);
+        return idx < 0 ? -1 : mStateBlock[idx];
+    }
+
+    /**
+     * @param b The block
+     * @return The state kept to stand for the block: the start state for
+     * block 0, otherwise the block's state with the lowest ID
+     */
+    public AutomatonState getRepresentative(int b)
+    {
+        return mFrozen.getState(mRepresentatives[b]);
+    }
+
+    /**
+     * @return Whether the DFA had to be completed with a sink state
+     */
+    public boolean isSinkAdded()
+    {
+        return mSinkAdded;
+    }
+
+    /**
+     * @return The time the minimisation took, in nanoseconds
+     */
+    public long getElapsedNanos()
+    {
+        return mElapsedNanos;
+    }
+}
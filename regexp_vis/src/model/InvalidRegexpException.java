@@ -26,8 +26,30 @@ package model;
  * Exception thrown during parsing of an invalid regular expression
  */
 public class InvalidRegexpException extends Exception {
+    private final int mPosition;
+
     public InvalidRegexpException(String msg)
     {
         super(msg);
+        mPosition = -1;
+    }
+
+    /**
+     * @param msg The description of the error
+     * @param position The index in the input at which the error was found
+     */
+    public InvalidRegexpException(String msg, int position)
+    {
+        super(msg + " at position " + position);
+        mPosition = position;
+    }
+
+    /**
+     * @return The index in the input at which the error was found, or -1 if
+     * unknown
+     */
+    public int getPosition()
+    {
+        return mPosition;
     }
 }
@@ -0,0 +1,414 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Matcher which keeps the automaton as an NFA and only creates the DFA states
+ * it needs while scanning input, as in the subset construction each DFA state
+ * stands for an epsilon closed set of NFA states. Sets are keyed canonically
+ * by their StateSet, so each set has at most one DFA state. Transitions
+ * between DFA states are cached in a table with a column per class of an
+ * AlphabetPartition, once the input has been seen matching runs at the speed
+ * of a table driven DFA.
+ *
+ * At most getMaxStates() DFA states are cached. When the cache is full it is
+ * cleared and refilled, in case the cache keeps being cleared after only a
+ * few characters per state the rest of the input is matched by simulating
+ * the NFA directly instead.
+ *
+ * Instances aren't immutable, the matching methods are synchronized so an
+ * instance can be shared, but each thread having its own instance is faster.
+ */
+public final class LazyDfaMatcher implements Matcher {
+    /**
+     * The default maximum number of cached DFA states
+     */
+    public static final int DEFAULT_MAX_STATES = 4096;
+    /**
+     * If the cache is cleared after fewer than this many characters per
+     * cached state, the cache is considered to be thrashing and the rest of
+     * the input is matched by simulating the NFA
+     */
+    public static final int MIN_CHARS_PER_STATE = 10;
+
+    // Entries of mNext
+    private static final int UNKNOWN = -2;
+    private static final int DEAD = -1;
+    // Returned when a miss finds the cache thrashing
+    private static final int THRASHING = -3;
+
+    private final FrozenAutomaton mFrozen;
+    private final IntPredicate mIsEpsilon;
+    private final int mMaxStates;
+    // Columns are the classes of the alphabet, looked up in pages of 256
+    // characters, see AlphabetPartition
+    private final AlphabetPartition mPartition;
+    private final int[] mPages;
+    private final char[] mClassIds;
+    private final int mNumColumns;
+
+    // The cache: the NFA states of each DFA state, whether it accepts, and the
+    // next DFA state for each DFA state and column
+    private final HashMap<StateSet, Integer> mStateMap;
+    private final StateSet[] mStateSets;
+    private final boolean[] mAccepting;
+    private final int[] mNext;
+    private int mNumStates;
+    private int mStart;
+
+    // Scratch space for computing transitions
+    private final StateSet mScratch;
+    private final int[] mStack;
+    // The set of NFA states to continue from when falling back
+    private StateSet mPending;
+
+    private long mLookups;
+    private long mMisses;
+    private long mEvictions;
+    private long mFlushes;
+    private long mFallbacks;
+    private long mLookupsAtFlush;
+
+    /**
+     * @param automaton The automaton to match with, must only have single
+     * character and character class transitions (including epsilon
+     * transitions)
+     */
+    public LazyDfaMatcher(Automaton automaton)
+    {
+        this(automaton, DEFAULT_MAX_STATES);
+    }
+
+    /**
+     * @param automaton The automaton to match with, must only have single
+     * character and character class transitions (including epsilon
+     * transitions)
+     * @param maxStates The maximum number of DFA states to cache, at least 2
+     */
+    public LazyDfaMatcher(Automaton automaton, int maxStates)
+    {
+        if (maxStates < 2) {
+            throw new RuntimeException("maxStates must be at least 2");
+        }
+        mFrozen = automaton.freeze();
+        mIsEpsilon = mFrozen::isEpsilonTransition;
+        mMaxStates = maxStates;
+
+        mPartition = new AlphabetPartition(mFrozen);
+        mPages = mPartition.getPages();
+        mClassIds = mPartition.getClassIds();
+        mNumColumns = mPartition.getNumClasses();
+
+        mStateMap = new HashMap<>();
+        mStateSets = new StateSet[maxStates];
+        mAccepting = new boolean[maxStates];
+        mNext = new int[maxStates * mNumColumns];
+        mScratch = new StateSet(mFrozen.getNumStates());
+        mStack = new int[mFrozen.getNumStates()];
+
+        addStartState();
+    }
+
+    private void addStartState()
+    {
+        mScratch.add(mFrozen.getStartIndex());
+        TranslationTools.expandReachableStates(mFrozen, mScratch, mIsEpsilon,
+                mStack);
+        mStart = addState(mScratch.copy());
+        mScratch.clear();
+    }
+
+    /**
+     * Add a DFA state to the cache, which must have room for it.
+     *
+     * @param set The epsilon closed set of NFA states, now owned by the cache
+     * @return The new DFA state
+     */
+    private int addState(StateSet set)
+    {
+        int d = mNumStates++;
+        mStateSets[d] = set;
+        mStateMap.put(set, d);
+        boolean accepting = false;
+        for (int s = set.nextIndex(0); s != -1; s = set.nextIndex(s + 1)) {
+            if (mFrozen.isFinal(s)) {
+                accepting = true;
+                break;
+            }
+        }
+        mAccepting[d] = accepting;
+        Arrays.fill(mNext, d * mNumColumns, (d + 1) * mNumColumns, UNKNOWN);
+        return d;
+    }
+
+    /**
+     * Remove every DFA state from the cache, then add the start state again.
+     */
+    private void flush()
+    {
+        mEvictions += mNumStates;
+        mFlushes++;
+        mLookupsAtFlush = mLookups;
+        mStateMap.clear();
+        Arrays.fill(mStateSets, 0, mNumStates, null);
+        mNumStates = 0;
+        addStartState();
+    }
+
+    /**
+     * Calculate the epsilon closed set of NFA states reachable from a set on a
+     * character, into mScratch.
+     */
+    private void move(StateSet from, char c)
+    {
+        for (int s = from.nextIndex(0); s != -1; s = from.nextIndex(s + 1)) {
+            int end = mFrozen.getTransitionsEnd(s);
+            for (int e = mFrozen.getTransitionsStart(s); e < end; e++) {
+                // Transitions are ordered by (first) character
+                if (mFrozen.getTransitionChar(e) > c) {
+                    break;
+                }
+                if (mFrozen.transitionMatches(e, c)) {
+                    mScratch.add(mFrozen.getTransitionTo(e));
+                }
+            }
+        }
+        TranslationTools.expandReachableStates(mFrozen, mScratch, mIsEpsilon,
+                mStack);
+    }
+
+    /**
+     * Handle a cache miss, computing and caching the next DFA state.
+     *
+     * @param d The current DFA state
+     * @param col The column of the next character
+     * @param lookups The number of lookups so far, including this one
+     * @return The next DFA state, DEAD, or THRASHING if the cache is
+     * thrashing, in which case mPending holds the next set of NFA states
+     */
+    private int miss(int d, int col, long lookups)
+    {
+        mMisses++;
+        move(mStateSets[d], mPartition.getFirstChar(col));
+        if (mScratch.isEmpty()) {
+            mNext[d * mNumColumns + col] = DEAD;
+            return DEAD;
+        }
+
+        Integer next = mStateMap.get(mScratch);
+        if (next != null) {
+            mScratch.clear();
+            mNext[d * mNumColumns + col] = next;
+            return next;
+        }
+
+        StateSet set = mScratch.copy();
+        mScratch.clear();
+        if (mNumStates == mMaxStates) {
+            boolean thrashing = lookups - mLookupsAtFlush
+                    < (long) MIN_CHARS_PER_STATE * mMaxStates;
+            // This loses "d", the caller continues from the returned state
+            mLookups = lookups;
+            flush();
+            // Don't cache a second copy of a state flush() added back
+            next = mStateMap.get(set);
+            if (next != null) {
+                return next;
+            }
+            if (thrashing) {
+                mFallbacks++;
+                mPending = set;
+                return THRASHING;
+            }
+        } else {
+            mNext[d * mNumColumns + col] = mNumStates;
+        }
+        return addState(set);
+    }
+
+    /**
+     * Match the rest of the input by simulating the NFA, starting from the
+     * set of states in mPending.
+     */
+    private boolean simulate(CharSequence input, int from)
+    {
+        StateSet current = mPending;
+        mPending = null;
+        for (int i = from; i < input.length(); i++) {
+            move(current, input.charAt(i));
+            current.clear();
+            current.addAll(mScratch);
+            mScratch.clear();
+            if (current.isEmpty()) {
+                return false;
+            }
+        }
+        for (int s = current.nextIndex(0); s != -1;
+                s = current.nextIndex(s + 1)) {
+            if (mFrozen.isFinal(s)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized boolean matches(CharSequence input)
+    {
+        final int[] next = mNext;
+        final int[] pages = mPages;
+        final char[] classIds = mClassIds;
+        final int numColumns = mNumColumns;
+        final long lookupsAtStart = mLookups;
+        int len = input.length();
+        int d = mStart;
+        for (int i = 0; i < len; i++) {
+            char c = input.charAt(i);
+            int col = classIds[pages[c >>> 8] + (c & 0xff)];
+            int n = next[d * numColumns + col];
+            if (n == UNKNOWN) {
+                n = miss(d, col, lookupsAtStart + i + 1);
+                if (n == THRASHING) {
+                    mLookups = lookupsAtStart + i + 1;
+                    return simulate(input, i + 1);
+                }
+            }
+            if (n == DEAD) {
+                mLookups = lookupsAtStart + i + 1;
+                return false;
+            }
+            d = n;
+        }
+        mLookups = lookupsAtStart + len;
+        return mAccepting[d];
+    }
+
+    @Override
+    public synchronized boolean matches(char[] input, int off, int len)
+    {
+        if (off < 0 || len < 0 || off + len > input.length) {
+            throw new IndexOutOfBoundsException("Invalid offset or length");
+        }
+        final int[] next = mNext;
+        final int[] pages = mPages;
+        final char[] classIds = mClassIds;
+        final int numColumns = mNumColumns;
+        final long lookupsAtStart = mLookups;
+        int d = mStart;
+        for (int i = 0; i < len; i++) {
+            char c = input[off + i];
+            int col = classIds[pages[c >>> 8] + (c & 0xff)];
+            int n = next[d * numColumns + col];
+            if (n == UNKNOWN) {
+                n = miss(d, col, lookupsAtStart + i + 1);
+                if (n == THRASHING) {
+                    mLookups = lookupsAtStart + i + 1;
+                    return simulate(CharBuffer.wrap(input, off, len), i + 1);
+                }
+            }
+            if (n == DEAD) {
+                mLookups = lookupsAtStart + i + 1;
+                return false;
+            }
+            d = n;
+        }
+        mLookups = lookupsAtStart + len;
+        return mAccepting[d];
+    }
+
+    /**
+     * @return The maximum number of cached DFA states
+     */
+    public int getMaxStates()
+    {
+        return mMaxStates;
+    }
+
+    /**
+     * @return The number of DFA states currently cached
+     */
+    public synchronized int getNumCachedStates()
+    {
+        return mNumStates;
+    }
+
+    /**
+     * @return The number of transitions which were found in the cache
+     */
+    public synchronized long getHits()
+    {
+        return mLookups - mMisses;
+    }
+
+    /**
+     * @return The number of transitions which had to be computed
+     */
+    public synchronized long getMisses()
+    {
+        return mMisses;
+    }
+
+    /**
+     * @return The number of DFA states removed from the cache
+     */
+    public synchronized long getEvictions()
+    {
+        return mEvictions;
+    }
+
+    /**
+     * @return The number of times the cache was cleared
+     */
+    public synchronized long getFlushes()
+    {
+        return mFlushes;
+    }
+
+    /**
+     * @return The number of inputs which were finished by simulating the NFA,
+     * as the cache was thrashing
+     */
+    public synchronized long getFallbacks()
+    {
+        return mFallbacks;
+    }
+
+    /**
+     * Reset the hit, miss, eviction, flush and fallback counters. The cache is
+     * kept.
+     */
+    public synchronized void resetCounters()
+    {
+        mLookups = 0;
+        mMisses = 0;
+        mEvictions = 0;
+        mFlushes = 0;
+        mFallbacks = 0;
+        mLookupsAtFlush = 0;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command which minimises a DFA using a HopcroftMinimisation. One state of
+ * each block of equivalent states is kept, transitions to the other states of
+ * the block are redirected to it. All other states, i.e. the rest of each
+ * block, unreachable states and dead states, are removed. Transitions which
+ * end up going from the same state to the same state are joined into one,
+ * if they are all on single characters or character classes.
+ */
+public class MinimiseDfaCommand extends CompositeCommand {
+    private final ArrayList<AutomatonState> mRemovedStates;
+
+    public MinimiseDfaCommand(Automaton automaton)
+    {
+        super(automaton);
+        HopcroftMinimisation min = new HopcroftMinimisation(automaton);
+        mRemovedStates = new ArrayList<>();
+
+        ArrayList<List<AutomatonTransition>> oldTrans = new ArrayList<>();
+        Iterator<Automaton.StateTransitionsPair> it = automaton
+                .graphIterator();
+        while (it.hasNext()) {
+            Automaton.StateTransitionsPair pair = it.next();
+            if (!isKept(min, pair.getState())) {
+                mRemovedStates.add(pair.getState());
+            }
+            oldTrans.add(new ArrayList<>(pair.getTransitions()));
+        }
+
+        for (List<AutomatonTransition> stateTrans : oldTrans) {
+            // The transitions of this state, by the state they end up going to
+            LinkedHashMap<AutomatonState, List<AutomatonTransition>> byTarget =
+                new LinkedHashMap<>();
+            for (AutomatonTransition t : stateTrans) {
+                if (!isKept(min, t.getFrom())) {
+                    // Removed along with the state, but must be done
+                    // beforehand as the state might have in-going
+                    // transitions from it
+                    super.commands.add(new RemoveTransitionCommand(automaton,
+                            t));
+                    continue;
+                }
+                if (!automaton.stateExists(t.getTo())) {
+                    continue;
+                }
+                AutomatonState to = t.getTo();
+                if (!isKept(min, to)) {
+                    int b = min.getBlock(to);
+                    if (b == -1) {
+                        super.commands.add(new RemoveTransitionCommand(
+                                automaton, t));
+                        continue;
+                    }
+                    to = min.getRepresentative(b);
+                }
+                List<AutomatonTransition> group = byTarget.get(to);
+                if (group == null) {
+                    group = new ArrayList<>();
+                    byTarget.put(to, group);
+                }
+                group.add(t);
+            }
+
+            for (Map.Entry<AutomatonState, List<AutomatonTransition>> e
+                    : byTarget.entrySet()) {
+                redirect(automaton, e.getValue(), e.getKey());
+            }
+        }
+
+        for (AutomatonState s : mRemovedStates) {
+            super.commands.add(new RemoveStateCommand(automaton, s));
+        }
+    }
+
+    /**
+     * Make the given transitions, all from the same state, go to the given
+     * state, joining them into one transition if they can be.
+     */
+    private void redirect(Automaton automaton,
+            List<AutomatonTransition> group, AutomatonState to)
+    {
+        BasicRegexp joined = (group.size() > 1) ? joinLabels(group) : null;
+        for (AutomatonTransition t : group) {
+            if (joined == null && t.getTo() == to) {
+                continue;
+            }
+            super.commands.add(new RemoveTransitionCommand(automaton, t));
+            if (joined == null) {
+                super.commands.add(new AddTransitionCommand(automaton,
+                        automaton.createNewTransition(t.getFrom(), to,
+                                t.getData())));
+            }
+        }
+        if (joined != null) {
+            super.commands.add(new AddTransitionCommand(automaton,
+                    automaton.createNewTransition(group.get(0).getFrom(), to,
+                            joined)));
+        }
+    }
+
+    /**
+     * @return The character class covering the labels of the transitions, or
+     * null if any of them isn't a single character or character class
+     */
+    private static BasicRegexp joinLabels(List<AutomatonTransition> group)
+    {
+        char[] ranges = new char[0];
+        int k = 0;
+        for (AutomatonTransition t : group) {
+            BasicRegexp re = t.getData();
+            if (re.isSingleChar() && re.getChar() != BasicRegexp.EPSILON_CHAR) {
+                ranges = Arrays.copyOf(ranges, k + 2);
+                ranges[k++] = re.getChar();
+                ranges[k++] = re.getChar();
+            } else if (re.isCharClass()) {
+                ranges = Arrays.copyOf(ranges, k + 2 * re.getNumRanges());
+                for (int r = 0; r < re.getNumRanges(); r++) {
+                    ranges[k++] = re.getRangeFirst(r);
+                    ranges[k++] = re.getRangeLast(r);
+                }
+            } else {
+                return null;
+            }
+        }
+        return BasicRegexp.valueOfClass(ranges);
+    }
+
+    private static boolean isKept(HopcroftMinimisation min,
+            AutomatonState state)
+    {
+        int b = min.getBlock(state);
+        return b != -1 && min.getRepresentative(b) == state;
+    }
+
+    /**
+     * @return The states which this command removes
+     */
+    public List<AutomatonState> getRemovedStates()
+    {
+        return Collections.unmodifiableList(mRemovedStates);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Matches inputs against many regexps at once, reporting which of them
+ * matched. The regexps are combined into one NFA with a shared start state,
+ * which has an epsilon transition to a sub-automaton for each regexp; each
+ * sub-automaton has its own final state, which carries the ID of its regexp
+ * (its index in the list). The NFA is broken down and determinised with a
+ * SubsetConstruction, each DFA state accepts the regexps whose final states
+ * are in its subset. One pass over the input then finds every regexp which
+ * matches it.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public final class MultiPatternMatcher implements Matcher {
+    private static final int[] NO_PATTERNS = new int[0];
+
+    private final List<BasicRegexp> mPatterns;
+    private final DfaMatcher mDfa;
+    // The sorted IDs of the regexps accepted by each DFA state, DFA states
+    // accepting the same regexps share an array
+    private final int[][] mAccepted;
+
+    /**
+     * @param patterns The regexps to match, none of which can be null
+     */
+    public MultiPatternMatcher(List<BasicRegexp> patterns)
+    {
+        mPatterns = Collections.unmodifiableList(new ArrayList<>(patterns));
+
+        Automaton nfa = new Automaton();
+        AutomatonState startState = nfa.getStartState();
+        HashMap<AutomatonState, Integer> finalStates = new HashMap<>();
+        for (int i = 0; i < mPatterns.size(); i++) {
+            BasicRegexp re = mPatterns.get(i);
+            if (re == null) {
+                throw new RuntimeException("BasicRegexp cannot be null");
+            }
+            AutomatonState s = nfa.createNewState();
+            AutomatonState f = nfa.createNewState();
+            f.setFinal(true);
+            nfa.addStateWithTransitions(s,
+                    new LinkedList<AutomatonTransition>());
+            nfa.addStateWithTransitions(f,
+                    new LinkedList<AutomatonTransition>());
+            nfa.addTransition(nfa.createNewTransition(startState, s,
+                    BasicRegexp.EPSILON_EXPRESSION));
+            nfa.addTransition(nfa.createNewTransition(s, f, re));
+            finalStates.put(f, i);
+        }
+        RegexpCompiler.breakdown(nfa);
+
+        SubsetConstruction construction = new SubsetConstruction(nfa);
+        mDfa = new DfaMatcher(construction);
+        FrozenAutomaton frozen = construction.getFrozenAutomaton();
+        int[] patternOf = new int[frozen.getNumStates()];
+        Arrays.fill(patternOf, -1);
+        for (int i = 0; i < frozen.getNumStates(); i++) {
+            Integer id = finalStates.get(frozen.getState(i));
+            if (id != null) {
+                patternOf[i] = id;
+            }
+        }
+
+        mAccepted = new int[construction.getNumStates()][];
+        HashMap<List<Integer>, int[]> shared = new HashMap<>();
+        for (int d = 0; d < mAccepted.length; d++) {
+            ArrayList<Integer> ids = new ArrayList<>();
+            for (int s : construction.getSubsetIndexes(d)) {
+                if (patternOf[s] != -1) {
+                    ids.add(patternOf[s]);
+                }
+            }
+            if (ids.isEmpty()) {
+                mAccepted[d] = NO_PATTERNS;
+                continue;
+            }
+            Collections.sort(ids);
+            int[] arr = shared.get(ids);
+            if (arr == null) {
+                arr = new int[ids.size()];
+                for (int j = 0; j < arr.length; j++) {
+                    arr[j] = ids.get(j);
+                }
+                shared.put(ids, arr);
+            }
+            mAccepted[d] = arr;
+        }
+    }
+
+    /**
+     * @return The regexps, indexed by ID
+     */
+    public List<BasicRegexp> getPatterns()
+    {
+        return mPatterns;
+    }
+
+    /**
+     * @return The number of regexps
+     */
+    public int getNumPatterns()
+    {
+        return mPatterns.size();
+    }
+
+    /**
+     * @return The number of states of the DFA
+     */
+    public int getNumStates()
+    {
+        return mDfa.getNumStates();
+    }
+
+    /**
+     * Run the DFA over an input, without allocating anything. The regexps
+     * which matched can then be found with getNumMatched() and getMatched().
+     *
+     * @param input The input to match
+     * @return The DFA state the input ends in, or -1 if the DFA died
+     */
+    public int run(CharSequence input)
+    {
+        final DfaMatcher dfa = mDfa;
+        int s = dfa.getStartState();
+        int len = input.length();
+        for (int i = 0; i < len && s >= 0; i++) {
+            s = dfa.step(s, input.charAt(i));
+        }
+        return s;
+    }
+
+    /**
+     * @param state A DFA state returned by run(), can be -1
+     * @return The number of regexps the state accepts
+     */
+    public int getNumMatched(int state)
+    {
+        return state < 0 ? 0 : mAccepted[state].length;
+    }
+
+    /**
+     * @param state A DFA state returned by run()
+     * @param i The index of the regexp, less than getNumMatched(state)
+     * @return The ID of the regexp, IDs are in ascending order
+     */
+    public int getMatched(int state, int i)
+    {
+        return mAccepted[state][i];
+    }
+
+    /**
+     * @param input The input to match
+     * @return The IDs of the regexps which match the input, in ascending
+     * order
+     */
+    public int[] match(CharSequence input)
+    {
+        int s = run(input);
+        return s < 0 ? NO_PATTERNS : mAccepted[s].clone();
+    }
+
+    /**
+     * @return True if any of the regexps matches the input
+     */
+    @Override
+    public boolean matches(CharSequence input)
+    {
+        return mDfa.matches(input);
+    }
+
+    /**
+     * @return True if any of the regexps matches the input
+     */
+    @Override
+    public boolean matches(char[] input, int off, int len)
+    {
+        return mDfa.matches(input, off, len);
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Compiles a regular expression into a minimal DFA without any user
+ * interaction, running the same translation steps as the interactive
+ * activities one after the other:
+ *
+ * 1. Breakdown of the regexp transition until only single character
+ *    transitions remain.
+ * 2. Removal of epsilon transitions, followed by the removal of states which
+ *    became unreachable.
+ * 3. Subset construction, giving a DFA.
+ * 4. Minimisation of the DFA.
+ *
+ * The pipeline runs when this object is created, the time taken by each stage
+ * is recorded.
+ */
+public final class RegexpCompiler {
+    /**
+     * The stages of the pipeline, in the order they run.
+     */
+    public enum Stage {
+        BREAKDOWN,
+        EPSILON_REMOVAL,
+        SUBSET_CONSTRUCTION,
+        MINIMISATION
+    }
+
+    private final BasicRegexp mRegexp;
+    private final long[] mStageNanos;
+    private final int mNumNfaStates;
+    private final int mNumNfaTransitions;
+    private final int mNumDfaStates;
+    private final Automaton mResult;
+
+    /**
+     * @param re The regexp to compile, can't be null
+     */
+    public RegexpCompiler(BasicRegexp re)
+    {
+        if (re == null) {
+            throw new RuntimeException("BasicRegexp cannot be null");
+        }
+        mRegexp = re;
+        mStageNanos = new long[Stage.values().length];
+
+        long t0 = System.nanoTime();
+        Automaton nfa = createNfa(re);
+        long t1 = System.nanoTime();
+        removeEpsilonTransitions(nfa);
+        long t2 = System.nanoTime();
+        mNumNfaStates = nfa.getNumStates();
+        mNumNfaTransitions = countTransitions(nfa);
+
+        SubsetConstruction construction = new SubsetConstruction(nfa);
+        Automaton dfa = construction.createAutomaton();
+        long t3 = System.nanoTime();
+        mNumDfaStates = dfa.getNumStates();
+
+        new MinimiseDfaCommand(dfa).redo();
+        long t4 = System.nanoTime();
+        mResult = dfa;
+
+        mStageNanos[Stage.BREAKDOWN.ordinal()] = t1 - t0;
+        mStageNanos[Stage.EPSILON_REMOVAL.ordinal()] = t2 - t1;
+        mStageNanos[Stage.SUBSET_CONSTRUCTION.ordinal()] = t3 - t2;
+        mStageNanos[Stage.MINIMISATION.ordinal()] = t4 - t3;
+    }
+
+    /**
+     * Create an NFA for a regexp by breaking down a single transition from the
+     * start state to a final state, until there are only single character
+     * transitions (which may be epsilon transitions) left. This is the first
+     * stage of the pipeline.
+     *
+     * @param re The regexp, can't be null
+     * @return The NFA
+     */
+    public static Automaton createNfa(BasicRegexp re)
+    {
+        if (re == null) {
+            throw new RuntimeException("BasicRegexp cannot be null");
+        }
+        Automaton nfa = new Automaton();
+        AutomatonState startState = nfa.getStartState();
+        AutomatonState finalState = nfa.createNewState();
+        finalState.setFinal(true);
+        nfa.addStateWithTransitions(finalState,
+                new LinkedList<AutomatonTransition>());
+        nfa.addTransition(nfa.createNewTransition(startState, finalState, re));
+        breakdown(nfa);
+        return nfa;
+    }
+
+    /**
+     * Breakdown every transition repeatedly, until there are only single
+     * character transitions left.
+     *
+     * @param automaton The automaton to breakdown in-place
+     */
+    public static void breakdown(Automaton automaton)
+    {
+        List<AutomatonTransition> todo;
+        while ((todo = TranslationTools
+                .getAllTransitionsToBreakdown(automaton)) != null) {
+            for (AutomatonTransition t : todo) {
+                TranslationTools.createBreakdownCommand(automaton, t).redo();
+            }
+        }
+    }
+
+    /**
+     * Remove the out-going epsilon transitions of every state, then remove the
+     * states which can no longer be reached from the start state.
+     */
+    private static void removeEpsilonTransitions(Automaton automaton)
+    {
+        ArrayList<AutomatonState> todo = new ArrayList<>();
+        Iterator<Automaton.StateTransitionsPair> it = automaton
+                .graphIterator();
+        while (it.hasNext()) {
+            AutomatonState state = it.next().getState();
+            if (TranslationTools.stateHasEpsilonTransitions(automaton, state)) {
+                todo.add(state);
+            }
+        }
+        for (AutomatonState state : todo) {
+            new RemoveEpsilonTransitionsCommand(automaton, state).redo();
+        }
+
+        // Create all the commands first, as each one only removes the
+        // in-going transitions which exist when it is created
+        ArrayList<Command> removeCmds = new ArrayList<>();
+        for (AutomatonState state : TranslationTools
+                .automatonCalcUnreachableStates(automaton)) {
+            removeCmds.add(new RemoveStateCleanlyCommand(automaton, state));
+        }
+        for (Command cmd : removeCmds) {
+            cmd.redo();
+        }
+    }
+
+    private static int countTransitions(Automaton automaton)
+    {
+        int count = 0;
+        Iterator<Automaton.StateTransitionsPair> it = automaton
+                .graphIterator();
+        while (it.hasNext()) {
+            count += it.next().getTransitions().size();
+        }
+        return count;
+    }
+
+    /**
+     * @return The regexp which was compiled
+     */
+    public BasicRegexp getRegexp()
+    {
+        return mRegexp;
+    }
+
+    /**
+     * @return The minimal DFA
+     */
+    public Automaton getAutomaton()
+    {
+        return mResult;
+    }
+
+    /**
+     * @return The number of states of the NFA after epsilon removal
+     */
+    public int getNumNfaStates()
+    {
+        return mNumNfaStates;
+    }
+
+    /**
+     * @return The number of transitions of the NFA after epsilon removal
+     */
+    public int getNumNfaTransitions()
+    {
+        return mNumNfaTransitions;
+    }
+
+    /**
+     * @return The number of states of the DFA before minimisation
+     */
+    public int getNumDfaStates()
+    {
+        return mNumDfaStates;
+    }
+
+    /**
+     * @param stage The stage in question
+     * @return The time taken by the stage, in nanoseconds
+     */
+    public long getStageNanos(Stage stage)
+    {
+        return mStageNanos[stage.ordinal()];
+    }
+
+    /**
+     * @return The time taken by all stages, in nanoseconds
+     */
+    public long getTotalNanos()
+    {
+        long total = 0;
+        for (long n : mStageNanos) {
+            total += n;
+        }
+        return total;
+    }
+}
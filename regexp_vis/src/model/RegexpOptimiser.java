@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Optimises regular expressions until no more optimisations can be made,
+ * remembering the results in a bounded memo table. Sub-expressions are
+ * optimised before the expressions containing them, so every distinct
+ * sub-expression is only optimised once while it stays in the table. When the
+ * table is full the least recently used entries are evicted.
+ *
+ * @see BasicRegexp#optimise(int, int)
+ */
+public final class RegexpOptimiser {
+    /**
+     * Default maximum number of entries of the memo table
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 16;
+
+    /**
+     * The level passed to BasicRegexp.optimise() for each step. The operands
+     * are already fully optimised by then, so a small level is enough.
+     */
+    private static final int STEP_LEVEL = 4;
+
+    /**
+     * Bound on the number of steps for one expression, as a guard against
+     * rewrites which never settle
+     */
+    private static final int MAX_STEPS = 64;
+
+    private static final RegexpOptimiser DEFAULT_OPTIMISER =
+        new RegexpOptimiser(DEFAULT_MAX_ENTRIES);
+
+    /**
+     * Key of the memo table, an interned expression along with the
+     * optimisations to make. Equal expressions share an entry even if their
+     * CHOICE operands are in a different order, comparing them is a pointer
+     * comparison as they are interned.
+     */
+    private static final class MemoKey {
+        private final BasicRegexp mRegexp;
+        private final int mWhat;
+
+        private MemoKey(BasicRegexp re, int what)
+        {
+            mRegexp = re;
+            mWhat = what;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return mRegexp.hashCode() * 31 + mWhat;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof MemoKey)) {
+                return false;
+            }
+            MemoKey other = (MemoKey) obj;
+            return mRegexp.equals(other.mRegexp) && mWhat == other.mWhat;
+        }
+    }
+
+    private final int mMaxEntries;
+    private final LinkedHashMap<MemoKey, BasicRegexp> mMemo;
+    private final long[] mRewriteCounts;
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+
+    /**
+     * @param maxEntries The maximum number of entries of the memo table
+     */
+    public RegexpOptimiser(int maxEntries)
+    {
+        mMaxEntries = maxEntries;
+        mMemo = new LinkedHashMap<MemoKey, BasicRegexp>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<MemoKey, BasicRegexp> eldest)
+            {
+                if (size() > mMaxEntries) {
+                    mEvictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        mRewriteCounts = new long[BasicRegexp.OptimiseRule.values().length];
+    }
+
+    /**
+     * @return An optimiser shared by the whole application
+     */
+    public static RegexpOptimiser getDefault()
+    {
+        return DEFAULT_OPTIMISER;
+    }
+
+    /**
+     * Optimises the given expression until no more optimisations can be made.
+     *
+     * @param re The expression to optimise
+     * @param what A bitfield describing what optimisations to make
+     * (BasicRegexp.OPTIMISE_* constants)
+     * @return The optimised expression, interned
+     */
+    public synchronized BasicRegexp optimise(BasicRegexp re, int what)
+    {
+        return optimiseInterned(re.intern(), what);
+    }
+
+    private BasicRegexp optimiseInterned(BasicRegexp re, int what)
+    {
+        MemoKey key = new MemoKey(re, what);
+        BasicRegexp result = mMemo.get(key);
+        if (result != null) {
+            mHits++;
+            return result;
+        }
+        mMisses++;
+
+        result = re;
+        for (int step = 0; step < MAX_STEPS; step++) {
+            result = optimiseOperands(result, what);
+            BasicRegexp next = result.optimise(what, STEP_LEVEL,
+                    mRewriteCounts).intern();
+            if (next == result) {
+                break;
+            }
+            result = next;
+        }
+
+        mMemo.put(key, result);
+        // The result is already optimised, so is its own result
+        mMemo.put(new MemoKey(result, what), result);
+        return result;
+    }
+
+    /**
+     * @param re An interned expression
+     * @param what The optimisations to make
+     * @return The interned expression with all of its operands optimised
+     */
+    private BasicRegexp optimiseOperands(BasicRegexp re, int what)
+    {
+        if (re.getOperator() == BasicRegexp.RegexpOperator.NONE) {
+            return re;
+        }
+
+        ArrayList<BasicRegexp> operands = new ArrayList<>();
+        boolean changed = false;
+        for (BasicRegexp operand : re.getOperands()) {
+            BasicRegexp optimised = optimiseInterned(operand, what);
+            changed |= (optimised != operand);
+            operands.add(optimised);
+        }
+        if (!changed) {
+            return re;
+        }
+        return new BasicRegexp(operands, re.getOperator()).intern();
+    }
+
+    /**
+     * @param rule The rule in question
+     * @return The number of times the rule was applied by this optimiser
+     */
+    public synchronized long getRewriteCount(BasicRegexp.OptimiseRule rule)
+    {
+        return mRewriteCounts[rule.ordinal()];
+    }
+
+    /**
+     * @return The number of lookups in the memo table which found a result
+     */
+    public synchronized long getHits()
+    {
+        return mHits;
+    }
+
+    /**
+     * @return The number of lookups in the memo table which didn't find a
+     * result
+     */
+    public synchronized long getMisses()
+    {
+        return mMisses;
+    }
+
+    /**
+     * @return The number of entries evicted from the memo table
+     */
+    public synchronized long getEvictions()
+    {
+        return mEvictions;
+    }
+
+    /**
+     * @return The number of entries in the memo table
+     */
+    public synchronized int size()
+    {
+        return mMemo.size();
+    }
+
+    /**
+     * Empties the memo table and resets all counters.
+     */
+    public synchronized void clear()
+    {
+        mMemo.clear();
+        Arrays.fill(mRewriteCounts, 0);
+        mHits = 0;
+        mMisses = 0;
+        mEvictions = 0;
+    }
+}
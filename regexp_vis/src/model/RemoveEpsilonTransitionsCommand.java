@@ -23,8 +23,8 @@
 package model;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
@@ -46,11 +46,13 @@ public class RemoveEpsilonTransitionsCommand extends CompositeCommand {
                 .calcEpsilonReachableStates(automaton, mTargetState);
 
         // Check if we can reach a final state, in which case this state needs
-        // to be made final as well
+        // to be made final as well. Only add one command, as SetIsFinalCommand
+        // toggles the state and two of them would cancel out.
         for (AutomatonState s2 : reachable) {
             if (s2.isFinal()) {
                 super.commands.add(new SetIsFinalCommand(automaton,
                         mTargetState, true));
+                break;
             }
         }
 
@@ -58,7 +60,8 @@ public class RemoveEpsilonTransitionsCommand extends CompositeCommand {
         List<AutomatonTransition> outgoingTrans = automaton
                 .getStateTransitions(mTargetState);
         for (AutomatonTransition t : outgoingTrans) {
-            if (t.getData().getChar() == BasicRegexp.EPSILON_CHAR) {
+            BasicRegexp re = t.getData();
+            if (re.isSingleChar() && re.getChar() == BasicRegexp.EPSILON_CHAR) {
                 super.commands.add(new RemoveTransitionCommand(automaton, t));
             }
         }
@@ -68,66 +71,32 @@ public class RemoveEpsilonTransitionsCommand extends CompositeCommand {
         ArrayList<AutomatonTransition> trans = new ArrayList<>();
         for (AutomatonState s2 : reachable) {
             for (AutomatonTransition t : automaton.getStateTransitions(s2)) {
-                if (t.getData().getChar() != BasicRegexp.EPSILON_CHAR) {
+                BasicRegexp re = t.getData();
+                if (!re.isSingleChar()
+                        || re.getChar() != BasicRegexp.EPSILON_CHAR) {
                     trans.add(t);
                 }
             }
         }
 
-        // Sort as the ordering for BasicRegexp defines but with additional
-        // comparisons:
-        //   * First: sort by which state the transitions go to
-        //   * If the BasicRegexp's of two transitions are equal then the
-        //     transitions which come from the original state are ordered first.
-        //   * This is such that when we remove duplicates, we don't remove the
-        //     transitions for the target state
-        Collections.sort(trans, new Comparator<AutomatonTransition>() {
-            @Override
-            public int compare(AutomatonTransition t1, AutomatonTransition t2) {
-                if (t1.getTo().getId() < t2.getTo().getId()) {
-                    return -1;
-                } else if (t1.getTo().getId() > t2.getTo().getId()) {
-                    return 1;
-                }
-
-                int result = t1.getData().compareTo(t2.getData());
-                if (result == 0 && t1.getFrom() != t2.getFrom()) {
-                    if (t1.getFrom() == mTargetState) {
-                        return -1;
-                    } else if (t2.getFrom() == mTargetState) {
-                        return 1;
-                    } else {
-                        return 0;
-                    }
-                } else {
-                    return result;
-                }
-            }
-        });
-
-        // Remove duplicate transitions, keeping the transitions which originate
-        // from the target state
-        Iterator<AutomatonTransition> it = trans.iterator();
-        AutomatonTransition prev = null;
-        while (it.hasNext()) {
-            AutomatonTransition t = it.next();
-            // Read: previous transition has the same transition expression and
-            // target state, but isn't from "mTargetState"
-            if (prev != null && prev.getTo() == t.getTo()
-                    && prev.getData().equals(t.getData())
-                    && t.getFrom() != mTargetState) {
-                it.remove();
-            } else {
-                prev = t;
+        // The expressions already on transitions from the target state, by
+        // the state they go to, so that no duplicates are added. Interned
+        // expressions hash and compare by identity, so this is a hash lookup
+        // rather than a structural comparison.
+        HashMap<AutomatonState, HashSet<BasicRegexp>> existing =
+            new HashMap<>();
+        for (AutomatonTransition t : trans) {
+            if (t.getFrom() == mTargetState) {
+                existing.computeIfAbsent(t.getTo(), k -> new HashSet<>())
+                        .add(t.getData().intern());
             }
         }
-
-        // Remove transitions that originate from the target state, otherwise we
-        // would be adding duplicates
-        it = trans.iterator();
+        Iterator<AutomatonTransition> it = trans.iterator();
         while (it.hasNext()) {
             AutomatonTransition t = it.next();
-            if (t.getFrom() == mTargetState) {
+            if (t.getFrom() == mTargetState
+                    || !existing.computeIfAbsent(t.getTo(),
+                            k -> new HashSet<>()).add(t.getData().intern())) {
                 it.remove();
             }
         }
@@ -24,7 +24,6 @@ package model;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -34,10 +33,23 @@ import java.util.Set;
 /**
  * Class which pre-computes data regarding an NFA, for use by
  * RemoveEquivalentStatesCommand.
+ *
+ * States are equivalent when they have the same epsilon closure, which is the
+ * case exactly when they can reach each other through epsilon transitions. The
+ * equivalence classes are therefore the strongly connected components of the
+ * graph of epsilon transitions, which are found in O(n + m) time.
  */
 public class RemoveEpsilonTransitionsContext {
-    private final Map<AutomatonState, Set<AutomatonState>> mEpsilonClosureMap;
+    private final FrozenAutomaton mFrozen;
+    // The equivalence class of each state, by the state's dense index
+    private final int[] mStateClass;
     private final List<Set<AutomatonState>> mEquivalentStatesList;
+    // The condensation of the epsilon transition graph, in CSR form: the
+    // classes directly reachable from class "c" through an epsilon transition
+    // are mClassSuccessors[mClassSuccessorsStart[c]] to
+    // mClassSuccessors[mClassSuccessorsStart[c + 1] - 1]
+    private final int[] mClassSuccessorsStart;
+    private final int[] mClassSuccessors;
 
     /**
      * Goes through "todoStates" to create a set of states which are equivalent
@@ -75,33 +87,93 @@ public class RemoveEpsilonTransitionsContext {
 
     public RemoveEpsilonTransitionsContext(Automaton automaton)
     {
-        mEpsilonClosureMap = new HashMap<>();
+        mFrozen = automaton.freeze();
+        mStateClass = new int[mFrozen.getNumStates()];
         mEquivalentStatesList = new ArrayList<>();
-        precompute(automaton);
+
+        int numClasses = TranslationTools.calcStronglyConnectedComponents(
+                mFrozen, mFrozen::isEpsilonTransition, mStateClass);
+        for (int c = 0; c < numClasses; c++) {
+            mEquivalentStatesList.add(new HashSet<AutomatonState>());
+        }
+        for (int i = 0; i < mFrozen.getNumStates(); i++) {
+            mEquivalentStatesList.get(mStateClass[i]).add(mFrozen.getState(i));
+        }
+
+        // Build the condensation, duplicate edges between classes are allowed
+        // as they don't affect the result
+        mClassSuccessorsStart = new int[numClasses + 1];
+        for (int e = 0; e < mFrozen.getNumTransitions(); e++) {
+            int from = mStateClass[mFrozen.getTransitionFrom(e)];
+            int to = mStateClass[mFrozen.getTransitionTo(e)];
+            if (mFrozen.isEpsilonTransition(e) && from != to) {
+                mClassSuccessorsStart[from + 1]++;
+            }
+        }
+        for (int c = 0; c < numClasses; c++) {
+            mClassSuccessorsStart[c + 1] += mClassSuccessorsStart[c];
+        }
+        mClassSuccessors = new int[mClassSuccessorsStart[numClasses]];
+        int[] fill = new int[numClasses];
+        for (int e = 0; e < mFrozen.getNumTransitions(); e++) {
+            int from = mStateClass[mFrozen.getTransitionFrom(e)];
+            int to = mStateClass[mFrozen.getTransitionTo(e)];
+            if (mFrozen.isEpsilonTransition(e) && from != to) {
+                mClassSuccessors[mClassSuccessorsStart[from] + fill[from]++] =
+                    to;
+            }
+        }
     }
 
     /**
-     * Create the pre-computed data for this context
-     * @param automaton
+     * @param state The state in question
+     * @return The index of the equivalence class of the given state, or -1 if
+     * the state wasn't part of the automaton when this context was created
      */
-    private void precompute(Automaton automaton)
+    public int getEquivalenceClass(AutomatonState state)
     {
-        ArrayList<AutomatonState> todoStates = new ArrayList<>();
-        Iterator<Automaton.StateTransitionsPair> it = automaton.graphIterator();
-        while (it.hasNext()) {
-            Automaton.StateTransitionsPair pair = it.next();
-            Set<AutomatonState> epsilonClosure = TranslationTools
-                    .calcEpsilonReachableStates(automaton, pair.getState());
-            mEpsilonClosureMap.put(pair.getState(), epsilonClosure);
-            todoStates.add(pair.getState());
+        int idx = mFrozen.getIndex(state);
+        return idx >= 0 ? mStateClass[idx] : -1;
+    }
+
+    /**
+     * Calculates the epsilon closure of a state from the equivalence classes,
+     * i.e. the union of the classes reachable from the state's class.
+     *
+     * @param state The state in question
+     * @return The set of states in the epsilon closure of the given state
+     * (including the state itself) as it was when this context was created, or
+     * null if the state wasn't part of the automaton
+     */
+    public Set<AutomatonState> getEpsilonClosure(AutomatonState state)
+    {
+        int c = getEquivalenceClass(state);
+        if (c < 0) {
+            return null;
+        }
+
+        StateSet visitedClasses = new StateSet(mEquivalentStatesList.size());
+        int[] stack = new int[mEquivalentStatesList.size()];
+        int top = 0;
+        visitedClasses.add(c);
+        stack[top++] = c;
+        while (top > 0) {
+            int c2 = stack[--top];
+            for (int i = mClassSuccessorsStart[c2];
+                    i < mClassSuccessorsStart[c2 + 1]; i++) {
+                if (visitedClasses.add(mClassSuccessors[i])) {
+                    stack[top++] = mClassSuccessors[i];
+                }
+            }
         }
 
-        while (!todoStates.isEmpty()) {
-            Set<AutomatonState> equivalentStates = calcEquivalentStates(
-                    todoStates, mEpsilonClosureMap);
-            mEquivalentStatesList.add(equivalentStates);
+        StateSet closure = new StateSet(mFrozen.getNumStates());
+        for (int i = 0; i < mFrozen.getNumStates(); i++) {
+            if (visitedClasses.contains(mStateClass[i])) {
+                closure.add(i);
+            }
         }
-        // All sets of equivalent states calculated
+        return closure.asSet(mFrozen);
     }
 
     /**
@@ -112,12 +184,11 @@ public class RemoveEpsilonTransitionsContext {
      */
     public Set<AutomatonState> getEquivalentStates(AutomatonState state)
     {
-        for (Set<AutomatonState> equivalentStates : mEquivalentStatesList) {
-            if (equivalentStates.contains(state)) {
-                return Collections.unmodifiableSet(equivalentStates);
-            }
+        int c = getEquivalenceClass(state);
+        if (c < 0) {
+            return null;
         }
-        return null;
+        return Collections.unmodifiableSet(mEquivalentStatesList.get(c));
     }
 
     /**
@@ -169,17 +240,7 @@ public class RemoveEpsilonTransitionsContext {
      */
     public boolean areStatesEquivalent(AutomatonState a, AutomatonState b)
     {
-        for (Set<AutomatonState> equivalentStates : mEquivalentStatesList) {
-            boolean containsA = equivalentStates.contains(a);
-            boolean containsB = equivalentStates.contains(b);
-            if (containsA != containsB) {
-                // We know "a" and "b" are in different sets at this point
-                // so return false.
-                return false;
-            } else if (containsA && containsB) {
-                return true;
-            }
-        }
-        return false;
+        int classA = getEquivalenceClass(a);
+        return classA >= 0 && classA == getEquivalenceClass(b);
     }
 }
@@ -23,8 +23,7 @@
 package model;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -63,50 +62,10 @@ public class RemoveEquivalentStatesCommand extends CompositeCommand {
         // Transitions in-going to any one of these equivalent states
         ArrayList<AutomatonTransition> trans = new ArrayList<>();
 
-        Iterator<Automaton.StateTransitionsPair> it = automaton.graphIterator();
-        while (it.hasNext()) {
-            Automaton.StateTransitionsPair pair = it.next();
-            for (AutomatonTransition t : automaton.getStateTransitions(pair
-                    .getState())) {
-                if (equivalentStates.contains(t.getTo())) {
-                    trans.add(t);
-                }
-            }
+        for (AutomatonState s2 : equivalentStates) {
+            trans.addAll(automaton.getIngoingTransition(s2));
         }
 
-        // Sort as the ordering for BasicRegexp defines but with additional
-        // comparisons:
-        //   * First: sort by which state the transitions come from
-        //   * If the BasicRegexp's of two transitions are equal then the
-        //     transitions which go to the original state are ordered first.
-        //   * This is such that when we remove duplicates, we don't remove the
-        //     transitions already going to the target state
-        Collections.sort(trans, new Comparator<AutomatonTransition>() {
-            @Override
-            public int compare(AutomatonTransition t1, AutomatonTransition t2) {
-                //return t1.getData().compareTo(t2.getData());
-                // Sort based on the "from" state first
-                if (t1.getFrom().getId() < t2.getFrom().getId()) {
-                    return -1;
-                } else if (t1.getFrom().getId() > t2.getFrom().getId()) {
-                    return 1;
-                }
-                int result = t1.getData().compareTo(t2.getData());
-
-                if (result == 0 && t1.getTo() != t2.getTo()) {
-                    if (t1.getTo() == mTargetState) {
-                        return -1;
-                    } else if (t2.getTo() == mTargetState) {
-                        return 1;
-                    } else {
-                        return 0;
-                    }
-                } else {
-                    return result;
-                }
-            }
-        });
-
         // Create commands to remove the in-going transitions to the states we
         // will remove
         for (AutomatonTransition t : trans) {
@@ -139,35 +98,28 @@ public class RemoveEquivalentStatesCommand extends CompositeCommand {
             }
         }
 
-        // Remove duplicate transitions, keeping the transitions which already
-        // previous went to the target state
-        Iterator<AutomatonTransition> it2 = trans.iterator();
-        AutomatonTransition prev = null;
-        while (it2.hasNext()) {
-            AutomatonTransition t = it2.next();
-            // Remove transitions coming from the equivalent states we just
-            // removed
-            if (t.getFrom() != mTargetState
-                    && equivalentStates.contains(t.getFrom())) {
-                it2.remove();
-            }
-            // Read: previous transition has the same transition expression and
-            // target state, and doesn't go to "mTargetState"
-            else if (prev != null && prev.getFrom() == t.getFrom()
-                    && prev.getData().equals(t.getData())
-                    && t.getTo() != mTargetState) {
-                it2.remove();
-            } else {
-                prev = t;
+        // The expressions already on transitions to the target state, by the
+        // state they come from, so that no duplicates are added. Interned
+        // expressions hash and compare by identity, so this is a hash lookup
+        // rather than a structural comparison.
+        HashMap<AutomatonState, HashSet<BasicRegexp>> existing =
+            new HashMap<>();
+        for (AutomatonTransition t : trans) {
+            if (t.getTo() == mTargetState) {
+                existing.computeIfAbsent(t.getFrom(), k -> new HashSet<>())
+                        .add(t.getData().intern());
             }
         }
-
-        // Remove transitions already going to "mTargetState", otherwise we
-        // would be adding duplicates
-        it2 = trans.iterator();
+        Iterator<AutomatonTransition> it2 = trans.iterator();
         while (it2.hasNext()) {
             AutomatonTransition t = it2.next();
-            if (t.getTo() == mTargetState) {
+            // Transitions coming from the equivalent states we just removed,
+            // already going to the target state, or duplicates aren't added
+            if ((t.getFrom() != mTargetState
+                    && equivalentStates.contains(t.getFrom()))
+                    || t.getTo() == mTargetState
+                    || !existing.computeIfAbsent(t.getFrom(),
+                            k -> new HashSet<>()).add(t.getData().intern())) {
                 it2.remove();
             }
         }
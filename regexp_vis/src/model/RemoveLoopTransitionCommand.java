@@ -59,8 +59,9 @@ public class RemoveLoopTransitionCommand extends CompositeCommand {
             operands.add(t.getData());
             BasicRegexp newRe = new BasicRegexp(operands,
                     BasicRegexp.RegexpOperator.SEQUENCE);
-            // Do very low depth optimisation
-            newRe = newRe.optimise(BasicRegexp.OPTIMISE_ALL, 1);
+            // Do very low depth optimisation, and intern like parsed
+            // expressions
+            newRe = newRe.optimise(BasicRegexp.OPTIMISE_ALL, 1).intern();
             AutomatonTransition newTrans = automaton.createNewTransition(state,
                     t.getTo(), newRe);
             // Remove the old and add the new
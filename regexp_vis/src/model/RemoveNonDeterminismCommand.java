@@ -23,8 +23,9 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -38,24 +39,38 @@ import java.util.Set;
 public class RemoveNonDeterminismCommand extends CompositeCommand {
     private final RemoveNonDeterminismContext mCtx;
     private final AutomatonState mState;
-    private final char mChar;
+    private final BasicRegexp mAtom;
     private final AddStateCommand mNewStateCommand;
     private final Set<AutomatonState> mReachableSet;
 
     public RemoveNonDeterminismCommand(RemoveNonDeterminismContext ctx,
             AutomatonState state, char c)
+    {
+        this(ctx, state, BasicRegexp.valueOf(c));
+    }
+
+    /**
+     * @param ctx The context of the NFA to DFA conversion
+     * @param state The state to remove non-determinism from
+     * @param atom A single character expression, or a character class
+     * expression which every out-going transition of the state either fully
+     * covers or doesn't intersect, as returned by
+     * TranslationTools.calcNonDeterministicAtoms()
+     */
+    public RemoveNonDeterminismCommand(RemoveNonDeterminismContext ctx,
+            AutomatonState state, BasicRegexp atom)
     {
         super(ctx.getAutomaton());
         mCtx = ctx;
         mState = state;
-        mChar = c;
+        mAtom = atom;
 
         Automaton automaton = getAutomaton();
 
         ArrayList<AutomatonTransition> oldTrans = new ArrayList<>();
         mReachableSet = new HashSet<>();
         for (AutomatonTransition t : automaton.getStateTransitions(mState)) {
-            if (t.getData().getChar() == mChar) {
+            if (coversAtom(t.getData(), mAtom)) {
                 oldTrans.add(t);
                 mReachableSet.add(t.getTo());
             }
@@ -63,6 +78,18 @@ public class RemoveNonDeterminismCommand extends CompositeCommand {
 
         for (AutomatonTransition t : oldTrans) {
             super.commands.add(new RemoveTransitionCommand(automaton, t));
+            // Character classes keep the transition for the rest of the class
+            if (t.getData().isCharClass()) {
+                char[] rest = subtractRange(t.getData().getRanges(),
+                        atomFirst(mAtom), atomLast(mAtom));
+                if (rest.length > 0) {
+                    AutomatonTransition restTrans = automaton
+                            .createNewTransition(mState, t.getTo(),
+                                    BasicRegexp.valueOfClass(rest));
+                    super.commands.add(new AddTransitionCommand(automaton,
+                            restTrans));
+                }
+            }
         }
 
         // ppSet = pre-processed set
@@ -97,7 +124,7 @@ public class RemoveNonDeterminismCommand extends CompositeCommand {
 
         // Link up this new state
         AutomatonTransition newTrans = automaton.createNewTransition(mState,
-                newState, new BasicRegexp(mChar));
+                newState, mAtom);
         super.commands.add(new AddTransitionCommand(automaton, newTrans));
 
         if (!shouldAddState) {
@@ -115,37 +142,17 @@ public class RemoveNonDeterminismCommand extends CompositeCommand {
             }
         }
 
-        // Sort as the ordering for BasicRegexp defines but with additional
-        // comparisons:
-        //   * First: sort by which state the transitions go to
-        //   * Then sort using the BasicRegexp(s) of the transitions
-        //
-        // This allows us to remove duplicate transitions easily
-        Collections.sort(outgoingTrans, new Comparator<AutomatonTransition>() {
-            @Override
-            public int compare(AutomatonTransition t1, AutomatonTransition t2) {
-                if (t1.getTo().getId() < t2.getTo().getId()) {
-                    return -1;
-                } else if (t1.getTo().getId() > t2.getTo().getId()) {
-                    return 1;
-                }
-
-                return t1.getData().compareTo(t2.getData());
-            }
-        });
-
-        // Remove duplicate transitions
+        // Remove duplicate transitions, i.e. those with the same expression
+        // and destination state. Interned expressions hash and compare by
+        // identity, so this is a hash lookup rather than a structural
+        // comparison.
+        HashMap<AutomatonState, HashSet<BasicRegexp>> seen = new HashMap<>();
         Iterator<AutomatonTransition> it = outgoingTrans.iterator();
-        AutomatonTransition prev = null;
         while (it.hasNext()) {
             AutomatonTransition t = it.next();
-            // Read: previous transition has the same transition expression and
-            // destination state, this is a duplicate so remove it
-            if (prev != null && prev.getTo() == t.getTo()
-                && prev.getData().equals(t.getData())) {
+            if (!seen.computeIfAbsent(t.getTo(), k -> new HashSet<>())
+                    .add(t.getData().intern())) {
                 it.remove();
-            } else {
-                prev = t;
             }
         }
 
@@ -157,6 +164,50 @@ public class RemoveNonDeterminismCommand extends CompositeCommand {
         }
     }
 
+    private static char atomFirst(BasicRegexp atom)
+    {
+        return atom.isSingleChar() ? atom.getChar() : atom.getRangeFirst(0);
+    }
+
+    private static char atomLast(BasicRegexp atom)
+    {
+        return atom.isSingleChar() ? atom.getChar() : atom.getRangeLast(0);
+    }
+
+    /**
+     * @return Whether a transition with the given expression is on the atom
+     */
+    private static boolean coversAtom(BasicRegexp re, BasicRegexp atom)
+    {
+        if (re.isSingleChar()) {
+            return re.getChar() == atomFirst(atom);
+        }
+        return re.isCharClass() && re.matchesChar(atomFirst(atom));
+    }
+
+    /**
+     * @param ranges Sorted ranges as pairs of first and last character
+     * @param first The first character to remove
+     * @param last The last character to remove
+     * @return The ranges without the characters from first to last
+     */
+    private static char[] subtractRange(char[] ranges, char first, char last)
+    {
+        char[] ret = new char[ranges.length + 2];
+        int k = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] < first) {
+                ret[k++] = ranges[i];
+                ret[k++] = (char) Math.min(ranges[i + 1], first - 1);
+            }
+            if (ranges[i + 1] > last) {
+                ret[k++] = (char) Math.max(ranges[i], last + 1);
+                ret[k++] = ranges[i + 1];
+            }
+        }
+        return Arrays.copyOf(ret, k);
+    }
+
     public RemoveNonDeterminismContext getCtx()
     {
         return mCtx;
@@ -172,10 +223,20 @@ public class RemoveNonDeterminismCommand extends CompositeCommand {
 
     /**
      * @return The character which we are removing non-determinism for.
+     * @throws RuntimeException if the atom is a character class
      */
     public char getChar()
     {
-        return mChar;
+        return mAtom.getChar();
+    }
+
+    /**
+     * @return The single character or character class expression which we
+     * are removing non-determinism for.
+     */
+    public BasicRegexp getAtom()
+    {
+        return mAtom;
     }
 
     /**
@@ -22,6 +22,7 @@
  */
 package model;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -33,14 +34,56 @@ import java.util.Set;
  * only stores mappings from a single state to a set of states and vice-versa.
  */
 public class RemoveNonDeterminismContext {
+    /**
+     * Canonical, hashable form of a set of states: the sorted IDs of the
+     * states, with the hash code computed once.
+     */
+    private static final class StateSetKey {
+        private final int[] mIds;
+        private final int mHash;
+
+        private StateSetKey(Set<AutomatonState> set)
+        {
+            mIds = new int[set.size()];
+            int i = 0;
+            for (AutomatonState s : set) {
+                mIds[i++] = s.getId();
+            }
+            Arrays.sort(mIds);
+            mHash = Arrays.hashCode(mIds);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof StateSetKey)) {
+                return false;
+            }
+            StateSetKey other = (StateSetKey) obj;
+            return mHash == other.mHash && Arrays.equals(mIds, other.mIds);
+        }
+    }
+
     private final Automaton mAutomaton;
     private final Map<AutomatonState, Set<AutomatonState>> mStateSetMap;
+    // Reverse of mStateSetMap, for looking up the state for a set of states
+    private final Map<StateSetKey, AutomatonState> mSetStateMap;
     private final Set<AutomatonState> mOriginalStates;
 
     public RemoveNonDeterminismContext(Automaton automaton)
     {
         mAutomaton = automaton;
         mStateSetMap = new HashMap<>();
+        mSetStateMap = new HashMap<>();
         mOriginalStates = new HashSet<>();
 
         // Set mOriginalStates to all the states we are starting off with
@@ -54,7 +97,8 @@ public class RemoveNonDeterminismContext {
     /**
      * Given a set of states, find the state which represents that set. Returns
      * null if no such state exists. It is expected that all states in the given
-     * set are also in the mOriginalStates set.
+     * set are also in the mOriginalStates set. Takes O(|set|) time regardless
+     * of the number of bindings.
      *
      * @param set The set of states in question
      * @return The state which represents the given set, or null if no such
@@ -62,11 +106,11 @@ public class RemoveNonDeterminismContext {
      */
     public AutomatonState findStateFromSet(Set<AutomatonState> set)
     {
-        for (Map.Entry<AutomatonState, Set<AutomatonState>> entry : mStateSetMap
-                .entrySet()) {
-            if (set.equals(entry.getValue())) {
-                return entry.getKey();
-            }
+        AutomatonState state = mSetStateMap.get(new StateSetKey(set));
+        // The key only looks at IDs, make sure these are actually the same
+        // states
+        if (state != null && set.equals(mStateSetMap.get(state))) {
+            return state;
         }
         return null;
     }
@@ -110,11 +154,18 @@ public class RemoveNonDeterminismContext {
 
     public void putStateBinding(AutomatonState s, Set<AutomatonState> set)
     {
+        removeStateBinding(s);
         mStateSetMap.put(s, set);
+        if (set != null) {
+            mSetStateMap.put(new StateSetKey(set), s);
+        }
     }
 
     public void removeStateBinding(AutomatonState s)
     {
-        mStateSetMap.remove(s);
+        Set<AutomatonState> set = mStateSetMap.remove(s);
+        if (set != null) {
+            mSetStateMap.remove(new StateSetKey(set), s);
+        }
     }
 }
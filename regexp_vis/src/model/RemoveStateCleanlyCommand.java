@@ -24,8 +24,6 @@ package model;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
 import java.util.ListIterator;
 
 /**
@@ -44,16 +42,8 @@ public class RemoveStateCleanlyCommand extends CompositeCommand {
         mState = state;
 
         // Find in-going transitions and create commands to remove them
-        Iterator<Automaton.StateTransitionsPair> it = automaton.graphIterator();
-        while (it.hasNext()) {
-            Automaton.StateTransitionsPair pair = it.next();
-            List<AutomatonTransition> trans = pair.getTransitions();
-            for (AutomatonTransition t : trans) {
-                if (t.getTo() == state) {
-                    super.commands.add(new RemoveTransitionCommand(
-                            automaton, t));
-                }
-            }
+        for (AutomatonTransition t : automaton.getIngoingTransition(state)) {
+            super.commands.add(new RemoveTransitionCommand(automaton, t));
         }
 
         super.commands.add(new RemoveStateCommand(automaton, state));
@@ -22,14 +22,19 @@
  */
 package model;
 
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Command to remove a state and its outgoing transitions from an automaton
  */
 public class RemoveStateCommand extends Command {
     private final AutomatonState mState;
-    private LinkedList<AutomatonTransition> mTransitions;
+    // Kept as an array rather than the list removeState() returns, as the
+    // command may be held in the history for a long time
+    private AutomatonTransition[] mTransitions;
+    private boolean mIsFinal;
 
     public RemoveStateCommand(Automaton automaton, AutomatonState state)
     {
@@ -48,17 +53,42 @@ public class RemoveStateCommand extends Command {
     @Override
     public void redo()
     {
-        mTransitions = getAutomaton().removeState(mState);
+        mIsFinal = mState.isFinal();
+        List<AutomatonTransition> transitions = getAutomaton().removeState(
+                mState);
+        mTransitions = transitions.toArray(
+                new AutomatonTransition[transitions.size()]);
     }
 
     @Override
     public void undo()
     {
-        getAutomaton().addStateWithTransitions(mState, mTransitions);
+        mState.setFinal(mIsFinal);
+        getAutomaton().addStateWithTransitions(mState,
+                Arrays.asList(mTransitions));
     }
 
-    public LinkedList<AutomatonTransition> getTransitions()
+    /**
+     * @return The transitions removed along with the state, as an unmodifiable
+     * list, or null if this command hasn't been done yet
+     */
+    public List<AutomatonTransition> getTransitions()
+    {
+        if (mTransitions == null) {
+            return null;
+        }
+        return Collections.unmodifiableList(Arrays.asList(mTransitions));
+    }
+
+    @Override
+    public long getSizeEstimate()
     {
-        return mTransitions;
+        // Includes the transitions, which only this command refers to now
+        long size = super.getSizeEstimate() + OBJECT_SIZE + REFERENCE_SIZE;
+        if (mTransitions != null) {
+            size += mTransitions.length * (REFERENCE_SIZE + OBJECT_SIZE
+                    + 4 * REFERENCE_SIZE);
+        }
+        return size;
     }
 }
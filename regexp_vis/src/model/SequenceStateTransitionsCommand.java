@@ -57,8 +57,9 @@ public class SequenceStateTransitionsCommand extends CompositeCommand {
                 operands.add(t2.getData());
                 BasicRegexp newRe = new BasicRegexp(operands,
                         BasicRegexp.RegexpOperator.SEQUENCE);
-                // Do very low depth optimisation
-                newRe = newRe.optimise(BasicRegexp.OPTIMISE_ALL, 1);
+                // Do very low depth optimisation, and intern like parsed
+                // expressions
+                newRe = newRe.optimise(BasicRegexp.OPTIMISE_ALL, 1).intern();
                 AutomatonTransition newTrans = automaton
                         .createNewTransition(t1.getFrom(), t2.getTo(), newRe);
                 super.commands.add(new AddTransitionCommand(automaton, newTrans));
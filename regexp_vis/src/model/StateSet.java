@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A set of states of a FrozenAutomaton, stored as a bitset keyed by the dense
+ * state indexes. The capacity is fixed on construction.
+ *
+ * @see FrozenAutomaton
+ */
+public final class StateSet {
+    private final long[] mWords;
+    private final int mCapacity;
+
+    /**
+     * Construct an empty set
+     *
+     * @param capacity The number of states the set can hold, i.e. the indexes
+     * of states must be in the range [0, capacity)
+     */
+    public StateSet(int capacity)
+    {
+        mCapacity = capacity;
+        mWords = new long[(capacity + 63) >>> 6];
+    }
+
+    private StateSet(StateSet other)
+    {
+        mCapacity = other.mCapacity;
+        mWords = other.mWords.clone();
+    }
+
+    /**
+     * @return The number of states this set can hold
+     */
+    public int getCapacity()
+    {
+        return mCapacity;
+    }
+
+    /**
+     * @param idx The index of the state to add
+     * @return true if the state wasn't already in the set, false otherwise
+     */
+    public boolean add(int idx)
+    {
+        int w = idx >>> 6;
+        long bit = 1L << idx;
+        if ((mWords[w] & bit) != 0) {
+            return false;
+        }
+        mWords[w] |= bit;
+        return true;
+    }
+
+    /**
+     * @param idx The index of the state to remove
+     * @return true if the state was in the set, false otherwise
+     */
+    public boolean remove(int idx)
+    {
+        int w = idx >>> 6;
+        long bit = 1L << idx;
+        if ((mWords[w] & bit) == 0) {
+            return false;
+        }
+        mWords[w] &= ~bit;
+        return true;
+    }
+
+    /**
+     * @param idx The index of the state to check
+     * @return Whether the state is in the set
+     */
+    public boolean contains(int idx)
+    {
+        return (mWords[idx >>> 6] & (1L << idx)) != 0;
+    }
+
+    /**
+     * Add all the states of another set to this set
+     *
+     * @param other The other set, must have the same capacity
+     */
+    public void addAll(StateSet other)
+    {
+        for (int i = 0; i < mWords.length; i++) {
+            mWords[i] |= other.mWords[i];
+        }
+    }
+
+    /**
+     * @param other The other set, must have the same capacity
+     * @return Whether this set and the other set have any states in common
+     */
+    public boolean intersects(StateSet other)
+    {
+        for (int i = 0; i < mWords.length; i++) {
+            if ((mWords[i] & other.mWords[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove all states from this set
+     */
+    public void clear()
+    {
+        Arrays.fill(mWords, 0);
+    }
+
+    /**
+     * @return The number of states in this set
+     */
+    public int size()
+    {
+        int count = 0;
+        for (long w : mWords) {
+            count += Long.bitCount(w);
+        }
+        return count;
+    }
+
+    /**
+     * @return true if this set contains no states
+     */
+    public boolean isEmpty()
+    {
+        for (long w : mWords) {
+            if (w != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Used to iterate over the set, e.g.
+     * <pre>
+     * for (int i = set.nextIndex(0); i >= 0; i = set.nextIndex(i + 1)) {
+     *     ...
+     * }
+     * </pre>
+     *
+     * @param from The index to start searching from (inclusive)
+     * @return The smallest index in this set which is greater than or equal to
+     * "from", or -1 if there is no such index
+     */
+    public int nextIndex(int from)
+    {
+        if (from >= mCapacity) {
+            return -1;
+        }
+        int w = from >>> 6;
+        long word = mWords[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == mWords.length) {
+                return -1;
+            }
+            word = mWords[w];
+        }
+    }
+
+    /**
+     * @return The indexes of the states in this set, in ascending order
+     */
+    public int[] toArray()
+    {
+        int[] ret = new int[size()];
+        int j = 0;
+        for (int i = nextIndex(0); i >= 0; i = nextIndex(i + 1)) {
+            ret[j++] = i;
+        }
+        return ret;
+    }
+
+    /**
+     * @return A copy of this set
+     */
+    public StateSet copy()
+    {
+        return new StateSet(this);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        StateSet other = (StateSet) obj;
+        return mCapacity == other.mCapacity
+                && Arrays.equals(mWords, other.mWords);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(mWords);
+    }
+
+    @Override
+    public String toString()
+    {
+        return Arrays.toString(toArray());
+    }
+
+    /**
+     * Provides a view of this set in terms of the live AutomatonState objects.
+     * The view reflects later changes to this set and is unmodifiable.
+     *
+     * @param frozen The automaton the indexes of this set refer to
+     * @return The view
+     */
+    public Set<AutomatonState> asSet(FrozenAutomaton frozen)
+    {
+        return new View(this, frozen);
+    }
+
+    private static final class View extends AbstractSet<AutomatonState> {
+        private final StateSet mSet;
+        private final FrozenAutomaton mFrozen;
+
+        private View(StateSet set, FrozenAutomaton frozen)
+        {
+            mSet = set;
+            mFrozen = frozen;
+        }
+
+        @Override
+        public Iterator<AutomatonState> iterator()
+        {
+            return new Iterator<AutomatonState>() {
+                private int mNext = mSet.nextIndex(0);
+
+                @Override
+                public boolean hasNext()
+                {
+                    return mNext >= 0;
+                }
+
+                @Override
+                public AutomatonState next()
+                {
+                    if (mNext < 0) {
+                        throw new NoSuchElementException();
+                    }
+                    AutomatonState s = mFrozen.getState(mNext);
+                    mNext = mSet.nextIndex(mNext + 1);
+                    return s;
+                }
+            };
+        }
+
+        @Override
+        public int size()
+        {
+            return mSet.size();
+        }
+
+        @Override
+        public boolean contains(Object o)
+        {
+            if (!(o instanceof AutomatonState)) {
+                return false;
+            }
+            int idx = mFrozen.getIndex((AutomatonState) o);
+            return idx >= 0 && mSet.contains(idx);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            // Fast path when comparing two views of the same automaton
+            if (o instanceof View && ((View) o).mFrozen == mFrozen) {
+                return mSet.equals(((View) o).mSet);
+            }
+            return super.equals(o);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return super.hashCode();
+        }
+    }
+}
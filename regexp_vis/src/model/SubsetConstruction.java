@@ -0,0 +1,548 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Converts an automaton with only single character and character class
+ * transitions (including epsilon transitions) into a DFA in one go, using the
+ * powerset construction. Each DFA state stands for the epsilon closure of a
+ * set of states of the original automaton, subsets are interned so that each
+ * one is only expanded once. Only the DFA states reachable from the start
+ * state are created.
+ *
+ * The out-going transitions of each subset are split into disjoint atoms:
+ * ranges of characters which every transition either fully covers or doesn't
+ * intersect at all. Each DFA transition is on one atom, so a class such as
+ * "[a-z]" gives a single DFA transition rather than one per character. The
+ * atoms from a DFA state to the same DFA state are joined again into a single
+ * labelled transition, see getLabelledTransitionsStart(), which is what
+ * createAutomaton() and SubsetConstructionCommand add.
+ *
+ * The construction runs when this object is created, the result can then be
+ * turned into a new Automaton with createAutomaton(), or applied to the
+ * original automaton with a SubsetConstructionCommand.
+ */
+public final class SubsetConstruction {
+    /**
+     * Canonical, hashable form of a subset: the sorted dense indexes of the
+     * states, with the hash code computed once.
+     */
+    private static final class SubsetKey {
+        private final int[] mStates;
+        private final int mHash;
+
+        private SubsetKey(int[] states)
+        {
+            mStates = states;
+            mHash = Arrays.hashCode(states);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof SubsetKey)) {
+                return false;
+            }
+            SubsetKey other = (SubsetKey) obj;
+            return mHash == other.mHash && Arrays.equals(mStates, other.mStates);
+        }
+    }
+
+    private final Automaton mAutomaton;
+    private final FrozenAutomaton mFrozen;
+    // The subset of each DFA state, DFA state 0 is the start state
+    private final ArrayList<int[]> mSubsets;
+    private final HashMap<SubsetKey, Integer> mSubsetMap;
+    private boolean[] mFinal;
+    // DFA transitions in CSR form, out-going transitions of each DFA state are
+    // ordered by character. Each is on the range of characters from
+    // mTransFirst to mTransLast (inclusive).
+    private int[] mTransStart;
+    private char[] mTransFirst;
+    private char[] mTransLast;
+    private int[] mTransTo;
+    private int mNumTransitions;
+    // The transitions joined by target, built when first asked for
+    private int[] mLabelledStart;
+    private int[] mLabelledTo;
+    private BasicRegexp[] mLabels;
+    private int mPeakSetSize;
+    private long mElapsedNanos;
+
+    /**
+     * @param automaton The automaton to convert, must only have single
+     * character and character class transitions
+     */
+    public SubsetConstruction(Automaton automaton)
+    {
+        mAutomaton = automaton;
+        mFrozen = automaton.freeze();
+        for (int e = 0; e < mFrozen.getNumTransitions(); e++) {
+            if (!mFrozen.isSingleCharTransition(e)
+                    && !mFrozen.isCharClassTransition(e)) {
+                throw new RuntimeException("Automaton must only have single "
+                        + "character and character class transitions");
+            }
+        }
+
+        mSubsets = new ArrayList<>();
+        mSubsetMap = new HashMap<>();
+        long startTime = System.nanoTime();
+        construct();
+        mElapsedNanos = System.nanoTime() - startTime;
+    }
+
+    private void construct()
+    {
+        int n = mFrozen.getNumStates();
+        IntPredicate isEpsilon = mFrozen::isEpsilonTransition;
+        StateSet scratch = new StateSet(n);
+        int[] stack = new int[n];
+
+        mFinal = new boolean[16];
+        mTransStart = new int[17];
+        mTransFirst = new char[16];
+        mTransLast = new char[16];
+        mTransTo = new int[16];
+        // (first << 47 | last << 31 | target) for each range of each
+        // transition, sorting these orders them by first character. Not
+        // shifted by 48 as the sign bit would sort characters from 0x8000 up
+        // first
+        long[] moves = new long[16];
+        // Atom boundaries: the first character of each range and the
+        // character after the last
+        int[] bounds = new int[32];
+        // The moves covering the current atom
+        int[] active = new int[16];
+
+        scratch.add(mFrozen.getStartIndex());
+        TranslationTools.expandReachableStates(mFrozen, scratch, isEpsilon,
+                stack);
+        internSubset(scratch);
+
+        // mSubsets doubles as the worklist, subsets are expanded in the order
+        // they were created
+        for (int d = 0; d < mSubsets.size(); d++) {
+            int numMoves = 0;
+            for (int s : mSubsets.get(d)) {
+                int end = mFrozen.getTransitionsEnd(s);
+                for (int e = mFrozen.getTransitionsStart(s); e < end; e++) {
+                    if (mFrozen.isEpsilonTransition(e)) {
+                        continue;
+                    }
+                    BasicRegexp re = mFrozen.getTransition(e).getData();
+                    int numRanges = re.isCharClass() ? re.getNumRanges() : 1;
+                    if (numMoves + numRanges > moves.length) {
+                        moves = Arrays.copyOf(moves,
+                                Math.max(numMoves * 2, numMoves + numRanges));
+                    }
+                    for (int r = 0; r < numRanges; r++) {
+                        char first = re.isCharClass() ? re.getRangeFirst(r)
+                                : re.getChar();
+                        char last = re.isCharClass() ? re.getRangeLast(r)
+                                : first;
+                        moves[numMoves++] = ((long) first << 47)
+                                | ((long) last << 31)
+                                | mFrozen.getTransitionTo(e);
+                    }
+                }
+            }
+            Arrays.sort(moves, 0, numMoves);
+
+            if (2 * numMoves > bounds.length) {
+                bounds = new int[4 * numMoves];
+                active = new int[2 * numMoves];
+            }
+            for (int i = 0; i < numMoves; i++) {
+                bounds[2 * i] = (int) (moves[i] >>> 47);
+                bounds[2 * i + 1] = (int) ((moves[i] >>> 31) & 0xffff) + 1;
+            }
+            Arrays.sort(bounds, 0, 2 * numMoves);
+
+            // Sweep over the atoms, moves become active at their first
+            // character and inactive after their last
+            int next = 0;
+            int numActive = 0;
+            for (int b = 0; b + 1 < 2 * numMoves; b++) {
+                int first = bounds[b];
+                int after = bounds[b + 1];
+                if (first == after) {
+                    continue;
+                }
+                while (next < numMoves && (moves[next] >>> 47) == first) {
+                    active[numActive++] = next++;
+                }
+                int k = 0;
+                for (int j = 0; j < numActive; j++) {
+                    long move = moves[active[j]];
+                    if (((move >>> 31) & 0xffff) >= first) {
+                        active[k++] = active[j];
+                        scratch.add((int) (move & Integer.MAX_VALUE));
+                    }
+                }
+                numActive = k;
+                if (numActive == 0) {
+                    continue;
+                }
+                TranslationTools.expandReachableStates(mFrozen, scratch,
+                        isEpsilon, stack);
+                addTransition((char) first, (char) (after - 1),
+                        internSubset(scratch));
+            }
+            mTransStart[d + 1] = mNumTransitions;
+        }
+    }
+
+    /**
+     * Finds or creates the DFA state for the given subset, then clears it.
+     *
+     * @param set The subset of states, must already be epsilon closed
+     * @return The DFA state for the subset
+     */
+    private int internSubset(StateSet set)
+    {
+        int[] states = set.toArray();
+        for (int s : states) {
+            set.remove(s);
+        }
+
+        SubsetKey key = new SubsetKey(states);
+        Integer d = mSubsetMap.get(key);
+        if (d != null) {
+            return d;
+        }
+
+        d = mSubsets.size();
+        mSubsets.add(states);
+        mSubsetMap.put(key, d);
+        mPeakSetSize = Math.max(mPeakSetSize, states.length);
+
+        if (d == mFinal.length) {
+            mFinal = Arrays.copyOf(mFinal, d * 2);
+            mTransStart = Arrays.copyOf(mTransStart, d * 2 + 1);
+        }
+        for (int s : states) {
+            if (mFrozen.isFinal(s)) {
+                mFinal[d] = true;
+                break;
+            }
+        }
+        return d;
+    }
+
+    private void addTransition(char first, char last, int to)
+    {
+        if (mNumTransitions == mTransTo.length) {
+            mTransFirst = Arrays.copyOf(mTransFirst, mNumTransitions * 2);
+            mTransLast = Arrays.copyOf(mTransLast, mNumTransitions * 2);
+            mTransTo = Arrays.copyOf(mTransTo, mNumTransitions * 2);
+        }
+        mTransFirst[mNumTransitions] = first;
+        mTransLast[mNumTransitions] = last;
+        mTransTo[mNumTransitions] = to;
+        mNumTransitions++;
+    }
+
+    /**
+     * @return The automaton which was converted
+     */
+    public Automaton getAutomaton()
+    {
+        return mAutomaton;
+    }
+
+    /**
+     * @return The snapshot of the converted automaton the subsets refer to
+     */
+    public FrozenAutomaton getFrozenAutomaton()
+    {
+        return mFrozen;
+    }
+
+    /**
+     * @return The number of DFA states created, DFA states are numbered
+     * 0..n-1 with 0 being the start state
+     */
+    public int getNumStates()
+    {
+        return mSubsets.size();
+    }
+
+    /**
+     * @return The number of DFA transitions created
+     */
+    public int getNumTransitions()
+    {
+        return mNumTransitions;
+    }
+
+    /**
+     * @return The size of the largest subset which a DFA state stands for
+     */
+    public int getPeakSetSize()
+    {
+        return mPeakSetSize;
+    }
+
+    /**
+     * @return The time the construction took, in nanoseconds
+     */
+    public long getElapsedNanos()
+    {
+        return mElapsedNanos;
+    }
+
+    /**
+     * @param d The DFA state
+     * @return The states of the original automaton which the DFA state stands
+     * for, as an unmodifiable list ordered by dense index
+     */
+    public List<AutomatonState> getSubset(int d)
+    {
+        int[] states = mSubsets.get(d);
+        ArrayList<AutomatonState> ret = new ArrayList<>(states.length);
+        for (int s : states) {
+            ret.add(mFrozen.getState(s));
+        }
+        return Collections.unmodifiableList(ret);
+    }
+
+    /**
+     * @param d The DFA state
+     * @return The dense indexes of the states which the DFA state stands for,
+     * in ascending order
+     */
+    public int[] getSubsetIndexes(int d)
+    {
+        return mSubsets.get(d).clone();
+    }
+
+    /**
+     * @param d The DFA state
+     * @return Whether the DFA state is final
+     */
+    public boolean isFinal(int d)
+    {
+        return mFinal[d];
+    }
+
+    /**
+     * @param d The DFA state
+     * @return The number of the first out-going transition of the DFA state
+     */
+    public int getTransitionsStart(int d)
+    {
+        return mTransStart[d];
+    }
+
+    /**
+     * @param d The DFA state
+     * @return One past the number of the last out-going transition of the DFA
+     * state
+     */
+    public int getTransitionsEnd(int d)
+    {
+        return mTransStart[d + 1];
+    }
+
+    /**
+     * @param e The number of the DFA transition
+     * @return The character of the transition, or the first character of its
+     * range if it is on more than one character
+     */
+    public char getTransitionChar(int e)
+    {
+        return mTransFirst[e];
+    }
+
+    /**
+     * @param e The number of the DFA transition
+     * @return The last character of the range of the transition (inclusive),
+     * the same as getTransitionChar() for a single character transition
+     */
+    public char getTransitionLastChar(int e)
+    {
+        return mTransLast[e];
+    }
+
+    /**
+     * @param e The number of the DFA transition
+     * @return The interned single character or character class expression
+     * for the transition
+     */
+    public BasicRegexp getTransitionLabel(int e)
+    {
+        return BasicRegexp.valueOfClass(mTransFirst[e], mTransLast[e]);
+    }
+
+    /**
+     * @param e The number of the DFA transition
+     * @return The DFA state the transition goes to
+     */
+    public int getTransitionTo(int e)
+    {
+        return mTransTo[e];
+    }
+
+    /**
+     * @param d The DFA state
+     * @return The number of the first labelled transition of the DFA state.
+     * Labelled transitions join all the transitions from the DFA state to
+     * the same DFA state, so there is one per target.
+     */
+    public int getLabelledTransitionsStart(int d)
+    {
+        buildLabelledTransitions();
+        return mLabelledStart[d];
+    }
+
+    /**
+     * @param d The DFA state
+     * @return One past the number of the last labelled transition of the DFA
+     * state
+     */
+    public int getLabelledTransitionsEnd(int d)
+    {
+        buildLabelledTransitions();
+        return mLabelledStart[d + 1];
+    }
+
+    /**
+     * @param k The number of the labelled transition
+     * @return The interned single character or character class expression
+     * covering every character which leads to the target
+     */
+    public BasicRegexp getLabel(int k)
+    {
+        buildLabelledTransitions();
+        return mLabels[k];
+    }
+
+    /**
+     * @param k The number of the labelled transition
+     * @return The DFA state the labelled transition goes to
+     */
+    public int getLabelledTransitionTo(int k)
+    {
+        buildLabelledTransitions();
+        return mLabelledTo[k];
+    }
+
+    /**
+     * Join the transitions of each DFA state by target, in the order the
+     * targets are first reached.
+     */
+    private void buildLabelledTransitions()
+    {
+        if (mLabels != null) {
+            return;
+        }
+
+        int numStates = getNumStates();
+        mLabelledStart = new int[numStates + 1];
+        mLabelledTo = new int[mNumTransitions];
+        BasicRegexp[] labels = new BasicRegexp[mNumTransitions];
+        // The labelled transition of the current DFA state going to each
+        // target, entries from earlier DFA states are below "first"
+        int[] labelled = new int[numStates];
+        Arrays.fill(labelled, -1);
+        int[] numRanges = new int[mNumTransitions];
+        int k = 0;
+        for (int d = 0; d < numStates; d++) {
+            int first = k;
+            int end = mTransStart[d + 1];
+            for (int e = mTransStart[d]; e < end; e++) {
+                int to = mTransTo[e];
+                if (labelled[to] < first) {
+                    labelled[to] = k;
+                    mLabelledTo[k] = to;
+                    numRanges[k++] = 0;
+                }
+                numRanges[labelled[to]]++;
+            }
+
+            char[][] ranges = new char[k - first][];
+            for (int j = first; j < k; j++) {
+                ranges[j - first] = new char[2 * numRanges[j]];
+                numRanges[j] = 0;
+            }
+            for (int e = mTransStart[d]; e < end; e++) {
+                int j = labelled[mTransTo[e]];
+                char[] r = ranges[j - first];
+                r[numRanges[j]++] = mTransFirst[e];
+                r[numRanges[j]++] = mTransLast[e];
+            }
+            for (int j = first; j < k; j++) {
+                labels[j] = BasicRegexp.valueOfClass(ranges[j - first]);
+            }
+            mLabelledStart[d + 1] = k;
+        }
+        mLabelledTo = Arrays.copyOf(mLabelledTo, k);
+        mLabels = Arrays.copyOf(labels, k);
+    }
+
+    /**
+     * Creates a new automaton holding the DFA. The original automaton is left
+     * untouched.
+     *
+     * @return The new automaton, where the state with ID "d" is DFA state "d"
+     */
+    public Automaton createAutomaton()
+    {
+        Automaton ret = new Automaton();
+        AutomatonState[] states = new AutomatonState[getNumStates()];
+        states[0] = ret.getStartState();
+        for (int d = 1; d < states.length; d++) {
+            states[d] = ret.createNewState();
+            ret.addStateWithTransitions(states[d],
+                    new LinkedList<AutomatonTransition>());
+        }
+
+        for (int d = 0; d < states.length; d++) {
+            states[d].setFinal(mFinal[d]);
+            int end = getLabelledTransitionsEnd(d);
+            for (int k = getLabelledTransitionsStart(d); k < end; k++) {
+                ret.addTransition(ret.createNewTransition(states[d],
+                        states[mLabelledTo[k]], mLabels[k]));
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Command which converts an automaton into a DFA in a single step, using a
+ * SubsetConstruction. The start state is kept, and so are the states of the
+ * original automaton whose DFA state stands for just themselves, all other
+ * states are replaced.
+ */
+public class SubsetConstructionCommand extends CompositeCommand {
+    private final AutomatonState[] mStates;
+    private final AutomatonState[][] mSubsets;
+
+    public SubsetConstructionCommand(Automaton automaton)
+    {
+        super(automaton);
+        // Only the subsets are kept, not the whole construction
+        SubsetConstruction construction = new SubsetConstruction(automaton);
+
+        // Pick the state to use for each DFA state
+        int numStates = construction.getNumStates();
+        mStates = new AutomatonState[numStates];
+        mSubsets = new AutomatonState[numStates][];
+        HashSet<AutomatonState> keptStates = new HashSet<>();
+        mStates[0] = automaton.getStartState();
+        keptStates.add(mStates[0]);
+        for (int d = 0; d < numStates; d++) {
+            List<AutomatonState> subset = construction.getSubset(d);
+            mSubsets[d] = subset.toArray(new AutomatonState[subset.size()]);
+            if (d > 0 && mSubsets[d].length == 1
+                    && keptStates.add(mSubsets[d][0])) {
+                mStates[d] = mSubsets[d][0];
+            }
+        }
+
+        // Clear out the old transitions and states
+        ArrayList<AutomatonState> oldStates = new ArrayList<>();
+        Iterator<Automaton.StateTransitionsPair> it = automaton
+                .graphIterator();
+        while (it.hasNext()) {
+            Automaton.StateTransitionsPair pair = it.next();
+            oldStates.add(pair.getState());
+            for (AutomatonTransition t : pair.getTransitions()) {
+                super.commands.add(new RemoveTransitionCommand(automaton, t));
+            }
+        }
+        for (AutomatonState s : oldStates) {
+            if (!keptStates.contains(s)) {
+                super.commands.add(new RemoveStateCommand(automaton, s));
+            }
+        }
+
+        // Add the DFA
+        for (int d = 0; d < numStates; d++) {
+            if (mStates[d] == null) {
+                mStates[d] = automaton.createNewState();
+                super.commands.add(new AddStateCommand(automaton, mStates[d]));
+            }
+            super.commands.add(new SetIsFinalCommand(automaton, mStates[d],
+                    construction.isFinal(d)));
+        }
+        for (int d = 0; d < numStates; d++) {
+            int end = construction.getLabelledTransitionsEnd(d);
+            for (int k = construction.getLabelledTransitionsStart(d);
+                    k < end; k++) {
+                AutomatonTransition t = automaton.createNewTransition(
+                        mStates[d],
+                        mStates[construction.getLabelledTransitionTo(k)],
+                        construction.getLabel(k));
+                super.commands.add(new AddTransitionCommand(automaton, t));
+            }
+        }
+    }
+
+    /**
+     * @return The number of states of the DFA
+     */
+    public int getNumStates()
+    {
+        return mStates.length;
+    }
+
+    /**
+     * @param d The DFA state
+     * @return The states of the original automaton which the DFA state stands
+     * for
+     */
+    public List<AutomatonState> getSubset(int d)
+    {
+        return Collections.unmodifiableList(Arrays.asList(mSubsets[d]));
+    }
+
+    /**
+     * @param d The DFA state
+     * @return The state used for the DFA state
+     */
+    public AutomatonState getState(int d)
+    {
+        return mStates[d];
+    }
+
+    /**
+     * @return The states used for the DFA states, indexed by DFA state
+     */
+    public List<AutomatonState> getStates()
+    {
+        return Collections.unmodifiableList(Arrays.asList(mStates));
+    }
+
+    @Override
+    public long getSizeEstimate()
+    {
+        long size = super.getSizeEstimate() + 2 * REFERENCE_SIZE;
+        size += 2 * (OBJECT_SIZE + (long) REFERENCE_SIZE * mStates.length);
+        for (AutomatonState[] subset : mSubsets) {
+            size += OBJECT_SIZE + (long) REFERENCE_SIZE * subset.length;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * The out-going transitions of a single state. Transitions are stored in an
+ * array, with a hash index from each transition to its position so that
+ * membership checks and removal are O(1). Single character transitions are
+ * also bucketed by their character, so that finding the transitions for a
+ * character (e.g. a deterministic step) is O(1).
+ *
+ * Transitions are kept in insertion order, except that removing a transition
+ * moves the last transition into its place.
+ */
+final class TransitionTable {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private AutomatonTransition[] mItems;
+    private int mSize;
+    // Position of each transition in mItems. Transitions don't override
+    // equals(), but be explicit that this is based on identity.
+    private final IdentityHashMap<AutomatonTransition, Integer> mPositions;
+    // Single character transitions, bucketed by their character
+    private final HashMap<Character, LinkedHashSet<AutomatonTransition>> mCharBuckets;
+    private final View mView;
+
+    TransitionTable()
+    {
+        mItems = new AutomatonTransition[INITIAL_CAPACITY];
+        mSize = 0;
+        mPositions = new IdentityHashMap<>();
+        mCharBuckets = new HashMap<>();
+        mView = new View();
+    }
+
+    /**
+     * Unmodifiable list view of the transitions, reflects later changes.
+     * Iterators are fail-fast, as removal reorders the transitions.
+     */
+    private class View extends AbstractList<AutomatonTransition> {
+        void changed()
+        {
+            modCount++;
+        }
+
+        @Override
+        public AutomatonTransition get(int index)
+        {
+            if (index < 0 || index >= mSize) {
+                throw new IndexOutOfBoundsException("Index: " + index
+                        + ", Size: " + mSize);
+            }
+            return mItems[index];
+        }
+
+        @Override
+        public int size()
+        {
+            return mSize;
+        }
+
+        @Override
+        public boolean contains(Object o)
+        {
+            return o instanceof AutomatonTransition
+                    && TransitionTable.this.contains((AutomatonTransition) o);
+        }
+    }
+
+    /**
+     * @param t The transition
+     * @return The character to bucket this transition under, or null if this
+     * isn't a single character transition
+     */
+    private static Character bucketKey(AutomatonTransition t)
+    {
+        if (t == null || t.getData() == null || !t.getData().isSingleChar()) {
+            return null;
+        }
+        return t.getData().getChar();
+    }
+
+    /**
+     * @return The number of transitions in this table
+     */
+    int size()
+    {
+        return mSize;
+    }
+
+    /**
+     * @return true if there are no transitions in this table
+     */
+    boolean isEmpty()
+    {
+        return mSize == 0;
+    }
+
+    /**
+     * @param t The transition to check
+     * @return Whether this exact transition is in this table
+     */
+    boolean contains(AutomatonTransition t)
+    {
+        return mPositions.containsKey(t);
+    }
+
+    /**
+     * Adds a transition to the end of this table
+     *
+     * @param t The transition to add
+     * @return false if the transition was already in this table, true
+     * otherwise
+     */
+    boolean add(AutomatonTransition t)
+    {
+        if (mPositions.containsKey(t)) {
+            return false;
+        }
+
+        if (mSize == mItems.length) {
+            mItems = Arrays.copyOf(mItems, mItems.length * 2);
+        }
+        mPositions.put(t, mSize);
+        mItems[mSize++] = t;
+        mView.changed();
+
+        Character c = bucketKey(t);
+        if (c != null) {
+            LinkedHashSet<AutomatonTransition> bucket = mCharBuckets.get(c);
+            if (bucket == null) {
+                bucket = new LinkedHashSet<>();
+                mCharBuckets.put(c, bucket);
+            }
+            bucket.add(t);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a transition from this table
+     *
+     * @param t The transition to remove
+     * @return false if the transition wasn't in this table, true otherwise
+     */
+    boolean remove(AutomatonTransition t)
+    {
+        Integer pos = mPositions.remove(t);
+        if (pos == null) {
+            return false;
+        }
+
+        // Move the last transition into the free slot
+        int last = --mSize;
+        if (pos != last) {
+            AutomatonTransition moved = mItems[last];
+            mItems[pos] = moved;
+            mPositions.put(moved, pos);
+        }
+        mItems[last] = null;
+        mView.changed();
+
+        Character c = bucketKey(t);
+        if (c != null) {
+            LinkedHashSet<AutomatonTransition> bucket = mCharBuckets.get(c);
+            bucket.remove(t);
+            if (bucket.isEmpty()) {
+                mCharBuckets.remove(c);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The transitions in this table, as an unmodifiable list view
+     */
+    List<AutomatonTransition> asList()
+    {
+        return mView;
+    }
+
+    /**
+     * @param c The character in question
+     * @return The single character transitions for the given character, as an
+     * unmodifiable collection
+     */
+    Collection<AutomatonTransition> getCharTransitions(char c)
+    {
+        LinkedHashSet<AutomatonTransition> bucket = mCharBuckets.get(c);
+        if (bucket == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(bucket);
+    }
+}
@@ -22,12 +22,15 @@
  */
 package model;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.function.IntPredicate;
 import java.util.function.Predicate;
 
 public final class TranslationTools {
@@ -74,8 +77,9 @@ public final class TranslationTools {
 
     /**
      * Creates a list of all transitions that need to be broken down for
-     * converting from regexp to NFA. Null is returned if there are no more
-     * transitions to break down.
+     * converting from regexp to NFA, i.e. those which are neither single
+     * character nor character class transitions. Null is returned if there are
+     * no more transitions to break down.
      *
      * @param automaton The automaton to breakdown the transitions for
      * @return The list of AutomatonTransition(s) that need to be broken down
@@ -90,7 +94,8 @@ public final class TranslationTools {
             Automaton.StateTransitionsPair pair = it.next();
             List<AutomatonTransition> stateTrans = pair.getTransitions();
             for (AutomatonTransition t : stateTrans) {
-                if (!t.getData().isSingleChar()) {
+                if (t.getData().getOperator()
+                        != BasicRegexp.RegexpOperator.NONE) {
                     allTodoTrans.add(t);
                 }
             }
@@ -148,67 +153,190 @@ public final class TranslationTools {
     }
 
     /**
-     * Part of calcReachableStates(), for a state it discovers reachable states
-     * through transitions, with a given predicate on the transitions.
      *
      * @param automaton The automaton the state belongs to
-     * @param state The state to use to look for adjacent nodes connected
-     * through transitions
-     * @param newDiscovered The set which this method will add newly discovered
-     * states to
-     * @param visited The set of states which we have already visited, and thus
-     * will not be added to the "newDiscovered" set
+     * @param state The state which we want to start the search from
      * @param pred A predicate which tests if we should follow a specific
      * transition or not
+     * @return The set of states which are reachable through the transitions
+     * subject to the given predicate
      */
-    private static void discoverReachableStates(Automaton automaton,
-            AutomatonState state, Set<AutomatonState> newDiscovered,
-            Set<AutomatonState> visited, Predicate<AutomatonTransition> pred)
+    public static Set<AutomatonState> calcReachableStates(Automaton automaton,
+            AutomatonState state, Predicate<AutomatonTransition> pred)
     {
-        List<AutomatonTransition> transitions = automaton
-                .getStateTransitions(state);
-        for (AutomatonTransition t : transitions) {
-            if (pred.test(t) && !visited.contains(t.getTo())) {
-                newDiscovered.add(t.getTo());
+        Set<AutomatonState> visited = new HashSet<>();
+        ArrayDeque<AutomatonState> todo = new ArrayDeque<>();
+        todo.push(state);
+        visited.add(state);
+
+        while (!todo.isEmpty()) {
+            AutomatonState s = todo.pop();
+            for (AutomatonTransition t : automaton.getStateTransitions(s)) {
+                if (pred.test(t) && visited.add(t.getTo())) {
+                    todo.push(t.getTo());
+                }
             }
         }
+
+        return visited;
     }
 
     /**
+     * Expands the given set of states in-place to include all states reachable
+     * from it through the transitions subject to the given predicate. Doesn't
+     * allocate anything if a large enough stack is given.
      *
-     * @param automaton The automaton the state belongs to
-     * @param state The state which we want to start the search from
+     * @param frozen The automaton the states belong to
+     * @param set The set of states to expand
      * @param pred A predicate which tests if we should follow a specific
-     * transition or not
+     * transition (given by its number) or not
+     * @param stack Scratch space for the search, at least
+     * frozen.getNumStates() long. If null, a new array is allocated.
+     */
+    public static void expandReachableStates(FrozenAutomaton frozen,
+            StateSet set, IntPredicate pred, int[] stack)
+    {
+        if (stack == null) {
+            stack = new int[frozen.getNumStates()];
+        }
+
+        // Every state is pushed at most once, as it is added to the set when
+        // pushed
+        int top = 0;
+        for (int i = set.nextIndex(0); i >= 0; i = set.nextIndex(i + 1)) {
+            stack[top++] = i;
+        }
+        while (top > 0) {
+            int s = stack[--top];
+            int end = frozen.getTransitionsEnd(s);
+            for (int e = frozen.getTransitionsStart(s); e < end; e++) {
+                if (pred.test(e) && set.add(frozen.getTransitionTo(e))) {
+                    stack[top++] = frozen.getTransitionTo(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param frozen The automaton the states belong to
+     * @param from The set of states which we want to start the search from
+     * @param pred A predicate which tests if we should follow a specific
+     * transition (given by its number) or not
      * @return The set of states which are reachable through the transitions
-     * subject to the given predicate
+     * subject to the given predicate, including the states in "from"
      */
-    public static Set<AutomatonState> calcReachableStates(Automaton automaton,
-            AutomatonState state, Predicate<AutomatonTransition> pred)
+    public static StateSet calcReachableStates(FrozenAutomaton frozen,
+            StateSet from, IntPredicate pred)
     {
-        Set<AutomatonState> visited = new HashSet<>();
-        Set<AutomatonState> discovered = new HashSet<>();
-        discovered.add(state);
-        Set<AutomatonState> newDiscovered = new HashSet<>();
+        StateSet ret = from.copy();
+        expandReachableStates(frozen, ret, pred, null);
+        return ret;
+    }
 
-        while (discovered.size() > 0) {
-            visited.addAll(discovered);
+    /**
+     * @param frozen The automaton the state belongs to
+     * @param idx The index of the state which we want to find the epsilon
+     * closure of
+     * @return The set of states which are in this state's epsilon closure
+     * (including the state itself)
+     */
+    public static StateSet calcEpsilonReachableStates(FrozenAutomaton frozen,
+            int idx)
+    {
+        StateSet ret = new StateSet(frozen.getNumStates());
+        ret.add(idx);
+        expandReachableStates(frozen, ret, frozen::isEpsilonTransition, null);
+        return ret;
+    }
 
-            for (AutomatonState s2 : discovered) {
-                discoverReachableStates(automaton, s2, newDiscovered,
-                        visited, pred);
+    /**
+     * Calculates the strongly connected components of the graph made up of the
+     * transitions subject to the given predicate, using an iterative version
+     * of Tarjan's algorithm. Runs in O(n + m) time. Components are numbered in
+     * reverse topological order, i.e. transitions only ever go from a
+     * component to a component with the same or a lower number.
+     *
+     * @param frozen The automaton in question
+     * @param pred A predicate which tests if we should follow a specific
+     * transition (given by its number) or not
+     * @param component Array of length frozen.getNumStates() which is filled
+     * in with the component number of each state
+     * @return The number of components
+     */
+    public static int calcStronglyConnectedComponents(FrozenAutomaton frozen,
+            IntPredicate pred, int[] component)
+    {
+        int n = frozen.getNumStates();
+        int[] order = new int[n];
+        int[] low = new int[n];
+        int[] nextTrans = new int[n];
+        int[] callStack = new int[n];
+        int[] sccStack = new int[n];
+        boolean[] onStack = new boolean[n];
+        Arrays.fill(order, -1);
+
+        int counter = 0;
+        int numComponents = 0;
+        for (int root = 0; root < n; root++) {
+            if (order[root] >= 0) {
+                continue;
             }
 
-            // Efficiency trick, just swap the references and clear the old set
-            // for reuse as the new set
-            Set<AutomatonState> tmpSwap = discovered;
-            discovered = newDiscovered;
-            newDiscovered = tmpSwap;
-            newDiscovered.clear();
+            int callTop = 0;
+            int sccTop = 0;
+            order[root] = low[root] = counter++;
+            nextTrans[root] = frozen.getTransitionsStart(root);
+            callStack[callTop++] = root;
+            sccStack[sccTop++] = root;
+            onStack[root] = true;
+
+            while (callTop > 0) {
+                int v = callStack[callTop - 1];
+                int end = frozen.getTransitionsEnd(v);
+                boolean descended = false;
+                while (nextTrans[v] < end) {
+                    int e = nextTrans[v]++;
+                    if (!pred.test(e)) {
+                        continue;
+                    }
+                    int w = frozen.getTransitionTo(e);
+                    if (order[w] < 0) {
+                        // Not visited yet, "recurse" into it
+                        order[w] = low[w] = counter++;
+                        nextTrans[w] = frozen.getTransitionsStart(w);
+                        callStack[callTop++] = w;
+                        sccStack[sccTop++] = w;
+                        onStack[w] = true;
+                        descended = true;
+                        break;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], order[w]);
+                    }
+                }
+                if (descended) {
+                    continue;
+                }
 
+                // Finished with all of v's transitions
+                callTop--;
+                if (low[v] == order[v]) {
+                    // v is the root of a component, pop it off
+                    int w;
+                    do {
+                        w = sccStack[--sccTop];
+                        onStack[w] = false;
+                        component[w] = numComponents;
+                    } while (w != v);
+                    numComponents++;
+                }
+                if (callTop > 0) {
+                    int parent = callStack[callTop - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+            }
         }
 
-        return visited;
+        return numComponents;
     }
 
     /**
@@ -243,7 +371,8 @@ public final class TranslationTools {
             Automaton automaton, AutomatonState state)
     {
         return calcReachableStates(automaton, state,
-                t -> t.getData().getChar() == BasicRegexp.EPSILON_CHAR);
+                t -> t.getData().isSingleChar()
+                        && t.getData().getChar() == BasicRegexp.EPSILON_CHAR);
     }
 
     /**
@@ -258,23 +387,72 @@ public final class TranslationTools {
     public static List<Character> calcNonDeterministicTrans(Automaton a,
             AutomatonState state)
     {
-        HashSet<Character> nonDetSet = new HashSet<>();
-        HashSet<Character> found = new HashSet<>();
-        for (AutomatonTransition t : a.getStateTransitions(state)) {
-            if (found.contains(t.getData().getChar())) {
-                nonDetSet.add(t.getData().getChar());
+        // Every character of the atoms, which are already sorted
+        ArrayList<Character> list = new ArrayList<>();
+        for (BasicRegexp atom : calcNonDeterministicAtoms(a, state)) {
+            if (atom.isSingleChar()) {
+                list.add(atom.getChar());
             } else {
-                found.add(t.getData().getChar());
+                for (int c = atom.getRangeFirst(0); c <= atom.getRangeLast(0);
+                        c++) {
+                    list.add((char) c);
+                }
             }
         }
-
-        // Turn the set into a list which we then sort (consistent ordering in
-        // menu for example)
-        ArrayList<Character> list = new ArrayList<>(nonDetSet);
-        Collections.sort(list);
         return list;
     }
 
+    /**
+     * Returns the atoms on which the out-going transitions of a state are
+     * non-deterministic, sorted. Atoms are the largest ranges of characters
+     * which every single character or character class transition either
+     * fully covers or doesn't intersect at all, so each atom can be made
+     * deterministic in one step with a RemoveNonDeterminismCommand.
+     *
+     * @param a The automaton the state belongs to
+     * @param state The state to check for non-deterministic transitions
+     * @return A list of single character expressions and character class
+     * expressions of a single range, if there is no non-determinism this list
+     * is empty.
+     */
+    public static List<BasicRegexp> calcNonDeterministicAtoms(Automaton a,
+            AutomatonState state)
+    {
+        // Start (+1) and end (-1) of each range as (position << 1 | isStart)
+        // events, sorting these puts ends before starts at the same position
+        ArrayList<Long> events = new ArrayList<>();
+        for (AutomatonTransition t : a.getStateTransitions(state)) {
+            BasicRegexp re = t.getData();
+            if (re.isSingleChar()) {
+                events.add(((long) re.getChar() << 1) | 1);
+                events.add((long) (re.getChar() + 1) << 1);
+            } else if (re.isCharClass()) {
+                for (int i = 0; i < re.getNumRanges(); i++) {
+                    events.add(((long) re.getRangeFirst(i) << 1) | 1);
+                    events.add((long) (re.getRangeLast(i) + 1) << 1);
+                }
+            }
+        }
+        Collections.sort(events);
+
+        // Between two consecutive event positions the number of transitions
+        // covering a character doesn't change
+        ArrayList<BasicRegexp> atoms = new ArrayList<>();
+        int covering = 0;
+        for (int i = 0; i < events.size(); i++) {
+            long event = events.get(i);
+            covering += ((event & 1) != 0) ? 1 : -1;
+            int first = (int) (event >>> 1);
+            int next = (i + 1 < events.size())
+                    ? (int) (events.get(i + 1) >>> 1) : first;
+            if (covering > 1 && next > first) {
+                atoms.add(BasicRegexp.valueOfClass((char) first,
+                        (char) (next - 1)));
+            }
+        }
+        return atoms;
+    }
+
     /**
      * @param automaton The automaton the state belongs to
      * @param state The state to check for non-deterministic transitions
@@ -286,15 +464,21 @@ public final class TranslationTools {
     {
         List<AutomatonTransition> trans = automaton.getStateTransitions(state);
         HashSet<Character> found = new HashSet<>();
+        boolean hasCharClass = false;
         for (AutomatonTransition t : trans) {
-            if (found.contains(t.getData().getChar())) {
+            BasicRegexp re = t.getData();
+            if (re.isCharClass()) {
+                hasCharClass = true;
+            } else if (found.contains(re.getChar())) {
                 return true;
             } else {
-                found.add(t.getData().getChar());
+                found.add(re.getChar());
             }
         }
 
-        return false;
+        // Character classes can overlap each other and single characters
+        return hasCharClass
+                && !calcNonDeterministicAtoms(automaton, state).isEmpty();
     }
 
     /**
@@ -326,10 +510,8 @@ public final class TranslationTools {
     public static boolean hasCharacterTrans(Automaton automaton,
             AutomatonState from, AutomatonState to, char c)
     {
-        for (AutomatonTransition tmp : automaton.getStateTransitions(from)) {
-            BasicRegexp tmpRe = (BasicRegexp)tmp.getData();
-            if (tmp.getTo() == to && tmpRe.isSingleChar() &&
-                    tmpRe.getChar() == c) {
+        for (AutomatonTransition tmp : automaton.getStateTransitions(from, c)) {
+            if (tmp.getTo() == to) {
                 return true;
             }
         }
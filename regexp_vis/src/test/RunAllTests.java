@@ -25,14 +25,28 @@ package test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
+import test.cli.AutomatonGraphWriterTest;
 import test.controller.ActivityTest;
+import test.model.AlphabetPartitionTest;
 import test.model.AutomatonStateTest;
 import test.model.AutomatonTest;
 import test.model.AutomatonTransitionTest;
 import test.model.BasicRegexpTest;
+import test.model.BatchMatcherTest;
+import test.model.BitParallelNfaMatcherTest;
 import test.model.CommandHistoryTest;
+import test.model.DfaMatcherTest;
+import test.model.FileScannerTest;
+import test.model.FrozenAutomatonTest;
+import test.model.HopcroftMinimisationTest;
+import test.model.LazyDfaMatcherTest;
+import test.model.MultiPatternMatcherTest;
+import test.model.RegexpCompilerTest;
+import test.model.RegexpOptimiserTest;
 import test.model.RemoveEpsilonTransitionsContextTest;
 import test.model.RemoveNonDeterminismContextTest;
+import test.model.StateSetTest;
+import test.model.SubsetConstructionTest;
 import test.model.TranslationToolsTest;
 import test.view.GraphEdgeTest;
 import test.view.GraphNodeTest;
@@ -40,17 +54,33 @@ import test.view.GraphUtilsTest;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
+        /* test.cli */
+        AutomatonGraphWriterTest.class,
+
         /* test.controller */
         ActivityTest.class,
 
         /* test.model */
+        AlphabetPartitionTest.class,
         AutomatonStateTest.class,
         AutomatonTest.class,
         AutomatonTransitionTest.class,
         BasicRegexpTest.class,
+        BatchMatcherTest.class,
+        BitParallelNfaMatcherTest.class,
         CommandHistoryTest.class,
+        DfaMatcherTest.class,
+        FileScannerTest.class,
+        FrozenAutomatonTest.class,
+        HopcroftMinimisationTest.class,
+        LazyDfaMatcherTest.class,
+        MultiPatternMatcherTest.class,
+        RegexpCompilerTest.class,
+        RegexpOptimiserTest.class,
         RemoveEpsilonTransitionsContextTest.class,
         RemoveNonDeterminismContextTest.class,
+        StateSetTest.class,
+        SubsetConstructionTest.class,
         TranslationToolsTest.class,
 
         /* test.view */
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package test.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Scanner;
+
+import org.junit.Test;
+
+import cli.AutomatonGraphWriter;
+import model.Automaton;
+import model.AutomatonState;
+import model.AutomatonTransition;
+import model.BasicRegexp;
+import model.InvalidRegexpException;
+
+public class AutomatonGraphWriterTest {
+
+    /**
+     * Read the transition labels back from a written file, the same way that
+     * controller.GraphExportFile does
+     */
+    private static List<BasicRegexp> readLabels(String file)
+            throws IOException, InvalidRegexpException
+    {
+        ArrayList<BasicRegexp> labels = new ArrayList<>();
+        BufferedReader br = new BufferedReader(new StringReader(file));
+        String strLine;
+        while ((strLine = br.readLine()) != null) {
+            Scanner s = new Scanner(strLine);
+            if (s.next().equals("AutomatonTransition")) {
+                s.nextInt();
+                s.nextInt();
+                labels.add(BasicRegexp.parseRegexp(
+                        BasicRegexp.unescapeUnprintable(s.nextLine())));
+            }
+            s.close();
+        }
+        return labels;
+    }
+
+    @Test
+    public void testUnprintableLabels()
+            throws IOException, InvalidRegexpException
+    {
+        BasicRegexp[] labels = {
+            BasicRegexp.valueOf('a'),
+            BasicRegexp.valueOf('\n'),
+            BasicRegexp.valueOf('\r'),
+            BasicRegexp.valueOf(' '),
+            BasicRegexp.valueOf((char) 0x2028),
+            BasicRegexp.valueOf((char) 0xfeff),
+            BasicRegexp.valueOf(Character.MAX_VALUE),
+            BasicRegexp.valueOf((char) 0xd800),
+            BasicRegexp.valueOfClass('\t', '\r', (char) 0x85, (char) 0x85),
+            // A backslash followed by a "u" in the string form
+            BasicRegexp.valueOfClass('\\', '\\', 'u', 'u'),
+            BasicRegexp.valueOfClass('\0', '\0', '0', '9'),
+        };
+
+        Automaton automaton = new Automaton();
+        AutomatonState from = automaton.getStartState();
+        for (BasicRegexp label : labels) {
+            AutomatonState to = automaton.createNewState();
+            automaton.addStateWithTransitions(to,
+                    new LinkedList<AutomatonTransition>());
+            automaton.addTransition(automaton.createNewTransition(from, to,
+                    label));
+        }
+
+        StringWriter w = new StringWriter();
+        AutomatonGraphWriter.write(automaton, w);
+        String file = w.toString();
+        String[] lines = file.split(System.lineSeparator());
+        assertEquals(1 + 2 * labels.length, lines.length);
+        for (String line : lines) {
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                assertTrue(c >= ' ' && c < 0x7f);
+            }
+        }
+
+        List<BasicRegexp> read = readLabels(file);
+        assertEquals(labels.length, read.size());
+        for (int i = 0; i < labels.length; i++) {
+            assertEquals(labels[i], read.get(i));
+        }
+    }
+}
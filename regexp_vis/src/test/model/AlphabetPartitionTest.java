@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.LinkedList;
+
+import org.junit.Test;
+
+import model.AlphabetPartition;
+import model.Automaton;
+import model.AutomatonState;
+import model.AutomatonTransition;
+import model.BasicRegexp;
+import model.InvalidRegexpException;
+import model.RegexpCompiler;
+
+public class AlphabetPartitionTest {
+    private static AutomatonState addState(Automaton a)
+    {
+        AutomatonState s = a.createNewState();
+        a.addStateWithTransitions(s, new LinkedList<AutomatonTransition>());
+        return s;
+    }
+
+    private static void addTransition(Automaton a, AutomatonState from,
+            AutomatonState to, String re) throws InvalidRegexpException
+    {
+        a.addTransition(a.createNewTransition(from, to,
+                BasicRegexp.parseRegexp(re)));
+    }
+
+    @Test
+    public void testNoTransitions()
+    {
+        AlphabetPartition p = new AlphabetPartition(new Automaton());
+        assertEquals(1, p.getNumClasses());
+        assertEquals(0, p.getClassId('a'));
+        assertEquals(0, p.getClassId(Character.MAX_VALUE));
+        assertEquals(0, p.getFirstChar(0));
+    }
+
+    @Test
+    public void testSameTarget() throws InvalidRegexpException
+    {
+        // Transitions between the same states don't split the alphabet
+        Automaton a = new Automaton();
+        AutomatonState s1 = addState(a);
+        addTransition(a, a.getStartState(), s1, "a");
+        addTransition(a, a.getStartState(), s1, "c");
+        AlphabetPartition p = new AlphabetPartition(a);
+        assertEquals(2, p.getNumClasses());
+        assertEquals(p.getClassId('a'), p.getClassId('c'));
+        assertEquals(p.getClassId('b'), p.getClassId('\0'));
+        assertNotEquals(p.getClassId('a'), p.getClassId('b'));
+        assertEquals('a', p.getFirstChar(p.getClassId('c')));
+    }
+
+    @Test
+    public void testOverlappingClasses() throws InvalidRegexpException
+    {
+        Automaton a = new Automaton();
+        AutomatonState s1 = addState(a);
+        AutomatonState s2 = addState(a);
+        addTransition(a, a.getStartState(), s1, "[a-z]");
+        addTransition(a, s1, s2, "[m-p]");
+        addTransition(a, s1, s2, "[m-p]");
+        AlphabetPartition p = new AlphabetPartition(a);
+        assertEquals(3, p.getNumClasses());
+        assertEquals(p.getClassId('a'), p.getClassId('z'));
+        assertEquals(p.getClassId('m'), p.getClassId('p'));
+        assertNotEquals(p.getClassId('l'), p.getClassId('m'));
+        assertEquals(p.getClassId('0'), p.getClassId('{'));
+    }
+
+    @Test
+    public void testNegatedClass() throws InvalidRegexpException
+    {
+        AlphabetPartition p = new AlphabetPartition(new RegexpCompiler(
+                BasicRegexp.parseRegexp("[^a]*a")).getAutomaton());
+        // "a", the epsilon character and every other character
+        assertEquals(3, p.getNumClasses());
+        assertEquals(p.getClassId('b'), p.getClassId('\u4e00'));
+        assertNotEquals(p.getClassId('b'),
+                p.getClassId(BasicRegexp.EPSILON_CHAR));
+        assertNotEquals(p.getClassId('a'), p.getClassId('b'));
+        // The pages of "a" and of the epsilon character, one shared by the
+        // rest and the page offsets
+        assertEquals(3 * 256 + 256, p.getLookupSize());
+    }
+
+    @Test
+    public void testEpsilonIgnored() throws InvalidRegexpException
+    {
+        Automaton a = new Automaton();
+        AutomatonState s1 = addState(a);
+        a.addTransition(a.createNewTransition(a.getStartState(), s1,
+                BasicRegexp.EPSILON_EXPRESSION));
+        addTransition(a, s1, a.getStartState(), "x");
+        AlphabetPartition p = new AlphabetPartition(a);
+        assertEquals(2, p.getNumClasses());
+        assertEquals(p.getClassId(BasicRegexp.EPSILON_CHAR), p.getClassId('y'));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNotBrokenDown() throws InvalidRegexpException
+    {
+        Automaton a = new Automaton();
+        addTransition(a, a.getStartState(), a.getStartState(), "ab");
+        new AlphabetPartition(a);
+    }
+}
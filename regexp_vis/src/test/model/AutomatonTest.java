@@ -31,6 +31,7 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -187,6 +188,60 @@ public class AutomatonTest {
         assertTrue(caught);
     }
 
+    @Test
+    public void testGetIngoingTransition_removeState() {
+        AutomatonTransition t1 = mAutomaton.createNewTransition(mState1,
+                mState2, BasicRegexp.EPSILON_EXPRESSION);
+        AutomatonTransition t2 = mAutomaton.createNewTransition(mState2,
+                mState3, BasicRegexp.EPSILON_EXPRESSION);
+
+        mAutomaton.addTransition(t1);
+        mAutomaton.addTransition(t2);
+
+        // Removing a state should also remove its out-going transitions from
+        // the in-going transitions of other states
+        LinkedList<AutomatonTransition> removed = mAutomaton
+                .removeState(mState2);
+        assertTrue(mAutomaton.getIngoingTransition(mState3).isEmpty());
+        assertFalse(mAutomaton.hasIngoingTransition(mState3));
+
+        // Re-adding the state should restore them
+        mAutomaton.addStateWithTransitions(mState2, removed);
+        assertEquals(mAutomaton.getIngoingTransition(mState3).size(), 1);
+        assertTrue(mAutomaton.getIngoingTransition(mState3).contains(t2));
+        assertEquals(mAutomaton.getIngoingTransition(mState2).size(), 1);
+        assertTrue(mAutomaton.getIngoingTransition(mState2).contains(t1));
+
+        mAutomaton.removeTransition(t1);
+        assertFalse(mAutomaton.hasIngoingTransition(mState2));
+    }
+
+    @Test
+    public void testGetTransitionById() {
+        AutomatonTransition t1 = mAutomaton.createNewTransition(mState1,
+                mState2, BasicRegexp.EPSILON_EXPRESSION);
+        AutomatonTransition t2 = mAutomaton.createNewTransition(mState2,
+                mState3, BasicRegexp.EPSILON_EXPRESSION);
+
+        // Transitions not yet added shouldn't be found
+        assertNull(mAutomaton.getTransitionById(t1.getId()));
+
+        mAutomaton.addTransition(t1);
+        mAutomaton.addTransition(t2);
+        assertSame(mAutomaton.getTransitionById(t1.getId()), t1);
+        assertSame(mAutomaton.getAutomatonTransitionById(t2.getId()), t2);
+
+        mAutomaton.removeTransition(t1);
+        assertNull(mAutomaton.getTransitionById(t1.getId()));
+
+        // Transitions of removed states shouldn't be found either
+        LinkedList<AutomatonTransition> removed = mAutomaton
+                .removeState(mState2);
+        assertNull(mAutomaton.getTransitionById(t2.getId()));
+        mAutomaton.addStateWithTransitions(mState2, removed);
+        assertSame(mAutomaton.getTransitionById(t2.getId()), t2);
+    }
+
     @Test
     public void testGetStateTransitions() {
         // Test that we start off with no transitions initially
@@ -232,6 +287,49 @@ public class AutomatonTest {
         assertTrue(caught);
     }
 
+    @Test
+    public void testGetStateTransitions_char() {
+        AutomatonTransition t1 = mAutomaton.createNewTransition(mState1,
+                mState2, new BasicRegexp('a'));
+        AutomatonTransition t2 = mAutomaton.createNewTransition(mState1,
+                mState3, new BasicRegexp('a'));
+        AutomatonTransition t3 = mAutomaton.createNewTransition(mState1,
+                mState3, new BasicRegexp('b'));
+
+        mAutomaton.addTransition(t1);
+        mAutomaton.addTransition(t2);
+        mAutomaton.addTransition(t3);
+
+        assertEquals(mAutomaton.getStateTransitions(mState1, 'a').size(), 2);
+        assertTrue(mAutomaton.getStateTransitions(mState1, 'a').contains(t1));
+        assertTrue(mAutomaton.getStateTransitions(mState1, 'a').contains(t2));
+        assertEquals(mAutomaton.getStateTransitions(mState1, 'b').size(), 1);
+        assertTrue(mAutomaton.getStateTransitions(mState1, 'b').contains(t3));
+        assertTrue(mAutomaton.getStateTransitions(mState1, 'c').isEmpty());
+
+        mAutomaton.removeTransition(t1);
+        assertEquals(mAutomaton.getStateTransitions(mState1, 'a').size(), 1);
+        assertTrue(mAutomaton.getStateTransitions(mState1, 'a').contains(t2));
+        assertEquals(mAutomaton.getStateTransitions(mState1).size(), 2);
+        assertTrue(mAutomaton.getStateTransitions(mState1).contains(t2));
+        assertTrue(mAutomaton.getStateTransitions(mState1).contains(t3));
+        assertFalse(mAutomaton.transitionExists(t1));
+        assertTrue(mAutomaton.transitionExists(t2));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testGetStateTransitions_removeWhileIterating() {
+        for (char c = 'a'; c <= 'c'; c++) {
+            mAutomaton.addTransition(mAutomaton.createNewTransition(mState1,
+                    mState2, new BasicRegexp(c)));
+        }
+        // Removal moves the last transition into the free slot, so this
+        // would skip transitions if it didn't throw
+        for (AutomatonTransition t : mAutomaton.getStateTransitions(mState1)) {
+            mAutomaton.removeTransition(t);
+        }
+    }
+
     @Test
     public void testCreateNewState() {
         AutomatonState state1 = mAutomaton.createNewState();
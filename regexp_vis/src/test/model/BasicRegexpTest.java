@@ -24,6 +24,7 @@ package test.model;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -277,6 +278,138 @@ public class BasicRegexpTest {
         assertEquals(re.toString(), "abc?+*|abc?+*");
     }
 
+    @Test
+    public void testParseRegexp_charClass1() throws InvalidRegexpException {
+        BasicRegexp re = BasicRegexp.parseRegexp("[a-zA-Z_]x");
+        assertEquals(re.toString(), "[A-Z_a-z]x");
+        BasicRegexp cls = re.getOperands().get(0);
+        assertEquals(cls.getOperator(), BasicRegexp.RegexpOperator.NONE);
+        assertTrue(cls.isCharClass());
+        assertFalse(cls.isSingleChar());
+        assertFalse(cls.isNullable());
+        assertEquals(cls.getNumRanges(), 3);
+        assertEquals(cls.getRangeFirst(1), '_');
+        assertEquals(cls.getRangeLast(1), '_');
+        assertTrue(cls.matchesChar('q'));
+        assertTrue(cls.matchesChar('Z'));
+        assertFalse(cls.matchesChar('0'));
+        assertFalse(cls.matchesChar('`'));
+        assertTrue(re.alphabetContains('m'));
+        assertFalse(re.alphabetContains('0'));
+    }
+
+    @Test
+    public void testParseRegexp_charClass2() throws InvalidRegexpException {
+        // Overlapping and adjacent ranges are merged, single characters are
+        // not classes
+        assertEquals(BasicRegexp.parseRegexp("[c-fa-bz]").toString(),
+                "[a-fz]");
+        assertEquals(BasicRegexp.parseRegexp("[xy]").toString(), "[xy]");
+        assertSame(BasicRegexp.parseRegexp("[a]"), BasicRegexp.valueOf('a'));
+        assertSame(BasicRegexp.parseRegexp("[a-c]"),
+                BasicRegexp.valueOfClass('c', 'c', 'a', 'b'));
+        assertFalse(BasicRegexp.parseRegexp("[a-c]").equals(
+                BasicRegexp.parseRegexp("[a-d]")));
+    }
+
+    @Test
+    public void testParseRegexp_charClass3() throws InvalidRegexpException {
+        BasicRegexp re = BasicRegexp.parseRegexp("[^a]");
+        assertEquals(re.toString(), "[^a]");
+        assertFalse(re.matchesChar('a'));
+        assertTrue(re.matchesChar('b'));
+        assertTrue(re.matchesChar('\0'));
+        assertTrue(re.matchesChar('\uffff'));
+        // The epsilon character is never part of a class
+        assertFalse(re.matchesChar(BasicRegexp.EPSILON_CHAR));
+        assertEquals(BasicRegexp.parseRegexp("[^]").toString(), "[^]");
+    }
+
+    @Test
+    public void testParseRegexp_charClass4() throws InvalidRegexpException {
+        // Escapes, and operators inside classes are normal characters
+        BasicRegexp re = BasicRegexp.parseRegexp("[\\]\\-(|)*]+[-a-]");
+        assertEquals(re.getOperator(), BasicRegexp.RegexpOperator.SEQUENCE);
+        BasicRegexp cls = re.getOperands().get(0).getOperands().get(0);
+        for (char c : "]-(|)*".toCharArray()) {
+            assertTrue(cls.matchesChar(c));
+        }
+        assertEquals(BasicRegexp.parseRegexp(re.toString()), re);
+        assertEquals(re.getOperands().get(1).toString(), "[\\-a]");
+    }
+
+    @Test
+    public void testParseRegexp_charClass5() throws InvalidRegexpException {
+        // Without a closing bracket, "[" is a normal character
+        BasicRegexp re = BasicRegexp.parseRegexp("4[a");
+        assertEquals(re.toString(), "4[a");
+        assertTrue(re.getOperands().get(1).isSingleChar());
+    }
+
+    @Test
+    public void testParseRegexp_charClass6() throws InvalidRegexpException {
+        // An escaped closing bracket doesn't close the class, an escaped
+        // backslash doesn't escape the bracket after it
+        BasicRegexp re = BasicRegexp.parseRegexp("[a\\]");
+        assertEquals(BasicRegexp.RegexpOperator.SEQUENCE, re.getOperator());
+        assertEquals(4, re.getOperands().size());
+        re = BasicRegexp.parseRegexp("[a\\\\]");
+        assertTrue(re.isCharClass());
+        assertTrue(re.matchesChar('\\'));
+    }
+
+    @Test(timeout = 10000)
+    public void testParseRegexp_unclosedBrackets()
+        throws InvalidRegexpException {
+        // Each unclosed bracket mustn't scan to the end of the input again
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            sb.append('[');
+        }
+        BasicRegexp re = BasicRegexp.parseRegexp(sb.toString());
+        assertEquals(200000, re.getOperands().size());
+    }
+
+    @Test
+    public void testToString_whitespace() throws InvalidRegexpException {
+        BasicRegexp re = BasicRegexp.valueOf(' ');
+        assertEquals("[ ]", re.toString());
+        assertEquals(re, BasicRegexp.parseRegexp(re.toString()));
+    }
+
+    @Test
+    public void testEscapeUnprintable() {
+        assertEquals("a|b*", BasicRegexp.escapeUnprintable("a|b*"));
+        assertEquals("a\\u000ab", BasicRegexp.escapeUnprintable("a\nb"));
+        assertEquals("\\u005cu0041", BasicRegexp.escapeUnprintable("\\u0041"));
+        assertEquals("[\\\\]", BasicRegexp.escapeUnprintable("[\\\\]"));
+
+        String[] strs = { "a\nb", "\\u0041", "[\\\\u]",
+            "\r" + BasicRegexp.EPSILON_CHAR + "\\", "\\u12",
+            "\0" + (char) 0xfeff + Character.MAX_VALUE };
+        for (String str : strs) {
+            assertEquals(str, BasicRegexp.unescapeUnprintable(
+                BasicRegexp.escapeUnprintable(str)));
+        }
+        // Anything which isn't an escape is left as it is
+        assertEquals("\\u12x\\", BasicRegexp.unescapeUnprintable("\\u12x\\"));
+    }
+
+    @Test(expected = InvalidRegexpException.class)
+    public void testParseRegexp_charClassEmpty() throws Throwable {
+        BasicRegexp.parseRegexp("a[]");
+    }
+
+    @Test(expected = InvalidRegexpException.class)
+    public void testParseRegexp_charClassMalformed() throws Throwable {
+        BasicRegexp.parseRegexp("[z-a]");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCharClass_epsilon() {
+        new BasicRegexp(new char[] {'a', BasicRegexp.EPSILON_CHAR});
+    }
+
     @Test
     public void testOptimise_1() throws InvalidRegexpException {
         // Test combinations of iteration simplifying down to a single STAR
@@ -500,6 +633,170 @@ public class BasicRegexpTest {
         assertTrue(re1.compareTo(re5) > 0);
     }
 
+    @Test
+    public void testHashCode() throws InvalidRegexpException {
+        BasicRegexp re1 = BasicRegexp.parseRegexp("x(a|bc|d*)y");
+        BasicRegexp re2 = BasicRegexp.parseRegexp("x(d*|a|bc)y");
+        BasicRegexp re3 = BasicRegexp.parseRegexp("x(a|bc|d+)y");
+
+        // CHOICE is compared without regard to ordering
+        assertEquals(re1, re2);
+        assertEquals(re1.hashCode(), re2.hashCode());
+        assertFalse(re1.equals(re3));
+    }
+
+    @Test
+    public void testIntern() throws InvalidRegexpException {
+        BasicRegexp re1 = BasicRegexp.parseRegexp("(01|10)*1111");
+        BasicRegexp re2 = BasicRegexp.parseRegexp("(10|01)*1111");
+        BasicRegexp re3 = BasicRegexp.parseRegexp("(01|10)*111");
+
+        // Parsed expressions are interned
+        assertTrue(re1.isInterned());
+        assertSame(re1, re1.intern());
+        assertSame(re1, BasicRegexp.parseRegexp("(01|10)*1111"));
+        assertFalse(re1.equals(re3));
+
+        // Equal, but the CHOICE operands keep their order
+        assertEquals(re1, re2);
+        assertNotSame(re1, re2);
+        assertEquals(0, re1.compareTo(re2));
+        assertEquals("(10|01)*1111", re2.toString());
+
+        BasicRegexp built = new BasicRegexp(
+                new ArrayList<>(re1.getOperands()),
+                BasicRegexp.RegexpOperator.SEQUENCE);
+        assertFalse(built.isInterned());
+        assertEquals(re1, built);
+        assertSame(re1, built.intern());
+        assertSame(BasicRegexp.valueOf('a'), BasicRegexp.valueOf('a'));
+        assertSame(BasicRegexp.EPSILON_EXPRESSION,
+                BasicRegexp.valueOf(BasicRegexp.EPSILON_CHAR));
+
+        // Operands are interned too
+        assertSame(BasicRegexp.valueOf('1'), re1.getOperands().get(1));
+    }
+
+    @Test
+    public void testIntern_deep() {
+        BasicRegexp re = BasicRegexp.valueOf('a');
+        for (int i = 0; i < 100000; i++) {
+            re = new BasicRegexp(re, (i % 2 == 0)
+                    ? BasicRegexp.RegexpOperator.STAR
+                    : BasicRegexp.RegexpOperator.OPTION);
+        }
+        BasicRegexp interned = re.intern();
+        assertTrue(interned.isInterned());
+        assertEquals(re.hashCode(), interned.hashCode());
+    }
+
+    @Test
+    public void testDerivedProperties() throws InvalidRegexpException {
+        BasicRegexp re = BasicRegexp.parseRegexp("(a|b*)*c?");
+        assertTrue(re.isNullable());
+        assertEquals(8, re.getNodeCount());
+        assertEquals(5, re.getDepth());
+        assertEquals(2, re.getStarHeight());
+        assertEquals("{97, 98, 99}", re.getAlphabet().toString());
+        assertTrue(re.alphabetContains('b'));
+        assertFalse(re.alphabetContains('d'));
+        assertFalse(BasicRegexp.EPSILON_EXPRESSION.alphabetContains(
+                BasicRegexp.EPSILON_CHAR));
+
+        // The string form is only created once
+        assertSame(re.toString(), re.toString());
+        assertEquals("(a|b*)*c?", re.toString());
+    }
+
+    @Test
+    public void testAlphabet_union() throws InvalidRegexpException {
+        BasicRegexp re = BasicRegexp.parseRegexp("(ab|x[c-e])*|b|[f-g]");
+        assertEquals("{97, 98, 99, 100, 101, 102, 103, 120}",
+                re.getAlphabet().toString());
+        assertTrue(re.alphabetContains('a'));
+        assertTrue(re.alphabetContains('e'));
+        assertTrue(re.alphabetContains('f'));
+        assertTrue(re.alphabetContains('x'));
+        assertFalse(re.alphabetContains('h'));
+        assertFalse(re.alphabetContains('w'));
+        assertFalse(re.alphabetContains('`'));
+    }
+
+    @Test
+    public void testAlphabet_charClass() throws InvalidRegexpException {
+        BasicRegexp re = BasicRegexp.parseRegexp("[a-cx]");
+        assertEquals("{97, 98, 99, 120}", re.getAlphabet().toString());
+        assertTrue(re.alphabetContains('c'));
+        assertFalse(re.alphabetContains('d'));
+        assertFalse(re.alphabetContains('y'));
+    }
+
+    @Test
+    public void testAlphabet_highChars() {
+        ArrayList<BasicRegexp> operands = new ArrayList<>();
+        operands.add(BasicRegexp.valueOf('a'));
+        operands.add(BasicRegexp.valueOf(Character.MAX_VALUE));
+        operands.add(BasicRegexp.valueOfClass((char) 0x7fff, (char) 0x8000));
+        BasicRegexp re = new BasicRegexp(operands,
+                BasicRegexp.RegexpOperator.SEQUENCE);
+        assertEquals(4, re.getAlphabet().cardinality());
+        assertTrue(re.alphabetContains(Character.MAX_VALUE));
+        assertTrue(re.alphabetContains((char) 0x7fff));
+        assertTrue(re.alphabetContains((char) 0x8000));
+        assertFalse(re.alphabetContains((char) 0xfffe));
+        assertFalse(re.alphabetContains((char) 0x8001));
+        assertFalse(re.alphabetContains('b'));
+    }
+
+    @Test
+    public void testAlphabet_negated() throws InvalidRegexpException {
+        BasicRegexp re = BasicRegexp.parseRegexp("[^a]b*");
+        // Everything but "a" and epsilon
+        assertEquals(Character.MAX_VALUE - 1,
+                re.getAlphabet().cardinality());
+        assertTrue(re.alphabetContains('b'));
+        assertTrue(re.alphabetContains('\0'));
+        assertTrue(re.alphabetContains(Character.MAX_VALUE));
+        assertFalse(re.alphabetContains('a'));
+        assertFalse(re.alphabetContains(BasicRegexp.EPSILON_CHAR));
+    }
+
+    @Test
+    public void testParseRegexp_offsets() throws InvalidRegexpException {
+        StringBuilder sb = new StringBuilder("xx(a|b)*cyy");
+        BasicRegexp re = BasicRegexp.parseRegexp(sb, 2, sb.length() - 2);
+        assertEquals(BasicRegexp.parseRegexp("(a|b)*c"), re);
+        assertEquals("(a|b)*c", re.toString());
+    }
+
+    @Test
+    public void testParseRegexp_errorPosition() {
+        String[] invalid = { "ab)c", "a(b(c)", "a|*", "ab|", "x()" };
+        int[] positions = { 2, 1, 2, 3, 1 };
+        for (int i = 0; i < invalid.length; i++) {
+            try {
+                BasicRegexp.parseRegexp(invalid[i]);
+                fail("Expecting exception: InvalidRegexpException");
+            } catch (InvalidRegexpException e) {
+                assertEquals(positions[i], e.getPosition());
+            }
+        }
+    }
+
+    @Test
+    public void testParseRegexp_deep() throws InvalidRegexpException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sb.append('(');
+        }
+        sb.append('a');
+        for (int i = 0; i < 100000; i++) {
+            sb.append(")*");
+        }
+        BasicRegexp re = BasicRegexp.parseRegexp(sb.toString());
+        assertEquals(BasicRegexp.RegexpOperator.STAR, re.getOperator());
+    }
+
     @Test
     public void test00() throws Throwable {
         BasicRegexp basicRegexp0 = BasicRegexp.parseRegexp("\" K2v2't|La");
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import model.BasicRegexp;
+import model.BatchMatcher;
+import model.DfaMatcher;
+import model.InvalidRegexpException;
+import model.MultiPatternMatcher;
+import model.RegexpCompiler;
+
+public class BatchMatcherTest {
+    private static DfaMatcher sMatcher;
+    private static List<String> sInputs;
+
+    @BeforeClass
+    public static void setUpClass() throws InvalidRegexpException
+    {
+        sMatcher = new DfaMatcher(new RegexpCompiler(BasicRegexp.parseRegexp(
+                "(a|b)*a(a|b)(a|b)")).getAutomaton());
+        // More than one chunk, and not a multiple of 64
+        Random r = new Random(1);
+        sInputs = new ArrayList<>();
+        for (int i = 0; i < BatchMatcher.CHUNK_SIZE + 4321; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = r.nextInt(8);
+            for (int j = 0; j < len; j++) {
+                sb.append(r.nextBoolean() ? 'a' : 'b');
+            }
+            sInputs.add(sb.toString());
+        }
+    }
+
+    private static void checkResult(List<String> inputs,
+            BatchMatcher.Result result)
+    {
+        assertEquals(inputs.size(), result.getNumInputs());
+        int count = 0;
+        BitSet bits = result.toBitSet();
+        for (int i = 0; i < inputs.size(); i++) {
+            boolean expected = sMatcher.matches(inputs.get(i));
+            assertEquals(expected, result.matches(i));
+            assertEquals(expected, bits.get(i));
+            if (expected) {
+                count++;
+            }
+        }
+        assertEquals(count, result.getNumMatches());
+        assertEquals(count, bits.cardinality());
+    }
+
+    @Test
+    public void testMatchAll_list()
+    {
+        BatchMatcher bm = new BatchMatcher(sMatcher, new ForkJoinPool(4));
+        checkResult(sInputs, bm.matchAll(sInputs));
+        List<String> small = sInputs.subList(0, 100);
+        checkResult(small, bm.matchAll(new LinkedList<>(small)));
+    }
+
+    @Test
+    public void testMatchAll_stream()
+    {
+        BatchMatcher bm = new BatchMatcher(sMatcher);
+        checkResult(sInputs, bm.matchAll(sInputs.stream()));
+    }
+
+    @Test
+    public void testMatchAll_patternCounts() throws InvalidRegexpException
+    {
+        List<BasicRegexp> patterns = new ArrayList<>();
+        patterns.add(BasicRegexp.parseRegexp("(a|b)*a(a|b)(a|b)"));
+        patterns.add(BasicRegexp.parseRegexp("a*"));
+        patterns.add(BasicRegexp.parseRegexp("(a|b)*b"));
+        MultiPatternMatcher multi = new MultiPatternMatcher(patterns);
+        BatchMatcher.Result result = new BatchMatcher(multi).matchAll(
+                sInputs);
+
+        long[] expected = new long[patterns.size()];
+        int matched = 0;
+        for (String input : sInputs) {
+            int[] ids = multi.match(input);
+            for (int id : ids) {
+                expected[id]++;
+            }
+            if (ids.length > 0) {
+                matched++;
+            }
+        }
+        assertEquals(matched, result.getNumMatches());
+        assertEquals(patterns.size(), result.getNumPatterns());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], result.getPatternCount(i));
+        }
+
+        // A plain matcher counts as a single pattern
+        result = new BatchMatcher(sMatcher).matchAll(sInputs);
+        assertEquals(1, result.getNumPatterns());
+        assertEquals(result.getNumMatches(), result.getPatternCount(0));
+    }
+
+    @Test
+    public void testMatchAll_empty()
+    {
+        BatchMatcher bm = new BatchMatcher(sMatcher);
+        BatchMatcher.Result result = bm.matchAll(
+                Collections.<String>emptyList());
+        assertEquals(0, result.getNumInputs());
+        assertEquals(0, result.getNumMatches());
+        assertTrue(result.toBitSet().isEmpty());
+        assertEquals(0, bm.matchAll(sInputs.stream().limit(0))
+                .getNumInputs());
+    }
+
+    @Test
+    public void testMatchLines() throws IOException
+    {
+        Path file = Files.createTempFile("batchmatcher", ".txt");
+        try {
+            List<String> inputs = sInputs.subList(0, 5000);
+            Files.write(file, inputs, StandardCharsets.UTF_8);
+            BatchMatcher bm = new BatchMatcher(sMatcher);
+            checkResult(inputs, bm.matchLines(file, StandardCharsets.UTF_8));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testResult_badIndex()
+    {
+        BatchMatcher bm = new BatchMatcher(sMatcher);
+        BatchMatcher.Result result = bm.matchAll(sInputs.subList(0, 10));
+        assertFalse(result.matches(10));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static test.model.MatcherTestUtils.PATTERNS;
+import static test.model.MatcherTestUtils.WIDE_ALPHABET;
+import static test.model.MatcherTestUtils.WIDE_PATTERNS;
+import static test.model.MatcherTestUtils.allStrings;
+import static test.model.MatcherTestUtils.checkAgainstJavaRegex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import model.Automaton;
+import model.BasicRegexp;
+import model.BitParallelNfaMatcher;
+import model.InvalidRegexpException;
+import model.RegexpCompiler;
+
+public class BitParallelNfaMatcherTest {
+    private static Automaton createNfa(String pattern)
+        throws InvalidRegexpException
+    {
+        return RegexpCompiler.createNfa(BasicRegexp.parseRegexp(pattern));
+    }
+
+    @Test
+    public void testMatches_agreesWithJavaRegex() throws InvalidRegexpException
+    {
+        List<String> inputs = allStrings(6);
+        for (String pattern : PATTERNS) {
+            Automaton nfa = createNfa(pattern);
+            assertTrue(BitParallelNfaMatcher.canSimulate(nfa));
+            checkAgainstJavaRegex(pattern, new BitParallelNfaMatcher(nfa),
+                    inputs);
+        }
+    }
+
+    @Test
+    public void testMatches_wideChars() throws InvalidRegexpException
+    {
+        List<String> inputs = allStrings(WIDE_ALPHABET, 5);
+        for (String pattern : WIDE_PATTERNS) {
+            Automaton nfa = createNfa(pattern);
+            assertTrue(BitParallelNfaMatcher.canSimulate(nfa));
+            checkAgainstJavaRegex(pattern, new BitParallelNfaMatcher(nfa),
+                    inputs);
+        }
+    }
+
+    @Test
+    public void testMatches_twoWords() throws InvalidRegexpException
+    {
+        // Needs more than 64 positions
+        StringBuilder sb = new StringBuilder("(a|b)*a");
+        for (int i = 0; i < 40; i++) {
+            sb.append("(a|b)");
+        }
+        String pattern = sb.toString();
+        BitParallelNfaMatcher m = new BitParallelNfaMatcher(createNfa(
+                pattern));
+        assertTrue(m.getNumPositions() > 64);
+        assertTrue(m.getNumPositions() <= BitParallelNfaMatcher.MAX_POSITIONS);
+
+        Random r = new Random(1);
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            StringBuilder input = new StringBuilder();
+            int len = 38 + r.nextInt(10);
+            for (int j = 0; j < len; j++) {
+                input.append(r.nextBoolean() ? 'a' : 'b');
+            }
+            inputs.add(input.toString());
+        }
+        checkAgainstJavaRegex(pattern, m, inputs);
+    }
+
+    @Test
+    public void testMatches_offset() throws InvalidRegexpException
+    {
+        BitParallelNfaMatcher m = new BitParallelNfaMatcher(createNfa(
+                "(a|b)*abb"));
+        char[] buf = "xxabbxx".toCharArray();
+        assertTrue(m.matches(buf, 2, 3));
+        assertFalse(m.matches(buf, 1, 4));
+        assertFalse(m.matches(buf, 2, 0));
+    }
+
+    @Test
+    public void testTooManyPositions() throws InvalidRegexpException
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < BitParallelNfaMatcher.MAX_POSITIONS; i++) {
+            sb.append("a");
+        }
+        Automaton nfa = createNfa(sb.toString());
+        assertFalse(BitParallelNfaMatcher.canSimulate(nfa));
+        try {
+            new BitParallelNfaMatcher(nfa);
+            fail("Expecting exception: RuntimeException");
+        } catch (RuntimeException e) {
+            // Expected
+        }
+    }
+}
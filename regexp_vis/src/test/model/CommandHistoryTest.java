@@ -27,6 +27,12 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+
 import org.junit.Test;
 
 import model.AddStateCommand;
@@ -37,7 +43,11 @@ import model.AutomatonTransition;
 import model.BasicRegexp;
 import model.Command;
 import model.CommandHistory;
+import model.CommandHistoryListener;
+import model.HistorySnapshotCommand;
 import model.RemoveEpsilonTransitionsCommand;
+import model.RemoveStateCommand;
+import model.RemoveTransitionCommand;
 import model.SetIsFinalCommand;
 
 @SuppressWarnings("static-method")
@@ -396,4 +406,346 @@ public class CommandHistoryTest {
         assertTrue(commandHistory0.isClobbered());
     }
 
+    /**
+     * Counts the calls to undo() and redo() of the commands it wraps.
+     */
+    private static final class CountingCommand extends Command {
+        private final Command mCmd;
+        private final int[] mCount;
+
+        CountingCommand(Command cmd, int[] count) {
+            super(cmd.getAutomaton());
+            mCmd = cmd;
+            mCount = count;
+        }
+
+        @Override
+        public void undo() {
+            mCount[0]++;
+            mCmd.undo();
+        }
+
+        @Override
+        public void redo() {
+            mCount[0]++;
+            mCmd.redo();
+        }
+    }
+
+    /**
+     * @return A description of the states and transitions of an automaton,
+     *         including the order of the transitions
+     */
+    private static String describe(Automaton automaton) {
+        TreeMap<Integer, String> states = new TreeMap<>();
+        Iterator<Automaton.StateTransitionsPair> it = automaton
+                .graphIterator();
+        while (it.hasNext()) {
+            Automaton.StateTransitionsPair pair = it.next();
+            AutomatonState state = pair.getState();
+            StringBuilder sb = new StringBuilder();
+            sb.append(state.isFinal()).append(' ');
+            for (AutomatonTransition t : pair.getTransitions()) {
+                sb.append(t.getId()).append(',');
+            }
+            sb.append(" in ");
+            for (AutomatonTransition t : automaton
+                    .getIngoingTransition(state)) {
+                sb.append(t.getId()).append(',');
+            }
+            states.put(state.getId(), sb.toString());
+        }
+        return states.toString();
+    }
+
+    /**
+     * Build a history of "n" commands which add, change and remove states
+     * and transitions, recording the automaton after each one.
+     */
+    private static List<String> buildHistory(Automaton automaton,
+            CommandHistory history, int n, int[] count) {
+        List<String> expected = new ArrayList<>();
+        expected.add(describe(automaton));
+        List<AutomatonState> states = new ArrayList<>();
+        states.add(automaton.getStartState());
+        AutomatonTransition last = null;
+        for (int i = 0; history.getHistorySize() < n; i++) {
+            AutomatonState from = states.get(i % states.size());
+            Command cmd;
+            if (i % 5 == 4) {
+                cmd = new SetIsFinalCommand(automaton, from, !from.isFinal());
+            } else if (i % 7 == 6 && last != null) {
+                cmd = new RemoveTransitionCommand(automaton, last);
+                last = null;
+            } else if (i % 11 == 10 && states.size() > 2) {
+                AutomatonState s = states.remove(states.size() - 1);
+                if (last != null && last.getFrom() == s) {
+                    last = null;
+                }
+                cmd = new RemoveStateCommand(automaton, s);
+            } else if (i % 2 == 0) {
+                AutomatonState s = automaton.createNewState();
+                states.add(s);
+                cmd = new AddStateCommand(automaton, s);
+            } else {
+                AutomatonState to = states.get((i * 3) % states.size());
+                last = automaton.createNewTransition(from, to,
+                        new BasicRegexp((char) ('a' + i % 26)));
+                cmd = new AddTransitionCommand(automaton, last);
+            }
+            history.executeNewCommand(new CountingCommand(cmd, count));
+            expected.add(describe(automaton));
+        }
+        return expected;
+    }
+
+    @Test
+    public void testCheckpoints_seek() {
+        Automaton automaton = new Automaton();
+        CommandHistory history = new CommandHistory();
+        history.setCheckpointer(automaton::createCheckpoint);
+        int[] count = new int[1];
+        List<String> expected = buildHistory(automaton, history, 500, count);
+        assertEquals(500 / CommandHistory.MIN_CHECKPOINT_SPACING + 1,
+                history.getNumCheckpoints());
+
+        int[] targets = { 0, 250, 499, 3, 17, 480, 240, 241, 500, 100, 0 };
+        for (int idx : targets) {
+            count[0] = 0;
+            history.seekIdx(idx);
+            assertEquals(idx, history.getHistoryIdx());
+            assertEquals(expected.get(idx), describe(automaton));
+            assertTrue(count[0] <= CommandHistory.MIN_CHECKPOINT_SPACING / 2);
+        }
+
+        // Stepping from a restored checkpoint works as usual
+        history.seekIdx(320);
+        history.prev();
+        assertEquals(expected.get(319), describe(automaton));
+        history.next();
+        history.next();
+        assertEquals(expected.get(321), describe(automaton));
+    }
+
+    @Test
+    public void testCheckpoints_clobber() {
+        Automaton automaton = new Automaton();
+        CommandHistory history = new CommandHistory();
+        history.setCheckpointer(automaton::createCheckpoint);
+        int[] count = new int[1];
+        List<String> expected = buildHistory(automaton, history, 200, count);
+
+        // Clobbering drops the checkpoints after the current index
+        history.seekIdx(50);
+        AutomatonState s = automaton.createNewState();
+        history.executeNewCommand(new AddStateCommand(automaton, s));
+        assertEquals(50 / CommandHistory.MIN_CHECKPOINT_SPACING + 1,
+                history.getNumCheckpoints());
+        String after = describe(automaton);
+        history.seekIdx(0);
+        assertEquals(expected.get(0), describe(automaton));
+        history.seekIdx(51);
+        assertEquals(after, describe(automaton));
+        history.seekIdx(48);
+        assertEquals(expected.get(48), describe(automaton));
+
+        history.clear();
+        assertEquals(0, history.getNumCheckpoints());
+    }
+
+    @Test
+    public void testCheckpoints_budget() {
+        Automaton automaton = new Automaton();
+        CommandHistory history = new CommandHistory();
+        history.setCheckpointer(automaton::createCheckpoint, 20000);
+        int[] count = new int[1];
+        List<String> expected = buildHistory(automaton, history, 2000, count);
+        assertTrue(history.getCheckpointsSize() <= 20000);
+        assertTrue(history.getCheckpointSpacing()
+                > CommandHistory.MIN_CHECKPOINT_SPACING);
+        assertTrue(history.getNumCheckpoints() > 1);
+
+        for (int idx = 2000; idx >= 0; idx -= 97) {
+            history.seekIdx(idx);
+            assertEquals(expected.get(idx), describe(automaton));
+        }
+    }
+
+    @Test
+    public void testCheckpoints_tinyBudget() {
+        // Even a single checkpoint is over budget, the first and the newest
+        // ones are still kept so the commands can be compacted
+        Automaton automaton = new Automaton();
+        CommandHistory history = new CommandHistory();
+        history.setCheckpointer(automaton::createCheckpoint, 1);
+        int[] count = new int[1];
+        List<String> expected = buildHistory(automaton, history, 300, count);
+        assertEquals(3, history.getNumCheckpoints());
+        assertEquals(CommandHistory.MIN_CHECKPOINT_SPACING,
+                history.getCheckpointSpacing());
+
+        history.setHistoryBudget(0);
+        Command first = history.getCommands().get(0);
+        assertTrue(first instanceof HistorySnapshotCommand);
+        int offset = ((HistorySnapshotCommand) first).getNumCommands() - 1;
+        assertEquals(300, history.getHistorySize() + offset);
+        for (int i = 0; i < 100; i++) {
+            AutomatonState s = automaton.createNewState();
+            history.executeNewCommand(new AddStateCommand(automaton, s));
+            assertTrue(history.getHistorySize()
+                    <= CommandHistory.MIN_RECENT_COMMANDS
+                    + 2 * CommandHistory.MIN_CHECKPOINT_SPACING + 1);
+        }
+        history.seekIdx(0);
+        assertEquals(expected.get(0), describe(automaton));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCheckpoints_negativeBudget() {
+        new CommandHistory().setCheckpointer(null, -1);
+    }
+
+    @Test
+    public void testCompaction() {
+        Automaton automaton = new Automaton();
+        CommandHistory history = new CommandHistory();
+        history.setCheckpointer(automaton::createCheckpoint);
+        int[] count = new int[1];
+        List<String> expected = buildHistory(automaton, history, 500, count);
+        long size = history.getCommandsSize();
+        assertTrue(size > 0);
+
+        history.setHistoryBudget(size / 4);
+        assertTrue(history.getCommandsSize() <= size / 4);
+        assertTrue(history.getHistorySize() < 500);
+        assertEquals(history.getHistorySize(), history.getHistoryIdx());
+        assertEquals(expected.get(500), describe(automaton));
+
+        // The first entry stands in for the compacted commands, the rest
+        // are the most recent commands as before
+        Command first = history.getCommands().get(0);
+        assertTrue(first instanceof HistorySnapshotCommand);
+        int offset = ((HistorySnapshotCommand) first).getNumCommands() - 1;
+        assertEquals(500, history.getHistorySize() + offset);
+        for (int idx = history.getHistorySize(); idx >= 0; idx--) {
+            history.seekIdx(idx);
+            assertEquals(expected.get(idx == 0 ? 0 : idx + offset),
+                    describe(automaton));
+        }
+        history.seekIdx(history.getHistorySize());
+        assertEquals(expected.get(500), describe(automaton));
+    }
+
+    @Test
+    public void testCompaction_keepsRecentCommands() {
+        Automaton automaton = new Automaton();
+        CommandHistory history = new CommandHistory();
+        history.setCheckpointer(automaton::createCheckpoint);
+        int[] count = new int[1];
+        List<String> expected = buildHistory(automaton, history, 100, count);
+        history.setHistoryBudget(0);
+        assertTrue(history.getHistorySize() > 1);
+
+        // Compacting again whenever a new checkpoint is taken
+        for (int i = 0; i < 100; i++) {
+            AutomatonState s = automaton.createNewState();
+            history.executeNewCommand(new AddStateCommand(automaton, s));
+            expected.add(describe(automaton));
+            assertTrue(history.getHistorySize() > 1);
+            assertTrue(history.getHistorySize()
+                    <= CommandHistory.MIN_RECENT_COMMANDS
+                    + CommandHistory.MIN_CHECKPOINT_SPACING + 1);
+        }
+
+        history.prev();
+        assertEquals(expected.get(expected.size() - 2), describe(automaton));
+        history.seekIdx(0);
+        assertEquals(expected.get(0), describe(automaton));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompaction_negativeBudget() {
+        new CommandHistory().setHistoryBudget(-1);
+    }
+
+    /**
+     * Listener recording each call as a string
+     */
+    private static class RecordingListener implements CommandHistoryListener {
+        final List<String> mEvents = new ArrayList<>();
+
+        @Override
+        public void commandAdded(CommandHistory history, Command cmd) {
+            mEvents.add("added " + history.getHistorySize());
+        }
+
+        @Override
+        public void historyTruncated(CommandHistory history, int fromIdx,
+                int toIdx) {
+            mEvents.add("truncated " + fromIdx + " " + toIdx);
+        }
+
+        @Override
+        public void historyCompacted(CommandHistory history, int numRemoved) {
+            mEvents.add("compacted " + numRemoved);
+        }
+
+        @Override
+        public void historyCleared(CommandHistory history) {
+            mEvents.add("cleared");
+        }
+
+        @Override
+        public void historyIdxChanged(CommandHistory history, int idx) {
+            mEvents.add("idx " + idx);
+        }
+    }
+
+    @Test
+    public void testListener() {
+        Automaton automaton = new Automaton();
+        CommandHistory history = new CommandHistory();
+        RecordingListener listener = new RecordingListener();
+        int[] count = new int[1];
+        buildHistory(automaton, history, 100, count);
+        history.addListener(listener);
+
+        history.seekIdx(40);
+        history.seekIdx(40);
+        history.prev();
+        history.next();
+        history.executeNewCommand(new AddStateCommand(automaton,
+                automaton.createNewState()));
+        history.clear();
+        history.removeListener(listener);
+        history.executeNewCommand(new AddStateCommand(automaton,
+                automaton.createNewState()));
+
+        // The 60 clobbered commands are removed with a single call
+        String[] expected = { "idx 40", "idx 39", "idx 40",
+                "truncated 40 100", "added 41", "cleared" };
+        assertEquals(Arrays.asList(expected), listener.mEvents);
+    }
+
+    @Test
+    public void testListener_compacted() {
+        Automaton automaton = new Automaton();
+        CommandHistory history = new CommandHistory();
+        history.setCheckpointer(automaton::createCheckpoint);
+        RecordingListener listener = new RecordingListener();
+        int[] count = new int[1];
+        buildHistory(automaton, history, 100, count);
+        history.addListener(listener);
+
+        history.setHistoryBudget(0);
+        assertEquals(1, listener.mEvents.size());
+        int numRemoved = 100 - history.getHistorySize();
+        assertEquals("compacted " + numRemoved, listener.mEvents.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testListener_null() {
+        new CommandHistory().addListener(null);
+    }
+
 }
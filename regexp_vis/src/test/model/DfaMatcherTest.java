@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static test.model.MatcherTestUtils.PATTERNS;
+import static test.model.MatcherTestUtils.WIDE_ALPHABET;
+import static test.model.MatcherTestUtils.WIDE_PATTERNS;
+import static test.model.MatcherTestUtils.allStrings;
+import static test.model.MatcherTestUtils.checkAgainstJavaRegex;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+
+import model.Automaton;
+import model.AutomatonState;
+import model.AutomatonTransition;
+import model.BasicRegexp;
+import model.DfaMatcher;
+import model.InvalidRegexpException;
+import model.RegexpCompiler;
+
+public class DfaMatcherTest {
+    private static DfaMatcher compile(String pattern)
+        throws InvalidRegexpException
+    {
+        return new DfaMatcher(new RegexpCompiler(
+                BasicRegexp.parseRegexp(pattern)).getAutomaton());
+    }
+
+    @Test
+    public void testMatches() throws InvalidRegexpException
+    {
+        DfaMatcher m = compile("(a|b)*abb");
+        assertTrue(m.matches("abb"));
+        assertTrue(m.matches("aababb"));
+        assertFalse(m.matches(""));
+        assertFalse(m.matches("abba"));
+        assertFalse(m.matches("abbc"));
+        assertFalse(m.matches("ABB"));
+
+        char[] buf = "xxabbxx".toCharArray();
+        assertTrue(m.matches(buf, 2, 3));
+        assertFalse(m.matches(buf, 1, 4));
+        assertFalse(m.matches(buf, 2, 0));
+    }
+
+    @Test
+    public void testMatches_agreesWithJavaRegex() throws InvalidRegexpException
+    {
+        List<String> inputs = allStrings(6);
+        for (String pattern : PATTERNS) {
+            checkAgainstJavaRegex(pattern, compile(pattern), inputs);
+        }
+    }
+
+    @Test
+    public void testMatches_wideChars() throws InvalidRegexpException
+    {
+        List<String> inputs = allStrings(WIDE_ALPHABET, 5);
+        for (String pattern : WIDE_PATTERNS) {
+            checkAgainstJavaRegex(pattern, compile(pattern), inputs);
+        }
+    }
+
+    @Test
+    public void testStep() throws InvalidRegexpException
+    {
+        DfaMatcher m = compile("ab");
+        int s = m.getStartState();
+        assertFalse(m.isAccepting(s));
+        assertEquals(-1, m.step(s, 'b'));
+        s = m.step(s, 'a');
+        s = m.step(s, 'b');
+        assertTrue(m.isAccepting(s));
+        assertEquals(-1, m.step(s, 'z'));
+    }
+
+    @Test
+    public void testNoTransitions()
+    {
+        Automaton a = new Automaton();
+        a.getStartState().setFinal(true);
+        DfaMatcher m = new DfaMatcher(a);
+        assertEquals(1, m.getNumStates());
+        assertTrue(m.matches(""));
+        assertFalse(m.matches("a"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNonDeterministic()
+    {
+        Automaton a = new Automaton();
+        AutomatonState s1 = a.createNewState();
+        AutomatonState s2 = a.createNewState();
+        a.addStateWithTransitions(s1, new LinkedList<AutomatonTransition>());
+        a.addStateWithTransitions(s2, new LinkedList<AutomatonTransition>());
+        a.addTransition(a.createNewTransition(a.getStartState(), s1,
+                new BasicRegexp('a')));
+        a.addTransition(a.createNewTransition(a.getStartState(), s2,
+                new BasicRegexp('a')));
+        new DfaMatcher(a);
+    }
+
+    @Test
+    public void testTableSize_negatedClass() throws InvalidRegexpException
+    {
+        // One column per class of characters, not per character
+        DfaMatcher m = compile("[^a]b");
+        assertEquals(3, m.getPartition().getNumClasses());
+        assertEquals(m.getNumStates() * 3, m.getTableSize());
+        assertTrue(m.matches("\u4e00b"));
+        assertFalse(m.matches("ab"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testMatches_badRange() throws InvalidRegexpException
+    {
+        compile("a").matches(new char[2], 1, 2);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import model.BasicRegexp;
+import model.DfaMatcher;
+import model.FileScanner;
+import model.InvalidRegexpException;
+import model.RegexpCompiler;
+
+public class FileScannerTest {
+    private Path mFile;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mFile = Files.createTempFile("filescanner", ".txt");
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        Files.delete(mFile);
+    }
+
+    private static FileScanner create(String pattern)
+        throws InvalidRegexpException
+    {
+        return new FileScanner(new DfaMatcher(new RegexpCompiler(
+                BasicRegexp.parseRegexp(pattern)).getAutomaton()));
+    }
+
+    @Test
+    public void testScan() throws IOException, InvalidRegexpException
+    {
+        String text = "abab\nab\r\nba\n\nab\u00e9ab\nab";
+        Files.write(mFile, text.getBytes(StandardCharsets.UTF_8));
+        FileScanner.Result r = create("(ab|\u00e9)*").scan(mFile);
+
+        assertEquals(6, r.getNumLines());
+        assertEquals(5, r.getNumMatches());
+        long[] lines = { 0, 1, 3, 4, 5 };
+        long[] offsets = { 0, 5, 12, 13, 20 };
+        int[] lengths = { 4, 2, 0, 6, 2 };
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(lines[i], r.getLine(i));
+            assertEquals(offsets[i], r.getOffset(i));
+            assertEquals(lengths[i], r.getLength(i));
+        }
+    }
+
+    @Test
+    public void testScan_supplementary()
+        throws IOException, InvalidRegexpException
+    {
+        String text = "a\ud83d\ude00\na\u00e9\n\u00ff\n";
+        Files.write(mFile, text.getBytes(StandardCharsets.UTF_8));
+        FileScanner.Result r = create("a\ud83d\ude00").scan(mFile);
+        assertEquals(3, r.getNumLines());
+        assertEquals(1, r.getNumMatches());
+        assertEquals(0, r.getLine(0));
+        assertEquals(5, r.getLength(0));
+    }
+
+    @Test
+    public void testScan_invalidUtf8()
+        throws IOException, InvalidRegexpException
+    {
+        byte[] bytes = { 'a', (byte) 0xc3, '\n', 'a', (byte) 0xff, '\n' };
+        Files.write(mFile, bytes);
+        FileScanner.Result r = create("a\ufffd").scan(mFile);
+        assertEquals(2, r.getNumLines());
+        assertEquals(2, r.getNumMatches());
+    }
+
+    @Test
+    public void testScan_empty() throws IOException, InvalidRegexpException
+    {
+        FileScanner.Result r = create("a*").scan(mFile);
+        assertEquals(0, r.getNumLines());
+        assertEquals(0, r.getNumMatches());
+    }
+
+    @Test
+    public void testScanParallel() throws IOException, InvalidRegexpException
+    {
+        // Large enough for several chunks
+        Random rand = new Random(1);
+        List<String> lines = new ArrayList<>();
+        long size = 0;
+        while (size < 3 * FileScanner.MIN_CHUNK_SIZE + 12345) {
+            StringBuilder sb = new StringBuilder();
+            int len = rand.nextInt(12);
+            for (int j = 0; j < len; j++) {
+                sb.append(rand.nextBoolean() ? 'a' : 'b');
+            }
+            lines.add(sb.toString());
+            size += len + 1;
+        }
+        Files.write(mFile, lines, StandardCharsets.UTF_8);
+
+        String pattern = "(a|b)*a(a|b)b";
+        DfaMatcher m = new DfaMatcher(new RegexpCompiler(
+                BasicRegexp.parseRegexp(pattern)).getAutomaton());
+        FileScanner scanner = new FileScanner(m);
+        FileScanner.Result seq = scanner.scan(mFile);
+        FileScanner.Result par = scanner.scanParallel(mFile,
+                new ForkJoinPool(4));
+
+        List<Long> expected = new ArrayList<>();
+        try (BufferedReader br = Files.newBufferedReader(mFile)) {
+            String line;
+            long i = 0;
+            while ((line = br.readLine()) != null) {
+                if (m.matches(line)) {
+                    expected.add(i);
+                }
+                i++;
+            }
+        }
+
+        for (FileScanner.Result r : new FileScanner.Result[] { seq, par }) {
+            assertEquals(lines.size(), r.getNumLines());
+            assertEquals(expected.size(), r.getNumMatches());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals((long) expected.get(i), r.getLine(i));
+                assertEquals(seq.getOffset(i), r.getOffset(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.Automaton;
+import model.AutomatonState;
+import model.AutomatonTransition;
+import model.BasicRegexp;
+import model.FrozenAutomaton;
+
+public class FrozenAutomatonTest {
+    private Automaton mAutomaton;
+    private AutomatonState mState1;
+    private AutomatonState mState2;
+    private AutomatonTransition mTrans1;
+    private AutomatonTransition mTrans2;
+    private AutomatonTransition mTrans3;
+
+    @Before
+    public void setUp() throws Exception {
+        mAutomaton = new Automaton();
+        mState1 = mAutomaton.createNewState();
+        mState2 = mAutomaton.createNewState();
+        mAutomaton.addStateWithTransitions(mState2,
+                new LinkedList<AutomatonTransition>());
+        mAutomaton.addStateWithTransitions(mState1,
+                new LinkedList<AutomatonTransition>());
+        mState2.setFinal(true);
+
+        AutomatonState start = mAutomaton.getStartState();
+        mTrans1 = mAutomaton.createNewTransition(start, mState1,
+                new BasicRegexp('b'));
+        mTrans2 = mAutomaton.createNewTransition(start, mState2,
+                new BasicRegexp('a'));
+        mTrans3 = mAutomaton.createNewTransition(mState1, mState2,
+                BasicRegexp.EPSILON_EXPRESSION);
+        mAutomaton.addTransition(mTrans1);
+        mAutomaton.addTransition(mTrans2);
+        mAutomaton.addTransition(mTrans3);
+    }
+
+    @Test
+    public void testStates() {
+        FrozenAutomaton frozen = mAutomaton.freeze();
+
+        // Start state first, then ordered by ID
+        assertEquals(3, frozen.getNumStates());
+        assertSame(mAutomaton.getStartState(),
+                frozen.getState(frozen.getStartIndex()));
+        assertSame(mState1, frozen.getState(1));
+        assertSame(mState2, frozen.getState(2));
+        assertEquals(1, frozen.getIndex(mState1));
+        assertEquals(-1, frozen.getIndex(mAutomaton.createNewState()));
+
+        assertFalse(frozen.isFinal(1));
+        assertTrue(frozen.isFinal(2));
+    }
+
+    @Test
+    public void testTransitions() {
+        FrozenAutomaton frozen = mAutomaton.freeze();
+
+        assertEquals(3, frozen.getNumTransitions());
+
+        // Out-going transitions of the start state are ordered by character
+        int start = frozen.getTransitionsStart(0);
+        assertEquals(2, frozen.getTransitionsEnd(0) - start);
+        assertSame(mTrans2, frozen.getTransition(start));
+        assertEquals('a', frozen.getTransitionChar(start));
+        assertEquals(2, frozen.getTransitionTo(start));
+        assertSame(mTrans1, frozen.getTransition(start + 1));
+        assertEquals('b', frozen.getTransitionChar(start + 1));
+        assertEquals(1, frozen.getTransitionTo(start + 1));
+
+        int e = frozen.getTransitionsStart(1);
+        assertEquals(1, frozen.getTransitionsEnd(1) - e);
+        assertTrue(frozen.isEpsilonTransition(e));
+        assertEquals(1, frozen.getTransitionFrom(e));
+
+        assertEquals(frozen.getTransitionsStart(2),
+                frozen.getTransitionsEnd(2));
+    }
+
+    @Test
+    public void testIngoingTransitions() {
+        FrozenAutomaton frozen = mAutomaton.freeze();
+
+        assertEquals(frozen.getIngoingStart(0), frozen.getIngoingEnd(0));
+        assertEquals(1, frozen.getIngoingEnd(1) - frozen.getIngoingStart(1));
+        assertSame(mTrans1, frozen.getTransition(
+                frozen.getIngoingTransition(frozen.getIngoingStart(1))));
+
+        assertEquals(2, frozen.getIngoingEnd(2) - frozen.getIngoingStart(2));
+        for (int i = frozen.getIngoingStart(2); i < frozen.getIngoingEnd(2);
+                i++) {
+            assertEquals(2, frozen.getTransitionTo(
+                    frozen.getIngoingTransition(i)));
+        }
+    }
+
+    @Test
+    public void testSnapshot() {
+        FrozenAutomaton frozen = mAutomaton.freeze();
+
+        // Later changes aren't reflected in the snapshot
+        mAutomaton.removeTransition(mTrans3);
+        mState1.setFinal(true);
+        assertEquals(3, frozen.getNumTransitions());
+        assertFalse(frozen.isFinal(1));
+        assertEquals(2, mAutomaton.freeze().getNumTransitions());
+    }
+}
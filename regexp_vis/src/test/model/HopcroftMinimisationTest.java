@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.Automaton;
+import model.AutomatonState;
+import model.AutomatonTransition;
+import model.BasicRegexp;
+import model.HopcroftMinimisation;
+import model.MinimiseDfaCommand;
+import model.SubsetConstruction;
+
+public class HopcroftMinimisationTest {
+    private Automaton mAutomaton;
+
+    private AutomatonState addState()
+    {
+        AutomatonState s = mAutomaton.createNewState();
+        mAutomaton.addStateWithTransitions(s,
+                new LinkedList<AutomatonTransition>());
+        return s;
+    }
+
+    private void addTransition(AutomatonState from, AutomatonState to, char c)
+    {
+        mAutomaton.addTransition(mAutomaton.createNewTransition(from, to,
+                new BasicRegexp(c)));
+    }
+
+    /**
+     * Runs a deterministic automaton on the given input
+     */
+    private static boolean accepts(Automaton automaton, String input)
+    {
+        AutomatonState s = automaton.getStartState();
+        for (int i = 0; i < input.length(); i++) {
+            AutomatonState next = null;
+            // Joined transitions are on character classes
+            for (AutomatonTransition t : automaton.getStateTransitions(s)) {
+                if (t.getData().matchesChar(input.charAt(i))) {
+                    next = t.getTo();
+                }
+            }
+            if (next == null) {
+                return false;
+            }
+            s = next;
+        }
+        return s.isFinal();
+    }
+
+    private static Set<AutomatonTransition> allTransitions(Automaton automaton)
+    {
+        HashSet<AutomatonTransition> ret = new HashSet<>();
+        Iterator<Automaton.StateTransitionsPair> it = automaton
+                .graphIterator();
+        while (it.hasNext()) {
+            ret.addAll(it.next().getTransitions());
+        }
+        return ret;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mAutomaton = new Automaton();
+    }
+
+    @Test
+    public void testMinimiseSubsetConstruction() {
+        // NFA for (a|b)*abb, whose subset construction has the start state
+        // equivalent to the state for {s1}
+        AutomatonState s1 = addState();
+        AutomatonState s2 = addState();
+        AutomatonState s3 = addState();
+        AutomatonState s4 = addState();
+        s4.setFinal(true);
+        addTransition(mAutomaton.getStartState(), s1, BasicRegexp.EPSILON_CHAR);
+        addTransition(s1, s1, 'a');
+        addTransition(s1, s1, 'b');
+        addTransition(s1, s2, 'a');
+        addTransition(s2, s3, 'b');
+        addTransition(s3, s4, 'b');
+        mAutomaton = new SubsetConstruction(mAutomaton).createAutomaton();
+        assertEquals(5, mAutomaton.getNumStates());
+
+        Set<AutomatonTransition> before = allTransitions(mAutomaton);
+        HopcroftMinimisation min = new HopcroftMinimisation(mAutomaton);
+        MinimiseDfaCommand cmd = new MinimiseDfaCommand(mAutomaton);
+        assertFalse(min.isSinkAdded());
+        assertEquals(4, min.getNumBlocks());
+        assertEquals(0, min.getBlock(mAutomaton.getStartState()));
+        assertSame(mAutomaton.getStartState(), min.getRepresentative(0));
+
+        cmd.redo();
+        assertEquals(4, mAutomaton.getNumStates());
+        assertEquals(8, allTransitions(mAutomaton).size());
+        assertTrue(accepts(mAutomaton, "abb"));
+        assertTrue(accepts(mAutomaton, "bbaabb"));
+        assertFalse(accepts(mAutomaton, "abab"));
+        assertFalse(accepts(mAutomaton, ""));
+
+        cmd.undo();
+        assertEquals(5, mAutomaton.getNumStates());
+        assertEquals(before, allTransitions(mAutomaton));
+    }
+
+    @Test
+    public void testMinimiseDeadAndUnreachable() {
+        AutomatonState start = mAutomaton.getStartState();
+        AutomatonState s1 = addState();
+        AutomatonState s2 = addState();
+        AutomatonState dead = addState();
+        AutomatonState unreachable = addState();
+        s1.setFinal(true);
+        s2.setFinal(true);
+        addTransition(start, s1, 'a');
+        addTransition(start, s2, 'b');
+        addTransition(s1, dead, 'b');
+        addTransition(dead, dead, 'a');
+        addTransition(unreachable, s1, 'a');
+
+        HopcroftMinimisation min = new HopcroftMinimisation(mAutomaton);
+        MinimiseDfaCommand cmd = new MinimiseDfaCommand(mAutomaton);
+        assertTrue(min.isSinkAdded());
+        assertEquals(2, min.getNumBlocks());
+        assertEquals(min.getBlock(s1), min.getBlock(s2));
+        assertEquals(-1, min.getBlock(dead));
+        assertEquals(-1, min.getBlock(unreachable));
+        assertEquals(3, cmd.getRemovedStates().size());
+
+        cmd.redo();
+        assertEquals(2, mAutomaton.getNumStates());
+        // The transitions on "a" and "b" now go to the same state, so they
+        // are joined
+        assertEquals(1, allTransitions(mAutomaton).size());
+        assertEquals("[ab]", allTransitions(mAutomaton).iterator().next()
+                .getData().toString());
+        assertTrue(accepts(mAutomaton, "a"));
+        assertTrue(accepts(mAutomaton, "b"));
+        assertFalse(accepts(mAutomaton, "ab"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNonDeterministic() {
+        AutomatonState s1 = addState();
+        AutomatonState s2 = addState();
+        addTransition(mAutomaton.getStartState(), s1, 'a');
+        addTransition(mAutomaton.getStartState(), s2, 'a');
+        new HopcroftMinimisation(mAutomaton);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static test.model.MatcherTestUtils.PATTERNS;
+import static test.model.MatcherTestUtils.WIDE_ALPHABET;
+import static test.model.MatcherTestUtils.WIDE_PATTERNS;
+import static test.model.MatcherTestUtils.allStrings;
+import static test.model.MatcherTestUtils.checkAgainstJavaRegex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import model.BasicRegexp;
+import model.InvalidRegexpException;
+import model.LazyDfaMatcher;
+import model.RegexpCompiler;
+
+public class LazyDfaMatcherTest {
+    private static LazyDfaMatcher create(String pattern, int maxStates)
+        throws InvalidRegexpException
+    {
+        return new LazyDfaMatcher(RegexpCompiler.createNfa(
+                BasicRegexp.parseRegexp(pattern)), maxStates);
+    }
+
+    private static List<String> randomStrings(int count, int len)
+    {
+        Random r = new Random(1);
+        List<String> ret = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < len; j++) {
+                sb.append(r.nextBoolean() ? 'a' : 'b');
+            }
+            ret.add(sb.toString());
+        }
+        return ret;
+    }
+
+    @Test
+    public void testMatches_agreesWithJavaRegex() throws InvalidRegexpException
+    {
+        List<String> inputs = allStrings(6);
+        for (String pattern : PATTERNS) {
+            checkAgainstJavaRegex(pattern,
+                    create(pattern, LazyDfaMatcher.DEFAULT_MAX_STATES),
+                    inputs);
+        }
+    }
+
+    @Test
+    public void testMatches_wideChars() throws InvalidRegexpException
+    {
+        List<String> inputs = allStrings(WIDE_ALPHABET, 5);
+        for (String pattern : WIDE_PATTERNS) {
+            checkAgainstJavaRegex(pattern,
+                    create(pattern, LazyDfaMatcher.DEFAULT_MAX_STATES),
+                    inputs);
+            // Also with a cache too small for the whole DFA
+            checkAgainstJavaRegex(pattern, create(pattern, 2), inputs);
+        }
+    }
+
+    @Test
+    public void testCounters() throws InvalidRegexpException
+    {
+        LazyDfaMatcher m = create("(a|b)*abb",
+                LazyDfaMatcher.DEFAULT_MAX_STATES);
+        assertTrue(m.matches("ababb"));
+        long misses = m.getMisses();
+        assertTrue(misses > 0);
+        assertEquals(5, m.getHits() + m.getMisses());
+
+        // Everything is cached now
+        assertTrue(m.matches("ababb"));
+        assertEquals(misses, m.getMisses());
+        assertEquals(10, m.getHits() + m.getMisses());
+        assertEquals(0, m.getEvictions());
+        assertEquals(4, m.getNumCachedStates());
+
+        m.resetCounters();
+        assertEquals(0, m.getHits());
+        assertEquals(0, m.getMisses());
+        assertEquals(4, m.getNumCachedStates());
+    }
+
+    @Test
+    public void testSmallCache() throws InvalidRegexpException
+    {
+        // The DFA for this has 2^6 states
+        String pattern = "(a|b)*a(a|b)(a|b)(a|b)(a|b)(a|b)";
+        LazyDfaMatcher m = create(pattern, 8);
+        checkAgainstJavaRegex(pattern, m, randomStrings(500, 30));
+        assertTrue(m.getNumCachedStates() <= 8);
+        assertTrue(m.getEvictions() > 0);
+        assertTrue(m.getFlushes() > 0);
+        assertTrue(m.getFallbacks() > 0);
+    }
+
+    @Test
+    public void testNoTransitions() throws InvalidRegexpException
+    {
+        LazyDfaMatcher m = create("\u03B5", 2);
+        assertTrue(m.matches(""));
+        assertFalse(m.matches("a"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testMaxStatesTooSmall() throws InvalidRegexpException
+    {
+        create("a", 1);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import model.Matcher;
+
+/**
+ * Patterns, inputs and checks shared by the tests of the Matcher
+ * implementations.
+ */
+final class MatcherTestUtils {
+    /**
+     * Patterns over "abc" which mean the same to parseRegexp and to
+     * java.util.regex
+     */
+    static final String[] PATTERNS = {
+        "(a|b)*abb",
+        "ab*c?|b+",
+        "(a|b|c)*a(a|b|c)",
+        "((ab)*|c)+b?",
+        "a?b?c?",
+        "(a*b*)*c",
+        "abb",
+        "[ab]*c[^a]",
+        "([a-b]|b[^b])+c?",
+    };
+
+    /**
+     * Characters above Latin-1 up to the highest character, for WIDE_PATTERNS
+     */
+    static final String WIDE_ALPHABET = "a\u0100\u4e00\ufffe\uffff";
+
+    /**
+     * Patterns over WIDE_ALPHABET which mean the same to parseRegexp and to
+     * java.util.regex
+     */
+    static final String[] WIDE_PATTERNS = {
+        "(a|\u0100)*\uffff",
+        "[\u0100-\uffff]+a?",
+        "[^\uffff]*\uffff[\ufffe\uffff]",
+        "(\u4e00\u0100|a)*[^a\u0100]",
+        "\ufffe?[\u4e00-\ufffe]*",
+    };
+
+    private MatcherTestUtils()
+    {
+    }
+
+    /**
+     * @return All strings over "abc" up to the given length
+     */
+    static List<String> allStrings(int maxLen)
+    {
+        return allStrings("abc", maxLen);
+    }
+
+    /**
+     * @return All strings over the alphabet up to the given length
+     */
+    static List<String> allStrings(String alphabet, int maxLen)
+    {
+        List<String> ret = new ArrayList<>();
+        ret.add("");
+        int start = 0;
+        for (int len = 1; len <= maxLen; len++) {
+            int end = ret.size();
+            for (int i = start; i < end; i++) {
+                for (int j = 0; j < alphabet.length(); j++) {
+                    ret.add(ret.get(i) + alphabet.charAt(j));
+                }
+            }
+            start = end;
+        }
+        return ret;
+    }
+
+    /**
+     * Check that the matcher agrees with java.util.regex on every input,
+     * through both of its matches methods.
+     */
+    static void checkAgainstJavaRegex(String pattern, Matcher m,
+            List<String> inputs)
+    {
+        Pattern p = Pattern.compile(pattern);
+        for (String input : inputs) {
+            assertEquals(pattern + " on \"" + input + "\"",
+                    p.matcher(input).matches(), m.matches(input));
+            assertEquals(m.matches(input), m.matches(input.toCharArray(), 0,
+                    input.length()));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package test.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static test.model.MatcherTestUtils.PATTERNS;
+import static test.model.MatcherTestUtils.WIDE_ALPHABET;
+import static test.model.MatcherTestUtils.WIDE_PATTERNS;
+import static test.model.MatcherTestUtils.allStrings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import model.BasicRegexp;
+import model.InvalidRegexpException;
+import model.MultiPatternMatcher;
+
+public class MultiPatternMatcherTest {
+    private static MultiPatternMatcher create(String... patterns)
+        throws InvalidRegexpException
+    {
+        List<BasicRegexp> list = new ArrayList<>();
+        for (String p : patterns) {
+            list.add(BasicRegexp.parseRegexp(p));
+        }
+        return new MultiPatternMatcher(list);
+    }
+
+    /**
+     * Check that the matcher for the patterns agrees with java.util.regex on
+     * which of the patterns match each input
+     */
+    private static void checkMatches(String[] patterns, List<String> inputs)
+        throws InvalidRegexpException
+    {
+        MultiPatternMatcher m = create(patterns);
+        assertEquals(patterns.length, m.getNumPatterns());
+        Pattern[] javaPatterns = new Pattern[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            javaPatterns[i] = Pattern.compile(patterns[i]);
+        }
+
+        for (String input : inputs) {
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < patterns.length; i++) {
+                if (javaPatterns[i].matcher(input).matches()) {
+                    expected.add(i);
+                }
+            }
+            int[] ids = m.match(input);
+            assertEquals("\"" + input + "\"", expected.size(), ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                assertEquals((int) expected.get(i), ids[i]);
+            }
+
+            int state = m.run(input);
+            assertEquals(ids.length, m.getNumMatched(state));
+            for (int i = 0; i < ids.length; i++) {
+                assertEquals(ids[i], m.getMatched(state, i));
+            }
+            assertEquals(!expected.isEmpty(), m.matches(input));
+            assertEquals(!expected.isEmpty(), m.matches(
+                    input.toCharArray(), 0, input.length()));
+        }
+    }
+
+    @Test
+    public void testMatch_agreesWithJavaRegex() throws InvalidRegexpException
+    {
+        checkMatches(PATTERNS, allStrings(6));
+    }
+
+    @Test
+    public void testMatch_wideChars() throws InvalidRegexpException
+    {
+        checkMatches(WIDE_PATTERNS, allStrings(WIDE_ALPHABET, 5));
+    }
+
+    @Test
+    public void testMatch_samePatternTwice() throws InvalidRegexpException
+    {
+        MultiPatternMatcher m = create("ab*", "x", "ab*");
+        assertArrayEquals(new int[] { 0, 2 }, m.match("abbb"));
+        assertArrayEquals(new int[] { 1 }, m.match("x"));
+        assertArrayEquals(new int[0], m.match("xx"));
+        assertEquals(-1, m.run("xx"));
+        assertEquals(0, m.getNumMatched(-1));
+    }
+
+    @Test
+    public void testNoPatterns()
+    {
+        MultiPatternMatcher m = new MultiPatternMatcher(
+                Collections.<BasicRegexp>emptyList());
+        assertEquals(0, m.getNumPatterns());
+        assertFalse(m.matches(""));
+        assertEquals(0, m.match("a").length);
+    }
+
+    @Test
+    public void testMatch_copy() throws InvalidRegexpException
+    {
+        MultiPatternMatcher m = create("a", "a");
+        int[] ids = m.match("a");
+        ids[0] = 5;
+        assertArrayEquals(new int[] { 0, 1 }, m.match("a"));
+        assertTrue(m.getNumStates() > 1);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNullPattern()
+    {
+        List<BasicRegexp> list = new ArrayList<>();
+        list.add(null);
+        new MultiPatternMatcher(list);
+    }
+}
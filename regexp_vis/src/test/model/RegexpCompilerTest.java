@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import model.Automaton;
+import model.AutomatonState;
+import model.AutomatonTransition;
+import model.BasicRegexp;
+import model.DfaMatcher;
+import model.InvalidRegexpException;
+import model.RegexpCompiler;
+import model.TranslationTools;
+
+public class RegexpCompilerTest {
+    /**
+     * Runs a deterministic automaton on the given input
+     */
+    private static boolean accepts(Automaton automaton, String input)
+    {
+        AutomatonState s = automaton.getStartState();
+        for (int i = 0; i < input.length(); i++) {
+            AutomatonState next = null;
+            for (AutomatonTransition t : automaton.getStateTransitions(s,
+                    input.charAt(i))) {
+                next = t.getTo();
+            }
+            if (next == null) {
+                return false;
+            }
+            s = next;
+        }
+        return s.isFinal();
+    }
+
+    private static int countFinalStates(Automaton automaton)
+    {
+        int count = 0;
+        Iterator<Automaton.StateTransitionsPair> it = automaton
+                .graphIterator();
+        while (it.hasNext()) {
+            if (it.next().getState().isFinal()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int countTransitions(Automaton automaton)
+    {
+        int count = 0;
+        Iterator<Automaton.StateTransitionsPair> it = automaton
+                .graphIterator();
+        while (it.hasNext()) {
+            count += it.next().getTransitions().size();
+        }
+        return count;
+    }
+
+    @Test
+    public void testCompile() throws InvalidRegexpException
+    {
+        RegexpCompiler compiler = new RegexpCompiler(
+                BasicRegexp.parseRegexp("(a|b)*abb"));
+        Automaton dfa = compiler.getAutomaton();
+
+        assertEquals(4, dfa.getNumStates());
+        assertEquals(1, countFinalStates(dfa));
+        assertFalse(TranslationTools.automatonHasEpsilonTransitions(dfa));
+        assertFalse(TranslationTools.automatonHasNonDeterminism(dfa));
+        assertTrue(compiler.getNumDfaStates() >= dfa.getNumStates());
+
+        assertTrue(accepts(dfa, "abb"));
+        assertTrue(accepts(dfa, "babaabb"));
+        assertFalse(accepts(dfa, ""));
+        assertFalse(accepts(dfa, "abba"));
+        assertFalse(accepts(dfa, "abc"));
+    }
+
+    @Test
+    public void testCompile_nullable() throws InvalidRegexpException
+    {
+        RegexpCompiler compiler = new RegexpCompiler(
+                BasicRegexp.parseRegexp("(ab*c?|d+)?"));
+        Automaton dfa = compiler.getAutomaton();
+
+        assertTrue(accepts(dfa, ""));
+        assertTrue(accepts(dfa, "a"));
+        assertTrue(accepts(dfa, "abbbc"));
+        assertTrue(accepts(dfa, "ddd"));
+        assertFalse(accepts(dfa, "ad"));
+        assertFalse(accepts(dfa, "acc"));
+    }
+
+    @Test
+    public void testStageTimings() throws InvalidRegexpException
+    {
+        RegexpCompiler compiler = new RegexpCompiler(
+                BasicRegexp.parseRegexp("(a|b|c)*a(a|b|c)(a|b|c)"));
+        long total = 0;
+        for (RegexpCompiler.Stage stage : RegexpCompiler.Stage.values()) {
+            assertTrue(compiler.getStageNanos(stage) >= 0);
+            total += compiler.getStageNanos(stage);
+        }
+        assertEquals(total, compiler.getTotalNanos());
+        assertEquals(8, compiler.getAutomaton().getNumStates());
+    }
+
+    @Test
+    public void testCompile_charClass() throws InvalidRegexpException
+    {
+        // Character classes stay as single transitions all the way through
+        RegexpCompiler compiler = new RegexpCompiler(
+                BasicRegexp.parseRegexp("[a-z_][a-z_0-9]*"));
+        Automaton dfa = compiler.getAutomaton();
+        assertTrue(compiler.getNumNfaTransitions() < 5);
+        assertEquals(2, dfa.getNumStates());
+
+        DfaMatcher m = new DfaMatcher(dfa);
+        assertTrue(m.matches("snake_case_2"));
+        assertTrue(m.matches("_"));
+        assertFalse(m.matches("2fast"));
+        assertFalse(m.matches(""));
+    }
+
+    @Test
+    public void testCompile_charClassTransitions()
+        throws InvalidRegexpException
+    {
+        // One transition per pair of states, labelled with the whole class
+        Automaton dfa = new RegexpCompiler(BasicRegexp.parseRegexp(
+                "[a-z_][a-z0-9_]*")).getAutomaton();
+        assertEquals(2, dfa.getNumStates());
+        assertEquals(2, countTransitions(dfa));
+        assertEquals("[_a-z]", dfa.getStateTransitions(dfa.getStartState())
+                .get(0).getData().toString());
+
+        // Split around the epsilon character, but still a single transition
+        dfa = new RegexpCompiler(BasicRegexp.parseRegexp("x[^a]y"))
+                .getAutomaton();
+        assertEquals(4, dfa.getNumStates());
+        assertEquals(3, countTransitions(dfa));
+
+        // Equivalent states merged by minimisation have their transitions
+        // joined too
+        dfa = new RegexpCompiler(BasicRegexp.parseRegexp("bx|dx"))
+                .getAutomaton();
+        assertEquals(3, dfa.getNumStates());
+        assertEquals(2, countTransitions(dfa));
+    }
+
+    @Test
+    public void testCompile_nestedStarAtStart() throws InvalidRegexpException
+    {
+        // The inner iteration must not loop back through the start state
+        DfaMatcher m = new DfaMatcher(new RegexpCompiler(
+                BasicRegexp.parseRegexp("(c(ac)*)*d*")).getAutomaton());
+        assertFalse(m.matches("ac"));
+        assertFalse(m.matches("acd"));
+        assertTrue(m.matches("cacd"));
+        assertTrue(m.matches(""));
+    }
+
+    @Test
+    public void testCompile_starOutOfFinalState()
+        throws InvalidRegexpException
+    {
+        // The inner iteration must not leave through the final state
+        DfaMatcher m = new DfaMatcher(new RegexpCompiler(
+                BasicRegexp.parseRegexp("a(b*c)*")).getAutomaton());
+        assertFalse(m.matches("ab"));
+        assertFalse(m.matches("abcb"));
+        assertTrue(m.matches("a"));
+        assertTrue(m.matches("abbcc"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNullRegexp()
+    {
+        new RegexpCompiler(null);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import model.BasicRegexp;
+import model.InvalidRegexpException;
+import model.RegexpOptimiser;
+
+public class RegexpOptimiserTest {
+
+    @Test
+    public void testOptimise() throws InvalidRegexpException {
+        RegexpOptimiser optimiser = new RegexpOptimiser(100);
+        BasicRegexp re = BasicRegexp.parseRegexp("((a*b*)*c*)*");
+        BasicRegexp optimised = optimiser.optimise(re,
+                BasicRegexp.OPTIMISE_ALL);
+        assertEquals(BasicRegexp.parseRegexp("(a|b|c)*"), optimised);
+        assertTrue(optimised.isInterned());
+        assertEquals(2, optimiser.getRewriteCount(
+                BasicRegexp.OptimiseRule.STAR_OF_SEQUENCE_OR_CHOICE));
+
+        // Optimising again is a single lookup
+        long hits = optimiser.getHits();
+        assertSame(optimised, optimiser.optimise(re,
+                BasicRegexp.OPTIMISE_ALL));
+        assertEquals(hits + 1, optimiser.getHits());
+        assertSame(optimised, optimiser.optimise(optimised,
+                BasicRegexp.OPTIMISE_ALL));
+    }
+
+    @Test
+    public void testOptimise_sharedSubExpressions()
+        throws InvalidRegexpException {
+        RegexpOptimiser optimiser = new RegexpOptimiser(100);
+        BasicRegexp re = BasicRegexp.parseRegexp("x(a|b|a)(a|a|b)y");
+        assertEquals(BasicRegexp.parseRegexp("x(a|b)(a|b)y"),
+                optimiser.optimise(re, BasicRegexp.OPTIMISE_ALL));
+        // The second CHOICE is equal to the first, so found in the table
+        assertEquals(1, optimiser.getRewriteCount(
+                BasicRegexp.OptimiseRule.CHOICE_DUPLICATE));
+    }
+
+    @Test
+    public void testOptimise_flags() throws InvalidRegexpException {
+        RegexpOptimiser optimiser = new RegexpOptimiser(100);
+        BasicRegexp re = BasicRegexp.parseRegexp("a**|a**");
+        assertEquals(BasicRegexp.parseRegexp("a*|a*"),
+                optimiser.optimise(re, BasicRegexp.OPTIMISE_STAR));
+        assertEquals(BasicRegexp.parseRegexp("a*"),
+                optimiser.optimise(re, BasicRegexp.OPTIMISE_ALL));
+    }
+
+    @Test
+    public void testEviction() throws InvalidRegexpException {
+        RegexpOptimiser optimiser = new RegexpOptimiser(2);
+        BasicRegexp re = BasicRegexp.parseRegexp("(ab|cd)*e?f+");
+        BasicRegexp optimised = optimiser.optimise(re,
+                BasicRegexp.OPTIMISE_ALL);
+        assertEquals(re, optimised);
+        assertTrue(optimiser.size() <= 2);
+        assertTrue(optimiser.getEvictions() > 0);
+
+        optimiser.clear();
+        assertEquals(0, optimiser.size());
+        assertEquals(0, optimiser.getEvictions());
+    }
+}
@@ -42,7 +42,9 @@ import org.junit.Test;
 import model.Automaton;
 import model.AutomatonState;
 import model.AutomatonTransition;
+import model.BasicRegexp;
 import model.RemoveEpsilonTransitionsContext;
+import model.TranslationTools;
 
 @SuppressWarnings({ "unused", "static-method" })
 public class RemoveEpsilonTransitionsContextTest {
@@ -284,4 +286,45 @@ public class RemoveEpsilonTransitionsContextTest {
 
         }
     }
+
+    @Test
+    public void testEquivalentStates_cycle() throws Throwable {
+        // 0 -e-> 1 -e-> 2 -e-> 1, 2 -a-> 3 -e-> 0
+        Automaton automaton = new Automaton();
+        AutomatonState[] states = new AutomatonState[4];
+        states[0] = automaton.getStartState();
+        for (int i = 1; i < states.length; i++) {
+            states[i] = automaton.createNewState();
+            automaton.addStateWithTransitions(states[i],
+                    new LinkedList<AutomatonTransition>());
+        }
+        automaton.addTransition(automaton.createNewTransition(states[0],
+                states[1], BasicRegexp.EPSILON_EXPRESSION));
+        automaton.addTransition(automaton.createNewTransition(states[1],
+                states[2], BasicRegexp.EPSILON_EXPRESSION));
+        automaton.addTransition(automaton.createNewTransition(states[2],
+                states[1], BasicRegexp.EPSILON_EXPRESSION));
+        automaton.addTransition(automaton.createNewTransition(states[2],
+                states[3], new BasicRegexp('a')));
+        automaton.addTransition(automaton.createNewTransition(states[3],
+                states[0], BasicRegexp.EPSILON_EXPRESSION));
+
+        RemoveEpsilonTransitionsContext ctx =
+                new RemoveEpsilonTransitionsContext(automaton);
+
+        assertTrue(ctx.areStatesEquivalent(states[1], states[2]));
+        assertFalse(ctx.areStatesEquivalent(states[0], states[1]));
+        assertFalse(ctx.areStatesEquivalent(states[2], states[3]));
+        assertEquals(2, ctx.getEquivalentStates(states[1]).size());
+        assertEquals(1, ctx.getEquivalentStates(states[3]).size());
+        assertTrue(ctx.equivalentStatesExist(automaton));
+        assertTrue(ctx.equivalentStatesExist(automaton, states[2]));
+        assertFalse(ctx.equivalentStatesExist(automaton, states[0]));
+
+        // Closures derived from the classes should match a direct search
+        for (AutomatonState s : states) {
+            assertEquals(TranslationTools.calcEpsilonReachableStates(
+                    automaton, s), ctx.getEpsilonClosure(s));
+        }
+    }
 }
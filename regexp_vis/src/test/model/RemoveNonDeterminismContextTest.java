@@ -28,6 +28,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
@@ -219,4 +220,49 @@ public class RemoveNonDeterminismContextTest {
         Automaton automaton1 = removeNonDeterminismContext0.getAutomaton();
         assertSame(automaton0, automaton1);
     }
+
+    @Test
+    public void testFindStateFromSet() throws Throwable {
+        Automaton automaton = new Automaton();
+        AutomatonState[] states = new AutomatonState[3];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = automaton.createNewState();
+        }
+        RemoveNonDeterminismContext ctx = new RemoveNonDeterminismContext(
+                automaton);
+
+        AutomatonState s01 = automaton.createNewState();
+        LinkedHashSet<AutomatonState> set01 = new LinkedHashSet<>();
+        set01.add(states[0]);
+        set01.add(states[1]);
+        ctx.putStateBinding(s01, set01);
+
+        AutomatonState s12 = automaton.createNewState();
+        LinkedHashSet<AutomatonState> set12 = new LinkedHashSet<>();
+        set12.add(states[1]);
+        set12.add(states[2]);
+        ctx.putStateBinding(s12, set12);
+
+        // Lookup through equal sets, in a different order
+        HashSet<AutomatonState> query = new HashSet<>();
+        query.add(states[1]);
+        query.add(states[0]);
+        assertSame(s01, ctx.findStateFromSet(query));
+        query.remove(states[0]);
+        query.add(states[2]);
+        assertSame(s12, ctx.findStateFromSet(query));
+        query.add(states[0]);
+        assertNull(ctx.findStateFromSet(query));
+
+        // Removing the binding also removes it from the lookup
+        ctx.removeStateBinding(s12);
+        query.remove(states[0]);
+        assertNull(ctx.findStateFromSet(query));
+        assertSame(s01, ctx.findStateFromSet(set01));
+
+        // Rebinding a state to a different set
+        ctx.putStateBinding(s01, set12);
+        assertNull(ctx.findStateFromSet(set01));
+        assertSame(s01, ctx.findStateFromSet(set12));
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package test.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import model.StateSet;
+
+public class StateSetTest {
+
+    @Test
+    public void testAddRemove() {
+        StateSet set = new StateSet(130);
+        assertTrue(set.isEmpty());
+
+        assertTrue(set.add(0));
+        assertTrue(set.add(64));
+        assertTrue(set.add(129));
+        assertFalse(set.add(64));
+        assertEquals(3, set.size());
+        assertTrue(set.contains(129));
+        assertFalse(set.contains(1));
+
+        assertTrue(set.remove(64));
+        assertFalse(set.remove(64));
+        assertEquals(2, set.size());
+
+        set.clear();
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void testNextIndex() {
+        StateSet set = new StateSet(200);
+        set.add(3);
+        set.add(63);
+        set.add(64);
+        set.add(199);
+
+        assertEquals(3, set.nextIndex(0));
+        assertEquals(63, set.nextIndex(4));
+        assertEquals(64, set.nextIndex(64));
+        assertEquals(199, set.nextIndex(65));
+        assertEquals(-1, set.nextIndex(200));
+        assertArrayEquals(new int[] { 3, 63, 64, 199 }, set.toArray());
+    }
+
+    @Test
+    public void testEqualsAndCopy() {
+        StateSet a = new StateSet(100);
+        a.add(5);
+        a.add(70);
+        StateSet b = a.copy();
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+
+        // Copies are independent
+        b.add(6);
+        assertNotEquals(a, b);
+        assertFalse(a.contains(6));
+
+        StateSet c = new StateSet(100);
+        c.add(6);
+        assertTrue(b.intersects(c));
+        assertFalse(a.intersects(c));
+        a.addAll(c);
+        assertEquals(a, b);
+    }
+}
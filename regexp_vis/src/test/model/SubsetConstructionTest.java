@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2015, 2016 Matthew J. Nicholls, Samuel Pengelly,
+ * Parham Ghassemi, William R. Dix
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.Automaton;
+import model.AutomatonState;
+import model.AutomatonTransition;
+import model.BasicRegexp;
+import model.SubsetConstruction;
+import model.SubsetConstructionCommand;
+import model.TranslationTools;
+
+public class SubsetConstructionTest {
+    private Automaton mAutomaton;
+
+    private AutomatonState addState()
+    {
+        AutomatonState s = mAutomaton.createNewState();
+        mAutomaton.addStateWithTransitions(s,
+                new LinkedList<AutomatonTransition>());
+        return s;
+    }
+
+    private void addTransition(AutomatonState from, AutomatonState to, char c)
+    {
+        mAutomaton.addTransition(mAutomaton.createNewTransition(from, to,
+                new BasicRegexp(c)));
+    }
+
+    /**
+     * Runs a deterministic automaton on the given input
+     */
+    private static boolean accepts(Automaton automaton, String input)
+    {
+        AutomatonState s = automaton.getStartState();
+        for (int i = 0; i < input.length(); i++) {
+            AutomatonState next = null;
+            for (AutomatonTransition t : automaton.getStateTransitions(s,
+                    input.charAt(i))) {
+                next = t.getTo();
+            }
+            if (next == null) {
+                return false;
+            }
+            s = next;
+        }
+        return s.isFinal();
+    }
+
+    private static Set<AutomatonTransition> allTransitions(Automaton automaton)
+    {
+        HashSet<AutomatonTransition> ret = new HashSet<>();
+        Iterator<Automaton.StateTransitionsPair> it = automaton
+                .graphIterator();
+        while (it.hasNext()) {
+            ret.addAll(it.next().getTransitions());
+        }
+        return ret;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        // NFA for (a|b)*abb, with an epsilon transition out of the start state
+        mAutomaton = new Automaton();
+        AutomatonState s1 = addState();
+        AutomatonState s2 = addState();
+        AutomatonState s3 = addState();
+        AutomatonState s4 = addState();
+        s4.setFinal(true);
+        addTransition(mAutomaton.getStartState(), s1, BasicRegexp.EPSILON_CHAR);
+        addTransition(s1, s1, 'a');
+        addTransition(s1, s1, 'b');
+        addTransition(s1, s2, 'a');
+        addTransition(s2, s3, 'b');
+        addTransition(s3, s4, 'b');
+    }
+
+    @Test
+    public void testCreateAutomaton() {
+        SubsetConstruction sc = new SubsetConstruction(mAutomaton);
+        // {start, s1} is distinct from {s1}, which "b" leads to
+        assertEquals(5, sc.getNumStates());
+        assertEquals(10, sc.getNumTransitions());
+        assertEquals(2, sc.getPeakSetSize());
+        assertEquals(2, sc.getSubset(0).size());
+        assertSame(mAutomaton.getStartState(), sc.getSubset(0).get(0));
+
+        Automaton dfa = sc.createAutomaton();
+        assertEquals(5, dfa.getNumStates());
+        assertFalse(TranslationTools.automatonHasEpsilonTransitions(dfa));
+        assertFalse(TranslationTools.automatonHasNonDeterminism(dfa));
+        assertTrue(accepts(dfa, "abb"));
+        assertTrue(accepts(dfa, "babaabb"));
+        assertFalse(accepts(dfa, "ab"));
+        assertFalse(accepts(dfa, "abba"));
+        assertFalse(accepts(dfa, ""));
+    }
+
+    @Test
+    public void testCommand() {
+        Set<AutomatonTransition> before = allTransitions(mAutomaton);
+        int numStates = mAutomaton.getNumStates();
+
+        SubsetConstructionCommand cmd = new SubsetConstructionCommand(
+                mAutomaton);
+        cmd.redo();
+        assertEquals(5, mAutomaton.getNumStates());
+        assertSame(mAutomaton.getStartState(), cmd.getState(0));
+        assertEquals(5, cmd.getNumStates());
+        assertEquals(2, cmd.getSubset(0).size());
+        assertSame(mAutomaton.getStartState(), cmd.getSubset(0).get(0));
+        assertFalse(TranslationTools.automatonHasEpsilonTransitions(mAutomaton));
+        assertFalse(TranslationTools.automatonHasNonDeterminism(mAutomaton));
+        assertTrue(accepts(mAutomaton, "aabb"));
+        assertFalse(accepts(mAutomaton, "abab"));
+
+        cmd.undo();
+        assertEquals(numStates, mAutomaton.getNumStates());
+        assertEquals(before, allTransitions(mAutomaton));
+    }
+
+    @Test
+    public void testCharClassAtoms() {
+        // [a-z] and [m-p] out of the start state overlap on m-p only
+        mAutomaton = new Automaton();
+        AutomatonState s1 = addState();
+        AutomatonState s2 = addState();
+        s2.setFinal(true);
+        mAutomaton.addTransition(mAutomaton.createNewTransition(
+                mAutomaton.getStartState(), s1,
+                BasicRegexp.valueOfClass('a', 'z')));
+        mAutomaton.addTransition(mAutomaton.createNewTransition(
+                mAutomaton.getStartState(), s2,
+                BasicRegexp.valueOfClass('m', 'p')));
+
+        SubsetConstruction sc = new SubsetConstruction(mAutomaton);
+        assertEquals(3, sc.getNumStates());
+        assertEquals(0, sc.getTransitionsStart(0));
+        assertEquals(3, sc.getTransitionsEnd(0));
+        assertEquals('a', sc.getTransitionChar(0));
+        assertEquals('l', sc.getTransitionLastChar(0));
+        assertEquals("[m-p]", sc.getTransitionLabel(1).toString());
+        assertEquals("[q-z]", sc.getTransitionLabel(2).toString());
+        assertEquals(sc.getTransitionTo(0), sc.getTransitionTo(2));
+        assertTrue(sc.isFinal(sc.getTransitionTo(1)));
+        assertFalse(sc.isFinal(sc.getTransitionTo(0)));
+
+        // a-l and q-z go to the same DFA state, so are joined into one label
+        assertEquals(0, sc.getLabelledTransitionsStart(0));
+        assertEquals(2, sc.getLabelledTransitionsEnd(0));
+        assertEquals("[a-lq-z]", sc.getLabel(0).toString());
+        assertEquals(sc.getTransitionTo(0), sc.getLabelledTransitionTo(0));
+        assertEquals("[m-p]", sc.getLabel(1).toString());
+
+        Automaton dfa = sc.createAutomaton();
+        assertFalse(TranslationTools.automatonHasNonDeterminism(dfa));
+        assertEquals(2, dfa.getStateTransitions(dfa.getStartState()).size());
+    }
+
+    @Test
+    public void testHighChars() {
+        // Characters from 0x8000 up mustn't hide the lower ones
+        mAutomaton = new Automaton();
+        AutomatonState s1 = addState();
+        AutomatonState s2 = addState();
+        s2.setFinal(true);
+        addTransition(mAutomaton.getStartState(), s1, 'a');
+        addTransition(mAutomaton.getStartState(), s2, Character.MAX_VALUE);
+        mAutomaton.addTransition(mAutomaton.createNewTransition(
+                mAutomaton.getStartState(), s2,
+                BasicRegexp.valueOfClass((char) 0x7fff, (char) 0x8000)));
+
+        SubsetConstruction sc = new SubsetConstruction(mAutomaton);
+        assertEquals(3, sc.getNumStates());
+        assertEquals(3, sc.getTransitionsEnd(0));
+        assertEquals('a', sc.getTransitionChar(0));
+        assertEquals(0x7fff, sc.getTransitionChar(1));
+        assertEquals(0x8000, sc.getTransitionLastChar(1));
+        assertEquals(Character.MAX_VALUE, sc.getTransitionChar(2));
+        assertEquals(sc.getTransitionTo(1), sc.getTransitionTo(2));
+        assertTrue(sc.isFinal(sc.getTransitionTo(2)));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNotBrokenDown() {
+        BasicRegexp re = new BasicRegexp(new BasicRegexp('a'),
+                BasicRegexp.RegexpOperator.STAR);
+        mAutomaton.addTransition(mAutomaton.createNewTransition(
+                mAutomaton.getStartState(), mAutomaton.getStartState(), re));
+        new SubsetConstruction(mAutomaton);
+    }
+}
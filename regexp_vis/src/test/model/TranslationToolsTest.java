@@ -25,9 +25,12 @@ package test.model;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -39,6 +42,13 @@ import model.Automaton;
 import model.AutomatonState;
 import model.AutomatonTransition;
 import model.BasicRegexp;
+import model.BreakdownIterationCommand;
+import model.FrozenAutomaton;
+import model.InvalidRegexpException;
+import model.RemoveEpsilonTransitionsCommand;
+import model.RemoveNonDeterminismCommand;
+import model.RemoveNonDeterminismContext;
+import model.StateSet;
 import model.TranslationTools;
 
 @SuppressWarnings({ "unused", "static-method" })
@@ -439,4 +449,140 @@ public class TranslationToolsTest {
                 .calcEpsilonReachableStates(automaton0, automatonState0);
         assertEquals(1, set0.size());
     }
+
+    @Test
+    public void testCalcEpsilonReachableStates_frozen() throws Throwable {
+        // 0 -e-> 1 -e-> 2 -a-> 3, and 2 -e-> 0
+        Automaton automaton = new Automaton();
+        AutomatonState[] states = new AutomatonState[4];
+        states[0] = automaton.getStartState();
+        for (int i = 1; i < states.length; i++) {
+            states[i] = automaton.createNewState();
+            automaton.addStateWithTransitions(states[i],
+                    new LinkedList<AutomatonTransition>());
+        }
+        automaton.addTransition(automaton.createNewTransition(states[0],
+                states[1], BasicRegexp.EPSILON_EXPRESSION));
+        automaton.addTransition(automaton.createNewTransition(states[1],
+                states[2], BasicRegexp.EPSILON_EXPRESSION));
+        automaton.addTransition(automaton.createNewTransition(states[2],
+                states[3], new BasicRegexp('a')));
+        automaton.addTransition(automaton.createNewTransition(states[2],
+                states[0], BasicRegexp.EPSILON_EXPRESSION));
+
+        FrozenAutomaton frozen = automaton.freeze();
+        for (AutomatonState s : states) {
+            StateSet closure = TranslationTools.calcEpsilonReachableStates(
+                    frozen, frozen.getIndex(s));
+            Set<AutomatonState> expected = TranslationTools
+                    .calcEpsilonReachableStates(automaton, s);
+            assertEquals(expected, closure.asSet(frozen));
+            assertEquals(closure.asSet(frozen), expected);
+        }
+
+        StateSet from = new StateSet(frozen.getNumStates());
+        from.add(frozen.getIndex(states[1]));
+        StateSet all = TranslationTools.calcReachableStates(frozen, from,
+                e -> true);
+        assertEquals(4, all.size());
+        // The original set is left as-is
+        assertEquals(1, from.size());
+    }
+
+    @Test
+    public void testNonDeterministicAtoms()
+    {
+        Automaton automaton = new Automaton();
+        AutomatonState start = automaton.getStartState();
+        AutomatonState[] states = new AutomatonState[3];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = automaton.createNewState();
+            automaton.addStateWithTransitions(states[i],
+                    new LinkedList<AutomatonTransition>());
+        }
+        automaton.addTransition(automaton.createNewTransition(start,
+                states[0], BasicRegexp.valueOfClass('a', 'z')));
+        automaton.addTransition(automaton.createNewTransition(start,
+                states[1], BasicRegexp.valueOfClass('m', 'p', 'x', 'x')));
+        automaton.addTransition(automaton.createNewTransition(start,
+                states[2], new BasicRegexp('0')));
+        assertTrue(TranslationTools.stateHasNonDeterminism(automaton, start));
+
+        List<BasicRegexp> atoms = TranslationTools.calcNonDeterministicAtoms(
+                automaton, start);
+        assertEquals(2, atoms.size());
+        assertEquals("[m-p]", atoms.get(0).toString());
+        assertSame(BasicRegexp.valueOf('x'), atoms.get(1));
+        assertEquals(5, TranslationTools.calcNonDeterministicTrans(automaton,
+                start).size());
+
+        // Removing the non-determinism on m-p keeps a transition for the rest
+        // of each class
+        new RemoveNonDeterminismCommand(new RemoveNonDeterminismContext(
+                automaton), start, atoms.get(0)).redo();
+        Set<String> labels = new HashSet<>();
+        for (AutomatonTransition t : automaton.getStateTransitions(start)) {
+            labels.add(t.getData().toString());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("[a-lq-z]", "x", "[m-p]",
+                "0")), labels);
+        atoms = TranslationTools.calcNonDeterministicAtoms(automaton, start);
+        assertEquals(1, atoms.size());
+        assertSame(BasicRegexp.valueOf('x'), atoms.get(0));
+    }
+
+    @Test
+    public void testRemoveEpsilonTransitions_duplicates()
+        throws InvalidRegexpException
+    {
+        Automaton automaton = new Automaton();
+        AutomatonState start = automaton.getStartState();
+        AutomatonState[] states = new AutomatonState[2];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = automaton.createNewState();
+            automaton.addStateWithTransitions(states[i],
+                    new LinkedList<AutomatonTransition>());
+        }
+        automaton.addTransition(automaton.createNewTransition(start,
+                states[0], BasicRegexp.EPSILON_EXPRESSION));
+        automaton.addTransition(automaton.createNewTransition(start,
+                states[1], BasicRegexp.parseRegexp("a|b")));
+        automaton.addTransition(automaton.createNewTransition(states[0],
+                states[1], BasicRegexp.parseRegexp("b|a")));
+        automaton.addTransition(automaton.createNewTransition(states[0],
+                states[1], BasicRegexp.parseRegexp("c")));
+
+        // "b|a" is equal to the "a|b" the start state already has
+        new RemoveEpsilonTransitionsCommand(automaton, start).redo();
+        Set<String> labels = new HashSet<>();
+        for (AutomatonTransition t : automaton.getStateTransitions(start)) {
+            labels.add(t.getData().toString());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("a|b", "c")), labels);
+    }
+
+    @Test
+    public void testIterationIsolationLevel() throws InvalidRegexpException
+    {
+        Automaton automaton = new Automaton();
+        AutomatonState start = automaton.getStartState();
+        AutomatonState s1 = automaton.createNewState();
+        automaton.addStateWithTransitions(s1,
+                new LinkedList<AutomatonTransition>());
+        AutomatonTransition t = automaton.createNewTransition(s1, start,
+                BasicRegexp.parseRegexp("a*"));
+        automaton.addTransition(t);
+
+        // The start state is entered from outside the automaton, so going
+        // back to it is like another in-going transition
+        assertEquals(BreakdownIterationCommand.IsolationLevel.END_ISOLATE,
+                BreakdownIterationCommand.calcBestIsolationLevel(automaton,
+                        t));
+
+        // Accepting is like another out-going transition
+        s1.setFinal(true);
+        assertEquals(BreakdownIterationCommand.IsolationLevel.FULLY_ISOLATE,
+                BreakdownIterationCommand.calcBestIsolationLevel(automaton,
+                        t));
+    }
 }
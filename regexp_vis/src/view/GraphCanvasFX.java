@@ -23,7 +23,9 @@
 package view;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -514,6 +516,155 @@ public final class GraphCanvasFX extends Canvas {
         mGraph.clear();
     }
 
+    /**
+     * The nodes and edges of a canvas at some point, created by
+     * createSnapshot() and put back by restoreSnapshot().
+     */
+    public static final class Snapshot {
+        final int[] mNodeIds;
+        final double[] mNodeXs;
+        final double[] mNodeYs;
+        final boolean[] mStartStyles;
+        final boolean[] mFinalStyles;
+        final int[] mEdgeIds;
+        final int[] mEdgeFrom;
+        // The node each edge goes to, kept as the node object as an edge can
+        // outlive the node it goes to
+        final GraphNode[] mEdgeTo;
+        final String[] mEdgeTexts;
+
+        Snapshot(int numNodes, int numEdges) {
+            mNodeIds = new int[numNodes];
+            mNodeXs = new double[numNodes];
+            mNodeYs = new double[numNodes];
+            mStartStyles = new boolean[numNodes];
+            mFinalStyles = new boolean[numNodes];
+            mEdgeIds = new int[numEdges];
+            mEdgeFrom = new int[numEdges];
+            mEdgeTo = new GraphNode[numEdges];
+            mEdgeTexts = new String[numEdges];
+        }
+
+        /**
+         * @return An estimate of the memory used by this snapshot, in bytes
+         */
+        public long getSizeEstimate() {
+            return 128 + 22L * mNodeIds.length + 16L * mEdgeIds.length;
+        }
+    }
+
+    /**
+     * Save the nodes and edges of the graph, see restoreSnapshot().
+     *
+     * @return The snapshot
+     */
+    public Snapshot createSnapshot() {
+        // The temporary edge of "Create Edge Mode" isn't part of the graph
+        int numEdges = 0;
+        for (NodeEdgePair pair : mGraph.values()) {
+            for (List<GraphEdge> edges : Arrays.asList(pair.mEdges,
+                    pair.mLoopedEdges)) {
+                for (GraphEdge e : edges) {
+                    if (e != mTempEdge) {
+                        numEdges++;
+                    }
+                }
+            }
+        }
+        Snapshot snapshot = new Snapshot(mGraph.size(), numEdges);
+        int i = 0;
+        int j = 0;
+        for (NodeEdgePair pair : mGraph.values()) {
+            GraphNode n = pair.mNode;
+            snapshot.mNodeIds[i] = n.mId;
+            snapshot.mNodeXs[i] = n.mX;
+            snapshot.mNodeYs[i] = n.mY;
+            snapshot.mStartStyles[i] = n.mUseStartStateStyle;
+            snapshot.mFinalStyles[i++] = n.mUseFinalStateStyle;
+            for (List<GraphEdge> edges : Arrays.asList(pair.mEdges,
+                    pair.mLoopedEdges)) {
+                for (GraphEdge e : edges) {
+                    if (e == mTempEdge) {
+                        continue;
+                    }
+                    snapshot.mEdgeIds[j] = e.mId;
+                    snapshot.mEdgeFrom[j] = n.mId;
+                    snapshot.mEdgeTo[j] = e.mTo;
+                    snapshot.mEdgeTexts[j++] = e.mText;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Replace the nodes and edges of the graph with those of a snapshot, with
+     * the layout data recalculated once at the end. Nodes and edges which are
+     * in the graph already keep their current position and colours, the rest
+     * are placed where they were when the snapshot was created.
+     *
+     * @param snapshot The snapshot, created by this canvas
+     */
+    public void restoreSnapshot(Snapshot snapshot) {
+        stopCreateEdgeMode();
+        HashMap<Integer, GraphEdge> oldEdges = new HashMap<>();
+        for (NodeEdgePair pair : mGraph.values()) {
+            for (GraphEdge e : pair.mEdges) {
+                oldEdges.put(e.mId, e);
+            }
+            for (GraphEdge e : pair.mLoopedEdges) {
+                oldEdges.put(e.mId, e);
+            }
+        }
+
+        TreeMap<Integer, NodeEdgePair> graph = new TreeMap<>();
+        for (int i = 0; i < snapshot.mNodeIds.length; i++) {
+            int id = snapshot.mNodeIds[i];
+            NodeEdgePair old = mGraph.get(id);
+            GraphNode n;
+            if (old != null) {
+                n = new GraphNode(id, old.mNode.mX, old.mNode.mY,
+                        old.mNode.mRadius, snapshot.mStartStyles[i],
+                        snapshot.mFinalStyles[i], old.mNode.mBackgroundColour);
+            } else {
+                n = new GraphNode(id, snapshot.mNodeXs[i], snapshot.mNodeYs[i],
+                        DEFAULT_NODE_RADIUS, snapshot.mStartStyles[i],
+                        snapshot.mFinalStyles[i],
+                        DEFAULT_NODE_BACKGROUND_COLOUR);
+            }
+            repositionNode(n);
+            graph.put(id, new NodeEdgePair(n));
+        }
+        for (int j = 0; j < snapshot.mEdgeIds.length; j++) {
+            NodeEdgePair pair = graph.get(snapshot.mEdgeFrom[j]);
+            NodeEdgePair toPair = graph.get(snapshot.mEdgeTo[j].mId);
+            GraphNode to = (toPair != null) ? toPair.mNode
+                    : snapshot.mEdgeTo[j];
+            GraphEdge old = oldEdges.get(snapshot.mEdgeIds[j]);
+            pair.addEdge(new GraphEdge(snapshot.mEdgeIds[j], pair.mNode, to,
+                    snapshot.mEdgeTexts[j], (old != null) ? old.mLineColour
+                            : DEFAULT_EDGE_LINE_COLOUR));
+        }
+
+        // Anything being dragged or hovered over may no longer exist
+        mDragNode = null;
+        mDragEdge = null;
+        mHoverEdge = null;
+        mGraph = graph;
+        for (NodeEdgePair pair : mGraph.values()) {
+            for (GraphEdge e : pair.mEdges) {
+                NodeEdgePair toPair = mGraph.get(e.mTo.mId);
+                if (toPair != null) {
+                    updateConnectionLayoutData(pair, toPair);
+                }
+            }
+            updateEdgesLoopedLayoutData(pair.mNode, pair.mLoopedEdges);
+        }
+        updateTransparentNodes();
+        updateMaxPosNodes();
+        doRedraw();
+    }
+
     /**
      * Removes the node with the given id, out-going edges will also be removed
      *